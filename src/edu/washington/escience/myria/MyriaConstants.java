@@ -111,6 +111,31 @@ public final class MyriaConstants {
    */
   public static final int OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER_DEFAULT_VALUE = 80;
 
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#OPERATOR_HASH_TABLE_MAX_TUPLES}.
+   */
+  public static final long OPERATOR_HASH_TABLE_MAX_TUPLES_DEFAULT_VALUE = 10000000;
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#OPERATOR_SORT_MAX_TUPLES}.
+   */
+  public static final long OPERATOR_SORT_MAX_TUPLES_DEFAULT_VALUE = 10000000;
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#OPERATOR_BATCH_MAX_BYTES}.
+   */
+  public static final long OPERATOR_BATCH_MAX_BYTES_DEFAULT_VALUE = 1024 * 1024;
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#IPC_DATA_COMPRESSION}.
+   */
+  public static final String IPC_DATA_COMPRESSION_DEFAULT_VALUE = "NONE";
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#WORKER_DATA_HTTP_PORT_OFFSET}.
+   */
+  public static final int WORKER_DATA_HTTP_PORT_OFFSET_DEFAULT_VALUE = 0;
+
   /** timeout of returning a tuple batch even not filled. */
   public static final long PUSHING_TB_TIMEOUT = 1000000000;
 
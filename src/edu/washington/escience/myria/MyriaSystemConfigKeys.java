@@ -32,6 +32,36 @@ public final class MyriaSystemConfigKeys {
    * */
   public static final String OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER = "operator.consumer.inputbuffer.recover.trigger";
 
+  /**
+   * The max number of tuples that a hash-based operator, such as a hash join, keeps in memory. Once it is exceeded, the
+   * operator partitions its input by hash and spills the partitions to disk under {@link #WORKING_DIRECTORY}.
+   * */
+  public static final String OPERATOR_HASH_TABLE_MAX_TUPLES = "operator.hashtable.max.tuples";
+
+  /**
+   * The max number of tuples that a sort operator keeps in memory. Once it is exceeded, the buffered tuples are sorted
+   * and spilled to disk under {@link #WORKING_DIRECTORY} as a sorted run.
+   * */
+  public static final String OPERATOR_SORT_MAX_TUPLES = "operator.sort.max.tuples";
+
+  /**
+   * The max size in bytes of the TupleBatches that scans and producers emit. Batches of narrow tuples hold at most
+   * {@link edu.washington.escience.myria.storage.TupleBatch#BATCH_SIZE} tuples, batches of wide tuples fewer.
+   * */
+  public static final String OPERATOR_BATCH_MAX_BYTES = "operator.batch.max.bytes";
+
+  /**
+   * The block codec of the TupleBatches that are sent to other workers, one of
+   * {@link edu.washington.escience.myria.parallel.TransportMessageSerializer.Compression}. Receivers decode any codec.
+   * */
+  public static final String IPC_DATA_COMPRESSION = "ipc.data.compression";
+
+  /**
+   * If positive, each worker serves its partitions of relations over HTTP on its IPC port plus this offset, so that
+   * clients can download relations from all workers in parallel. 0 disables the direct downloads.
+   * */
+  public static final String WORKER_DATA_HTTP_PORT_OFFSET = "worker.data.http.port.offset";
+
   /**
    * .
    * */
@@ -109,6 +139,21 @@ public final class MyriaSystemConfigKeys {
       config.put(OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER,
           MyriaConstants.OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER_DEFAULT_VALUE + "");
     }
+    if (!config.containsKey(OPERATOR_HASH_TABLE_MAX_TUPLES) || config.get(OPERATOR_HASH_TABLE_MAX_TUPLES) == null) {
+      config.put(OPERATOR_HASH_TABLE_MAX_TUPLES, MyriaConstants.OPERATOR_HASH_TABLE_MAX_TUPLES_DEFAULT_VALUE + "");
+    }
+    if (!config.containsKey(OPERATOR_SORT_MAX_TUPLES) || config.get(OPERATOR_SORT_MAX_TUPLES) == null) {
+      config.put(OPERATOR_SORT_MAX_TUPLES, MyriaConstants.OPERATOR_SORT_MAX_TUPLES_DEFAULT_VALUE + "");
+    }
+    if (!config.containsKey(OPERATOR_BATCH_MAX_BYTES) || config.get(OPERATOR_BATCH_MAX_BYTES) == null) {
+      config.put(OPERATOR_BATCH_MAX_BYTES, MyriaConstants.OPERATOR_BATCH_MAX_BYTES_DEFAULT_VALUE + "");
+    }
+    if (!config.containsKey(IPC_DATA_COMPRESSION) || config.get(IPC_DATA_COMPRESSION) == null) {
+      config.put(IPC_DATA_COMPRESSION, MyriaConstants.IPC_DATA_COMPRESSION_DEFAULT_VALUE);
+    }
+    if (!config.containsKey(WORKER_DATA_HTTP_PORT_OFFSET) || config.get(WORKER_DATA_HTTP_PORT_OFFSET) == null) {
+      config.put(WORKER_DATA_HTTP_PORT_OFFSET, MyriaConstants.WORKER_DATA_HTTP_PORT_OFFSET_DEFAULT_VALUE + "");
+    }
     if (!config.containsKey(TCP_CONNECTION_TIMEOUT_MILLIS) || config.get(TCP_CONNECTION_TIMEOUT_MILLIS) == null) {
       config.put(TCP_CONNECTION_TIMEOUT_MILLIS, MyriaConstants.TCP_CONNECTION_TIMEOUT_MILLIS_DEFAULT_VALUE + "");
     }
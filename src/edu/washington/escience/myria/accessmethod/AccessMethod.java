@@ -82,8 +82,22 @@ public abstract class AccessMethod {
    * @return an Iterator<TupleBatch> containing the results.
    * @throws DbException if there is an error getting tuples.
    */
-  public abstract Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema)
-      throws DbException;
+  public Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema)
+      throws DbException {
+    return tupleBatchIteratorFromQuery(queryString, schema, TupleBatch.BATCH_SIZE);
+  }
+
+  /**
+   * Runs a query and expose the results as an Iterator<TupleBatch>.
+   * 
+   * @param queryString the query
+   * @param schema the output schema (with SQLite we are not able to reconstruct the schema from the API)
+   * @param batchSize the max number of tuples in a TupleBatch, at most {@link TupleBatch#BATCH_SIZE}.
+   * @return an Iterator<TupleBatch> containing the results.
+   * @throws DbException if there is an error getting tuples.
+   */
+  public abstract Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema,
+      final int batchSize) throws DbException;
 
   /**
    * Executes a DDL command.
@@ -2,7 +2,6 @@ package edu.washington.escience.myria.accessmethod;
 
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -18,6 +17,7 @@ import org.postgresql.PGConnection;
 import org.postgresql.PGStatement;
 import org.postgresql.copy.CopyIn;
 import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.CopyOut;
 import org.postgresql.copy.PGCopyOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,7 +42,8 @@ import edu.washington.escience.myria.util.ErrorUtils;
 /**
  * Access method for a JDBC database. Exposes data as TupleBatches.
  * 
- * 
+ * The connection is borrowed from the {@link JdbcConnectionPool} of the database and returned to it by
+ * {@link #close()}, or at the end of the iterator of a query.
  */
 public final class JdbcAccessMethod extends AccessMethod {
 
@@ -52,6 +53,12 @@ public final class JdbcAccessMethod extends AccessMethod {
   private JdbcInfo jdbcInfo;
   /** The database connection. */
   private Connection jdbcConnection;
+  /** The pooled database connection, or null once it is returned to the pool. */
+  private JdbcConnectionPool.PooledConnection pooledConnection;
+  /** The COPY operation of the last query, which may still be streaming results. */
+  private CopyOut queryCopy;
+  /** The statement of the last query, which may still have open results. */
+  private Statement queryStatement;
 
   /**
    * The constructor. Creates an object and connects with the database
@@ -66,6 +73,14 @@ public final class JdbcAccessMethod extends AccessMethod {
     connect(jdbcInfo, readOnly);
   }
 
+  /**
+   * Close the pooled connections to all the databases, e.g. when the worker shuts down. The connections that are in
+   * use are closed when they are released.
+   */
+  public static void closeConnectionPools() {
+    JdbcConnectionPool.closeAll();
+  }
+
   /**
    * @return the jdbc connection.
    */
@@ -80,10 +95,8 @@ public final class JdbcAccessMethod extends AccessMethod {
     jdbcConnection = null;
     jdbcInfo = (JdbcInfo) connectionInfo;
     try {
-      DriverManager.setLoginTimeout(5);
-      /* Make sure JDBC driver is loaded */
-      Class.forName(jdbcInfo.getDriverClass());
-      jdbcConnection = DriverManager.getConnection(jdbcInfo.getConnectionString(), jdbcInfo.getProperties());
+      pooledConnection = JdbcConnectionPool.of(jdbcInfo).borrow();
+      jdbcConnection = pooledConnection.getConnection();
     } catch (ClassNotFoundException e) {
       LOGGER.error(e.getMessage(), e);
       throw new DbException(e);
@@ -165,9 +178,9 @@ public final class JdbcAccessMethod extends AccessMethod {
     }
     if (!writeSucceeds) {
       try {
-        /* Set up and execute the query */
+        /* Set up and execute the query. The statement is cached by the connection, so it is prepared only once. */
         final PreparedStatement statement =
-            jdbcConnection.prepareStatement(insertStatementFromSchema(schema, relationKey));
+            pooledConnection.prepareStatement(insertStatementFromSchema(schema, relationKey));
         for (int row = 0; row < tupleBatch.numTuples(); ++row) {
           for (int col = 0; col < tupleBatch.numColumns(); ++col) {
             switch (schema.getColumnType(col)) {
@@ -197,8 +210,8 @@ public final class JdbcAccessMethod extends AccessMethod {
           statement.addBatch();
         }
         statement.executeBatch();
-        statement.close();
       } catch (final SQLException e) {
+        pooledConnection.clearStatements();
         throw ErrorUtils.mergeSQLException(e);
       }
     }
@@ -206,9 +219,28 @@ public final class JdbcAccessMethod extends AccessMethod {
   }
 
   @Override
-  public Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema)
-      throws DbException {
+  public Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema,
+      final int batchSize) throws DbException {
     Objects.requireNonNull(jdbcConnection, "jdbcConnection");
+    if (jdbcInfo.getDbms().equals(MyriaConstants.STORAGE_SYSTEM_POSTGRESQL)) {
+      /*
+       * Decoding the binary COPY format is much cheaper than reading the values through a ResultSet, but only possible
+       * if the result columns have the binary layouts of the Myria types.
+       */
+      try {
+        if (PostgresBinaryTupleBatchIterator.canDecode(pooledConnection.prepareStatement(queryString).getMetaData(),
+            schema)) {
+          CopyOut copyOut =
+              ((PGConnection) jdbcConnection).getCopyAPI().copyOut(
+                  PostgresBinaryTupleBatchIterator.copyStatement(queryString));
+          queryCopy = copyOut;
+          return new PostgresBinaryTupleBatchIterator(copyOut, schema, batchSize, this);
+        }
+        LOGGER.debug("The result types of {} differ from {}, using a ResultSet", queryString, schema);
+      } catch (final SQLException e) {
+        LOGGER.debug("Cannot read the results of {} via PostgreSQL COPY, using a ResultSet", queryString, e);
+      }
+    }
     try {
       PreparedStatement statement;
       if (jdbcInfo.getDbms().equals(MyriaConstants.STORAGE_SYSTEM_POSTGRESQL)) {
@@ -219,7 +251,7 @@ public final class JdbcAccessMethod extends AccessMethod {
         jdbcConnection.setAutoCommit(false);
         statement = jdbcConnection.prepareStatement(queryString);
         ((PGStatement) statement).setPrepareThreshold(-1);
-        statement.setFetchSize(TupleBatch.BATCH_SIZE);
+        statement.setFetchSize(batchSize);
       } else if (jdbcInfo.getDbms().equals(MyriaConstants.STORAGE_SYSTEM_MYSQL)) {
         /*
          * Special handling for MySQL comes from here:
@@ -232,10 +264,11 @@ public final class JdbcAccessMethod extends AccessMethod {
       } else {
         /* Unknown tricks for this DBMS. Hope it works! */
         statement = jdbcConnection.prepareStatement(queryString);
-        statement.setFetchSize(TupleBatch.BATCH_SIZE);
+        statement.setFetchSize(batchSize);
       }
+      queryStatement = statement;
       final ResultSet resultSet = statement.executeQuery();
-      return new JdbcTupleBatchIterator(resultSet, schema);
+      return new JdbcTupleBatchIterator(resultSet, schema, batchSize, this);
     } catch (final SQLException e) {
       throw ErrorUtils.mergeSQLException(e);
     }
@@ -243,11 +276,24 @@ public final class JdbcAccessMethod extends AccessMethod {
 
   @Override
   public void close() throws DbException {
-    /* Close the db connection. */
-    try {
-      jdbcConnection.close();
-    } catch (SQLException e) {
-      throw ErrorUtils.mergeSQLException(e);
+    /* Return the db connection to the pool. Closing twice, e.g. by the iterator of a query and the user, is fine. */
+    if (pooledConnection != null) {
+      /* The results of a query may not have been read to the end, e.g. if a Limit was satisfied early. */
+      try {
+        if (queryCopy != null && queryCopy.isActive()) {
+          queryCopy.cancelCopy();
+        }
+        if (queryStatement != null) {
+          queryStatement.close();
+        }
+      } catch (SQLException e) {
+        LOGGER.debug("Error abandoning the results of a query", e);
+      }
+      queryCopy = null;
+      queryStatement = null;
+      pooledConnection.release();
+      pooledConnection = null;
+      jdbcConnection = null;
     }
   }
 
@@ -259,9 +305,9 @@ public final class JdbcAccessMethod extends AccessMethod {
   public void execute(final String ddlCommand) throws DbException {
     Objects.requireNonNull(jdbcConnection);
     LOGGER.debug("Executing command {}", ddlCommand);
-    Statement statement;
-    try {
-      statement = jdbcConnection.createStatement();
+    /* The command may change the tables used by cached statements. */
+    pooledConnection.clearStatements();
+    try (Statement statement = jdbcConnection.createStatement()) {
       statement.execute(ddlCommand);
     } catch (SQLException e) {
       throw ErrorUtils.mergeSQLException(e);
@@ -599,20 +645,29 @@ class JdbcTupleBatchIterator implements Iterator<TupleBatch> {
   private final ResultSet resultSet;
   /** The Schema of the TupleBatches returned by this Iterator. */
   private final Schema schema;
+  /** The max number of tuples in a TupleBatch returned by this Iterator. */
+  private final int batchSize;
   /** Next TB. */
   private TupleBatch nextTB = null;
   /** statement is closed or not. */
   private boolean statementClosed = false;
+  /** The access method that owns the connection, closed when the results are exhausted. */
+  private final JdbcAccessMethod accessMethod;
 
   /**
    * Constructs a JdbcTupleBatchIterator from the given ResultSet and Schema objects.
    * 
    * @param resultSet the JDBC ResultSet containing the results.
    * @param schema the Schema of the generated TupleBatch objects.
+   * @param batchSize the max number of tuples in a generated TupleBatch.
+   * @param accessMethod the access method that owns the connection.
    */
-  JdbcTupleBatchIterator(final ResultSet resultSet, final Schema schema) {
+  JdbcTupleBatchIterator(final ResultSet resultSet, final Schema schema, final int batchSize,
+      final JdbcAccessMethod accessMethod) {
     this.resultSet = resultSet;
     this.schema = schema;
+    this.batchSize = batchSize;
+    this.accessMethod = accessMethod;
   }
 
   @Override
@@ -640,12 +695,15 @@ class JdbcTupleBatchIterator implements Iterator<TupleBatch> {
     final int numFields = schema.numColumns();
     final List<ColumnBuilder<?>> columnBuilders = ColumnFactory.allocateColumns(schema);
     int numTuples = 0;
-    for (numTuples = 0; numTuples < TupleBatch.BATCH_SIZE; ++numTuples) {
+    for (numTuples = 0; numTuples < batchSize; ++numTuples) {
       if (!resultSet.next()) {
-        final Connection connection = resultSet.getStatement().getConnection();
-        resultSet.getStatement().close();
-        connection.close(); /* Also closes the resultSet */
+        resultSet.getStatement().close(); /* Also closes the resultSet */
         statementClosed = true;
+        try {
+          accessMethod.close();
+        } catch (DbException e) {
+          throw new SQLException(e);
+        }
         break;
       }
       for (int colIdx = 0; colIdx < numFields; ++colIdx) {
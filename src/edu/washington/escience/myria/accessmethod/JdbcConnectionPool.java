@@ -0,0 +1,364 @@
+package edu.washington.escience.myria.accessmethod;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of JDBC connections to one database, shared by all the {@link JdbcAccessMethod}s of the process that connect
+ * to it. Opening a connection to e.g. PostgreSQL takes a large part of the latency of a short query, so connections
+ * are kept open after use and handed to the next access method.
+ *
+ * At most {@link #MAX_OPEN_CONNECTIONS} connections are open per database, and at most {@link #MAX_IDLE_CONNECTIONS}
+ * of them are kept idle. Once the cap is reached, {@link #borrow()} waits for a connection to be released, for up to
+ * {@link #BORROW_TIMEOUT_MILLIS}. A connection that has been idle for more than {@link #VALIDATION_IDLE_MILLIS} is
+ * validated before it is reused. Each connection also caches its prepared statements, see
+ * {@link PooledConnection#prepareStatement(String)}.
+ */
+final class JdbcConnectionPool {
+  /** The logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(JdbcConnectionPool.class);
+
+  /** The max number of idle connections kept per database. */
+  private static final int MAX_IDLE_CONNECTIONS = 8;
+  /** The max number of open connections per database, idle or borrowed. */
+  private static final int MAX_OPEN_CONNECTIONS = 64;
+  /** The time allowed to wait for a connection once {@link #MAX_OPEN_CONNECTIONS} are open. */
+  private static final long BORROW_TIMEOUT_MILLIS = 60 * 1000;
+  /** Connections that have been idle for longer than this are validated before reuse. */
+  private static final long VALIDATION_IDLE_MILLIS = 30 * 1000;
+  /** The time allowed for the validation of a connection. */
+  private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+  /** The time allowed to log in to the database. */
+  private static final int LOGIN_TIMEOUT_SECONDS = 5;
+  /** The max number of prepared statements cached per connection. */
+  private static final int MAX_CACHED_STATEMENTS = 32;
+
+  /** The pools of the process, by database and credentials. */
+  private static final ConcurrentMap<String, JdbcConnectionPool> POOLS = new ConcurrentHashMap<>();
+
+  /** The database. */
+  private final JdbcInfo jdbcInfo;
+  /** The max number of open connections. */
+  private final int maxOpenConnections;
+  /** The time allowed to wait for a connection once the max number are open. */
+  private final long borrowTimeoutMillis;
+  /** Connections that have been idle for longer than this are validated before reuse. */
+  private final long validationIdleMillis;
+  /** The idle connections, the most recently used first. */
+  private final Deque<PooledConnection> idle = new ArrayDeque<>();
+  /** The number of open connections, idle or borrowed. */
+  private int numOpen;
+  /** Whether the pool has been closed, after which released connections are closed instead of kept. */
+  private boolean closed;
+
+  /**
+   * @param jdbcInfo the database.
+   * @param maxOpenConnections the max number of open connections.
+   * @param borrowTimeoutMillis the time allowed to wait for a connection once the max number are open.
+   * @param validationIdleMillis connections that have been idle for longer than this are validated before reuse.
+   */
+  JdbcConnectionPool(final JdbcInfo jdbcInfo, final int maxOpenConnections, final long borrowTimeoutMillis,
+      final long validationIdleMillis) {
+    this.jdbcInfo = jdbcInfo;
+    this.maxOpenConnections = maxOpenConnections;
+    this.borrowTimeoutMillis = borrowTimeoutMillis;
+    this.validationIdleMillis = validationIdleMillis;
+  }
+
+  /**
+   * @param jdbcInfo the database.
+   * @return the pool of connections to the database.
+   */
+  static JdbcConnectionPool of(final JdbcInfo jdbcInfo) {
+    final String key = jdbcInfo.getConnectionString() + jdbcInfo.getProperties();
+    JdbcConnectionPool pool = POOLS.get(key);
+    if (pool == null) {
+      final JdbcConnectionPool newPool =
+          new JdbcConnectionPool(jdbcInfo, MAX_OPEN_CONNECTIONS, BORROW_TIMEOUT_MILLIS, VALIDATION_IDLE_MILLIS);
+      pool = POOLS.putIfAbsent(key, newPool);
+      if (pool == null) {
+        pool = newPool;
+      }
+    }
+    return pool;
+  }
+
+  /**
+   * Close the idle connections of all the pools, e.g. when the worker shuts down. The connections that are borrowed
+   * are closed when they are released.
+   */
+  static void closeAll() {
+    for (Iterator<JdbcConnectionPool> it = POOLS.values().iterator(); it.hasNext();) {
+      it.next().close();
+      it.remove();
+    }
+  }
+
+  /**
+   * Close the idle connections, and the borrowed ones once they are released.
+   */
+  void close() {
+    final List<PooledConnection> toClose;
+    synchronized (this) {
+      closed = true;
+      toClose = new ArrayList<>(idle);
+      idle.clear();
+    }
+    for (PooledConnection connection : toClose) {
+      discard(connection);
+    }
+  }
+
+  /**
+   * @return an idle connection that is still usable, or a new connection if there is none.
+   * @throws SQLException if there is an error connecting to the database, or if no connection was released in time
+   *           while the max number of connections are open.
+   * @throws ClassNotFoundException if the JDBC driver cannot be loaded.
+   */
+  PooledConnection borrow() throws SQLException, ClassNotFoundException {
+    final long deadline = System.currentTimeMillis() + borrowTimeoutMillis;
+    while (true) {
+      final PooledConnection connection;
+      synchronized (this) {
+        while (idle.isEmpty() && numOpen >= maxOpenConnections) {
+          final long wait = deadline - System.currentTimeMillis();
+          if (wait <= 0) {
+            throw new SQLException("Timed out waiting for one of the " + maxOpenConnections + " open connections to "
+                + jdbcInfo.getConnectionString());
+          }
+          try {
+            wait(wait);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection to " + jdbcInfo.getConnectionString(),
+                e);
+          }
+        }
+        connection = idle.pollFirst();
+        if (connection == null) {
+          /* Reserve the connection that is opened below. */
+          ++numOpen;
+        }
+      }
+      if (connection == null) {
+        return open();
+      }
+      if (System.currentTimeMillis() - connection.lastUsed <= validationIdleMillis || isValid(connection)) {
+        return connection;
+      }
+      LOGGER.debug("Discarding a stale connection to {}", jdbcInfo.getConnectionString());
+      discard(connection);
+    }
+  }
+
+  /**
+   * @return a new connection, which has already been counted as open.
+   * @throws SQLException if there is an error connecting to the database.
+   * @throws ClassNotFoundException if the JDBC driver cannot be loaded.
+   */
+  private PooledConnection open() throws SQLException, ClassNotFoundException {
+    boolean opened = false;
+    try {
+      DriverManager.setLoginTimeout(LOGIN_TIMEOUT_SECONDS);
+      /* Make sure JDBC driver is loaded */
+      Class.forName(jdbcInfo.getDriverClass());
+      final PooledConnection connection =
+          new PooledConnection(this, DriverManager.getConnection(jdbcInfo.getConnectionString(), jdbcInfo
+              .getProperties()));
+      opened = true;
+      return connection;
+    } finally {
+      if (!opened) {
+        closed();
+      }
+    }
+  }
+
+  /**
+   * @param connection an idle connection.
+   * @return true if the connection is still usable.
+   */
+  private static boolean isValid(final PooledConnection connection) {
+    try {
+      return connection.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+    } catch (SQLException e) {
+      LOGGER.debug("Error validating a pooled connection", e);
+      return false;
+    }
+  }
+
+  /**
+   * Close a connection and make room for another one.
+   *
+   * @param connection an open connection of this pool.
+   */
+  private void discard(final PooledConnection connection) {
+    connection.closeQuietly();
+    closed();
+  }
+
+  /**
+   * Count a connection as closed, or as not opened after all, and wake up a borrower that waits for room.
+   */
+  private synchronized void closed() {
+    --numOpen;
+    notifyAll();
+  }
+
+  /**
+   * @return the number of open connections, idle or borrowed.
+   */
+  synchronized int numOpen() {
+    return numOpen;
+  }
+
+  /**
+   * Return a connection to the pool. Any open transaction is rolled back, as it would be by closing the connection.
+   *
+   * @param connection a connection from {@link #borrow()}, which must not be used afterwards.
+   */
+  private void release(final PooledConnection connection) {
+    try {
+      if (connection.connection.isClosed()) {
+        closed();
+        return;
+      }
+      if (!connection.connection.getAutoCommit()) {
+        connection.connection.rollback();
+        connection.connection.setAutoCommit(true);
+      }
+      if (connection.connection.isReadOnly()) {
+        connection.connection.setReadOnly(false);
+      }
+    } catch (SQLException e) {
+      LOGGER.debug("Discarding a connection that could not be reset", e);
+      discard(connection);
+      return;
+    }
+
+    connection.lastUsed = System.currentTimeMillis();
+    synchronized (this) {
+      if (!closed && idle.size() < MAX_IDLE_CONNECTIONS) {
+        idle.addFirst(connection);
+        notifyAll();
+        return;
+      }
+    }
+    discard(connection);
+  }
+
+  /**
+   * A pooled JDBC connection with its cache of prepared statements.
+   */
+  static final class PooledConnection {
+    /** The pool that opened the connection. */
+    private final JdbcConnectionPool pool;
+    /** The connection. */
+    private final Connection connection;
+    /** The prepared statements, by SQL, the least recently used first. */
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    /** When the connection was last released to the pool. */
+    private long lastUsed;
+
+    /**
+     * @param pool the pool that opened the connection.
+     * @param connection the connection.
+     */
+    private PooledConnection(final JdbcConnectionPool pool, final Connection connection) {
+      this.pool = pool;
+      this.connection = connection;
+      statements = new LinkedHashMap<String, PreparedStatement>(MAX_CACHED_STATEMENTS, 0.75f, true) {
+        /** Required for Java serialization. */
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, PreparedStatement> eldest) {
+          if (size() <= MAX_CACHED_STATEMENTS) {
+            return false;
+          }
+          closeQuietly(eldest.getValue());
+          return true;
+        }
+      };
+    }
+
+    /**
+     * @return the connection.
+     */
+    Connection getConnection() {
+      return connection;
+    }
+
+    /**
+     * Return the connection to its pool. Any open transaction is rolled back, as it would be by closing the
+     * connection. Neither this nor the connection must be used afterwards.
+     */
+    void release() {
+      pool.release(this);
+    }
+
+    /**
+     * Prepare a statement, or reuse the one that was prepared for the same SQL on this connection. The statement must
+     * not be closed by the caller, and must be left without open results or pending batches.
+     *
+     * @param sql the SQL of the statement.
+     * @return the prepared statement.
+     * @throws SQLException if there is an error preparing the statement.
+     */
+    PreparedStatement prepareStatement(final String sql) throws SQLException {
+      PreparedStatement statement = statements.get(sql);
+      if (statement == null || statement.isClosed()) {
+        statement = connection.prepareStatement(sql);
+        statements.put(sql, statement);
+      }
+      return statement;
+    }
+
+    /**
+     * Close the cached statements, e.g. because the tables that they use may have changed.
+     */
+    void clearStatements() {
+      for (Iterator<PreparedStatement> it = statements.values().iterator(); it.hasNext();) {
+        closeQuietly(it.next());
+        it.remove();
+      }
+    }
+
+    /**
+     * Close the connection, ignoring errors.
+     */
+    private void closeQuietly() {
+      clearStatements();
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        LOGGER.debug("Error closing a pooled connection", e);
+      }
+    }
+
+    /**
+     * @param statement a statement to be closed, ignoring errors.
+     */
+    private static void closeQuietly(final PreparedStatement statement) {
+      try {
+        statement.close();
+      } catch (SQLException e) {
+        LOGGER.debug("Error closing a cached statement", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,359 @@
+package edu.washington.escience.myria.accessmethod;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.postgresql.copy.CopyOut;
+
+import com.google.common.collect.ImmutableSet;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.builder.ColumnBuilder;
+import edu.washington.escience.myria.column.builder.ColumnFactory;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.ErrorUtils;
+
+/**
+ * Reads the results of a query from PostgreSQL with <code>COPY (query) TO STDOUT WITH BINARY</code> and decodes the
+ * binary tuples directly into column builders, instead of going through a JDBC ResultSet value by value. This is the
+ * reverse of {@link edu.washington.escience.myria.PostgresBinaryTupleWriter}.
+ *
+ * The query is copied as is, so that its order is kept. It is only read this way if each of its result columns has
+ * the PostgreSQL type whose binary layout is decoded as the Myria type, see {@link #canDecode(ResultSetMetaData,
+ * Schema)}. Like the writer, this requires integer time stamps, and converts time stamps only for dates after the
+ * Gregorian calendar reform.
+ *
+ * Like the JDBC ResultSet getters, NULL values of numeric and boolean columns are read as 0 and false. NULL strings and
+ * time stamps are rejected.
+ */
+final class PostgresBinaryTupleBatchIterator implements Iterator<TupleBatch> {
+  /** The signature at the beginning of the binary COPY format. */
+  private static final byte[] SIGNATURE = "PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1);
+  /** Seconds from the Java epoch to the PostgreSQL epoch, 2000-01-01. */
+  private static final long PG_EPOCH_SECONDS = 946684800L;
+  /** The field count that marks the end of the tuples. */
+  private static final short TRAILER = -1;
+
+  /** The COPY operation that streams the results. */
+  private final CopyOut copyOut;
+  /** The Schema of the TupleBatches returned by this Iterator. */
+  private final Schema schema;
+  /** The max number of tuples in a TupleBatch returned by this Iterator. */
+  private final int batchSize;
+  /** The access method that owns the connection, closed when the results are exhausted. */
+  private final JdbcAccessMethod accessMethod;
+  /** The unread bytes of the results. */
+  private ByteBuffer buffer = ByteBuffer.allocate(0);
+  /** Next TB. */
+  private TupleBatch nextTB = null;
+  /** True once the trailer has been read. */
+  private boolean done = false;
+
+  /**
+   * @param copyOut the COPY operation, started with {@link #copyStatement(String)}.
+   * @param schema the Schema of the generated TupleBatch objects.
+   * @param batchSize the max number of tuples in a generated TupleBatch.
+   * @param accessMethod the access method that owns the connection, or null if the connection is closed by the caller.
+   * @throws DbException if the results do not start with a valid header.
+   */
+  PostgresBinaryTupleBatchIterator(final CopyOut copyOut, final Schema schema, final int batchSize,
+      final JdbcAccessMethod accessMethod) throws DbException {
+    this.copyOut = copyOut;
+    this.schema = schema;
+    this.batchSize = batchSize;
+    this.accessMethod = accessMethod;
+    try {
+      readHeader();
+    } catch (SQLException e) {
+      throw ErrorUtils.mergeSQLException(e);
+    }
+  }
+
+  /**
+   * @param query a query.
+   * @return a COPY statement that returns the results of the query in the binary format.
+   */
+  static String copyStatement(final String query) {
+    String trimmed = query.trim();
+    while (trimmed.endsWith(";")) {
+      trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+    }
+    return "COPY (" + trimmed + ") TO STDOUT WITH BINARY";
+  }
+
+  /**
+   * @param metaData the description of the results of a query.
+   * @param schema the schema of the results of the query.
+   * @return true if each column of the results has a PostgreSQL type whose binary values are decoded as the Myria type
+   *         of the column.
+   * @throws SQLException if there is an error reading the description.
+   */
+  static boolean canDecode(final ResultSetMetaData metaData, final Schema schema) throws SQLException {
+    if (metaData == null || metaData.getColumnCount() != schema.numColumns()) {
+      return false;
+    }
+    for (int i = 0; i < schema.numColumns(); ++i) {
+      if (!decodedTypes(schema.getColumnType(i)).contains(metaData.getColumnTypeName(i + 1))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param type a Myria type.
+   * @return the names of the PostgreSQL types whose binary values are decoded as the Myria type.
+   */
+  private static ImmutableSet<String> decodedTypes(final Type type) {
+    switch (type) {
+      case BOOLEAN_TYPE:
+        return ImmutableSet.of("bool");
+      case INT_TYPE:
+        return ImmutableSet.of("int4");
+      case LONG_TYPE:
+        return ImmutableSet.of("int8");
+      case FLOAT_TYPE:
+        return ImmutableSet.of("float4");
+      case DOUBLE_TYPE:
+        return ImmutableSet.of("float8");
+      case DATETIME_TYPE:
+        return ImmutableSet.of("timestamp");
+      case STRING_TYPE:
+        return ImmutableSet.of("text", "varchar", "bpchar", "name");
+      default:
+        return ImmutableSet.of();
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (nextTB != null) {
+      return true;
+    } else {
+      try {
+        nextTB = getNextTB();
+        return null != nextTB;
+      } catch (final SQLException e) {
+        throw new RuntimeException(ErrorUtils.mergeSQLException(e).getCause());
+      } catch (final DbException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  @Override
+  public TupleBatch next() {
+    TupleBatch tmp = nextTB;
+    nextTB = null;
+    return tmp;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException("PostgresBinaryTupleBatchIterator.remove()");
+  }
+
+  /**
+   * Make sure that the buffer holds at least the specified number of bytes.
+   *
+   * @param bytes the number of bytes.
+   * @throws SQLException if there is an error reading the results.
+   * @throws DbException if the results end early.
+   */
+  private void ensure(final int bytes) throws SQLException, DbException {
+    while (buffer.remaining() < bytes) {
+      final byte[] data = copyOut.readFromCopy();
+      if (data == null) {
+        throw new DbException("Unexpected end of the binary COPY results");
+      }
+      if (!buffer.hasRemaining()) {
+        buffer = ByteBuffer.wrap(data);
+      } else {
+        final ByteBuffer merged = ByteBuffer.allocate(buffer.remaining() + data.length);
+        merged.put(buffer).put(data).flip();
+        buffer = merged;
+      }
+    }
+  }
+
+  /**
+   * Read and check the header of the results.
+   *
+   * @throws SQLException if there is an error reading the results.
+   * @throws DbException if the header is not valid.
+   */
+  private void readHeader() throws SQLException, DbException {
+    ensure(SIGNATURE.length + 2 * Integer.SIZE / Byte.SIZE);
+    for (byte b : SIGNATURE) {
+      if (buffer.get() != b) {
+        throw new DbException("Invalid binary COPY signature");
+      }
+    }
+    /* The flags, then the length of the header extension, which is skipped. */
+    buffer.getInt();
+    final int extensionLength = buffer.getInt();
+    ensure(extensionLength);
+    buffer.position(buffer.position() + extensionLength);
+  }
+
+  /**
+   * @return next TupleBatch, null if no more
+   * @throws SQLException if any DB system errors
+   * @throws DbException if the results are not valid.
+   */
+  private TupleBatch getNextTB() throws SQLException, DbException {
+    if (done) {
+      return null;
+    }
+    final int numFields = schema.numColumns();
+    final List<ColumnBuilder<?>> columnBuilders = ColumnFactory.allocateColumns(schema);
+    int numTuples = 0;
+    for (numTuples = 0; numTuples < batchSize; ++numTuples) {
+      ensure(Short.SIZE / Byte.SIZE);
+      final short fieldCount = buffer.getShort();
+      if (fieldCount == TRAILER) {
+        finish();
+        break;
+      }
+      if (fieldCount != numFields) {
+        throw new DbException("Expected " + numFields + " fields in a binary COPY tuple but found " + fieldCount);
+      }
+      for (int colIdx = 0; colIdx < numFields; ++colIdx) {
+        appendField(columnBuilders.get(colIdx), schema.getColumnType(colIdx));
+      }
+    }
+    if (numTuples > 0) {
+      List<Column<?>> columns = new ArrayList<Column<?>>(columnBuilders.size());
+      for (ColumnBuilder<?> cb : columnBuilders) {
+        columns.add(cb.build());
+      }
+
+      return new TupleBatch(schema, columns, numTuples);
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Decode the next field and append it to a column.
+   *
+   * @param builder the builder of the column.
+   * @param type the type of the column.
+   * @throws SQLException if there is an error reading the results.
+   * @throws DbException if the field is not a valid value of the type.
+   */
+  private void appendField(final ColumnBuilder<?> builder, final Type type) throws SQLException, DbException {
+    ensure(Integer.SIZE / Byte.SIZE);
+    final int length = buffer.getInt();
+    if (length < 0) {
+      appendNull(builder, type);
+      return;
+    }
+    ensure(length);
+    switch (type) {
+      case BOOLEAN_TYPE:
+        checkLength(type, length, 1);
+        builder.appendBoolean(buffer.get() != 0);
+        break;
+      case INT_TYPE:
+        checkLength(type, length, Integer.SIZE / Byte.SIZE);
+        builder.appendInt(buffer.getInt());
+        break;
+      case LONG_TYPE:
+        checkLength(type, length, Long.SIZE / Byte.SIZE);
+        builder.appendLong(buffer.getLong());
+        break;
+      case FLOAT_TYPE:
+        checkLength(type, length, Float.SIZE / Byte.SIZE);
+        builder.appendFloat(buffer.getFloat());
+        break;
+      case DOUBLE_TYPE:
+        checkLength(type, length, Double.SIZE / Byte.SIZE);
+        builder.appendDouble(buffer.getDouble());
+        break;
+      case DATETIME_TYPE: {
+        checkLength(type, length, Long.SIZE / Byte.SIZE);
+        /* Microseconds since 2000-01-01 in local time, which JDBC interprets in the default time zone. */
+        final long localMillis =
+            TimeUnit.SECONDS.toMillis(PG_EPOCH_SECONDS) + TimeUnit.MICROSECONDS.toMillis(buffer.getLong());
+        builder.appendDateTime(new DateTime(DateTimeZone.getDefault().convertLocalToUTC(localMillis, false)));
+        break;
+      }
+      case STRING_TYPE:
+        builder.appendString(new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+            StandardCharsets.UTF_8));
+        buffer.position(buffer.position() + length);
+        break;
+      default:
+        throw new UnsupportedOperationException("Reading a column of type " + type);
+    }
+  }
+
+  /**
+   * Append a NULL value to a column the way the JDBC ResultSet getters read it.
+   *
+   * @param builder the builder of the column.
+   * @param type the type of the column.
+   * @throws DbException if NULL values of the type are not supported.
+   */
+  private static void appendNull(final ColumnBuilder<?> builder, final Type type) throws DbException {
+    switch (type) {
+      case BOOLEAN_TYPE:
+        builder.appendBoolean(false);
+        break;
+      case INT_TYPE:
+        builder.appendInt(0);
+        break;
+      case LONG_TYPE:
+        builder.appendLong(0);
+        break;
+      case FLOAT_TYPE:
+        builder.appendFloat(0);
+        break;
+      case DOUBLE_TYPE:
+        builder.appendDouble(0);
+        break;
+      default:
+        throw new DbException("Unexpected NULL value in a column of type " + type);
+    }
+  }
+
+  /**
+   * @param type the type of a column.
+   * @param length the length of a value of the column.
+   * @param expected the length of the binary values of the type.
+   * @throws DbException if the lengths differ.
+   */
+  private static void checkLength(final Type type, final int length, final int expected) throws DbException {
+    if (length != expected) {
+      throw new DbException("Expected a value of " + expected + " bytes for type " + type + " but found " + length);
+    }
+  }
+
+  /**
+   * Consume the end of the COPY operation and return the connection.
+   *
+   * @throws SQLException if there is an error finishing the operation.
+   * @throws DbException if there is an error returning the connection.
+   */
+  private void finish() throws SQLException, DbException {
+    done = true;
+    while (copyOut.readFromCopy() != null) {
+      continue;
+    }
+    if (accessMethod != null) {
+      accessMethod.close();
+    }
+  }
+}
@@ -50,6 +50,23 @@ public final class SQLiteAccessMethod extends AccessMethod {
   /** Flag that identifies the connection type (read-only or not). **/
   private Boolean readOnly;
 
+  /** In a bulk load, a transaction is committed after this many tuples. */
+  private static final long BULK_LOAD_COMMIT_TUPLES = 1000000;
+  /** In a bulk load, a transaction is committed after this many milliseconds. */
+  private static final long BULK_LOAD_COMMIT_MILLIS = 10 * 1000;
+  /** In a bulk load, a transaction is committed after this many tuples. Only changed by tests. */
+  private long bulkLoadCommitTuples = BULK_LOAD_COMMIT_TUPLES;
+  /** The relation of the current bulk load, or null if there is none. */
+  private RelationKey bulkLoadRelation;
+  /** The insert statement of the current bulk load. Only used by jobs of {@link #sqliteQueue}. */
+  private SQLiteStatement bulkLoadStatement;
+  /** The synchronous setting before the current bulk load. */
+  private int bulkLoadPreviousSynchronous;
+  /** The number of tuples inserted since the last commit of the current bulk load. */
+  private long bulkLoadUncommittedTuples;
+  /** When the last transaction of the current bulk load started. */
+  private long bulkLoadTransactionStart;
+
   /**
    * The constructor. Creates an object and connects with the database
    * 
@@ -121,6 +138,13 @@ public final class SQLiteAccessMethod extends AccessMethod {
   public void tupleBatchInsert(final RelationKey relationKey, final TupleBatch tupleBatch) throws DbException {
     Objects.requireNonNull(sqliteQueue);
 
+    if (bulkLoadRelation != null) {
+      Preconditions.checkArgument(bulkLoadRelation.equals(relationKey), "bulk loading %s, not %s", bulkLoadRelation,
+          relationKey);
+      bulkLoadInsert(tupleBatch);
+      return;
+    }
+
     try {
       sqliteQueue.execute(new SQLiteJob<Object>() {
         @Override
@@ -132,40 +156,7 @@ public final class SQLiteAccessMethod extends AccessMethod {
             sqliteConnection.exec("BEGIN TRANSACTION");
             /* Set up and execute the query */
             statement = sqliteConnection.prepare(insertStatementFromSchema(schema, relationKey));
-            for (int row = 0; row < tupleBatch.numTuples(); ++row) {
-              for (int col = 0; col < tupleBatch.numColumns(); ++col) {
-                switch (schema.getColumnType(col)) {
-                  case BOOLEAN_TYPE:
-                    /* In SQLite, booleans are integers represented as 0 (false) or 1 (true). */
-                    int colVal = 0;
-                    if (tupleBatch.getBoolean(col, row)) {
-                      colVal = 1;
-                    }
-                    statement.bind(col + 1, colVal);
-                    break;
-                  case DATETIME_TYPE:
-                    statement.bind(col + 1, tupleBatch.getDateTime(col, row).getMillis()); // SQLite long
-                    break;
-                  case DOUBLE_TYPE:
-                    statement.bind(col + 1, tupleBatch.getDouble(col, row));
-                    break;
-                  case FLOAT_TYPE:
-                    statement.bind(col + 1, tupleBatch.getFloat(col, row));
-                    break;
-                  case INT_TYPE:
-                    statement.bind(col + 1, tupleBatch.getInt(col, row));
-                    break;
-                  case LONG_TYPE:
-                    statement.bind(col + 1, tupleBatch.getLong(col, row));
-                    break;
-                  case STRING_TYPE:
-                    statement.bind(col + 1, tupleBatch.getString(col, row));
-                    break;
-                }
-              }
-              statement.step();
-              statement.reset();
-            }
+            insertRows(statement, tupleBatch);
             /* COMMIT TRANSACTION */
             sqliteConnection.exec("COMMIT TRANSACTION");
           } catch (final SQLiteException e) {
@@ -185,12 +176,209 @@ public final class SQLiteAccessMethod extends AccessMethod {
 
   }
 
+  /**
+   * Insert the rows of a batch with a prepared insert statement.
+   * 
+   * @param statement the insert statement.
+   * @param tupleBatch the rows to be inserted.
+   * @throws SQLiteException if there is an error inserting the rows.
+   */
+  private static void insertRows(final SQLiteStatement statement, final TupleBatch tupleBatch)
+      throws SQLiteException {
+    final List<Type> types = tupleBatch.getSchema().getColumnTypes();
+    for (int row = 0; row < tupleBatch.numTuples(); ++row) {
+      for (int col = 0; col < types.size(); ++col) {
+        switch (types.get(col)) {
+          case BOOLEAN_TYPE:
+            /* In SQLite, booleans are integers represented as 0 (false) or 1 (true). */
+            int colVal = 0;
+            if (tupleBatch.getBoolean(col, row)) {
+              colVal = 1;
+            }
+            statement.bind(col + 1, colVal);
+            break;
+          case DATETIME_TYPE:
+            statement.bind(col + 1, tupleBatch.getDateTime(col, row).getMillis()); // SQLite long
+            break;
+          case DOUBLE_TYPE:
+            statement.bind(col + 1, tupleBatch.getDouble(col, row));
+            break;
+          case FLOAT_TYPE:
+            statement.bind(col + 1, tupleBatch.getFloat(col, row));
+            break;
+          case INT_TYPE:
+            statement.bind(col + 1, tupleBatch.getInt(col, row));
+            break;
+          case LONG_TYPE:
+            statement.bind(col + 1, tupleBatch.getLong(col, row));
+            break;
+          case STRING_TYPE:
+            statement.bind(col + 1, tupleBatch.getString(col, row));
+            break;
+        }
+      }
+      statement.step();
+      statement.reset();
+    }
+  }
+
+  /**
+   * Start a bulk load into a relation. Until {@link #finishBulkLoad()}, {@link #tupleBatchInsert(RelationKey,
+   * TupleBatch)} reuses one insert statement and commits only every {@link #BULK_LOAD_COMMIT_TUPLES} tuples or
+   * {@link #BULK_LOAD_COMMIT_MILLIS} milliseconds, instead of once per batch. The caller must call
+   * {@link #commitBulkLoad()} whenever it waits for more tuples, so that the write lock of the database is not held
+   * while the load is idle.
+   * 
+   * @param relationKey the relation to be loaded.
+   * @param schema the schema of the relation.
+   * @throws DbException if there is an error in the database.
+   */
+  public void beginBulkLoad(final RelationKey relationKey, final Schema schema) throws DbException {
+    Objects.requireNonNull(sqliteQueue);
+    Preconditions.checkState(bulkLoadRelation == null, "already bulk loading %s", bulkLoadRelation);
+
+    runJob(new SQLiteJob<Object>() {
+      @Override
+      protected Object job(final SQLiteConnection sqliteConnection) throws SQLiteException {
+        final SQLiteStatement pragma = sqliteConnection.prepare("PRAGMA synchronous;");
+        try {
+          pragma.step();
+          bulkLoadPreviousSynchronous = pragma.columnInt(0);
+        } finally {
+          pragma.dispose();
+        }
+        /*
+         * The setting applies to the whole database, not only to the loaded table. In WAL mode, NORMAL cannot corrupt
+         * the database, it only may lose the last commits on power loss.
+         */
+        sqliteConnection.exec("PRAGMA synchronous=NORMAL;");
+        bulkLoadStatement = sqliteConnection.prepare(insertStatementFromSchema(schema, relationKey));
+        sqliteConnection.exec("BEGIN TRANSACTION");
+        bulkLoadUncommittedTuples = 0;
+        bulkLoadTransactionStart = System.currentTimeMillis();
+        return null;
+      }
+    });
+    bulkLoadRelation = relationKey;
+  }
+
+  /**
+   * Insert a batch in the current bulk load.
+   * 
+   * @param tupleBatch the rows to be inserted.
+   * @throws DbException if there is an error in the database.
+   */
+  private void bulkLoadInsert(final TupleBatch tupleBatch) throws DbException {
+    runJob(new SQLiteJob<Object>() {
+      @Override
+      protected Object job(final SQLiteConnection sqliteConnection) throws SQLiteException {
+        insertRows(bulkLoadStatement, tupleBatch);
+        bulkLoadUncommittedTuples += tupleBatch.numTuples();
+        if (bulkLoadUncommittedTuples >= bulkLoadCommitTuples
+            || System.currentTimeMillis() - bulkLoadTransactionStart >= BULK_LOAD_COMMIT_MILLIS) {
+          restartBulkLoadTransaction(sqliteConnection);
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Commit the tuples inserted so far in the current bulk load, if any, and release the write lock of the database
+   * until the next insert.
+   * 
+   * @throws DbException if there is an error in the database.
+   */
+  public void commitBulkLoad() throws DbException {
+    /* Written by the last job, which happened before runJob returned. */
+    if (bulkLoadRelation == null || bulkLoadUncommittedTuples == 0) {
+      return;
+    }
+    runJob(new SQLiteJob<Object>() {
+      @Override
+      protected Object job(final SQLiteConnection sqliteConnection) throws SQLiteException {
+        restartBulkLoadTransaction(sqliteConnection);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Commit the transaction of the current bulk load and begin the next one. The new transaction is deferred, so it does
+   * not take the write lock until its first insert.
+   * 
+   * @param sqliteConnection the connection of the queue.
+   * @throws SQLiteException if there is an error in the database.
+   */
+  private void restartBulkLoadTransaction(final SQLiteConnection sqliteConnection) throws SQLiteException {
+    sqliteConnection.exec("COMMIT TRANSACTION");
+    sqliteConnection.exec("BEGIN TRANSACTION");
+    bulkLoadUncommittedTuples = 0;
+    bulkLoadTransactionStart = System.currentTimeMillis();
+  }
+
+  /**
+   * @param tuples in a bulk load, commit a transaction after this many tuples.
+   */
+  void setBulkLoadCommitTuples(final long tuples) {
+    bulkLoadCommitTuples = tuples;
+  }
+
+  /**
+   * Commit the current bulk load and restore the settings of the connection.
+   * 
+   * @throws DbException if there is an error in the database.
+   */
+  public void finishBulkLoad() throws DbException {
+    endBulkLoad(true);
+  }
+
+  /**
+   * End the current bulk load, if any.
+   * 
+   * @param commit whether to commit the last transaction of the load, or to roll it back.
+   * @throws DbException if there is an error in the database.
+   */
+  private void endBulkLoad(final boolean commit) throws DbException {
+    if (bulkLoadRelation == null) {
+      return;
+    }
+    bulkLoadRelation = null;
+    runJob(new SQLiteJob<Object>() {
+      @Override
+      protected Object job(final SQLiteConnection sqliteConnection) throws SQLiteException {
+        try {
+          sqliteConnection.exec(commit ? "COMMIT TRANSACTION" : "ROLLBACK TRANSACTION");
+        } finally {
+          bulkLoadStatement.dispose();
+          bulkLoadStatement = null;
+          sqliteConnection.exec("PRAGMA synchronous=" + bulkLoadPreviousSynchronous + ";");
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Run a job on the queue of the connection and wait for it.
+   * 
+   * @param job the job.
+   * @throws DbException if the job fails.
+   */
+  private void runJob(final SQLiteJob<Object> job) throws DbException {
+    try {
+      sqliteQueue.execute(job).get();
+    } catch (InterruptedException | ExecutionException e) {
+      throw new DbException(e);
+    }
+  }
+
   /** How many times to try to open a database before we give up. Normal is 2-3, outside is 10 to 20. */
   private static final int MAX_RETRY_ATTEMPTS = 1000;
 
   @Override
-  public Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema)
-      throws DbException {
+  public Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema,
+      final int batchSize) throws DbException {
     Objects.requireNonNull(sqliteConnection);
     Objects.requireNonNull(schema);
 
@@ -232,7 +420,7 @@ public final class SQLiteAccessMethod extends AccessMethod {
       throw new DbException(e);
     }
 
-    return new SQLiteTupleBatchIterator(statement, schema, sqliteConnection);
+    return new SQLiteTupleBatchIterator(statement, schema, sqliteConnection, batchSize);
   }
 
   @Override
@@ -259,16 +447,21 @@ public final class SQLiteAccessMethod extends AccessMethod {
 
   @Override
   public void close() throws DbException {
-    if (sqliteConnection != null) {
-      sqliteConnection.dispose();
-      sqliteConnection = null;
-    }
-    if (sqliteQueue != null) {
-      try {
-        sqliteQueue.stop(true).join();
-        sqliteQueue = null;
-      } catch (InterruptedException e) {
-        throw new DbException(e);
+    try {
+      /* If a load did not finish, its last transaction is not wanted. */
+      endBulkLoad(false);
+    } finally {
+      if (sqliteConnection != null) {
+        sqliteConnection.dispose();
+        sqliteConnection = null;
+      }
+      if (sqliteQueue != null) {
+        try {
+          sqliteQueue.stop(true).join();
+          sqliteQueue = null;
+        } catch (InterruptedException e) {
+          throw new DbException(e);
+        }
       }
     }
   }
@@ -471,6 +664,8 @@ class SQLiteTupleBatchIterator implements Iterator<TupleBatch> {
   private final SQLiteConnection connection;
   /** The Schema of the TupleBatches returned by this Iterator. */
   private final Schema schema;
+  /** The max number of tuples in a TupleBatch returned by this Iterator. */
+  private final int batchSize;
 
   /**
    * Wraps a SQLiteStatement result set in an Iterator<TupleBatch>.
@@ -478,11 +673,14 @@ class SQLiteTupleBatchIterator implements Iterator<TupleBatch> {
    * @param statement the SQLiteStatement containing the results.
    * @param schema the Schema describing the format of the TupleBatch containing these results.
    * @param connection the connection to the SQLite database.
+   * @param batchSize the max number of tuples in a generated TupleBatch.
    */
-  SQLiteTupleBatchIterator(final SQLiteStatement statement, final Schema schema, final SQLiteConnection connection) {
+  SQLiteTupleBatchIterator(final SQLiteStatement statement, final Schema schema, final SQLiteConnection connection,
+      final int batchSize) {
     this.statement = statement;
     this.connection = connection;
     this.schema = schema;
+    this.batchSize = batchSize;
   }
 
   /**
@@ -496,6 +694,7 @@ class SQLiteTupleBatchIterator implements Iterator<TupleBatch> {
   SQLiteTupleBatchIterator(final SQLiteStatement statement, final SQLiteConnection connection, final Schema schema) {
     this.connection = connection;
     this.statement = statement;
+    batchSize = TupleBatch.BATCH_SIZE;
     try {
       if (!statement.hasStepped()) {
         statement.step();
@@ -523,12 +722,12 @@ class SQLiteTupleBatchIterator implements Iterator<TupleBatch> {
     final List<ColumnBuilder<?>> columnBuilders = ColumnFactory.allocateColumns(schema);
 
     /**
-     * Loop through resultSet, adding one row at a time. Stop when numTuples hits BATCH_SIZE or there are no more
+     * Loop through resultSet, adding one row at a time. Stop when numTuples hits batchSize or there are no more
      * results.
      */
     int numTuples;
     try {
-      for (numTuples = 0; numTuples < TupleBatch.BATCH_SIZE && statement.hasRow(); ++numTuples) {
+      for (numTuples = 0; numTuples < batchSize && statement.hasRow(); ++numTuples) {
         for (int column = 0; column < numFields; ++column) {
           columnBuilders.get(column).appendFromSQLite(statement, column);
         }
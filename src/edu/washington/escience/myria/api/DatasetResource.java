@@ -214,6 +214,29 @@ public final class DatasetResource {
     return response.build();
   }
 
+  /**
+   * Get the URLs from which the client can download the partitions of a relation directly from the workers that store
+   * them, in parallel and without passing through the master.
+   * 
+   * @param userName the user who owns the target relation.
+   * @param programName the program to which the target relation belongs.
+   * @param relationName the name of the target relation.
+   * @param format the format of the output data. Valid options are (case-insensitive) "csv", "tsv", and "json".
+   * @return the URL of the partition of each worker.
+   * @throws DbException if there is an error in the database.
+   */
+  @GET
+  @Produces(MyriaApiConstants.JSON_UTF_8)
+  @Path("/user-{userName}/program-{programName}/relation-{relationName}/data/workers")
+  public Response getDatasetDataUrls(@PathParam("userName") final String userName,
+      @PathParam("programName") final String programName, @PathParam("relationName") final String relationName,
+      @QueryParam("format") final String format) throws DbException {
+    RelationKey relationKey = RelationKey.of(userName, programName, relationName);
+    String validFormat = validateFormat(format);
+    return Response.ok(server.getDataStreamUrls(relationKey, validFormat)).cacheControl(MyriaApiUtils.doNotCache())
+        .build();
+  }
+
   /**
    * @param numTB the number of {@link TupleBatch}es to download from each worker.
    * @param format the format of the output data. Valid options are (case-insensitive) "csv", "tsv", and "json".
@@ -325,7 +348,7 @@ public final class DatasetResource {
     Operator source = new FileScan(new InputStreamSource(is), schema, delimiter);
 
     ResponseBuilder builder = Response.ok();
-    return doIngest(relationKey, source, null, null, true, builder);
+    return doIngest(relationKey, source, null, null, true, false, builder);
   }
 
   /**
@@ -340,8 +363,24 @@ public final class DatasetResource {
 
     URI datasetUri = getCanonicalResourcePath(uriInfo, dataset.relationKey);
     ResponseBuilder builder = Response.created(datasetUri);
-    return doIngest(dataset.relationKey, new FileScan(dataset.source, dataset.schema, dataset.delimiter, dataset.quote,
-        dataset.escape, dataset.numberOfSkippedLines), dataset.workers, dataset.indexes, dataset.overwrite, builder);
+    boolean parallel = MoreObjects.firstNonNull(dataset.parallelIngest, false);
+    FileScan scan =
+        new FileScan(dataset.source, dataset.schema, dataset.delimiter, dataset.quote, dataset.escape,
+            dataset.numberOfSkippedLines);
+    if (parallel) {
+      boolean canSplit;
+      try {
+        canSplit = scan.canSplit();
+      } catch (IOException e) {
+        throw new MyriaApiException(Status.BAD_REQUEST, "parallelIngest cannot access the source: " + e.getMessage());
+      }
+      if (!canSplit) {
+        throw new MyriaApiException(Status.BAD_REQUEST,
+            "parallelIngest requires a source that workers can split, i.e., a file of known length, not a web link, "
+                + "and ASCII delimiter, quote and escape characters.");
+      }
+    }
+    return doIngest(dataset.relationKey, scan, dataset.workers, dataset.indexes, dataset.overwrite, parallel, builder);
   }
 
   /**
@@ -384,7 +423,7 @@ public final class DatasetResource {
     URI datasetUri = getCanonicalResourcePath(uriInfo, relationKey);
     ResponseBuilder builder = Response.created(datasetUri);
 
-    return doIngest(relationKey, scan, null, null, overwrite, builder);
+    return doIngest(relationKey, scan, null, null, overwrite, false, builder);
   }
 
   /**
@@ -395,12 +434,14 @@ public final class DatasetResource {
    * @param workers the workers on which the data will be stored
    * @param indexes any user-requested indexes to be created
    * @param overwrite whether an existing relation should be overwritten
+   * @param parallel whether each worker reads its own split of the source, which must then be a {@link FileScan}
    * @param builder the template response
    * @return the created dataset resource
    * @throws DbException on any error
    */
   private Response doIngest(final RelationKey relationKey, final Operator source, final Set<Integer> workers,
-      final List<List<IndexRef>> indexes, final Boolean overwrite, final ResponseBuilder builder) throws DbException {
+      final List<List<IndexRef>> indexes, final Boolean overwrite, final boolean parallel, final ResponseBuilder builder)
+      throws DbException {
 
     /* Validate the workers that will ingest this dataset. */
     if (server.getAliveWorkers().size() == 0) {
@@ -428,7 +469,11 @@ public final class DatasetResource {
     /* Do the ingest, blocking until complete. */
     DatasetStatus status = null;
     try {
-      status = server.ingestDataset(relationKey, actualWorkers, indexes, source);
+      if (parallel) {
+        status = server.parallelIngestDataset(relationKey, actualWorkers, indexes, (FileScan) source);
+      } else {
+        status = server.ingestDataset(relationKey, actualWorkers, indexes, source);
+      }
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       return Response.status(Status.SERVICE_UNAVAILABLE).entity("Interrupted").build();
@@ -493,7 +538,7 @@ public final class DatasetResource {
 
     ResponseBuilder builder = Response.created(getCanonicalResourcePath(uriInfo, dataset.relationKey));
     Operator tipsyScan = new TipsyFileScan(dataset.tipsyFilename, dataset.iorderFilename, dataset.grpFilename);
-    return doIngest(dataset.relationKey, tipsyScan, dataset.workers, dataset.indexes, false, builder);
+    return doIngest(dataset.relationKey, tipsyScan, dataset.workers, dataset.indexes, false, false, builder);
   }
 
   /**
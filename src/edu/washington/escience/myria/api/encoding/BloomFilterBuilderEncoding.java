@@ -0,0 +1,27 @@
+package edu.washington.escience.myria.api.encoding;
+
+import com.google.common.base.MoreObjects;
+
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.BloomFilterBuilder;
+import edu.washington.escience.myria.util.BloomFilter;
+
+public class BloomFilterBuilderEncoding extends UnaryOperatorEncoding<BloomFilterBuilder> {
+
+  @Required
+  public int[] argKeyColumns;
+  public Integer argNumBits;
+  public Integer argNumHashes;
+
+  @Override
+  public BloomFilterBuilder construct(final ConstructArgs args) throws MyriaApiException {
+    return new BloomFilterBuilder(null, argKeyColumns, MoreObjects.firstNonNull(argNumBits,
+        BloomFilter.DEFAULT_NUM_BITS), MoreObjects.firstNonNull(argNumHashes, BloomFilter.DEFAULT_NUM_HASHES));
+  }
+
+  @Override
+  protected void validateExtra() {
+    BloomFilterProbeEncoding.validateFilter(argNumBits, argNumHashes);
+  }
+}
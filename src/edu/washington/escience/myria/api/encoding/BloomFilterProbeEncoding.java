@@ -0,0 +1,42 @@
+package edu.washington.escience.myria.api.encoding;
+
+import javax.ws.rs.core.Response.Status;
+
+import com.google.common.base.MoreObjects;
+
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.BloomFilterProbe;
+import edu.washington.escience.myria.util.BloomFilter;
+
+public class BloomFilterProbeEncoding extends BinaryOperatorEncoding<BloomFilterProbe> {
+
+  @Required
+  public int[] argKeyColumns;
+  public Integer argNumBits;
+  public Integer argNumHashes;
+
+  @Override
+  public BloomFilterProbe construct(final ConstructArgs args) throws MyriaApiException {
+    return new BloomFilterProbe(null, null, argKeyColumns, MoreObjects.firstNonNull(argNumBits,
+        BloomFilter.DEFAULT_NUM_BITS), MoreObjects.firstNonNull(argNumHashes, BloomFilter.DEFAULT_NUM_HASHES));
+  }
+
+  @Override
+  protected void validateExtra() {
+    validateFilter(argNumBits, argNumHashes);
+  }
+
+  /**
+   * @param numBits the number of bits of a Bloom filter, or null for the default.
+   * @param numHashes the number of bits set per key, or null for the default.
+   */
+  static void validateFilter(final Integer numBits, final Integer numHashes) {
+    if (numBits != null && (numBits < Long.SIZE || Integer.bitCount(numBits) != 1)) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "argNumBits must be a power of two not less than " + Long.SIZE);
+    }
+    if (numHashes != null && numHashes <= 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "argNumHashes must be positive!");
+    }
+  }
+}
@@ -9,6 +9,7 @@ import edu.washington.escience.myria.accessmethod.AccessMethod.IndexRef;
 import edu.washington.escience.myria.accessmethod.ConnectionInfo;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 import edu.washington.escience.myria.operator.DbInsert;
+import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
 
 /**
  * A JSON-able wrapper for the expected wire message for a new dataset.
@@ -27,11 +28,15 @@ public class DbInsertEncoding extends UnaryOperatorEncoding<DbInsert> {
    * database will be used.
    */
   public ConnectionInfo connectionInfo;
+  /** How the inserted tuples are partitioned across the workers, inferred from the plan by {@link QueryConstruct}. */
+  PartitionFunction partitionFunction;
 
   @Override
   public DbInsert construct(ConstructArgs args) {
     /* default overwrite to {@code false}, so we append. */
     argOverwriteTable = MoreObjects.firstNonNull(argOverwriteTable, Boolean.FALSE);
-    return new DbInsert(null, relationKey, connectionInfo, argOverwriteTable, indexes);
+    DbInsert insert = new DbInsert(null, relationKey, connectionInfo, argOverwriteTable, indexes);
+    insert.setPartitionFunction(partitionFunction);
+    return insert;
   }
 }
\ No newline at end of file
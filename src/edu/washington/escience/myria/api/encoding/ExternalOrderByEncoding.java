@@ -0,0 +1,28 @@
+package edu.washington.escience.myria.api.encoding;
+
+import javax.ws.rs.core.Response.Status;
+
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.ExternalOrderBy;
+
+public class ExternalOrderByEncoding extends UnaryOperatorEncoding<ExternalOrderBy> {
+
+  @Required
+  public int[] argSortColumns;
+  @Required
+  public boolean[] argAscending;
+
+  @Override
+  public ExternalOrderBy construct(final ConstructArgs args) throws MyriaApiException {
+    return new ExternalOrderBy(null, argSortColumns, argAscending);
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argSortColumns.length != argAscending.length) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "sort columns number should be equal to ascending orders number!");
+    }
+  }
+
+}
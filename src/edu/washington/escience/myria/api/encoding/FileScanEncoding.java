@@ -14,9 +14,11 @@ public class FileScanEncoding extends LeafOperatorEncoding<FileScan> {
   public Character quote;
   public Character escape;
   public Integer skip;
+  public Integer numThreads;
+  public Boolean ordered;
 
   @Override
   public FileScan construct(ConstructArgs args) {
-    return new FileScan(source, schema, delimiter, quote, escape, skip);
+    return new FileScan(source, schema, delimiter, quote, escape, skip, numThreads, ordered);
   }
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package edu.washington.escience.myria.api.encoding;
+
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.MorselSource;
+
+/**
+ * The leaf of the pipeline of a {@link ParallelPipelineEncoding}. Its schema is that of the child of the
+ * ParallelPipeline, which is set once the fragment is connected.
+ */
+public class MorselSourceEncoding extends LeafOperatorEncoding<MorselSource> {
+
+  @Override
+  public MorselSource construct(final ConstructArgs args) {
+    return new MorselSource(null);
+  }
+}
@@ -1,6 +1,8 @@
 package edu.washington.escience.myria.api.encoding;
 
+import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.agg.AggregationMode;
 import edu.washington.escience.myria.operator.agg.AggregatorFactory;
 import edu.washington.escience.myria.operator.agg.MultiGroupByAggregate;
 
@@ -10,9 +12,12 @@ public class MultiGroupByAggregateEncoding extends UnaryOperatorEncoding<MultiGr
   public int[] argGroupFields;
   @Required
   public AggregatorFactory[] aggregators;
+  public AggregationMode argMode = AggregationMode.FULL;
+  /** In FINAL mode, the schema of the input of the PARTIAL aggregates. */
+  public Schema argPartialInputSchema;
 
   @Override
   public MultiGroupByAggregate construct(ConstructArgs args) {
-    return new MultiGroupByAggregate(null, argGroupFields, aggregators);
+    return new MultiGroupByAggregate(null, argGroupFields, argMode, argPartialInputSchema, aggregators);
   }
 }
@@ -0,0 +1,42 @@
+package edu.washington.escience.myria.api.encoding;
+
+import java.util.Map;
+
+import javax.ws.rs.core.Response.Status;
+
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.ParallelPipeline;
+
+/**
+ * Runs the pipeline rooted at {@link #argPipeline} on several threads. The pipeline is made of operators of the same
+ * fragment, and has a {@link MorselSourceEncoding} leaf that takes the tuples of {@link #argChild}.
+ */
+public class ParallelPipelineEncoding extends OperatorEncoding<ParallelPipeline> {
+
+  @Required
+  public Integer argChild;
+  @Required
+  public Integer argPipeline;
+  /** The number of threads, or 0 for one per available processor. */
+  public Integer argNumThreads;
+
+  @Override
+  public ParallelPipeline construct(final ConstructArgs args) {
+    return new ParallelPipeline(null, null, argNumThreads == null ? 0 : argNumThreads);
+  }
+
+  @Override
+  public void connect(final Operator current, final Map<Integer, Operator> operators) {
+    current.setChildren(new Operator[] { operators.get(argChild) });
+    ((ParallelPipeline) current).setPipeline(operators.get(argPipeline));
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argNumThreads != null && argNumThreads < 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "argNumThreads must be non-negative!");
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.api.encoding;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -34,7 +35,9 @@ import edu.washington.escience.myria.expression.VariableExpression;
 import edu.washington.escience.myria.operator.Apply;
 import edu.washington.escience.myria.operator.DbQueryScan;
 import edu.washington.escience.myria.operator.IDBController;
+import edu.washington.escience.myria.operator.MorselSource;
 import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.ParallelPipeline;
 import edu.washington.escience.myria.operator.RootOperator;
 import edu.washington.escience.myria.operator.UpdateCatalog;
 import edu.washington.escience.myria.operator.agg.MultiGroupByAggregate;
@@ -44,6 +47,9 @@ import edu.washington.escience.myria.operator.network.CollectConsumer;
 import edu.washington.escience.myria.operator.network.CollectProducer;
 import edu.washington.escience.myria.operator.network.Consumer;
 import edu.washington.escience.myria.operator.network.EOSController;
+import edu.washington.escience.myria.operator.network.partition.MultiFieldHashPartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
 import edu.washington.escience.myria.parallel.ExchangePairID;
 import edu.washington.escience.myria.parallel.JsonSubQuery;
 import edu.washington.escience.myria.parallel.RelationWriteMetadata;
@@ -76,8 +82,14 @@ public class QueryConstruct {
     /* Sanity check the edges between fragments. */
     sanityCheckEdges(fragments);
 
+    /* Replace the shuffles of relations that are already partitioned the same way. */
+    elideCoPartitionedShuffles(fragments, storedRelationsOf(args.getServer()));
+
     assignWorkersToFragments(fragments, args);
 
+    /* Record how the inserted relations are partitioned. */
+    setPartitionFunctionsOfInserts(fragments);
+
     Map<Integer, PlanFragmentEncoding> op2OwnerFragmentMapping = Maps.newHashMap();
     for (PlanFragmentEncoding fragment : fragments) {
       for (OperatorEncoding<?> op : fragment.operators) {
@@ -246,7 +258,7 @@ public class QueryConstruct {
    * 
    * @param fragments the fragments of the plan
    */
-  private static void verifyAndPropagateLocalEdgeConstraints(final List<PlanFragmentEncoding> fragments) {
+  static void verifyAndPropagateLocalEdgeConstraints(final List<PlanFragmentEncoding> fragments) {
     // producers must be unique
     Map<Integer, PlanFragmentEncoding> producerMap = Maps.newHashMap();
     // consumers can be repeated, as long as the producer is a LocalMultiwayProducer
@@ -319,10 +331,7 @@ public class QueryConstruct {
 
     for (PlanFragmentEncoding fragment : fragments) {
       for (OperatorEncoding<?> operator : fragment.operators) {
-        if (operator instanceof CollectConsumerEncoding || operator instanceof SingletonEncoding
-            || operator instanceof EOSControllerEncoding || operator instanceof BinaryFileScanEncoding
-            || operator instanceof FileScanEncoding || operator instanceof NChiladaFileScanEncoding
-            || operator instanceof SeaFlowFileScanEncoding || operator instanceof TipsyFileScanEncoding) {
+        if (isSingletonOperator(operator)) {
           if (fragment.workers == null) {
             String encodingTypeName = operator.getClass().getSimpleName();
             String operatorTypeName = encodingTypeName.substring(0, encodingTypeName.indexOf("Encoding"));
@@ -341,6 +350,229 @@ public class QueryConstruct {
     }
   }
 
+  /**
+   * @param operator an operator of a fragment.
+   * @return true if the operator can only be instantiated on a single worker.
+   */
+  private static boolean isSingletonOperator(final OperatorEncoding<?> operator) {
+    return operator instanceof CollectConsumerEncoding || operator instanceof SingletonEncoding
+        || operator instanceof EOSControllerEncoding || operator instanceof BinaryFileScanEncoding
+        || operator instanceof FileScanEncoding || operator instanceof NChiladaFileScanEncoding
+        || operator instanceof SeaFlowFileScanEncoding || operator instanceof TipsyFileScanEncoding;
+  }
+
+  /**
+   * Replace by local exchanges the shuffles that would not move any tuple. This is the case of a fragment that only
+   * scans a relation and shuffles it with a hash partition function, when the catalog records that the relation is
+   * stored partitioned by a hash on the same columns: partition <code>i</code> is on the <code>i</code>-th worker that
+   * stores the relation, which is where the shuffle would send it if the consuming fragment ran on those workers.
+   * 
+   * The consuming fragment is then constrained to run on the workers that store the relation, so the other inputs that
+   * it shuffles on the join or group key meet the stored partitions. Hence a shuffle is replaced only if nothing else
+   * constrains the workers of the consuming fragment, and if all the replaced shuffles into the same fragment read
+   * relations stored on the same workers.
+   * 
+   * @see #setPartitionFunctionsOfInserts(List)
+   * 
+   * @param fragments the fragments of the plan
+   * @param relations how the scanned relations are stored
+   * @throws CatalogException if there is an error getting information from the Catalog
+   */
+  static void elideCoPartitionedShuffles(final List<PlanFragmentEncoding> fragments, final StoredRelations relations)
+      throws CatalogException {
+
+    /* The consumer of each shuffle, and its fragment. */
+    Map<Integer, ShuffleConsumerEncoding> consumerMap = Maps.newHashMap();
+    Map<Integer, PlanFragmentEncoding> consumerFragmentMap = Maps.newHashMap();
+    for (PlanFragmentEncoding fragment : fragments) {
+      for (OperatorEncoding<?> operator : fragment.operators) {
+        if (operator instanceof ShuffleConsumerEncoding) {
+          ShuffleConsumerEncoding consumer = (ShuffleConsumerEncoding) operator;
+          consumerMap.put(consumer.argOperatorId, consumer);
+          consumerFragmentMap.put(consumer.argOperatorId, fragment);
+        }
+      }
+    }
+
+    /* Find the shuffles that would not move any tuple, by consuming fragment, and the workers of the relations. */
+    Multimap<PlanFragmentEncoding, ShuffleProducerEncoding> candidates = ArrayListMultimap.create();
+    Map<ShuffleProducerEncoding, PlanFragmentEncoding> producerFragmentMap = Maps.newHashMap();
+    Map<ShuffleProducerEncoding, Set<Integer>> storedWorkers = Maps.newHashMap();
+    for (PlanFragmentEncoding fragment : fragments) {
+      if ((fragment.overrideWorkers != null && fragment.overrideWorkers.size() > 0) || fragment.operators.size() != 2) {
+        continue;
+      }
+      ShuffleProducerEncoding producer = null;
+      TableScanEncoding scan = null;
+      for (OperatorEncoding<?> operator : fragment.operators) {
+        if (operator instanceof ShuffleProducerEncoding) {
+          producer = (ShuffleProducerEncoding) operator;
+        } else if (operator instanceof TableScanEncoding) {
+          scan = (TableScanEncoding) operator;
+        }
+      }
+      if (producer == null || scan == null || !scan.opId.equals(producer.argChild)
+          || producer.argBufferStateType != null || producer.argPf == null || producer.argPf.hashColumns() == null) {
+        continue;
+      }
+      PlanFragmentEncoding consumerFragment = consumerFragmentMap.get(producer.opId);
+      if (consumerFragment == null || !canRunOnAnyWorkers(consumerFragment)) {
+        continue;
+      }
+      PartitionFunction stored = relations.getPartitionFunction(scan.relationKey, scan.storedRelationId);
+      Set<Integer> workers = relations.getWorkers(scan.relationKey, scan.storedRelationId);
+      if (stored == null || workers == null || stored.numPartition() != workers.size()
+          || !Arrays.equals(stored.hashColumns(), producer.argPf.hashColumns())) {
+        continue;
+      }
+      candidates.put(consumerFragment, producer);
+      producerFragmentMap.put(producer, fragment);
+      storedWorkers.put(producer, workers);
+    }
+
+    for (PlanFragmentEncoding consumerFragment : candidates.keySet()) {
+      Collection<ShuffleProducerEncoding> producers = candidates.get(consumerFragment);
+      Set<Integer> workers = storedWorkers.get(producers.iterator().next());
+      boolean sameWorkers = true;
+      for (ShuffleProducerEncoding producer : producers) {
+        sameWorkers &= workers.equals(storedWorkers.get(producer));
+      }
+      if (!sameWorkers) {
+        continue;
+      }
+
+      for (ShuffleProducerEncoding producer : producers) {
+        PlanFragmentEncoding producerFragment = producerFragmentMap.get(producer);
+        ShuffleConsumerEncoding consumer = consumerMap.get(producer.opId);
+        LOGGER.info("Replacing shuffle {} by a local exchange, since the input is already partitioned on columns {}",
+            producer.opId, Arrays.toString(producer.argPf.hashColumns()));
+
+        LocalMultiwayProducerEncoding localProducer = new LocalMultiwayProducerEncoding();
+        localProducer.opId = producer.opId;
+        localProducer.opName = producer.opName;
+        localProducer.argChild = producer.argChild;
+        producerFragment.operators.set(producerFragment.operators.indexOf(producer), localProducer);
+
+        LocalMultiwayConsumerEncoding localConsumer = new LocalMultiwayConsumerEncoding();
+        localConsumer.opId = consumer.opId;
+        localConsumer.opName = consumer.opName;
+        localConsumer.argOperatorId = consumer.argOperatorId;
+        consumerFragment.operators.set(consumerFragment.operators.indexOf(consumer), localConsumer);
+      }
+    }
+  }
+
+  /**
+   * How the stored relations are placed on the workers, as recorded in the Catalog.
+   */
+  interface StoredRelations {
+    /**
+     * @param relationKey the name of a relation
+     * @param storedRelationId which copy of the relation, or null for the latest
+     * @return the workers that store the relation, or null if it is not found
+     * @throws CatalogException if there is an error getting information from the Catalog
+     */
+    Set<Integer> getWorkers(RelationKey relationKey, Integer storedRelationId) throws CatalogException;
+
+    /**
+     * @param relationKey the name of a relation
+     * @param storedRelationId which copy of the relation, or null for the latest
+     * @return how the relation is partitioned on its workers, or null if unknown
+     * @throws CatalogException if there is an error getting information from the Catalog
+     */
+    PartitionFunction getPartitionFunction(RelationKey relationKey, Integer storedRelationId) throws CatalogException;
+  }
+
+  /**
+   * @param server the server on which the query will be executed
+   * @return how the relations are stored according to the Catalog of the server
+   */
+  private static StoredRelations storedRelationsOf(final Server server) {
+    return new StoredRelations() {
+      @Override
+      public Set<Integer> getWorkers(final RelationKey relationKey, final Integer storedRelationId)
+          throws CatalogException {
+        return server.getWorkersForRelation(relationKey, storedRelationId);
+      }
+
+      @Override
+      public PartitionFunction getPartitionFunction(final RelationKey relationKey, final Integer storedRelationId)
+          throws CatalogException {
+        return server.getPartitionFunctionForRelation(relationKey, storedRelationId);
+      }
+    };
+  }
+
+  /**
+   * @param fragment a fragment of the plan
+   * @return true if nothing but its inputs constrains the workers of the fragment.
+   */
+  private static boolean canRunOnAnyWorkers(final PlanFragmentEncoding fragment) {
+    if (fragment.overrideWorkers != null && fragment.overrideWorkers.size() > 0) {
+      return false;
+    }
+    for (OperatorEncoding<?> operator : fragment.operators) {
+      if (operator instanceof TableScanEncoding || operator instanceof TempTableScanEncoding
+          || operator instanceof LocalMultiwayConsumerEncoding || operator instanceof LocalMultiwayProducerEncoding
+          || isSingletonOperator(operator)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Record how the relations written by the plan are partitioned. A {@link DbInsertEncoding} whose child is the
+   * consumer of a shuffle by a hash of some columns stores the relation partitioned by a hash of the same columns, one
+   * partition per worker of its fragment. Other relations are partitioned in an unknown way.
+   * 
+   * @see #elideCoPartitionedShuffles(List, StoredRelations)
+   * 
+   * @param fragments the fragments of the plan, with their workers assigned
+   */
+  static void setPartitionFunctionsOfInserts(final List<PlanFragmentEncoding> fragments) {
+    Map<Integer, ShuffleProducerEncoding> producerMap = Maps.newHashMap();
+    for (PlanFragmentEncoding fragment : fragments) {
+      for (OperatorEncoding<?> operator : fragment.operators) {
+        if (operator instanceof ShuffleProducerEncoding) {
+          producerMap.put(operator.opId, (ShuffleProducerEncoding) operator);
+        }
+      }
+    }
+
+    for (PlanFragmentEncoding fragment : fragments) {
+      Map<Integer, OperatorEncoding<?>> operators = Maps.newHashMap();
+      for (OperatorEncoding<?> operator : fragment.operators) {
+        operators.put(operator.opId, operator);
+      }
+      for (OperatorEncoding<?> operator : fragment.operators) {
+        if (!(operator instanceof DbInsertEncoding)) {
+          continue;
+        }
+        DbInsertEncoding insert = (DbInsertEncoding) operator;
+        insert.partitionFunction = null;
+        OperatorEncoding<?> child = operators.get(insert.argChild);
+        if (!(child instanceof ShuffleConsumerEncoding)) {
+          continue;
+        }
+        ShuffleProducerEncoding producer = producerMap.get(((ShuffleConsumerEncoding) child).argOperatorId);
+        if (producer == null || producer.argPf == null) {
+          continue;
+        }
+        int[] columns = producer.argPf.hashColumns();
+        if (columns == null) {
+          continue;
+        }
+        int numPartitions = fragment.workers.size();
+        if (columns.length == 1) {
+          insert.partitionFunction = new SingleFieldHashPartitionFunction(numPartitions, columns[0]);
+        } else {
+          insert.partitionFunction = new MultiFieldHashPartitionFunction(numPartitions, columns);
+        }
+      }
+    }
+  }
+
   /**
    * Actually allocate the real operator IDs and real worker IDs for the producers and consumers.
    * 
@@ -467,11 +699,15 @@ public class QueryConstruct {
     Map<Integer, Operator> myOperators = Maps.newHashMap();
     Map<Integer, AbstractConsumerEncoding<?>> nonIterativeConsumers = Maps.newHashMap();
     Set<IDBControllerEncoding> idbs = Sets.newHashSet();
+    List<ParallelPipelineEncoding> parallelPipelines = Lists.newArrayList();
     /* Instantiate all the operators. */
     for (OperatorEncoding<?> encoding : planFragment.operators) {
       if (encoding instanceof IDBControllerEncoding) {
         idbs.add((IDBControllerEncoding) encoding);
       }
+      if (encoding instanceof ParallelPipelineEncoding) {
+        parallelPipelines.add((ParallelPipelineEncoding) encoding);
+      }
       if (encoding instanceof AbstractConsumerEncoding<?>) {
         nonIterativeConsumers.put(encoding.opId, (AbstractConsumerEncoding<?>) encoding);
       }
@@ -535,6 +771,17 @@ public class QueryConstruct {
       }
     }
 
+    /* The morsels of a parallel pipeline are the tuples of its child. */
+    for (ParallelPipelineEncoding encoding : parallelPipelines) {
+      ParallelPipeline parallelPipeline = (ParallelPipeline) myOperators.get(encoding.opId);
+      MorselSource source = parallelPipeline.getMorselSource();
+      if (source == null) {
+        throw new MyriaApiException(Status.BAD_REQUEST, "The pipeline of " + parallelPipeline.getOpName()
+            + " has no " + MorselSource.class.getSimpleName() + " leaf");
+      }
+      source.setSchema(parallelPipeline.getChild().getSchema());
+    }
+
     if (fragmentRoot == null) {
       throw new MyriaApiException(Status.BAD_REQUEST, "No " + RootOperator.class.getSimpleName()
           + " detected in the fragment.");
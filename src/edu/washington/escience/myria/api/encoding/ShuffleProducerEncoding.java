@@ -5,6 +5,7 @@ import java.util.Set;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 import edu.washington.escience.myria.operator.network.GenericShuffleProducer;
 import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SkewAwareHashPartitionFunction;
 import edu.washington.escience.myria.util.MyriaUtils;
 
 /**
@@ -19,10 +20,20 @@ public class ShuffleProducerEncoding extends AbstractProducerEncoding<GenericShu
   @Override
   public GenericShuffleProducer construct(ConstructArgs args) {
     Set<Integer> workerIds = getRealWorkerIds();
-    argPf.setNumPartitions(workerIds.size());
-    GenericShuffleProducer producer =
-        new GenericShuffleProducer(null, MyriaUtils.getSingleElement(getRealOperatorIds()), MyriaUtils
-            .integerSetToIntArray(workerIds), argPf);
+    GenericShuffleProducer producer;
+    if (argPf instanceof SkewAwareHashPartitionFunction) {
+      /* A tuple of a heavy hitter may go to several workers, so the partitions are cells. */
+      argPf.setNumPartitions(SkewAwareHashPartitionFunction.numCells(workerIds.size()));
+      producer =
+          new GenericShuffleProducer(null, MyriaUtils.getSingleElement(getRealOperatorIds()),
+              ((SkewAwareHashPartitionFunction) argPf).cellPartition(), MyriaUtils.integerSetToIntArray(workerIds),
+              argPf);
+    } else {
+      argPf.setNumPartitions(workerIds.size());
+      producer =
+          new GenericShuffleProducer(null, MyriaUtils.getSingleElement(getRealOperatorIds()), MyriaUtils
+              .integerSetToIntArray(workerIds), argPf);
+    }
     if (argBufferStateType != null) {
       if (argBufferStateType instanceof KeepMinValueStateEncoding) {
         producer.setBackupBufferAsMin(((KeepMinValueStateEncoding) argBufferStateType).keyColIndices,
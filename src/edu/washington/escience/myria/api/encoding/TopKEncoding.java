@@ -0,0 +1,34 @@
+package edu.washington.escience.myria.api.encoding;
+
+import javax.ws.rs.core.Response.Status;
+
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.TopK;
+
+public class TopKEncoding extends UnaryOperatorEncoding<TopK> {
+
+  @Required
+  public int[] argSortColumns;
+  @Required
+  public boolean[] argAscending;
+  @Required
+  public Integer numTuples;
+
+  @Override
+  public TopK construct(final ConstructArgs args) throws MyriaApiException {
+    return new TopK(null, argSortColumns, argAscending, numTuples);
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argSortColumns.length != argAscending.length) {
+      throw new MyriaApiException(Status.BAD_REQUEST,
+          "sort columns number should be equal to ascending orders number!");
+    }
+    if (numTuples < 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "numTuples must be non-negative!");
+    }
+  }
+
+}
@@ -7,6 +7,7 @@ import java.util.BitSet;
 import org.joda.time.DateTime;
 
 import com.google.protobuf.ByteString;
+import com.gs.collections.impl.map.mutable.primitive.ObjectIntHashMap;
 
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.proto.DataProto.BooleanColumnMessage;
@@ -95,6 +96,104 @@ public abstract class Column<T extends Comparable<?>> implements ReadableColumn,
   @Override
   public abstract int size();
 
+  /**
+   * Returns the values of this column as an array whose first {@link #size()} entries hold the data. Array-backed
+   * columns return their internal array without copying, so the result must be treated as read-only.
+   * 
+   * @return the values of this column as a boolean array.
+   */
+  public boolean[] getBooleanArray() {
+    final boolean[] ret = new boolean[size()];
+    for (int i = 0; i < ret.length; ++i) {
+      ret[i] = getBoolean(i);
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the values of this column as an array whose first {@link #size()} entries hold the data. Array-backed
+   * columns return their internal array without copying, so the result must be treated as read-only.
+   * 
+   * @return the values of this column as a DateTime array.
+   */
+  public DateTime[] getDateTimeArray() {
+    final DateTime[] ret = new DateTime[size()];
+    for (int i = 0; i < ret.length; ++i) {
+      ret[i] = getDateTime(i);
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the values of this column as an array whose first {@link #size()} entries hold the data. Array-backed
+   * columns return their internal array without copying, so the result must be treated as read-only.
+   * 
+   * @return the values of this column as a double array.
+   */
+  public double[] getDoubleArray() {
+    final double[] ret = new double[size()];
+    for (int i = 0; i < ret.length; ++i) {
+      ret[i] = getDouble(i);
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the values of this column as an array whose first {@link #size()} entries hold the data. Array-backed
+   * columns return their internal array without copying, so the result must be treated as read-only.
+   * 
+   * @return the values of this column as a float array.
+   */
+  public float[] getFloatArray() {
+    final float[] ret = new float[size()];
+    for (int i = 0; i < ret.length; ++i) {
+      ret[i] = getFloat(i);
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the values of this column as an array whose first {@link #size()} entries hold the data. Array-backed
+   * columns return their internal array without copying, so the result must be treated as read-only.
+   * 
+   * @return the values of this column as an int array.
+   */
+  public int[] getIntArray() {
+    final int[] ret = new int[size()];
+    for (int i = 0; i < ret.length; ++i) {
+      ret[i] = getInt(i);
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the values of this column as an array whose first {@link #size()} entries hold the data. Array-backed
+   * columns return their internal array without copying, so the result must be treated as read-only.
+   * 
+   * @return the values of this column as a long array.
+   */
+  public long[] getLongArray() {
+    final long[] ret = new long[size()];
+    for (int i = 0; i < ret.length; ++i) {
+      ret[i] = getLong(i);
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the values of this column as an array whose first {@link #size()} entries hold the data. Array-backed
+   * columns return their internal array without copying, so the result must be treated as read-only.
+   * 
+   * @return the values of this column as a String array.
+   */
+  public String[] getStringArray() {
+    final String[] ret = new String[size()];
+    for (int i = 0; i < ret.length; ++i) {
+      ret[i] = getString(i);
+    }
+    return ret;
+  }
+
   /**
    * Creates a new Column containing the contents of this column including only the specified rows.
    * 
@@ -102,7 +201,35 @@ public abstract class Column<T extends Comparable<?>> implements ReadableColumn,
    * @return a new Column containing the contents of this column including only the specified rows.
    */
   public Column<T> filter(final BitSet filter) {
-    return new FilteredColumn<T>(this, filter);
+    return filter(ImmutableIntArray.ofSetBits(filter));
+  }
+
+  /**
+   * Creates a new Column containing the contents of this column including only the specified rows. The rows are not
+   * copied; the returned column reads through the specified selection vector, which may be shared with other columns.
+   * 
+   * @param rows the rows of this column to be kept, in ascending order.
+   * @return a new Column containing the contents of this column including only the specified rows.
+   */
+  public Column<T> filter(final ImmutableIntArray rows) {
+    return new FilteredColumn<T>(this, rows);
+  }
+
+  /**
+   * Together with {@link #getSelectionVector()}, lets a caller read the values of a filtered column straight from the
+   * backing array of the column it filters, e.g. from <code>getUnfilteredColumn().getIntArray()</code>.
+   * 
+   * @return the column whose rows are selected by {@link #getSelectionVector()}, or this column if it is not filtered.
+   */
+  public Column<T> getUnfilteredColumn() {
+    return this;
+  }
+
+  /**
+   * @return the rows of {@link #getUnfilteredColumn()} that make up this column, or null if this column is not filtered.
+   */
+  public ImmutableIntArray getSelectionVector() {
+    return null;
   }
 
   /**
@@ -270,29 +397,45 @@ public abstract class Column<T extends Comparable<?>> implements ReadableColumn,
    * @return a ColumnMessage with an appropriate member.
    */
   protected static ColumnMessage defaultProto(final Column<?> column, final ImmutableIntArray validIndices) {
-    BitSet filter = new BitSet(column.size());
-    for (int i = 0; i < column.size(); ++i) {
-      filter.set(validIndices.get(i));
-    }
-    return defaultProto(new FilteredColumn<>(column, filter));
+    return defaultProto(new FilteredColumn<>(column, validIndices));
   }
 
+  /**
+   * The number of rows of a String column after which its dictionary is dropped, if fewer than half of these rows
+   * repeated a value.
+   */
+  private static final int DICTIONARY_SAMPLE_ROWS = 128;
+
   /**
    * A default implementation to serialize any String column to a proto. Full copy.
    * 
+   * The column is dictionary encoded: each distinct string is stored once, and all rows that hold it share its start
+   * and end indices. Decoders that cut every row out of the data by its indices need not know about the dictionary. If
+   * the first {@link #DICTIONARY_SAMPLE_ROWS} rows are mostly distinct, the dictionary would not make the data much
+   * smaller, so it is dropped and the following rows are stored one after the other.
+   * 
    * @param column the column to be serialized.
    * @return a ColumnMessage with a StringColumn member.
    */
   protected static ColumnMessage defaultStringProto(final Column<?> column) {
     final StringColumnMessage.Builder inner = StringColumnMessage.newBuilder();
     StringBuilder sb = new StringBuilder();
-    int startP = 0, endP = 0;
+    ObjectIntHashMap<String> dictionary = new ObjectIntHashMap<>();
     for (int i = 0; i < column.size(); i++) {
-      endP = startP + column.getString(i).length();
+      final String value = column.getString(i);
+      int startP = dictionary == null ? -1 : dictionary.getIfAbsent(value, -1);
+      if (startP < 0) {
+        startP = sb.length();
+        sb.append(value);
+        if (dictionary != null) {
+          dictionary.put(value, startP);
+        }
+      }
       inner.addStartIndices(startP);
-      inner.addEndIndices(endP);
-      sb.append(column.getString(i));
-      startP = endP;
+      inner.addEndIndices(startP + value.length());
+      if (dictionary != null && i + 1 == DICTIONARY_SAMPLE_ROWS && dictionary.size() > DICTIONARY_SAMPLE_ROWS / 2) {
+        dictionary = null;
+      }
     }
     inner.setData(ByteString.copyFromUtf8(sb.toString()));
     return ColumnMessage.newBuilder().setType(ColumnMessage.Type.STRING).setStringColumn(inner).build();
@@ -6,6 +6,7 @@ import java.util.Objects;
 import org.joda.time.DateTime;
 
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.util.ImmutableIntArray;
 
 /**
  * A column that holds a constant value.
@@ -76,6 +77,11 @@ public class ConstantValueColumn extends Column<Comparable<?>> {
     return new ConstantValueColumn(value, type, filter.cardinality());
   }
 
+  @Override
+  public Column<Comparable<?>> filter(final ImmutableIntArray rows) {
+    return new ConstantValueColumn(value, type, rows.length());
+  }
+
   @Override
   public boolean getBoolean(final int row) {
     if (type == Type.BOOLEAN_TYPE) {
@@ -0,0 +1,58 @@
+package edu.washington.escience.myria.column;
+
+import java.nio.DoubleBuffer;
+
+import edu.washington.escience.myria.Type;
+
+/**
+ * A column of {@link Double} values that wraps a read-only view of a received buffer, e.g., the payload of an IPC
+ * message, without copying it.
+ */
+public final class DoubleBufferColumn extends Column<Double> {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The data. Read-only. */
+  private final DoubleBuffer doubleBuffer;
+
+  /**
+   * @param data the data, from its position to its limit.
+   */
+  public DoubleBufferColumn(final DoubleBuffer data) {
+    doubleBuffer = data.slice();
+  }
+
+  @Override
+  public Double getObject(final int row) {
+    return Double.valueOf(doubleBuffer.get(row));
+  }
+
+  @Override
+  public double getDouble(final int row) {
+    return doubleBuffer.get(row);
+  }
+
+  @Override
+  public Type getType() {
+    return Type.DOUBLE_TYPE;
+  }
+
+  @Override
+  public int size() {
+    return doubleBuffer.limit();
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append(size()).append(" elements: [");
+    for (int i = 0; i < size(); ++i) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(doubleBuffer.get(i));
+    }
+    sb.append(']');
+    return sb.toString();
+  }
+}
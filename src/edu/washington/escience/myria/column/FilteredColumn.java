@@ -5,9 +5,13 @@ import java.util.BitSet;
 import org.joda.time.DateTime;
 
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.proto.DataProto.ColumnMessage;
+import edu.washington.escience.myria.util.ImmutableIntArray;
 
 /**
- * Provides the abstraction of a full Column filtered to an indicated set of rows.
+ * Provides the abstraction of a full Column filtered to an indicated set of rows. The rows are kept as a selection
+ * vector that is shared by all columns of a filtered {@link edu.washington.escience.myria.storage.TupleBatch}; the
+ * surviving values are only copied when the column is serialized.
  * 
  * @param <T> the type of the inner Column.
  */
@@ -18,7 +22,7 @@ class FilteredColumn<T extends Comparable<?>> extends Column<T> {
   /** Number of rows. */
   private final int numRows;
   /** Which the indices of valid rows. */
-  private final int[] validIndices;
+  private final ImmutableIntArray validIndices;
   /** The inner column. */
   private final Column<T> inner;
 
@@ -28,9 +32,9 @@ class FilteredColumn<T extends Comparable<?>> extends Column<T> {
    * @param inner the {@link Column} to be filtered.
    * @param indices the rows of the inner Column to be kept.
    */
-  protected FilteredColumn(final Column<T> inner, final int[] indices) {
+  protected FilteredColumn(final Column<T> inner, final ImmutableIntArray indices) {
     this.inner = inner;
-    numRows = indices.length;
+    numRows = indices.length();
     validIndices = indices;
   }
 
@@ -41,15 +45,7 @@ class FilteredColumn<T extends Comparable<?>> extends Column<T> {
    * @param filter a BitSet indicating the rows of the inner Column to be kept.
    */
   protected FilteredColumn(final Column<T> inner, final BitSet filter) {
-    this.inner = inner;
-    numRows = filter.cardinality();
-    int[] indices = new int[numRows];
-    int rowCount = 0;
-    for (int i = filter.nextSetBit(0); i >= 0; i = filter.nextSetBit(i + 1)) {
-      indices[rowCount] = i;
-      rowCount++;
-    }
-    validIndices = indices;
+    this(inner, ImmutableIntArray.ofSetBits(filter));
   }
 
   /**
@@ -59,7 +55,7 @@ class FilteredColumn<T extends Comparable<?>> extends Column<T> {
    * @return the row number in the inner, filtered column.
    */
   private int convertRow(final int row) {
-    return validIndices[row];
+    return validIndices.get(row);
   }
 
   @Override
@@ -111,4 +107,74 @@ class FilteredColumn<T extends Comparable<?>> extends Column<T> {
   public int size() {
     return numRows;
   }
+
+  @Override
+  public Column<T> filter(final ImmutableIntArray rows) {
+    /* Compose the selection vectors instead of stacking another filter on top of this one. */
+    final int[] indices = new int[rows.length()];
+    for (int i = 0; i < indices.length; ++i) {
+      indices[i] = validIndices.get(rows.get(i));
+    }
+    return new FilteredColumn<T>(inner, new ImmutableIntArray(indices));
+  }
+
+  @Override
+  public Column<T> getUnfilteredColumn() {
+    return inner;
+  }
+
+  @Override
+  public ImmutableIntArray getSelectionVector() {
+    return validIndices;
+  }
+
+  @Override
+  public double[] getDoubleArray() {
+    final double[] data = inner.getDoubleArray();
+    final double[] ret = new double[numRows];
+    for (int i = 0; i < numRows; ++i) {
+      ret[i] = data[validIndices.get(i)];
+    }
+    return ret;
+  }
+
+  @Override
+  public float[] getFloatArray() {
+    final float[] data = inner.getFloatArray();
+    final float[] ret = new float[numRows];
+    for (int i = 0; i < numRows; ++i) {
+      ret[i] = data[validIndices.get(i)];
+    }
+    return ret;
+  }
+
+  @Override
+  public int[] getIntArray() {
+    final int[] data = inner.getIntArray();
+    final int[] ret = new int[numRows];
+    for (int i = 0; i < numRows; ++i) {
+      ret[i] = data[validIndices.get(i)];
+    }
+    return ret;
+  }
+
+  @Override
+  public long[] getLongArray() {
+    final long[] data = inner.getLongArray();
+    final long[] ret = new long[numRows];
+    for (int i = 0; i < numRows; ++i) {
+      ret[i] = data[validIndices.get(i)];
+    }
+    return ret;
+  }
+
+  @Override
+  public ColumnMessage serializeToProto() {
+    return inner.serializeToProto(validIndices);
+  }
+
+  @Override
+  public ColumnMessage serializeToProto(final ImmutableIntArray rows) {
+    return filter(rows).serializeToProto();
+  }
 }
@@ -0,0 +1,58 @@
+package edu.washington.escience.myria.column;
+
+import java.nio.FloatBuffer;
+
+import edu.washington.escience.myria.Type;
+
+/**
+ * A column of {@link Float} values that wraps a read-only view of a received buffer, e.g., the payload of an IPC
+ * message, without copying it.
+ */
+public final class FloatBufferColumn extends Column<Float> {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The data. Read-only. */
+  private final FloatBuffer floatBuffer;
+
+  /**
+   * @param data the data, from its position to its limit.
+   */
+  public FloatBufferColumn(final FloatBuffer data) {
+    floatBuffer = data.slice();
+  }
+
+  @Override
+  public Float getObject(final int row) {
+    return Float.valueOf(floatBuffer.get(row));
+  }
+
+  @Override
+  public float getFloat(final int row) {
+    return floatBuffer.get(row);
+  }
+
+  @Override
+  public Type getType() {
+    return Type.FLOAT_TYPE;
+  }
+
+  @Override
+  public int size() {
+    return floatBuffer.limit();
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append(size()).append(" elements: [");
+    for (int i = 0; i < size(); ++i) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(floatBuffer.get(i));
+    }
+    sb.append(']');
+    return sb.toString();
+  }
+}
@@ -0,0 +1,37 @@
+package edu.washington.escience.myria.column;
+
+import java.nio.IntBuffer;
+
+/**
+ * An IntColumn that wraps a read-only view of a received buffer, e.g., the payload of an IPC message, without copying
+ * it.
+ */
+public final class IntBufferColumn extends IntColumn {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The data. Read-only. */
+  private final IntBuffer intBuffer;
+
+  /**
+   * @param data the data, from its position to its limit.
+   */
+  public IntBufferColumn(final IntBuffer data) {
+    intBuffer = data.slice();
+  }
+
+  @Override
+  public Integer getObject(final int row) {
+    return Integer.valueOf(intBuffer.get(row));
+  }
+
+  @Override
+  public int getInt(final int row) {
+    return intBuffer.get(row);
+  }
+
+  @Override
+  public int size() {
+    return intBuffer.limit();
+  }
+}
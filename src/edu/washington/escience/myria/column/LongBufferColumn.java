@@ -0,0 +1,58 @@
+package edu.washington.escience.myria.column;
+
+import java.nio.LongBuffer;
+
+import edu.washington.escience.myria.Type;
+
+/**
+ * A column of {@link Long} values that wraps a read-only view of a received buffer, e.g., the payload of an IPC
+ * message, without copying it.
+ */
+public final class LongBufferColumn extends Column<Long> {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The data. Read-only. */
+  private final LongBuffer longBuffer;
+
+  /**
+   * @param data the data, from its position to its limit.
+   */
+  public LongBufferColumn(final LongBuffer data) {
+    longBuffer = data.slice();
+  }
+
+  @Override
+  public Long getObject(final int row) {
+    return Long.valueOf(longBuffer.get(row));
+  }
+
+  @Override
+  public long getLong(final int row) {
+    return longBuffer.get(row);
+  }
+
+  @Override
+  public Type getType() {
+    return Type.LONG_TYPE;
+  }
+
+  @Override
+  public int size() {
+    return longBuffer.limit();
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append(size()).append(" elements: [");
+    for (int i = 0; i < size(); ++i) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(longBuffer.get(i));
+    }
+    sb.append(']');
+    return sb.toString();
+  }
+}
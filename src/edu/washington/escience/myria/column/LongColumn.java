@@ -44,6 +44,11 @@ public final class LongColumn extends Column<Long> {
     return Type.LONG_TYPE;
   }
 
+  @Override
+  public long[] getLongArray() {
+    return data;
+  }
+
   @Override
   public int size() {
     return position;
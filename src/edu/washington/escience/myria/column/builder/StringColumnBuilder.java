@@ -9,6 +9,7 @@ import java.util.Objects;
 import com.almworks.sqlite4java.SQLiteException;
 import com.almworks.sqlite4java.SQLiteStatement;
 import com.google.common.base.Preconditions;
+import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.StringArrayColumn;
@@ -70,8 +71,22 @@ public final class StringColumnBuilder extends ColumnBuilder<String> {
     List<Integer> endIndices = stringColumn.getEndIndicesList();
     String[] newData = new String[numTuples];
     String allStrings = stringColumn.getData().toStringUtf8();
+    /* Rows of a dictionary encoded column that share a range also share the String. */
+    final IntObjectHashMap<String> dictionary = new IntObjectHashMap<>();
+    int dataEnd = 0;
     for (int i = 0; i < numTuples; i++) {
-      newData[i] = allStrings.substring(startIndices.get(i), endIndices.get(i));
+      final int start = startIndices.get(i);
+      final int end = endIndices.get(i);
+      String value = null;
+      if (start < dataEnd) {
+        value = dictionary.get(start);
+      }
+      if (value == null || value.length() != end - start) {
+        value = allStrings.substring(start, end);
+        dictionary.put(start, value);
+        dataEnd = Math.max(dataEnd, end);
+      }
+      newData[i] = value;
     }
     return new StringColumnBuilder(newData, numTuples).build();
   }
@@ -44,6 +44,7 @@ import edu.washington.escience.myria.api.encoding.DatasetStatus;
 import edu.washington.escience.myria.api.encoding.QueryEncoding;
 import edu.washington.escience.myria.api.encoding.QueryStatusEncoding;
 import edu.washington.escience.myria.api.encoding.plan.SubPlanEncoding;
+import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
 import edu.washington.escience.myria.parallel.Query;
 import edu.washington.escience.myria.parallel.RelationWriteMetadata;
 import edu.washington.escience.myria.parallel.SocketInfo;
@@ -160,6 +161,9 @@ public final class MasterCatalog {
     + "WHERE status = '" + QueryStatusEncoding.Status.ACCEPTED.toString() + "';";
  /** CREATE TABLE statements @formatter:on */
 
+  /** The how_partitioned of a stored relation whose partitioning is not known. */
+  private static final String UNKNOWN_PARTITIONING = "unknown";
+
   /**
    * @param filename the path to the SQLite database storing the catalog.
    * @return a fresh Catalog fitting the specified description.
@@ -484,6 +488,49 @@ public final class MasterCatalog {
     }
   }
 
+  /**
+   * @param partitionFunction how a relation is partitioned, or null if unknown.
+   * @return the how_partitioned of a stored relation partitioned that way.
+   * @throws CatalogException if the partition function cannot be serialized.
+   */
+  private static String howPartitioned(@Nullable final PartitionFunction partitionFunction) throws CatalogException {
+    if (partitionFunction == null) {
+      return UNKNOWN_PARTITIONING;
+    }
+    try {
+      return MyriaJsonMapperProvider.getMapper().writeValueAsString(partitionFunction);
+    } catch (JsonProcessingException e) {
+      throw new CatalogException(e);
+    }
+  }
+
+  /**
+   * Private helper to mark the stored copies of a relation that are not partitioned in the specified way as partitioned
+   * in an unknown way, e.g., after tuples partitioned that way are appended to them.
+   * 
+   * @param sqliteConnection the connection to the SQLite database.
+   * @param relation the relation.
+   * @param howPartitioned the partitioning to keep.
+   * @throws CatalogException if there is an error in the database.
+   */
+  private void forgetOtherPartitioning(@Nonnull final SQLiteConnection sqliteConnection,
+      @Nonnull final RelationKey relation, @Nonnull final String howPartitioned) throws CatalogException {
+    try {
+      SQLiteStatement statement =
+          sqliteConnection
+              .prepare("UPDATE stored_relations SET how_partitioned=? WHERE user_name=? AND program_name=? AND relation_name=? AND how_partitioned<>?;");
+      statement.bind(1, UNKNOWN_PARTITIONING);
+      statement.bind(2, relation.getUserName());
+      statement.bind(3, relation.getProgramName());
+      statement.bind(4, relation.getRelationName());
+      statement.bind(5, howPartitioned);
+      statement.stepThrough();
+      statement.dispose();
+    } catch (final SQLiteException e) {
+      throw new CatalogException(e);
+    }
+  }
+
   /**
    * Adds a worker using the specified host and port to the Catalog.
    * 
@@ -1517,6 +1564,68 @@ public final class MasterCatalog {
     }
   }
 
+  /**
+   * @param relationKey the name of the relation.
+   * @param storedRelationId the id of the stored relation (copy of the relation we want to read), or null for the first
+   *          copy.
+   * @return how this copy of the relation is partitioned across the workers that store it, or null if unknown. See
+   *         {@link RelationWriteMetadata#getPartitionFunction()}.
+   * @throws CatalogException if there is an error in the database.
+   */
+  @Nullable
+  public PartitionFunction getPartitionFunction(final RelationKey relationKey, final Integer storedRelationId)
+      throws CatalogException {
+    Objects.requireNonNull(relationKey);
+    if (isClosed) {
+      throw new CatalogException("Catalog is closed.");
+    }
+
+    final String howPartitioned;
+    try {
+      howPartitioned = queue.execute(new SQLiteJob<String>() {
+        @Override
+        protected String job(final SQLiteConnection sqliteConnection) throws CatalogException, SQLiteException {
+          try {
+            SQLiteStatement statement;
+            if (storedRelationId == null) {
+              statement =
+                  sqliteConnection
+                      .prepare("SELECT how_partitioned FROM stored_relations WHERE user_name = ? AND program_name = ? AND relation_name = ? ORDER BY stored_relation_id ASC LIMIT 1;");
+              statement.bind(1, relationKey.getUserName());
+              statement.bind(2, relationKey.getProgramName());
+              statement.bind(3, relationKey.getRelationName());
+            } else {
+              statement =
+                  sqliteConnection
+                      .prepare("SELECT how_partitioned FROM stored_relations WHERE stored_relation_id = ?;");
+              statement.bind(1, storedRelationId);
+            }
+            String ret = null;
+            if (statement.step()) {
+              ret = statement.columnString(0);
+            }
+            statement.dispose();
+            return ret;
+          } catch (final SQLiteException e) {
+            throw new CatalogException(e);
+          }
+        }
+      }).get();
+    } catch (InterruptedException | ExecutionException e) {
+      throw new CatalogException(e);
+    }
+
+    if (howPartitioned == null || howPartitioned.equals(UNKNOWN_PARTITIONING)) {
+      return null;
+    }
+    try {
+      return MyriaJsonMapperProvider.getMapper().readValue(howPartitioned, PartitionFunction.class);
+    } catch (final IOException e) {
+      LOGGER.warn("Error deserializing the partitioning of {}", relationKey, e);
+      return null;
+    }
+  }
+
   /**
    * Update the status of the specified query in the MasterCatalog.
    * 
@@ -1784,8 +1893,11 @@ public final class MasterCatalog {
               if (meta.isOverwrite() || getSchema(sqliteConnection, relation) == null) {
                 /* Overwrite or new relation. */
                 addRelationMetadata(sqliteConnection, relation, schema, -1, subQueryId.getQueryId());
-                addStoredRelation(sqliteConnection, relation, workers, "unknown");
+                addStoredRelation(sqliteConnection, relation, workers, howPartitioned(meta.getPartitionFunction()));
                 LOGGER.debug("SubQuery #{} - adding {} to store shard of {}", subQueryId, workers, relation);
+              } else {
+                /* Append, which keeps the existing partitioning only if the new tuples are partitioned the same way. */
+                forgetOtherPartitioning(sqliteConnection, relation, howPartitioned(meta.getPartitionFunction()));
               }
             }
             sqliteConnection.exec("COMMIT TRANSACTION;");
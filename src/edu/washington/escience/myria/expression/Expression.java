@@ -52,6 +52,14 @@ public class Expression implements Serializable {
    * Variable name of state.
    */
   public static final String STATE = "state";
+  /**
+   * Variable name prefix of the input column arrays in batch-at-a-time evaluation.
+   */
+  public static final String COL = "col";
+  /**
+   * Variable name of the number of rows in batch-at-a-time evaluation.
+   */
+  public static final String NUM_ROWS = "numRows";
 
   /**
    * This is not really unused, it's used automagically by Jackson deserialization.
@@ -42,6 +42,11 @@ public class VariableExpression extends ZeroaryExpression {
 
   @Override
   public String getJavaString(final ExpressionOperatorParameter parameters) {
+    if (parameters.isVectorized()) {
+      // We generate an access into the array holding this column of the batch.
+      return new StringBuilder(Expression.COL).append(columnIdx).append('[').append(Expression.ROW).append(']')
+          .toString();
+    }
     // We generate a variable access into the tuple buffer.
     return new StringBuilder(Expression.TB).append(".get").append(getOutputType(parameters).getName()).append(
         "(").append(columnIdx).append(", ").append(Expression.ROW).append(")").toString();
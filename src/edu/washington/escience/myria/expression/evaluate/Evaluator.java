@@ -1,10 +1,16 @@
 package edu.washington.escience.myria.expression.evaluate;
 
+import java.util.LinkedList;
+import java.util.SortedSet;
+
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.expression.Expression;
 import edu.washington.escience.myria.expression.ExpressionOperator;
 import edu.washington.escience.myria.expression.StateExpression;
@@ -133,4 +139,36 @@ public abstract class Evaluator {
   public boolean needsState() {
     return needsState;
   }
+
+  /**
+   * Generates the start of the batch-at-a-time form of this expression. It declares the number of rows in the batch and
+   * binds the backing array of every input column that the expression references to a local variable, e.g.,
+   * <code>int[] col2 = ((Column) tb.getDataColumns().get(2)).getIntArray();</code>. Expressions generated with
+   * {@link ExpressionOperatorParameter#asVectorized()} read their inputs from these arrays.
+   * 
+   * @return the Java code that prepares the input arrays for batch-at-a-time evaluation.
+   */
+  protected String getVectorizedPrologue() {
+    final StringBuilder sb = new StringBuilder("final int ").append(Expression.NUM_ROWS).append(" = ").append(
+        Expression.TB).append(".numTuples();\n");
+
+    SortedSet<Integer> columnIdxs = Sets.newTreeSet();
+    LinkedList<ExpressionOperator> ops = Lists.newLinkedList();
+    ops.add(getExpression().getRootExpressionOperator());
+    while (!ops.isEmpty()) {
+      final ExpressionOperator op = ops.pop();
+      if (op instanceof VariableExpression) {
+        columnIdxs.add(((VariableExpression) op).getColumnIdx());
+      }
+      ops.addAll(op.getChildren());
+    }
+
+    for (int columnIdx : columnIdxs) {
+      final Type type = getInputSchema().getColumnType(columnIdx);
+      sb.append(type.toJavaType().getName()).append("[] ").append(Expression.COL).append(columnIdx).append(" = ((")
+          .append(Column.class.getName()).append(") ").append(Expression.TB).append(".getDataColumns().get(").append(
+              columnIdx).append(")).get").append(type.getName()).append("Array();\n");
+    }
+    return sb.toString();
+  }
 }
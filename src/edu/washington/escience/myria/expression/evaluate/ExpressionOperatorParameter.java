@@ -12,6 +12,8 @@ public class ExpressionOperatorParameter {
   private final Schema stateSchema;
   /** The id of the worker that is running the expression. */
   private final Integer workerID;
+  /** True if variables should be read from the column arrays of a whole batch instead of a single row. */
+  private final boolean vectorized;
 
   /**
    * Simple constructor.
@@ -20,6 +22,7 @@ public class ExpressionOperatorParameter {
     schema = null;
     stateSchema = null;
     workerID = null;
+    vectorized = false;
   }
 
   /**
@@ -29,6 +32,7 @@ public class ExpressionOperatorParameter {
     this.schema = schema;
     stateSchema = null;
     workerID = null;
+    vectorized = false;
   }
 
   /**
@@ -39,6 +43,7 @@ public class ExpressionOperatorParameter {
     this.schema = schema;
     this.stateSchema = stateSchema;
     workerID = null;
+    vectorized = false;
   }
 
   /**
@@ -49,6 +54,7 @@ public class ExpressionOperatorParameter {
     this.schema = schema;
     stateSchema = null;
     this.workerID = workerID;
+    vectorized = false;
   }
 
   /**
@@ -60,6 +66,36 @@ public class ExpressionOperatorParameter {
     this.schema = schema;
     this.stateSchema = stateSchema;
     this.workerID = workerID;
+    vectorized = false;
+  }
+
+  /**
+   * @param schema the input schema
+   * @param stateSchema the schema of the state
+   * @param workerID id of the worker that is running the expression
+   * @param vectorized true if variables should be read from the column arrays of a whole batch
+   */
+  private ExpressionOperatorParameter(final Schema schema, final Schema stateSchema, final Integer workerID,
+      final boolean vectorized) {
+    this.schema = schema;
+    this.stateSchema = stateSchema;
+    this.workerID = workerID;
+    this.vectorized = vectorized;
+  }
+
+  /**
+   * @return a copy of these parameters that generates batch-at-a-time code, see
+   *         {@link edu.washington.escience.myria.expression.VariableExpression}.
+   */
+  public ExpressionOperatorParameter asVectorized() {
+    return new ExpressionOperatorParameter(schema, stateSchema, workerID, true);
+  }
+
+  /**
+   * @return true if variables should be read from the column arrays of a whole batch instead of a single row.
+   */
+  public boolean isVectorized() {
+    return vectorized;
   }
 
   /**
@@ -0,0 +1,20 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import java.util.BitSet;
+
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Interface for evaluating janino expressions that return bools over an entire {@link TupleBatch} at once.
+ */
+public interface VectorizedBooleanEvalInterface {
+  /**
+   * The interface for evaluating a predicate on every row of a tuple batch. The implementation reads the input columns
+   * as primitive arrays and computes the result in a single loop, see
+   * {@link edu.washington.escience.myria.expression.VariableExpression}.
+   * 
+   * @param tb a tuple batch
+   * @return a bitmap that has a bit set for every row in the tb for which the predicate is true.
+   */
+  BitSet evaluate(final TupleBatch tb);
+}
@@ -0,0 +1,82 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import java.util.BitSet;
+
+import org.codehaus.commons.compiler.CompilerFactoryFactory;
+import org.codehaus.commons.compiler.IScriptEvaluator;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * An Expression evaluator for stateless boolean expressions that computes the selection bitmap for an entire
+ * {@link TupleBatch} in one call. Used in {@link edu.washington.escience.myria.operator.Filter}.
+ */
+public class VectorizedBooleanEvaluator extends Evaluator {
+  /**
+   * Expression evaluator.
+   */
+  private VectorizedBooleanEvalInterface evaluator;
+
+  /**
+   * Default constructor.
+   *
+   * @param expression the expression for the evaluator
+   * @param parameters parameters that are passed to the expression
+   */
+  public VectorizedBooleanEvaluator(final Expression expression, final ExpressionOperatorParameter parameters) {
+    super(expression, parameters);
+    Preconditions.checkArgument(getOutputType().equals(Type.BOOLEAN_TYPE));
+    Preconditions.checkArgument(!needsState(), "Expression %s uses state and cannot be vectorized", expression);
+  }
+
+  /**
+   * Compiles the {@link #getJavaExpressionWithAppend()}.
+   *
+   * @throws DbException compilation failed
+   */
+  @Override
+  public void compile() throws DbException {
+    try {
+      IScriptEvaluator se = CompilerFactoryFactory.getDefaultCompilerFactory().newScriptEvaluator();
+
+      se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
+
+      evaluator =
+          (VectorizedBooleanEvalInterface) se.createFastEvaluator(getJavaExpressionWithAppend(),
+              VectorizedBooleanEvalInterface.class, new String[] { Expression.TB });
+    } catch (Exception e) {
+      throw new DbException("Error when compiling expression " + this, e);
+    }
+  }
+
+  /**
+   * @return the Java script that evaluates this predicate for every row of a batch and returns the selection bitmap.
+   */
+  @Override
+  public String getJavaExpressionWithAppend() {
+    return new StringBuilder(getVectorizedPrologue()).append("java.util.BitSet ").append(Expression.RESULT).append(
+        " = new java.util.BitSet(").append(Expression.NUM_ROWS).append(");\n").append("for (int ").append(
+        Expression.ROW).append(" = 0; ").append(Expression.ROW).append(" < ").append(Expression.NUM_ROWS).append(
+        "; ++").append(Expression.ROW).append(") {\n  if (").append(
+        getExpression().getJavaExpression(getParameters().asVectorized())).append(") {\n    ").append(
+        Expression.RESULT).append(".set(").append(Expression.ROW).append(");\n  }\n}\nreturn ").append(
+        Expression.RESULT).append(";\n").toString();
+  }
+
+  /**
+   * Evaluates the {@link #getJavaExpressionWithAppend()} using the {@link #evaluator}.
+   *
+   * @param tb a tuple batch
+   * @return a bitmap that has a bit set for every row in the tb that satisfies the predicate
+   */
+  public BitSet evaluateMask(final TupleBatch tb) {
+    Preconditions.checkArgument(evaluator != null, "Call compile first.");
+    return evaluator.evaluate(tb);
+  }
+}
@@ -0,0 +1,20 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Interface for evaluating a single {@link edu.washington.escience.myria.expression.Expression} over an entire
+ * {@link TupleBatch} at once.
+ */
+public interface VectorizedEvalInterface {
+  /**
+   * The interface for evaluating an expression on every row of a tuple batch. The implementation reads the input
+   * columns as primitive arrays and computes the result in a single loop, see
+   * {@link edu.washington.escience.myria.expression.VariableExpression}.
+   * 
+   * @param tb a tuple batch
+   * @return a column that contains the value of the expression for every row in the tb.
+   */
+  Column<?> evaluate(final TupleBatch tb);
+}
@@ -0,0 +1,155 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.commons.compiler.CompilerFactoryFactory;
+import org.codehaus.commons.compiler.IScriptEvaluator;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.BooleanColumn;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.DateTimeColumn;
+import edu.washington.escience.myria.column.DoubleColumn;
+import edu.washington.escience.myria.column.FloatColumn;
+import edu.washington.escience.myria.column.IntArrayColumn;
+import edu.washington.escience.myria.column.LongColumn;
+import edu.washington.escience.myria.column.StringArrayColumn;
+import edu.washington.escience.myria.column.builder.WritableColumn;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.ExpressionOperator;
+import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.operator.Apply;
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * An Expression evaluator for stateless expressions that computes the result for an entire {@link TupleBatch} in one
+ * call. The input columns are read as primitive arrays and the result is written into a primitive array in a single
+ * generated loop, which avoids an interface call and a virtual append per row. Used in {@link Apply}.
+ */
+public final class VectorizedEvaluator extends GenericEvaluator {
+
+  /** logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(VectorizedEvaluator.class);
+
+  /**
+   * Expression evaluator.
+   */
+  private VectorizedEvalInterface evaluator;
+
+  /**
+   * Default constructor.
+   *
+   * @param expression the expression for the evaluator
+   * @param parameters parameters that are passed to the expression
+   */
+  public VectorizedEvaluator(final Expression expression, final ExpressionOperatorParameter parameters) {
+    super(expression, parameters);
+    Preconditions.checkArgument(!needsState(), "Expression %s uses state and cannot be vectorized", expression);
+  }
+
+  /**
+   * Compiles the {@link #getJavaExpressionWithAppend()}.
+   *
+   * @throws DbException compilation failed
+   */
+  @Override
+  public void compile() throws DbException {
+    Preconditions.checkArgument(needsCompiling(), "This expression does not need to be compiled.");
+
+    String script = getJavaExpressionWithAppend();
+    IScriptEvaluator se;
+    try {
+      se = CompilerFactoryFactory.getDefaultCompilerFactory().newScriptEvaluator();
+    } catch (Exception e) {
+      LOGGER.error("Could not create scriptevaluator", e);
+      throw new DbException("Could not create scriptevaluator", e);
+    }
+    se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
+
+    try {
+      evaluator =
+          (VectorizedEvalInterface) se.createFastEvaluator(script, VectorizedEvalInterface.class,
+              new String[] { Expression.TB });
+    } catch (CompileException e) {
+      LOGGER.error("Error when compiling expression {}: {}", script, e);
+      throw new DbException("Error when compiling expression: " + script, e);
+    }
+  }
+
+  /**
+   * @return the Java script that evaluates this expression for every row of a batch and returns the resulting column.
+   */
+  @Override
+  public String getJavaExpressionWithAppend() {
+    final Type type = getOutputType();
+    final String javaExpression = getExpression().getJavaExpression(getParameters().asVectorized());
+
+    final StringBuilder sb = new StringBuilder(getVectorizedPrologue());
+    if (type == Type.BOOLEAN_TYPE) {
+      sb.append("java.util.BitSet ").append(Expression.RESULT).append(" = new java.util.BitSet(").append(
+          Expression.NUM_ROWS).append(");\n");
+    } else {
+      sb.append(type.toJavaType().getName()).append("[] ").append(Expression.RESULT).append(" = new ").append(
+          type.toJavaType().getName()).append('[').append(Expression.NUM_ROWS).append("];\n");
+    }
+
+    sb.append("for (int ").append(Expression.ROW).append(" = 0; ").append(Expression.ROW).append(" < ").append(
+        Expression.NUM_ROWS).append("; ++").append(Expression.ROW).append(") {\n");
+    if (type == Type.BOOLEAN_TYPE) {
+      sb.append("  if (").append(javaExpression).append(") {\n    ").append(Expression.RESULT).append(".set(").append(
+          Expression.ROW).append(");\n  }\n");
+    } else {
+      sb.append("  ").append(Expression.RESULT).append('[').append(Expression.ROW).append("] = ").append(
+          javaExpression).append(";\n");
+    }
+    sb.append("}\n");
+
+    return sb.append("return new ").append(getColumnClass(type).getName()).append('(').append(Expression.RESULT)
+        .append(", ").append(Expression.NUM_ROWS).append(");\n").toString();
+  }
+
+  /**
+   * @param type the type of the column.
+   * @return the class of the array-backed column that stores values of the specified type.
+   */
+  private static Class<?> getColumnClass(final Type type) {
+    switch (type) {
+      case BOOLEAN_TYPE:
+        return BooleanColumn.class;
+      case DATETIME_TYPE:
+        return DateTimeColumn.class;
+      case DOUBLE_TYPE:
+        return DoubleColumn.class;
+      case FLOAT_TYPE:
+        return FloatColumn.class;
+      case INT_TYPE:
+        return IntArrayColumn.class;
+      case LONG_TYPE:
+        return LongColumn.class;
+      case STRING_TYPE:
+        return StringArrayColumn.class;
+    }
+    throw new UnsupportedOperationException("Vectorized evaluation of type " + type);
+  }
+
+  @Override
+  public void eval(final ReadableTable tb, final int rowIdx, final WritableColumn result, final ReadableTable state) {
+    throw new UnsupportedOperationException("Should not be here. Should be using evaluateColumn() instead");
+  }
+
+  @Override
+  public Column<?> evaluateColumn(final TupleBatch tb) {
+    ExpressionOperator op = getExpression().getRootExpressionOperator();
+    /* This expression just copies an input column. */
+    if (isCopyFromInput()) {
+      return tb.getDataColumns().get(((VariableExpression) op).getColumnIdx());
+    }
+
+    Preconditions.checkArgument(evaluator != null, "Call compile first.");
+    return evaluator.evaluate(tb);
+  }
+}
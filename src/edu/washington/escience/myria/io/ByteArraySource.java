@@ -13,7 +13,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  * A data source that simply wraps a byte array. Note that this does NOT copy the specified array, so the caller MUST
  * NOT mutate it.
  */
-public class ByteArraySource implements DataSource, Serializable {
+public class ByteArraySource implements SeekableDataSource, Serializable {
 
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
@@ -36,4 +36,15 @@ public class ByteArraySource implements DataSource, Serializable {
   public InputStream getInputStream() throws IOException {
     return new ByteArrayInputStream(bytes);
   }
+
+  @Override
+  public long length() {
+    return bytes.length;
+  }
+
+  @Override
+  public InputStream getInputStream(final long offset) throws IOException {
+    final int start = (int) Math.min(offset, bytes.length);
+    return new ByteArrayInputStream(bytes, start, bytes.length - start);
+  }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.io;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -12,7 +13,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 /**
  * A data source that pulls data from local file.
  */
-public class FileSource implements DataSource, Serializable {
+public class FileSource implements SeekableDataSource, Serializable {
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
   /** The filename. */
@@ -34,6 +35,18 @@ public class FileSource implements DataSource, Serializable {
     return new FileInputStream(filename);
   }
 
+  @Override
+  public long length() throws IOException {
+    return new File(filename).length();
+  }
+
+  @Override
+  public InputStream getInputStream(final long offset) throws IOException {
+    final FileInputStream stream = new FileInputStream(filename);
+    stream.getChannel().position(offset);
+    return stream;
+  }
+
   /**
    * @return the local file that this FileSource references.
    */
@@ -0,0 +1,26 @@
+package edu.washington.escience.myria.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A {@link DataSource} that can also be read starting from any byte offset, e.g., by several threads that each read a
+ * range of the data.
+ */
+public interface SeekableDataSource extends DataSource {
+  /**
+   * @return the length of the data in bytes, or a negative number if this source cannot be read from an offset.
+   * @throws IOException if there is an error accessing the data.
+   */
+  long length() throws IOException;
+
+  /**
+   * Returns an {@link InputStream} providing read access to the bits in the specified data source, starting at the
+   * specified offset.
+   * 
+   * @param offset the offset of the first byte to be read.
+   * @return an {@link InputStream} starting at <code>offset</code>.
+   * @throws IOException if there is an error producing the input stream.
+   */
+  InputStream getInputStream(long offset) throws IOException;
+}
@@ -12,6 +12,7 @@ import java.util.List;
 import java.util.Objects;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -24,8 +25,9 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  * web link; an AWS link; and perhaps more.
  *
  * If the URI points to a directory, all files in that directory will be concatenated into a single {@link InputStream}.
+ * Only a URI that matches a single file on a Hadoop file system can be read from an offset.
  */
-public class UriSource implements DataSource, Serializable {
+public class UriSource implements SeekableDataSource, Serializable {
 
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
@@ -59,6 +61,44 @@ public class UriSource implements DataSource, Serializable {
       : getHadoopFileSystemInputStream(parsedUri);
   }
 
+  @Override
+  public long length() throws IOException {
+    final FileStatus status = getSingleHadoopFile(URI.create(uri));
+    if (status == null) {
+      return -1;
+    }
+    return status.getLen();
+  }
+
+  @Override
+  public InputStream getInputStream(final long offset) throws IOException {
+    final URI parsedUri = URI.create(uri);
+    final FileStatus status = getSingleHadoopFile(parsedUri);
+    if (status == null) {
+      throw new UnsupportedOperationException("Cannot read " + uri + " from an offset");
+    }
+    final FSDataInputStream stream = FileSystem.get(parsedUri, new Configuration()).open(status.getPath());
+    stream.seek(offset);
+    return stream;
+  }
+
+  /**
+   * @param uri the URI of the data.
+   * @return the status of the file that the URI names, or null if the URI is a web link or does not name exactly one
+   *         file.
+   * @throws IOException if there is an error accessing the file system.
+   */
+  private static FileStatus getSingleHadoopFile(final URI uri) throws IOException {
+    if (uri.getScheme() != null && (uri.getScheme().equals("http") || uri.getScheme().equals("https"))) {
+      return null;
+    }
+    FileStatus[] statii = FileSystem.get(uri, new Configuration()).globStatus(new Path(uri));
+    if (statii == null || statii.length != 1 || statii[0].isDir()) {
+      return null;
+    }
+    return statii[0];
+  }
+
   /**
    * Get an input stream using the configured Hadoop file system for the given URI scheme
    */
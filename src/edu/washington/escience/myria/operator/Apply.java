@@ -18,6 +18,7 @@ import edu.washington.escience.myria.expression.Expression;
 import edu.washington.escience.myria.expression.evaluate.ConstantEvaluator;
 import edu.washington.escience.myria.expression.evaluate.ExpressionOperatorParameter;
 import edu.washington.escience.myria.expression.evaluate.GenericEvaluator;
+import edu.washington.escience.myria.expression.evaluate.VectorizedEvaluator;
 import edu.washington.escience.myria.storage.TupleBatch;
 
 /**
@@ -103,7 +104,7 @@ public class Apply extends UnaryOperator {
       if (expr.isConstant()) {
         evaluator = new ConstantEvaluator(expr, parameters);
       } else {
-        evaluator = new GenericEvaluator(expr, parameters);
+        evaluator = new VectorizedEvaluator(expr, parameters);
       }
       if (evaluator.needsCompiling()) {
         evaluator.compile();
@@ -0,0 +1,112 @@
+package edu.washington.escience.myria.operator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.BloomFilter;
+
+/**
+ * Builds a {@link BloomFilter} of the keys of its input, e.g., the build side of a join, and returns it as tuples of
+ * {@link #SCHEMA} once the child is EOS. Only the words of the filter that have bits set are returned.
+ *
+ * The filter is meant to be broadcast to the fragments that read the probe side of the join, where a
+ * {@link BloomFilterProbe} merges the filters of all the workers and drops the tuples that have no join partner before
+ * they are shuffled or joined.
+ */
+public final class BloomFilterBuilder extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The schema of the returned filter: the index of each word, its bits, and the number of bits and hashes of the
+   * filter, so that a {@link BloomFilterProbe} can tell whether it merges filters built the same way.
+   */
+  public static final Schema SCHEMA = Schema.ofFields(Type.INT_TYPE, "index", Type.LONG_TYPE, "bits", Type.INT_TYPE,
+      "numBits", Type.INT_TYPE, "numHashes");
+
+  /** The key columns. */
+  private final int[] keyColumns;
+  /** The number of bits of the filter. */
+  private final int numBits;
+  /** The number of bits set per key. */
+  private final int numHashes;
+
+  /** The filter of the keys seen so far. */
+  private transient BloomFilter filter;
+  /** The index of the next word of the filter to be returned once the child is EOS. */
+  private transient int nextWord;
+  /** Buffers the words until they are returned. */
+  private transient TupleBatchBuffer ans;
+
+  /**
+   * @param child the source of the keys.
+   * @param keyColumns the key columns.
+   * @param numBits the number of bits of the filter, a power of two not less than 64.
+   * @param numHashes the number of bits set per key.
+   */
+  public BloomFilterBuilder(final Operator child, final int[] keyColumns, final int numBits, final int numHashes) {
+    super(child);
+    Preconditions.checkArgument(keyColumns.length > 0, "BloomFilterBuilder requires at least 1 key column");
+    this.keyColumns = keyColumns;
+    this.numBits = numBits;
+    this.numHashes = numHashes;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) {
+    filter = new BloomFilter(numBits, numHashes);
+    nextWord = 0;
+    ans = new TupleBatchBuffer(SCHEMA);
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    final Operator child = getChild();
+    while (!child.eos()) {
+      final TupleBatch tb = child.nextReady();
+      if (tb == null) {
+        if (child.eos()) {
+          break;
+        }
+        return null;
+      }
+      final int[] hashes = tb.getRowHashes(keyColumns);
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        filter.add(hashes[row]);
+      }
+    }
+
+    while (nextWord < filter.numWords()) {
+      final long bits = filter.getWord(nextWord);
+      if (bits != 0) {
+        ans.putInt(0, nextWord);
+        ans.putLong(1, bits);
+        ans.putInt(2, numBits);
+        ans.putInt(3, numHashes);
+      }
+      ++nextWord;
+      final TupleBatch nexttb = ans.popFilled();
+      if (nexttb != null) {
+        return nexttb;
+      }
+    }
+    return ans.popAny();
+  }
+
+  @Override
+  protected void cleanup() {
+    filter = null;
+    ans = null;
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    return SCHEMA;
+  }
+}
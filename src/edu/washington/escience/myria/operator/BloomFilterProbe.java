@@ -0,0 +1,128 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.BitSet;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.BloomFilter;
+
+/**
+ * Drops the tuples of the left child whose keys are not in a {@link BloomFilter}, and returns the others unchanged.
+ *
+ * The right child returns the filter as tuples of {@link BloomFilterBuilder#SCHEMA}, typically through a
+ * {@link edu.washington.escience.myria.operator.network.BroadcastConsumer} of the filters built on all the workers,
+ * which are merged into one. The left child is not read until the right child is EOS.
+ *
+ * Placed right above the scan of the probe side of a join, before it is shuffled or joined, this drops most of the
+ * tuples that have no join partner, and all of them if the build side is empty. The key columns must have the same
+ * types as those of the {@link BloomFilterBuilder}, and the filter the same number of bits and hashes, which is
+ * checked against each returned word.
+ */
+public final class BloomFilterProbe extends BinaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The key columns of the left child. */
+  private final int[] keyColumns;
+  /** The number of bits of the filter. */
+  private final int numBits;
+  /** The number of bits set per key. */
+  private final int numHashes;
+
+  /** The merged filter. */
+  private transient BloomFilter filter;
+
+  /**
+   * @param left the tuples to be filtered.
+   * @param right the filter, as tuples of {@link BloomFilterBuilder#SCHEMA}.
+   * @param keyColumns the key columns of the left child.
+   * @param numBits the number of bits of the filter, a power of two not less than 64.
+   * @param numHashes the number of bits set per key.
+   */
+  public BloomFilterProbe(final Operator left, final Operator right, final int[] keyColumns, final int numBits,
+      final int numHashes) {
+    super(left, right);
+    Preconditions.checkArgument(keyColumns.length > 0, "BloomFilterProbe requires at least 1 key column");
+    this.keyColumns = keyColumns;
+    this.numBits = numBits;
+    this.numHashes = numHashes;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    final Schema rightSchema = getRight().getSchema();
+    Preconditions.checkState(BloomFilterBuilder.SCHEMA.getColumnTypes().equals(rightSchema.getColumnTypes()),
+        "Expecting a right child with the schema %s of a Bloom filter, not %s", BloomFilterBuilder.SCHEMA, rightSchema);
+    filter = new BloomFilter(numBits, numHashes);
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    /* Before we can filter anything, merge the whole filter from the right child. */
+    final Operator right = getRight();
+    while (!right.eos()) {
+      final TupleBatch tb = right.nextReady();
+      if (tb == null) {
+        /* The right child may have realized it's EOS now. If so, we must move onto left child to avoid livelock. */
+        if (right.eos()) {
+          break;
+        }
+        return null;
+      }
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        final int index = tb.getInt(0, row);
+        final int wordBits = tb.getInt(2, row);
+        final int wordHashes = tb.getInt(3, row);
+        if (wordBits != numBits || wordHashes != numHashes) {
+          throw new DbException("Expecting a Bloom filter of " + numBits + " bits and " + numHashes
+              + " hashes, not one of " + wordBits + " bits and " + wordHashes + " hashes");
+        }
+        if (index < 0 || index >= filter.numWords()) {
+          throw new DbException("Word index " + index + " out of the range [0, " + filter.numWords()
+              + ") of the Bloom filter");
+        }
+        filter.mergeWord(index, tb.getLong(1, row));
+      }
+    }
+
+    final Operator left = getLeft();
+    for (TupleBatch tb = left.nextReady(); tb != null; tb = left.nextReady()) {
+      final int[] hashes = tb.getRowHashes(keyColumns);
+      final BitSet bits = new BitSet(tb.numTuples());
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        if (filter.mightContain(hashes[row])) {
+          bits.set(row);
+        }
+      }
+
+      final int cardinality = bits.cardinality();
+      if (cardinality == 0) {
+        continue;
+      }
+      if (cardinality == tb.numTuples()) {
+        return tb;
+      }
+      return tb.filter(bits);
+    }
+    return null;
+  }
+
+  @Override
+  protected void cleanup() {
+    filter = null;
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    final Operator left = getLeft();
+    if (left == null) {
+      return null;
+    }
+    return left.getSchema();
+  }
+}
@@ -0,0 +1,381 @@
+package edu.washington.escience.myria.operator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.lang.BooleanUtils;
+
+import com.google.common.primitives.Floats;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.builder.ColumnBuilder;
+import edu.washington.escience.myria.column.builder.ColumnFactory;
+import edu.washington.escience.myria.io.SeekableDataSource;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.DateTimeUtils;
+
+/**
+ * Parses the CSV records that start in a byte range of a {@link SeekableDataSource}, for a {@link FileScan} that reads
+ * its input on several threads.
+ *
+ * A record belongs to the range in which its first byte lies, so a reader skips the partial record at the start of its
+ * range and finishes the record that crosses its end. Records therefore must not contain newlines, not even in quoted
+ * fields. Fields are tokenized from the raw bytes into a reused buffer and decoded as UTF-8. INT and LONG values are
+ * parsed from the bytes directly and appended to the column builders without creating Strings.
+ */
+final class CsvChunkReader implements Callable<List<TupleBatch>> {
+
+  /** The size of the buffer for reading the input. */
+  private static final int READ_BUFFER_BYTES = 64 * 1024;
+  /** The end of a record. */
+  private static final int NEWLINE = '\n';
+  /** Dropped before a newline. */
+  private static final int CARRIAGE_RETURN = '\r';
+  /** Returned by {@link #read()} at the end of the input. */
+  private static final int END_OF_INPUT = -1;
+
+  /** The data source. */
+  private final SeekableDataSource source;
+  /** The schema of the records. */
+  private final Schema schema;
+  /** The offset of the first byte of the range. */
+  private final long start;
+  /** The offset of the first byte after the range. */
+  private final long end;
+  /** The number of lines to be skipped at the beginning of the input. */
+  private final int numberOfSkippedLines;
+  /** The delimiter of fields. */
+  private final int delimiter;
+  /** The quotation mark. */
+  private final int quote;
+  /** The escape character, or {@link #END_OF_INPUT} if there is none. */
+  private final int escape;
+  /** The max number of tuples in a batch. */
+  private final int batchSize;
+
+  /** The input. */
+  private InputStream in;
+  /** The buffered bytes of the input. */
+  private final byte[] readBuffer = new byte[READ_BUFFER_BYTES];
+  /** The position of the next byte in {@link #readBuffer}. */
+  private int readPos;
+  /** The number of valid bytes in {@link #readBuffer}. */
+  private int readLimit;
+  /** The offset in the input of the next byte to be read. */
+  private long position;
+  /** The bytes of the current field. */
+  private byte[] field = new byte[64];
+  /** The number of bytes of the current field. */
+  private int fieldLength;
+  /** True if the current field was quoted. */
+  private boolean fieldQuoted;
+
+  /**
+   * @param source the data source.
+   * @param schema the schema of the records.
+   * @param start the offset of the first byte of the range.
+   * @param end the offset of the first byte after the range.
+   * @param numberOfSkippedLines the number of lines to be skipped at the beginning of the input.
+   * @param delimiter the delimiter of fields, an ASCII character.
+   * @param quote the quotation mark, an ASCII character.
+   * @param escape the escape character, an ASCII character, or null if there is none.
+   * @param batchSize the max number of tuples in a batch.
+   */
+  CsvChunkReader(final SeekableDataSource source, final Schema schema, final long start, final long end,
+      final int numberOfSkippedLines, final char delimiter, final char quote, final Character escape,
+      final int batchSize) {
+    this.source = source;
+    this.schema = schema;
+    this.start = start;
+    this.end = end;
+    this.numberOfSkippedLines = numberOfSkippedLines;
+    this.delimiter = delimiter;
+    this.quote = quote;
+    /* An escaped quote is a doubled quote, which is handled with the quotes. */
+    this.escape = escape == null || escape == quote ? END_OF_INPUT : escape;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * @param c a character.
+   * @return true if the character can be matched against single bytes of UTF-8 input.
+   */
+  static boolean isAscii(final Character c) {
+    return c == null || c < 0x80;
+  }
+
+  @Override
+  public List<TupleBatch> call() throws IOException, DbException {
+    final List<TupleBatch> batches = new ArrayList<>();
+    /* Start one byte early, so that a record that starts exactly at the start of the range is recognized. */
+    position = Math.max(start - 1, 0);
+    try (InputStream stream = source.getInputStream(position)) {
+      in = stream;
+      if (start > 0) {
+        skipLine();
+      } else {
+        for (int i = 0; i < numberOfSkippedLines; ++i) {
+          skipLine();
+        }
+      }
+
+      final int numColumns = schema.numColumns();
+      List<ColumnBuilder<?>> builders = ColumnFactory.allocateColumns(schema);
+      int numTuples = 0;
+      while (position < end) {
+        final long recordStart = position;
+        int terminator = readField();
+        if (terminator != delimiter && fieldLength == 0 && !fieldQuoted) {
+          if (terminator == END_OF_INPUT) {
+            break;
+          }
+          /* An empty line. */
+          continue;
+        }
+
+        int column = 0;
+        while (true) {
+          if (column == numColumns) {
+            throw new DbException("Error parsing the record at byte " + recordStart + ": Found more than "
+                + numColumns + " column(s).");
+          }
+          appendField(builders.get(column), column, recordStart);
+          ++column;
+          if (terminator != delimiter) {
+            break;
+          }
+          terminator = readField();
+        }
+        if (column != numColumns) {
+          throw new DbException("Error parsing the record at byte " + recordStart + ": Found " + column
+              + " column(s) but expected " + numColumns + " column(s).");
+        }
+
+        if (++numTuples == batchSize) {
+          batches.add(build(builders, numTuples));
+          builders = ColumnFactory.allocateColumns(schema);
+          numTuples = 0;
+        }
+        if (terminator == END_OF_INPUT) {
+          break;
+        }
+      }
+      if (numTuples > 0) {
+        batches.add(build(builders, numTuples));
+      }
+    }
+    return batches;
+  }
+
+  /**
+   * @param builders the builders of the columns of a batch.
+   * @param numTuples the number of tuples in the builders.
+   * @return the batch.
+   */
+  private TupleBatch build(final List<ColumnBuilder<?>> builders, final int numTuples) {
+    final List<Column<?>> columns = new ArrayList<>(builders.size());
+    for (ColumnBuilder<?> builder : builders) {
+      columns.add(builder.build());
+    }
+    return new TupleBatch(schema, columns, numTuples);
+  }
+
+  /**
+   * @return the next byte of the input, or {@link #END_OF_INPUT}.
+   * @throws IOException if there is an error reading the input.
+   */
+  private int read() throws IOException {
+    if (readPos == readLimit) {
+      readPos = 0;
+      readLimit = in.read(readBuffer, 0, readBuffer.length);
+      if (readLimit <= 0) {
+        readLimit = 0;
+        return END_OF_INPUT;
+      }
+    }
+    ++position;
+    return readBuffer[readPos++] & 0xff;
+  }
+
+  /**
+   * Skip the input up to and including the next newline.
+   *
+   * @throws IOException if there is an error reading the input.
+   */
+  private void skipLine() throws IOException {
+    int c;
+    do {
+      c = read();
+    } while (c != NEWLINE && c != END_OF_INPUT);
+  }
+
+  /**
+   * @param c a byte to be appended to the current field.
+   */
+  private void append(final int c) {
+    if (fieldLength == field.length) {
+      field = Arrays.copyOf(field, field.length * 2);
+    }
+    field[fieldLength++] = (byte) c;
+  }
+
+  /**
+   * Read the next field into {@link #field}.
+   *
+   * @return the byte that ended the field: the delimiter, a newline, or {@link #END_OF_INPUT}.
+   * @throws IOException if there is an error reading the input.
+   * @throws DbException if a quoted field is malformed.
+   */
+  private int readField() throws IOException, DbException {
+    fieldLength = 0;
+    int c = read();
+    fieldQuoted = c == quote;
+    if (fieldQuoted) {
+      while (true) {
+        c = read();
+        if (c == END_OF_INPUT) {
+          throw new DbException("Error parsing the input before byte " + position + ": unterminated quoted field.");
+        } else if (c == escape) {
+          c = read();
+          if (c == END_OF_INPUT) {
+            throw new DbException("Error parsing the input before byte " + position + ": unterminated quoted field.");
+          }
+          append(c);
+        } else if (c == quote) {
+          c = read();
+          if (c != quote) {
+            break;
+          }
+          append(c);
+        } else {
+          append(c);
+        }
+      }
+      if (c == CARRIAGE_RETURN) {
+        c = read();
+      }
+      if (c != delimiter && c != NEWLINE && c != END_OF_INPUT) {
+        throw new DbException("Error parsing the input before byte " + position
+            + ": unexpected character after a quoted field.");
+      }
+      return c;
+    }
+
+    while (c != delimiter && c != NEWLINE && c != END_OF_INPUT) {
+      if (c == escape) {
+        c = read();
+        if (c == END_OF_INPUT) {
+          break;
+        }
+      }
+      append(c);
+      c = read();
+    }
+    if (c != delimiter && fieldLength > 0 && field[fieldLength - 1] == CARRIAGE_RETURN) {
+      --fieldLength;
+    }
+    return c;
+  }
+
+  /**
+   * @return the current field as a String.
+   */
+  private String fieldString() {
+    return new String(field, 0, fieldLength, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Append the current field to the builder of its column.
+   *
+   * @param builder the builder of the column.
+   * @param column the index of the column.
+   * @param recordStart the offset of the record, for error messages.
+   * @throws DbException if the field does not hold a value of the type of the column.
+   */
+  private void appendField(final ColumnBuilder<?> builder, final int column, final long recordStart)
+      throws DbException {
+    try {
+      switch (schema.getColumnType(column)) {
+        case BOOLEAN_TYPE: {
+          final String cell = fieldString();
+          final Float number = Floats.tryParse(cell);
+          if (number != null) {
+            builder.appendBoolean(number != 0);
+          } else {
+            builder.appendBoolean(BooleanUtils.toBoolean(cell));
+          }
+          break;
+        }
+        case DOUBLE_TYPE:
+          builder.appendDouble(Double.parseDouble(fieldString()));
+          break;
+        case FLOAT_TYPE:
+          builder.appendFloat(Float.parseFloat(fieldString()));
+          break;
+        case INT_TYPE:
+          builder.appendInt((int) parseField(Integer.MIN_VALUE, Integer.MAX_VALUE));
+          break;
+        case LONG_TYPE:
+          builder.appendLong(parseField(Long.MIN_VALUE, Long.MAX_VALUE));
+          break;
+        case STRING_TYPE:
+          builder.appendString(fieldString());
+          break;
+        case DATETIME_TYPE:
+          builder.appendDateTime(DateTimeUtils.parse(fieldString()));
+          break;
+      }
+    } catch (final IllegalArgumentException e) {
+      throw new DbException("Error parsing column " + column + " of the record at byte " + recordStart
+          + ", expected type: " + schema.getColumnType(column) + ", scanned value: " + fieldString(), e);
+    }
+  }
+
+  /**
+   * Parse the current field as a decimal integer, with the same rules as {@link Long#parseLong(String)}.
+   *
+   * @param min the smallest allowed value.
+   * @param max the largest allowed value.
+   * @return the value.
+   * @throws NumberFormatException if the field is not an integer between <code>min</code> and <code>max</code>.
+   */
+  private long parseField(final long min, final long max) {
+    if (fieldLength == 0) {
+      throw new NumberFormatException("empty value");
+    }
+    int i = 0;
+    final boolean negative = field[0] == '-';
+    if (negative || field[0] == '+') {
+      ++i;
+      if (fieldLength == 1) {
+        throw new NumberFormatException("no digits");
+      }
+    }
+    /* Accumulate negatively, since the magnitude of min may exceed max. */
+    final long limit = negative ? min : -max;
+    final long multiplyLimit = limit / 10;
+    long result = 0;
+    for (; i < fieldLength; ++i) {
+      final int digit = field[i] - '0';
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException("not a digit: " + (char) field[i]);
+      }
+      if (result < multiplyLimit) {
+        throw new NumberFormatException("out of range");
+      }
+      result *= 10;
+      if (result < limit + digit) {
+        throw new NumberFormatException("out of range");
+      }
+      result -= digit;
+    }
+    return negative ? result : -result;
+  }
+}
@@ -21,7 +21,9 @@ import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.accessmethod.AccessMethod;
 import edu.washington.escience.myria.accessmethod.AccessMethod.IndexRef;
 import edu.washington.escience.myria.accessmethod.ConnectionInfo;
+import edu.washington.escience.myria.accessmethod.SQLiteAccessMethod;
 import edu.washington.escience.myria.accessmethod.SQLiteInfo;
+import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
 import edu.washington.escience.myria.parallel.RelationWriteMetadata;
 import edu.washington.escience.myria.storage.TupleBatch;
 
@@ -45,6 +47,8 @@ public class DbInsert extends AbstractDbInsert {
   private RelationKey tempRelationKey;
   /** The indexes to be created on the table. Each entry is a list of columns. */
   private final List<List<IndexRef>> indexes;
+  /** How the inserted tuples are partitioned across the workers, or null if unknown. */
+  private PartitionFunction partitionFunction;
 
   /**
    * Constructs an insertion operator to store the tuples from the specified child into the specified database. If the
@@ -206,12 +210,21 @@ public class DbInsert extends AbstractDbInsert {
 
     /* Create the table */
     accessMethod.createTableIfNotExists(tempRelationKey, getSchema());
-    /* Create indexes. */
-    accessMethod.createIndexes(tempRelationKey, getSchema(), indexes);
+    /* Indexes are created after the load, which is cheaper than maintaining them during the load. */
+
+    if (accessMethod instanceof SQLiteAccessMethod) {
+      /* Keep one statement and transaction across batches, see childNotReady. */
+      ((SQLiteAccessMethod) accessMethod).beginBulkLoad(tempRelationKey, getSchema());
+    }
   }
 
   @Override
   protected void childEOS() throws DbException {
+    if (accessMethod instanceof SQLiteAccessMethod) {
+      ((SQLiteAccessMethod) accessMethod).finishBulkLoad();
+    }
+    /* Create indexes. */
+    accessMethod.createIndexes(tempRelationKey, getSchema(), indexes);
     /* If the child finished, we're done too. If in overwrite mode, drop the existing table and rename. */
     if (overwriteTable) {
       accessMethod.dropAndRenameTables(relationKey, tempRelationKey);
@@ -222,6 +235,14 @@ public class DbInsert extends AbstractDbInsert {
   protected void childEOI() throws DbException {
   }
 
+  @Override
+  protected void childNotReady() throws DbException {
+    if (accessMethod instanceof SQLiteAccessMethod) {
+      /* Do not hold the write lock of the database while waiting for the child. */
+      ((SQLiteAccessMethod) accessMethod).commitBulkLoad();
+    }
+  }
+
   /**
    * @return the name of the relation that this operator will write to.
    */
@@ -229,9 +250,19 @@ public class DbInsert extends AbstractDbInsert {
     return relationKey;
   }
 
+  /**
+   * @param partitionFunction how the inserted tuples are partitioned across the workers, or null if unknown. See
+   *          {@link RelationWriteMetadata#getPartitionFunction()}.
+   */
+  public void setPartitionFunction(final PartitionFunction partitionFunction) {
+    this.partitionFunction = partitionFunction;
+  }
+
   @Override
   public Map<RelationKey, RelationWriteMetadata> writeSet() {
-    return ImmutableMap.of(relationKey, new RelationWriteMetadata(relationKey, getSchema(), overwriteTable, false));
+    RelationWriteMetadata meta = new RelationWriteMetadata(relationKey, getSchema(), overwriteTable, false);
+    meta.setPartitionFunction(partitionFunction);
+    return ImmutableMap.of(relationKey, meta);
   }
 
 }
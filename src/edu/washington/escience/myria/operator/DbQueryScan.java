@@ -35,6 +35,14 @@ public class DbQueryScan extends LeafOperator implements DbReader {
    * Iterate over data from the JDBC database.
    * */
   private transient Iterator<TupleBatch> tuples;
+  /**
+   * The connection of the query, closed when the scan ends.
+   * */
+  private transient AccessMethod accessMethod;
+  /**
+   * The max number of tuples in a batch read from the database.
+   * */
+  private transient int batchSize;
   /**
    * The result schema.
    * */
@@ -165,17 +173,41 @@ public class DbQueryScan extends LeafOperator implements DbReader {
   }
 
   @Override
-  public final void cleanup() {
+  public final void cleanup() throws DbException {
     tuples = null;
+    if (accessMethod != null) {
+      /* The results may not have been read to the end. */
+      accessMethod.close();
+      accessMethod = null;
+    }
+  }
+
+  @Override
+  protected final void stopped() throws DbException {
+    cleanup();
+  }
+
+  /**
+   * Read at most the specified number of tuples, by adding a LIMIT to the SQL query. Called by a {@link Limit} above
+   * this scan before the first tuple is read.
+   * 
+   * @param limit the max number of tuples to read.
+   */
+  final void pushLimit(final long limit) {
+    Preconditions.checkState(tuples == null, "The query has already been issued");
+    String query = baseSQL.trim();
+    while (query.endsWith(";")) {
+      query = query.substring(0, query.length() - 1).trim();
+    }
+    baseSQL = "SELECT * FROM (" + query + ") AS myria_limit LIMIT " + limit;
   }
 
   @Override
   protected final TupleBatch fetchNextReady() throws DbException {
     Objects.requireNonNull(connectionInfo);
     if (tuples == null) {
-      tuples =
-          AccessMethod.of(connectionInfo.getDbms(), connectionInfo, true).tupleBatchIteratorFromQuery(baseSQL,
-              outputSchema);
+      accessMethod = AccessMethod.of(connectionInfo.getDbms(), connectionInfo, true);
+      tuples = accessMethod.tupleBatchIteratorFromQuery(baseSQL, outputSchema, batchSize);
     }
     if (tuples.hasNext()) {
       final TupleBatch tb = tuples.next();
@@ -193,6 +225,7 @@ public class DbQueryScan extends LeafOperator implements DbReader {
 
   @Override
   protected final void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    batchSize = TupleBatch.batchSize(outputSchema, TupleBatch.getMaxBatchBytes(execEnvVars));
     if (connectionInfo == null) {
       final String dbms = (String) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_DATABASE_SYSTEM);
       if (dbms == null) {
@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.operator;
 
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
 
@@ -7,20 +8,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableMap;
-import com.gs.collections.api.block.procedure.primitive.IntProcedure;
-import com.gs.collections.impl.list.mutable.primitive.IntArrayList;
-import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import edu.washington.escience.myria.Schema;
-import edu.washington.escience.myria.column.Column;
-import edu.washington.escience.myria.storage.MutableTupleBuffer;
+import edu.washington.escience.myria.storage.JoinHashTable;
 import edu.washington.escience.myria.storage.TupleBatch;
-import edu.washington.escience.myria.storage.TupleUtils;
-import edu.washington.escience.myria.util.HashUtils;
 
 /**
  * Duplicate elimination. It adds newly meet unique tuples into a buffer so that the source TupleBatches are not
  * referenced. This implementation reduces memory consumption.
+ *
+ * The unique tuples are kept in a {@link JoinHashTable} on all their columns, so no objects are allocated per tuple,
+ * and the accumulated relation can be probed directly, see {@link #getTable()}.
  * */
 public final class DupElim extends StreamingState {
 
@@ -33,19 +31,18 @@ public final class DupElim extends StreamingState {
   static final Logger LOGGER = LoggerFactory.getLogger(DupElim.class);
 
   /**
-   * Indices to unique tuples.
+   * The unique tuples, indexed on all their columns.
    * */
-  private transient IntObjectHashMap<IntArrayList> uniqueTupleIndices;
+  private transient JoinHashTable uniqueTuples = null;
 
   /**
-   * The buffer for storing unique tuples.
+   * All the columns of the schema.
    * */
-  private transient MutableTupleBuffer uniqueTuples = null;
+  private transient int[] allColumns;
 
   @Override
   public void cleanup() {
     uniqueTuples = null;
-    uniqueTupleIndices = null;
   }
 
   /**
@@ -60,27 +57,12 @@ public final class DupElim extends StreamingState {
     if (numTuples <= 0) {
       return tb;
     }
-    checkUniqueness.inputTB = tb;
-    List<? extends Column<?>> columns = tb.getDataColumns();
+    final int[] hashes = tb.getRowHashes(allColumns);
     final BitSet toRemove = new BitSet(numTuples);
     for (int i = 0; i < numTuples; ++i) {
-      final int nextIndex = uniqueTuples.numTuples();
-      final int cntHashCode = HashUtils.hashRow(tb, i);
-      IntArrayList tupleIndexList = uniqueTupleIndices.get(cntHashCode);
-      checkUniqueness.row = i;
-      checkUniqueness.unique = true;
-      if (tupleIndexList == null) {
-        tupleIndexList = new IntArrayList(1);
-        tupleIndexList.add(nextIndex);
-        uniqueTupleIndices.put(cntHashCode, tupleIndexList);
-      } else {
-        tupleIndexList.forEach(checkUniqueness);
-      }
-      if (checkUniqueness.unique) {
-        for (int j = 0; j < tb.numColumns(); ++j) {
-          uniqueTuples.put(j, columns.get(j), i);
-        }
-        tupleIndexList.add(nextIndex);
+      final int cntHashCode = hashes[i];
+      if (uniqueTuples.firstMatch(tb, allColumns, i, cntHashCode) == JoinHashTable.NONE) {
+        uniqueTuples.add(tb, i, cntHashCode);
       } else {
         toRemove.set(i);
       }
@@ -95,9 +77,12 @@ public final class DupElim extends StreamingState {
 
   @Override
   public void init(final ImmutableMap<String, Object> execEnvVars) {
-    uniqueTupleIndices = new IntObjectHashMap<>();
-    uniqueTuples = new MutableTupleBuffer(getSchema());
-    checkUniqueness = new CheckUniquenessProcedure();
+    final Schema schema = getSchema();
+    allColumns = new int[schema.numColumns()];
+    for (int i = 0; i < allColumns.length; ++i) {
+      allColumns[i] = i;
+    }
+    uniqueTuples = new JoinHashTable(schema, allColumns);
   }
 
   @Override
@@ -109,9 +94,33 @@ public final class DupElim extends StreamingState {
     return null;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * A tuple never changes once it is in the state, so the delta of an iteration is the union of the deltas of its TBs.
+   * */
+  @Override
+  public List<TupleBatch> updateIteration(final List<TupleBatch> tbs) {
+    final List<TupleBatch> delta = new ArrayList<TupleBatch>();
+    for (TupleBatch tb : tbs) {
+      final TupleBatch newtb = doDupElim(tb);
+      if (newtb.numTuples() > 0) {
+        delta.add(newtb);
+      }
+    }
+    return delta;
+  }
+
   @Override
   public List<TupleBatch> exportState() {
-    return uniqueTuples.getAll();
+    return uniqueTuples.getData().getAll();
+  }
+
+  /**
+   * @return the unique tuples, indexed on all their columns, e.g., to be probed by a join.
+   * */
+  public JoinHashTable getTable() {
+    return uniqueTuples;
   }
 
   @Override
@@ -122,36 +131,6 @@ public final class DupElim extends StreamingState {
     return uniqueTuples.numTuples();
   }
 
-  /**
-   * Traverse through the list of tuples.
-   * */
-  private transient CheckUniquenessProcedure checkUniqueness;
-
-  /**
-   * Traverse through the list of tuples with the same hash code.
-   * */
-  private final class CheckUniquenessProcedure implements IntProcedure {
-
-    /** serialization id. */
-    private static final long serialVersionUID = 1L;
-
-    /** row index of the tuple. */
-    private int row;
-
-    /** input TupleBatch. */
-    private TupleBatch inputTB;
-
-    /** if found a replacement. */
-    private boolean unique;
-
-    @Override
-    public void value(final int index) {
-      if (TupleUtils.tupleEquals(inputTB, row, uniqueTuples, index)) {
-        unique = false;
-      }
-    }
-  };
-
   @Override
   public StreamingState newInstanceFromMyself() {
     return new DupElim();
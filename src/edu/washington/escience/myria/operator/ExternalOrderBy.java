@@ -0,0 +1,262 @@
+package edu.washington.escience.myria.operator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.SpillFile;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleBatchSorter;
+import edu.washington.escience.myria.storage.TupleUtils;
+
+/**
+ * Orders tuples with an external merge sort.
+ *
+ * Input TupleBatches are buffered as they are. Whenever more tuples are buffered than
+ * {@link MyriaSystemConfigKeys#OPERATOR_SORT_MAX_TUPLES} allows, they are sorted by a {@link TupleBatchSorter} and
+ * written to disk as a sorted run. Once the child is EOS, the runs are merged with a k-way merge. If no run was spilled,
+ * the tuples are sorted and returned directly from memory.
+ */
+public final class ExternalOrderBy extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Which columns to sort the tuples by.
+   */
+  private final int[] sortColumns;
+
+  /**
+   * True for each column that should be sorted ascending.
+   */
+  private final boolean[] ascending;
+
+  /** The max number of tuples to buffer in memory before a sorted run is spilled to disk. */
+  private transient long maxInMemoryTuples;
+  /** The directory to spill to. */
+  private transient File spillDirectory;
+  /** The buffered input. */
+  private transient List<TupleBatch> buffered;
+  /** The number of tuples in {@link #buffered}. */
+  private transient long numBuffered;
+  /** The sorted runs on disk. */
+  private transient List<SpillFile> runs;
+
+  /** The sorted in-memory tuples if nothing has been spilled, else null. Also null until the child is EOS. */
+  private transient TupleBatchSorter sorted;
+  /** The position of the next tuple in {@link #sorted} to be returned. */
+  private transient int sortedPosition;
+  /** The runs that have tuples left, ordered by their current tuple. Null if nothing has been spilled. */
+  private transient PriorityQueue<RunCursor> merge;
+  /** Buffers tuples until they are returned. */
+  private transient TupleBatchBuffer ans;
+
+  /**
+   * @param child the source of the tuples.
+   * @param sortColumns the columns that should be ordered by
+   * @param ascending true for each column that should be sorted ascending
+   */
+  public ExternalOrderBy(final Operator child, final int[] sortColumns, final boolean[] ascending) {
+    super(child);
+    Preconditions.checkArgument(sortColumns.length == ascending.length,
+        "sort columns number should be equal to ascending orders number");
+    this.sortColumns = sortColumns;
+    this.ascending = ascending;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    maxInMemoryTuples =
+        SpillFile.getMaxInMemoryTuples(execEnvVars, MyriaSystemConfigKeys.OPERATOR_SORT_MAX_TUPLES,
+            MyriaConstants.OPERATOR_SORT_MAX_TUPLES_DEFAULT_VALUE);
+    spillDirectory = SpillFile.getSpillDirectory(execEnvVars);
+    buffered = new ArrayList<>();
+    numBuffered = 0;
+    runs = new ArrayList<>();
+    sorted = null;
+    sortedPosition = 0;
+    merge = null;
+    ans = new TupleBatchBuffer(getSchema());
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    final Operator child = getChild();
+    while (!child.eos()) {
+      final TupleBatch tb = child.nextReady();
+      if (tb == null) {
+        if (child.eos()) {
+          break;
+        }
+        return null;
+      }
+      if (tb.numTuples() == 0) {
+        continue;
+      }
+      buffered.add(tb);
+      numBuffered += tb.numTuples();
+      if (numBuffered > maxInMemoryTuples) {
+        spillRun();
+      }
+    }
+
+    if (sorted == null && merge == null) {
+      startOutput();
+    }
+
+    if (merge == null) {
+      while (sortedPosition < sorted.numTuples()) {
+        ans.put(sorted.getBatch(sortedPosition), sorted.getRow(sortedPosition));
+        ++sortedPosition;
+        final TupleBatch nexttb = ans.popFilled();
+        if (nexttb != null) {
+          return nexttb;
+        }
+      }
+    } else {
+      while (!merge.isEmpty()) {
+        final RunCursor cursor = merge.poll();
+        ans.put(cursor.batch, cursor.row);
+        if (cursor.advance()) {
+          merge.add(cursor);
+        }
+        final TupleBatch nexttb = ans.popFilled();
+        if (nexttb != null) {
+          return nexttb;
+        }
+      }
+    }
+    return ans.popAny();
+  }
+
+  /**
+   * Sort the buffered tuples and write them to disk as a new run.
+   *
+   * @throws DbException if there is an error writing to disk.
+   */
+  private void spillRun() throws DbException {
+    final TupleBatchSorter sorter = new TupleBatchSorter(buffered, sortColumns, ascending);
+    final SpillFile run = new SpillFile(getSchema(), spillDirectory, "run" + runs.size() + "_");
+    runs.add(run);
+    for (int i = 0; i < sorter.numTuples(); ++i) {
+      run.add(sorter.getBatch(i), sorter.getRow(i));
+    }
+    run.finishWriting();
+    buffered = new ArrayList<>();
+    numBuffered = 0;
+  }
+
+  /**
+   * Sort the tuples that are still buffered and, if runs have been spilled, start merging them with the runs.
+   *
+   * @throws DbException if there is an error reading from disk.
+   */
+  private void startOutput() throws DbException {
+    if (runs.isEmpty()) {
+      sorted = new TupleBatchSorter(buffered, sortColumns, ascending);
+      return;
+    }
+    if (numBuffered > 0) {
+      spillRun();
+    }
+    merge = new PriorityQueue<>(runs.size(), new Comparator<RunCursor>() {
+      @Override
+      public int compare(final RunCursor o1, final RunCursor o2) {
+        final int compared =
+            TupleUtils.tupleCompare(o1.batch, sortColumns, o1.row, o2.batch, sortColumns, o2.row, ascending);
+        if (compared != 0) {
+          return compared;
+        }
+        /* Break ties by run, which keeps the sort stable. */
+        return Integer.compare(o1.run, o2.run);
+      }
+    });
+    for (int i = 0; i < runs.size(); ++i) {
+      final RunCursor cursor = new RunCursor(i, runs.get(i).read());
+      if (cursor.advance()) {
+        merge.add(cursor);
+      }
+    }
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    if (merge != null) {
+      for (RunCursor cursor : merge) {
+        cursor.reader.close();
+      }
+      merge = null;
+    }
+    if (runs != null) {
+      for (SpillFile run : runs) {
+        run.delete();
+      }
+      runs = null;
+    }
+    buffered = null;
+    sorted = null;
+    ans = null;
+  }
+
+  /**
+   * The current tuple of a sorted run during the merge.
+   */
+  private static final class RunCursor {
+    /** The index of the run, used to break ties. */
+    private final int run;
+    /** The reader over the run. */
+    private final SpillFile.Reader reader;
+    /** The current TupleBatch of the run. */
+    private TupleBatch batch;
+    /** The current row in {@link #batch}. */
+    private int row;
+
+    /**
+     * @param run the index of the run.
+     * @param reader the reader over the run.
+     */
+    RunCursor(final int run, final SpillFile.Reader reader) {
+      this.run = run;
+      this.reader = reader;
+      row = -1;
+    }
+
+    /**
+     * Move to the next tuple of the run.
+     *
+     * @return false if the run has no more tuples.
+     * @throws DbException if there is an error reading from disk.
+     */
+    boolean advance() throws DbException {
+      ++row;
+      while (batch == null || row >= batch.numTuples()) {
+        batch = reader.next();
+        row = 0;
+        if (batch == null) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    Operator child = getChild();
+    if (child == null) {
+      return null;
+    }
+    return child.getSchema();
+  }
+}
@@ -3,7 +3,16 @@ package edu.washington.escience.myria.operator;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayDeque;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import javax.annotation.Nullable;
 
@@ -14,16 +23,22 @@ import org.apache.commons.lang.BooleanUtils;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.primitives.Floats;
 
 import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.io.DataSource;
 import edu.washington.escience.myria.io.FileSource;
+import edu.washington.escience.myria.io.SeekableDataSource;
+import edu.washington.escience.myria.parallel.LocalFragment;
+import edu.washington.escience.myria.parallel.LocalFragmentResourceManager;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
 import edu.washington.escience.myria.util.DateTimeUtils;
+import edu.washington.escience.myria.util.concurrent.RenamingThreadFactory;
 
 /**
  * Reads data from a file. For CSV files, the default parser follows the RFC 4180 (http://tools.ietf.org/html/rfc4180).
@@ -34,6 +49,13 @@ import edu.washington.escience.myria.util.DateTimeUtils;
  * cell of the input can be enclosed by the default quotation mark '"'. Other quotation mark like '\'' can be specified
  * by user as well. Note that the enclosure by quotation is not required in the input file.
  * 
+ * If more than one thread is requested and the source is a {@link SeekableDataSource}, the input is split into byte
+ * ranges that are parsed in parallel, see {@link CsvChunkReader}. The batches of the ranges are emitted either in the
+ * order of the input or as soon as each range is parsed. In this mode the input is read as UTF-8, the delimiter, quote
+ * and escape characters must be ASCII, and quoted fields must not contain newlines.
+ * 
+ * A FileScan can also read only one of several splits of a {@link SeekableDataSource}, see
+ * {@link #setSplit(int, int)}, so that each worker of an ingest reads its own part of a shared input.
  */
 public final class FileScan extends LeafOperator {
   /** The Schema of the relation stored in this file. */
@@ -54,12 +76,59 @@ public final class FileScan extends LeafOperator {
   private final Integer numberOfSkippedLines;
   /** Holds the tuples that are ready for release. */
   private transient TupleBatchBuffer buffer;
+  /** The max number of tuples in an emitted batch. */
+  private transient int batchSize;
   /** Which line of the file the scanner is currently on. */
   private long lineNumber = 0;
+  /** The number of threads that parse the input. */
+  private final int numThreads;
+  /** If the input is parsed in parallel, whether the batches are emitted in the order of the input. */
+  private final boolean ordered;
+  /** The index of the split of the input that is read. */
+  private int splitIndex = 0;
+  /** The number of splits of the input. */
+  private int numSplits = 1;
+
+  /** True if the input is parsed in parallel. */
+  private transient boolean parallel;
+  /** The threads that parse the ranges of the input. */
+  private transient ExecutorService executor;
+  /** The offset of the first byte of the split that is read. */
+  private transient long splitStart;
+  /** The offset of the first byte after the split that is read. */
+  private transient long splitEnd;
+  /** The length of a range of the input in bytes. */
+  private transient long chunkBytes;
+  /** The number of ranges of the input. */
+  private transient long numChunks;
+  /** The index of the next range to be submitted. */
+  private transient long nextChunk;
+  /** The number of ranges that have been submitted but whose batches have not been taken. */
+  private transient int inFlight;
+  /** The submitted ranges, in the order of the input. Only used when the batches are ordered. */
+  private transient Queue<ChunkTask> pending;
+  /** The parsed ranges, in the order in which they were parsed. Only used when the batches are unordered. */
+  private transient Queue<ChunkTask> completed;
+  /** The parsed batches that are ready for release. */
+  private transient Queue<TupleBatch> ready;
+  /** The fragment to be woken up when a range is parsed, or null outside of a fragment. */
+  private transient LocalFragment fragment;
 
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
 
+  /** The smallest range of the input that is parsed by one task. */
+  private static final long MIN_CHUNK_BYTES = 64 * 1024;
+  /**
+   * The max number of bytes of the input in the ranges that are parsed ahead of the consumer. A range is held as parsed
+   * batches until all of them are taken, so the ranges are made small enough that all threads fit in this budget.
+   */
+  private static final long MAX_IN_FLIGHT_BYTES = 128 * 1024 * 1024;
+  /** The input is split into about this many ranges per thread, to balance the load. */
+  private static final int CHUNKS_PER_THREAD = 4;
+  /** The number of ranges per thread that may be parsed ahead of the consumer. */
+  private static final int CHUNKS_IN_FLIGHT_PER_THREAD = 2;
+
   /**
    * The logger for debug, trace, etc. messages in this class.
    */
@@ -146,6 +215,26 @@ public final class FileScan extends LeafOperator {
    */
   public FileScan(final DataSource source, final Schema schema, @Nullable final Character delimiter,
       @Nullable final Character quote, @Nullable final Character escape, @Nullable final Integer numberOfSkippedLines) {
+    this(source, schema, delimiter, quote, escape, numberOfSkippedLines, null, null);
+  }
+
+  /**
+   * Construct a new FileScan object to read from the specified file, as above. If numThreads is greater than 1 and the
+   * source is a {@link SeekableDataSource}, the input is parsed by that many threads. If ordered is null or true, the
+   * batches are then emitted in the order of the input, otherwise as soon as they are parsed.
+   * 
+   * @param source the data source containing the relation.
+   * @param schema the Schema of the relation contained in the file.
+   * @param delimiter An optional override file delimiter.
+   * @param quote An optional quote character
+   * @param escape An optional escape character.
+   * @param numberOfSkippedLines number of lines to be skipped (number of lines in header).
+   * @param numThreads the number of threads that parse the input, 1 if null.
+   * @param ordered whether the batches of a parallel scan keep the order of the input, true if null.
+   */
+  public FileScan(final DataSource source, final Schema schema, @Nullable final Character delimiter,
+      @Nullable final Character quote, @Nullable final Character escape, @Nullable final Integer numberOfSkippedLines,
+      @Nullable final Integer numThreads, @Nullable final Boolean ordered) {
     this.source = Preconditions.checkNotNull(source, "source");
     this.schema = Preconditions.checkNotNull(schema, "schema");
 
@@ -153,22 +242,69 @@ public final class FileScan extends LeafOperator {
     this.quote = MoreObjects.firstNonNull(quote, CSVFormat.DEFAULT.getQuoteCharacter());
     this.escape = escape != null ? escape : CSVFormat.DEFAULT.getEscapeCharacter();
     this.numberOfSkippedLines = MoreObjects.firstNonNull(numberOfSkippedLines, 0);
+    this.numThreads = MoreObjects.firstNonNull(numThreads, 1);
+    Preconditions.checkArgument(this.numThreads > 0, "numThreads must be positive");
+    this.ordered = MoreObjects.firstNonNull(ordered, true);
+  }
+
+  /**
+   * Read only one of several equal byte ranges of the input, e.g. on one of several workers. A record is read by the
+   * split in which its first byte lies, so the splits together read every record exactly once. The source must be a
+   * {@link SeekableDataSource}.
+   * 
+   * @param splitIndex the index of the split to be read.
+   * @param numSplits the number of splits of the input.
+   */
+  public void setSplit(final int splitIndex, final int numSplits) {
+    Preconditions.checkArgument(numSplits > 0, "numSplits must be positive");
+    Preconditions.checkElementIndex(splitIndex, numSplits, "splitIndex");
+    this.splitIndex = splitIndex;
+    this.numSplits = numSplits;
+  }
+
+  /**
+   * @return true if the input can be read from any byte offset, so that it can be split or parsed in parallel: the
+   *         source is a {@link SeekableDataSource} whose length is known, e.g., not a web link, and the delimiter,
+   *         quote and escape characters are ASCII.
+   * @throws IOException if there is an error accessing the source.
+   */
+  public boolean canSplit() throws IOException {
+    return source instanceof SeekableDataSource && CsvChunkReader.isAscii(delimiter) && CsvChunkReader.isAscii(quote)
+        && CsvChunkReader.isAscii(escape) && ((SeekableDataSource) source).length() >= 0;
+  }
+
+  @Override
+  protected void stopped() {
+    cleanup();
   }
 
   @Override
   public void cleanup() {
     parser = null;
-    while (buffer.numTuples() > 0) {
-      buffer.popAny();
+    if (buffer != null) {
+      while (buffer.numTuples() > 0) {
+        buffer.popAny();
+      }
     }
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+    pending = null;
+    completed = null;
+    ready = null;
   }
 
   @Override
   protected TupleBatch fetchNextReady() throws DbException, IOException {
+    if (parallel) {
+      return fetchNextParsed();
+    }
+
     /* Let's assume that the scanner always starts at the beginning of a line. */
     long lineNumberBegin = lineNumber;
 
-    while ((buffer.numTuples() < TupleBatch.BATCH_SIZE)) {
+    while ((buffer.numTuples() < batchSize)) {
       lineNumber++;
       if (parser.isClosed()) {
         break;
@@ -229,6 +365,102 @@ public final class FileScan extends LeafOperator {
     return buffer.popAny();
   }
 
+  /**
+   * @return the next batch of a parallel scan, or null if none has been parsed yet.
+   * @throws DbException if there is an error parsing the input.
+   */
+  private TupleBatch fetchNextParsed() throws DbException {
+    while (ready.isEmpty()) {
+      submitChunks();
+      final ChunkTask chunk;
+      if (ordered) {
+        chunk = pending.peek();
+        if (chunk == null || !chunk.isDone()) {
+          return null;
+        }
+        pending.poll();
+      } else {
+        chunk = completed.poll();
+        if (chunk == null) {
+          return null;
+        }
+      }
+      --inFlight;
+      try {
+        ready.addAll(chunk.get());
+      } catch (ExecutionException e) {
+        Throwables.propagateIfInstanceOf(e.getCause(), DbException.class);
+        throw new DbException(e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new DbException(e);
+      }
+    }
+    submitChunks();
+    return ready.poll();
+  }
+
+  /**
+   * Submit ranges of the input to be parsed, as long as not too many are ahead of the consumer.
+   */
+  private void submitChunks() {
+    while (nextChunk < numChunks && inFlight < CHUNKS_IN_FLIGHT_PER_THREAD * numThreads) {
+      final long start = splitStart + nextChunk * chunkBytes;
+      final long end = Math.min(start + chunkBytes, splitEnd);
+      final ChunkTask chunk =
+          new ChunkTask(new CsvChunkReader((SeekableDataSource) source, schema, start, end, numberOfSkippedLines,
+              delimiter, quote, escape, batchSize), ordered ? null : completed, fragment);
+      if (ordered) {
+        pending.add(chunk);
+      }
+      executor.execute(chunk);
+      ++nextChunk;
+      ++inFlight;
+    }
+  }
+
+  @Override
+  protected void checkEOSAndEOI() {
+    if (!parallel || (nextChunk == numChunks && inFlight == 0 && ready.isEmpty())) {
+      setEOS();
+    }
+  }
+
+  /**
+   * The parsing of a range of the input, which wakes up the fragment once it is done.
+   *
+   * The task keeps its own references to the queue and the fragment, since it may still finish after the scan has been
+   * cleaned up.
+   */
+  private static final class ChunkTask extends FutureTask<List<TupleBatch>> {
+    /** The queue of the parsed ranges, or null if the batches are ordered. */
+    private final Queue<ChunkTask> completed;
+    /** The fragment to be woken up, or null outside of a fragment. */
+    private final LocalFragment fragment;
+
+    /**
+     * @param reader the parser of the range.
+     * @param completed the queue of the parsed ranges, or null if the batches are ordered.
+     * @param fragment the fragment to be woken up, or null outside of a fragment.
+     */
+    ChunkTask(final CsvChunkReader reader, @Nullable final Queue<ChunkTask> completed,
+        @Nullable final LocalFragment fragment) {
+      super(reader);
+      this.completed = completed;
+      this.fragment = fragment;
+    }
+
+    @Override
+    protected void done() {
+      if (completed != null) {
+        completed.add(this);
+      }
+      if (fragment != null) {
+        fragment.notifyNewInput();
+      }
+    }
+  }
+
   @Override
   public Schema generateSchema() {
     return schema;
@@ -236,7 +468,24 @@ public final class FileScan extends LeafOperator {
 
   @Override
   protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
-    buffer = new TupleBatchBuffer(getSchema());
+    batchSize = TupleBatch.batchSize(getSchema(), TupleBatch.getMaxBatchBytes(execEnvVars));
+    parallel = false;
+    if (numThreads > 1 || numSplits > 1) {
+      try {
+        initParallel(execEnvVars);
+      } catch (IOException e) {
+        throw new DbException(e);
+      }
+      if (parallel) {
+        return;
+      }
+      if (numSplits > 1) {
+        throw new DbException("Cannot read split " + splitIndex + " of " + numSplits + " of " + source);
+      }
+      LOGGER.info("Cannot parse {} in parallel, scanning it on one thread", source);
+    }
+
+    buffer = new TupleBatchBuffer(getSchema(), batchSize);
     try {
       parser =
           new CSVParser(new BufferedReader(new InputStreamReader(source.getInputStream())), CSVFormat.newFormat(
@@ -251,4 +500,40 @@ public final class FileScan extends LeafOperator {
 
     lineNumber = 0;
   }
+
+  /**
+   * Set up a parallel scan if the source and the format allow it.
+   * 
+   * @param execEnvVars execution environment variables
+   * @throws IOException if there is an error accessing the source.
+   */
+  private void initParallel(final ImmutableMap<String, Object> execEnvVars) throws IOException {
+    if (!canSplit()) {
+      return;
+    }
+    final long length = ((SeekableDataSource) source).length();
+
+    splitStart = length / numSplits * splitIndex + length % numSplits * splitIndex / numSplits;
+    splitEnd = length / numSplits * (splitIndex + 1) + length % numSplits * (splitIndex + 1) / numSplits;
+    final long splitLength = splitEnd - splitStart;
+    final long maxChunkBytes = MAX_IN_FLIGHT_BYTES / (CHUNKS_IN_FLIGHT_PER_THREAD * numThreads);
+    chunkBytes = Math.max(MIN_CHUNK_BYTES, Math.min(maxChunkBytes, splitLength / (CHUNKS_PER_THREAD * numThreads)));
+    numChunks = Math.max(1, (splitLength + chunkBytes - 1) / chunkBytes);
+    nextChunk = 0;
+    inFlight = 0;
+    pending = new ArrayDeque<>();
+    completed = new ConcurrentLinkedQueue<>();
+    ready = new ArrayDeque<>();
+    fragment = null;
+    if (execEnvVars != null) {
+      final LocalFragmentResourceManager resourceManager =
+          (LocalFragmentResourceManager) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_FRAGMENT_RESOURCE_MANAGER);
+      if (resourceManager != null) {
+        fragment = resourceManager.getFragment();
+      }
+    }
+    executor = Executors.newFixedThreadPool(numThreads, new RenamingThreadFactory("CSV parser of " + getOpName()));
+    parallel = true;
+    submitChunks();
+  }
 }
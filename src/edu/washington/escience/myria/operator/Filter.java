@@ -1,6 +1,5 @@
 package edu.washington.escience.myria.operator;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.BitSet;
 
 import com.google.common.base.Preconditions;
@@ -9,8 +8,8 @@ import com.google.common.collect.ImmutableMap;
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.expression.Expression;
-import edu.washington.escience.myria.expression.evaluate.BooleanEvaluator;
 import edu.washington.escience.myria.expression.evaluate.ExpressionOperatorParameter;
+import edu.washington.escience.myria.expression.evaluate.VectorizedBooleanEvaluator;
 import edu.washington.escience.myria.storage.TupleBatch;
 
 /**
@@ -28,7 +27,7 @@ public final class Filter extends UnaryOperator {
   /**
    * Evaluator that evaluates {@link #predicate}.
    */
-  private BooleanEvaluator evaluator;
+  private VectorizedBooleanEvaluator evaluator;
 
   /**
    * Constructor accepts a predicate to apply and a child operator to read tuples to filter from.
@@ -45,18 +44,7 @@ public final class Filter extends UnaryOperator {
   protected TupleBatch fetchNextReady() throws DbException {
     Operator child = getChild();
     for (TupleBatch tb = child.nextReady(); tb != null; tb = child.nextReady()) {
-      BitSet bits = new BitSet(tb.numTuples());
-      for (int rowIdx = 0; rowIdx < tb.numTuples(); rowIdx++) {
-        Boolean valid;
-        try {
-          valid = evaluator.eval(tb, rowIdx);
-        } catch (InvocationTargetException e) {
-          throw new DbException(e);
-        }
-        if (valid) {
-          bits.set(rowIdx);
-        }
-      }
+      BitSet bits = evaluator.evaluateMask(tb);
 
       if (bits.cardinality() == 0) {
         continue;
@@ -75,10 +63,8 @@ public final class Filter extends UnaryOperator {
 
     final ExpressionOperatorParameter parameters = new ExpressionOperatorParameter(inputSchema, getNodeID());
 
-    evaluator = new BooleanEvaluator(predicate, parameters);
-    if (evaluator.needsCompiling()) {
-      evaluator.compile();
-    }
+    evaluator = new VectorizedBooleanEvaluator(predicate, parameters);
+    evaluator.compile();
   }
 
   @Override
@@ -2,7 +2,6 @@ package edu.washington.escience.myria.operator;
 
 import java.util.ArrayList;
 import java.util.LinkedList;
-import java.util.List;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -193,7 +192,7 @@ public class IDBController extends Operator implements StreamingStateful {
   public final TupleBatch fetchNextReadySync() throws DbException {
     // 1. keeps all the incoming tuples in a buffer without passing them through the streaming state.
     // 2. receives an EOI from iterationInput.
-    // 3. generating delta tuples of the previous iteration by passing buffered tuples through the streaming state.
+    // 3. generating delta tuples of the previous iteration by passing all buffered tuples to the streaming state.
     // 4. feeding the delta tuples to the downstream operator as input.
 
     TupleBatch tb;
@@ -212,20 +211,8 @@ public class IDBController extends Operator implements StreamingStateful {
       bufferedIterTBs.add(tb);
     }
     if (iterationInput.eoi() && !bufferCleared) {
-      StreamingState tmpState = state.newInstanceFromMyself();
-      tmpState.setAttachedOperator(this);
-      tmpState.init(null);
-      for (TupleBatch tb1 : bufferedIterTBs) {
-        tmpState.update(tb1);
-      }
-      List<TupleBatch> tmp = tmpState.exportState();
       Preconditions.checkArgument(deltaTuples.size() == 0);
-      for (TupleBatch tb1 : tmp) {
-        tb = state.update(tb1);
-        if (tb != null) {
-          deltaTuples.add(tb);
-        }
-      }
+      deltaTuples.addAll(state.updateIteration(bufferedIterTBs));
       emptyDelta = (deltaTuples.size() == 0);
       bufferedIterTBs.clear();
       bufferCleared = true;
@@ -7,21 +7,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableMap;
-import com.gs.collections.api.block.procedure.primitive.IntProcedure;
-import com.gs.collections.impl.list.mutable.primitive.IntArrayList;
-import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.storage.JoinHashTable;
 import edu.washington.escience.myria.storage.MutableTupleBuffer;
 import edu.washington.escience.myria.storage.TupleBatch;
-import edu.washington.escience.myria.storage.TupleUtils;
-import edu.washington.escience.myria.util.HashUtils;
 
 /**
  * Keeps min value. It adds newly met unique tuples into a buffer so that the source TupleBatches are not referenced.
  * This implementation reduces memory consumption.
+ *
+ * The tuples are kept in a {@link JoinHashTable} on the key columns, see {@link #getTable()}.
  * */
 public final class KeepAndSortOnMinValue extends StreamingState {
 
@@ -34,14 +32,9 @@ public final class KeepAndSortOnMinValue extends StreamingState {
   static final Logger LOGGER = LoggerFactory.getLogger(KeepAndSortOnMinValue.class);
 
   /**
-   * Indices to unique tuples.
+   * The unique tuples, indexed on the key columns.
    * */
-  private transient IntObjectHashMap<IntArrayList> uniqueTupleIndices;
-
-  /**
-   * The buffer for storing unique tuples.
-   * */
-  private transient MutableTupleBuffer uniqueTuples = null;
+  private transient JoinHashTable uniqueTuples = null;
 
   /** column indices of the key. */
   private final int[] keyColIndices;
@@ -61,7 +54,6 @@ public final class KeepAndSortOnMinValue extends StreamingState {
   @Override
   public void cleanup() {
     uniqueTuples = null;
-    uniqueTupleIndices = null;
   }
 
   /**
@@ -73,16 +65,17 @@ public final class KeepAndSortOnMinValue extends StreamingState {
    * @return true if equals.
    * */
   private boolean shouldReplace(final int index, final Column<?> column, final int row) {
+    final MutableTupleBuffer data = uniqueTuples.getData();
     Type t = column.getType();
     switch (t) {
       case INT_TYPE:
-        return column.getInt(row) < uniqueTuples.getInt(valueColIndex, index);
+        return column.getInt(row) < data.getInt(valueColIndex, index);
       case FLOAT_TYPE:
-        return column.getFloat(row) < uniqueTuples.getFloat(valueColIndex, index);
+        return column.getFloat(row) < data.getFloat(valueColIndex, index);
       case DOUBLE_TYPE:
-        return column.getDouble(row) < uniqueTuples.getDouble(valueColIndex, index);
+        return column.getDouble(row) < data.getDouble(valueColIndex, index);
       case LONG_TYPE:
-        return column.getLong(row) < uniqueTuples.getLong(valueColIndex, index);
+        return column.getLong(row) < data.getLong(valueColIndex, index);
       default:
         throw new IllegalStateException("type " + t + " is not supported in KeepMinValue.replace()");
     }
@@ -99,31 +92,19 @@ public final class KeepAndSortOnMinValue extends StreamingState {
     if (numTuples <= 0) {
       return tb;
     }
-    doReplace.inputTB = tb;
-    final List<? extends Column<?>> columns = tb.getDataColumns();
+    final Column<?> valueColumn = tb.getDataColumns().get(valueColIndex);
+    final int[] hashes = tb.getRowHashes(keyColIndices);
     final BitSet toRemove = new BitSet(numTuples);
     for (int i = 0; i < numTuples; ++i) {
-      final int nextIndex = uniqueTuples.numTuples();
-      final int cntHashCode = HashUtils.hashSubRow(tb, keyColIndices, i);
-      IntArrayList tupleIndexList = uniqueTupleIndices.get(cntHashCode);
-      doReplace.unique = true;
-      if (tupleIndexList == null) {
-        tupleIndexList = new IntArrayList();
-        tupleIndexList.add(nextIndex);
-        uniqueTupleIndices.put(cntHashCode, tupleIndexList);
+      final int cntHashCode = hashes[i];
+      final int index = uniqueTuples.firstMatch(tb, keyColIndices, i, cntHashCode);
+      if (index == JoinHashTable.NONE) {
+        uniqueTuples.add(tb, i, cntHashCode);
       } else {
-        doReplace.replaced = false;
-        doReplace.row = i;
-        tupleIndexList.forEach(doReplace);
-        if (!doReplace.unique && !doReplace.replaced) {
-          toRemove.set(i);
-        }
-      }
-      if (doReplace.unique) {
-        for (int j = 0; j < tb.numColumns(); ++j) {
-          uniqueTuples.put(j, columns.get(j), i);
+        if (shouldReplace(index, valueColumn, i)) {
+          uniqueTuples.getData().replace(valueColIndex, index, valueColumn, i);
         }
-        tupleIndexList.add(nextIndex);
+        toRemove.set(i);
       }
     }
     return tb.filterOut(toRemove);
@@ -136,9 +117,7 @@ public final class KeepAndSortOnMinValue extends StreamingState {
 
   @Override
   public void init(final ImmutableMap<String, Object> execEnvVars) {
-    uniqueTupleIndices = new IntObjectHashMap<>();
-    uniqueTuples = new MutableTupleBuffer(getSchema());
-    doReplace = new ReplaceProcedure();
+    uniqueTuples = new JoinHashTable(getSchema(), keyColIndices);
   }
 
   @Override
@@ -152,47 +131,17 @@ public final class KeepAndSortOnMinValue extends StreamingState {
 
   @Override
   public List<TupleBatch> exportState() {
-    MutableTupleBuffer tmp = uniqueTuples.clone();
+    MutableTupleBuffer tmp = uniqueTuples.getData().clone();
     sortOn(tmp, valueColIndex);
     return tmp.getAll();
   }
 
   /**
-   * Traverse through the list of tuples and replace old values.
+   * @return the tuples with the min value of each key, indexed on the key columns, e.g., to be probed by a join.
    * */
-  private transient ReplaceProcedure doReplace;
-
-  /**
-   * Traverse through the list of tuples with the same hash code.
-   * */
-  private final class ReplaceProcedure implements IntProcedure {
-
-    /** serial version id. */
-    private static final long serialVersionUID = 1L;
-
-    /** row index of the tuple. */
-    private int row;
-
-    /** input TupleBatch. */
-    private TupleBatch inputTB;
-
-    /** if found a replacement. */
-    private boolean replaced;
-
-    /** if the given tuple doesn't exist. */
-    private boolean unique;
-
-    @Override
-    public void value(final int index) {
-      if (TupleUtils.tupleEquals(inputTB, keyColIndices, row, uniqueTuples, keyColIndices, index)) {
-        unique = false;
-        Column<?> valueColumn = inputTB.getDataColumns().get(valueColIndex);
-        if (shouldReplace(index, valueColumn, row)) {
-          uniqueTuples.replace(valueColIndex, index, valueColumn, row);
-        }
-      }
-    }
-  };
+  public JoinHashTable getTable() {
+    return uniqueTuples;
+  }
 
   /**
    * sort the given TukpleBuffer on a column.
@@ -7,21 +7,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableMap;
-import com.gs.collections.api.block.procedure.primitive.IntProcedure;
-import com.gs.collections.impl.list.mutable.primitive.IntArrayList;
-import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.storage.JoinHashTable;
 import edu.washington.escience.myria.storage.MutableTupleBuffer;
+import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.TupleBatch;
-import edu.washington.escience.myria.storage.TupleUtils;
-import edu.washington.escience.myria.util.HashUtils;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
 
 /**
  * Keeps min vaule. It adds newly meet unique tuples into a buffer so that the source TupleBatches are not referenced.
  * This implementation reduces memory consumption.
+ *
+ * The tuples are kept in a {@link JoinHashTable} on the key columns, so no objects are allocated per key, and the
+ * accumulated relation can be probed directly, see {@link #getTable()}.
  * */
 public final class KeepMinValue extends StreamingState {
 
@@ -34,14 +35,9 @@ public final class KeepMinValue extends StreamingState {
   static final Logger LOGGER = LoggerFactory.getLogger(KeepMinValue.class);
 
   /**
-   * Indices to unique tuples.
+   * The unique tuples, indexed on the key columns.
    * */
-  private transient IntObjectHashMap<IntArrayList> uniqueTupleIndices;
-
-  /**
-   * The buffer for stroing unique tuples.
-   * */
-  private transient MutableTupleBuffer uniqueTuples = null;
+  private transient JoinHashTable uniqueTuples = null;
 
   /** column indices of the key. */
   private final int[] keyColIndices;
@@ -61,7 +57,6 @@ public final class KeepMinValue extends StreamingState {
   @Override
   public void cleanup() {
     uniqueTuples = null;
-    uniqueTupleIndices = null;
   }
 
   /**
@@ -73,57 +68,51 @@ public final class KeepMinValue extends StreamingState {
    * @return true if equals.
    * */
   private boolean shouldReplace(final int index, final Column<?> column, final int row) {
+    final MutableTupleBuffer data = uniqueTuples.getData();
     Type t = column.getType();
     switch (t) {
       case INT_TYPE:
-        return column.getInt(row) < uniqueTuples.getInt(valueColIndex, index);
+        return column.getInt(row) < data.getInt(valueColIndex, index);
       case FLOAT_TYPE:
-        return column.getFloat(row) < uniqueTuples.getFloat(valueColIndex, index);
+        return column.getFloat(row) < data.getFloat(valueColIndex, index);
       case DOUBLE_TYPE:
-        return column.getDouble(row) < uniqueTuples.getDouble(valueColIndex, index);
+        return column.getDouble(row) < data.getDouble(valueColIndex, index);
       case LONG_TYPE:
-        return column.getLong(row) < uniqueTuples.getLong(valueColIndex, index);
+        return column.getLong(row) < data.getLong(valueColIndex, index);
       default:
         throw new IllegalStateException("type " + t + " is not supported in KeepMinValue.replace()");
     }
   }
 
   /**
-   * Do duplicate elimination for tb.
+   * Keep the min value of each key of tb.
    * 
-   * @param tb the TupleBatch for performing DupElim.
-   * @return the duplicate eliminated TB.
+   * @param tb the TupleBatch.
+   * @param changed if not null, the indices of the tuples in the state that are added or replaced are set in it.
+   * @return the tuples of tb that are added to the state or replace a tuple in it.
    * */
-  protected TupleBatch keepMinValue(final TupleBatch tb) {
+  protected TupleBatch keepMinValue(final TupleBatch tb, final BitSet changed) {
     final int numTuples = tb.numTuples();
     if (numTuples <= 0) {
       return tb;
     }
-    doReplace.inputTB = tb;
-    final List<? extends Column<?>> columns = tb.getDataColumns();
+    final Column<?> valueColumn = tb.getDataColumns().get(valueColIndex);
+    final int[] hashes = tb.getRowHashes(keyColIndices);
     final BitSet toRemove = new BitSet(numTuples);
     for (int i = 0; i < numTuples; ++i) {
-      final int nextIndex = uniqueTuples.numTuples();
-      final int cntHashCode = HashUtils.hashSubRow(tb, keyColIndices, i);
-      IntArrayList tupleIndexList = uniqueTupleIndices.get(cntHashCode);
-      doReplace.unique = true;
-      if (tupleIndexList == null) {
-        tupleIndexList = new IntArrayList();
-        tupleIndexList.add(nextIndex);
-        uniqueTupleIndices.put(cntHashCode, tupleIndexList);
+      final int cntHashCode = hashes[i];
+      int index = uniqueTuples.firstMatch(tb, keyColIndices, i, cntHashCode);
+      if (index == JoinHashTable.NONE) {
+        index = uniqueTuples.numTuples();
+        uniqueTuples.add(tb, i, cntHashCode);
+      } else if (shouldReplace(index, valueColumn, i)) {
+        uniqueTuples.getData().replace(valueColIndex, index, valueColumn, i);
       } else {
-        doReplace.replaced = false;
-        doReplace.row = i;
-        tupleIndexList.forEach(doReplace);
-        if (!doReplace.unique && !doReplace.replaced) {
-          toRemove.set(i);
-        }
+        toRemove.set(i);
+        continue;
       }
-      if (doReplace.unique) {
-        for (int j = 0; j < tb.numColumns(); ++j) {
-          uniqueTuples.put(j, columns.get(j), i);
-        }
-        tupleIndexList.add(nextIndex);
+      if (changed != null) {
+        changed.set(index);
       }
     }
     return tb.filterOut(toRemove);
@@ -136,62 +125,53 @@ public final class KeepMinValue extends StreamingState {
 
   @Override
   public void init(final ImmutableMap<String, Object> execEnvVars) {
-    uniqueTupleIndices = new IntObjectHashMap<>();
-    uniqueTuples = new MutableTupleBuffer(getSchema());
-    doReplace = new ReplaceProcedure();
+    uniqueTuples = new JoinHashTable(getSchema(), keyColIndices);
   }
 
   @Override
   public TupleBatch update(final TupleBatch tb) {
-    TupleBatch newtb = keepMinValue(tb);
+    TupleBatch newtb = keepMinValue(tb, null);
     if (newtb.numTuples() > 0 || newtb.isEOI()) {
       return newtb;
     }
     return null;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * The TBs are applied to the state directly, and the tuples of the state that are added or replaced during the
+   * iteration are returned afterwards, with their final values.
+   * */
   @Override
-  public List<TupleBatch> exportState() {
-    return uniqueTuples.getAll();
+  public List<TupleBatch> updateIteration(final List<TupleBatch> tbs) {
+    final BitSet changed = new BitSet();
+    for (TupleBatch tb : tbs) {
+      keepMinValue(tb, changed);
+    }
+    final MutableTupleBuffer data = uniqueTuples.getData();
+    final TupleBatchBuffer delta = new TupleBatchBuffer(getSchema());
+    for (int index = changed.nextSetBit(0); index >= 0; index = changed.nextSetBit(index + 1)) {
+      final int row = data.getTupleIndexInContainingTB(index);
+      final ReadableColumn[] columns = data.getColumns(index);
+      for (int column = 0; column < columns.length; ++column) {
+        delta.put(column, columns[column], row);
+      }
+    }
+    return delta.getAll();
   }
 
-  /**
-   * Traverse through the list of tuples and replace old values.
-   * */
-  private transient ReplaceProcedure doReplace;
+  @Override
+  public List<TupleBatch> exportState() {
+    return uniqueTuples.getData().getAll();
+  }
 
   /**
-   * Traverse through the list of tuples with the same hash code.
+   * @return the tuples with the min value of each key, indexed on the key columns, e.g., to be probed by a join.
    * */
-  private final class ReplaceProcedure implements IntProcedure {
-
-    /** serial version id. */
-    private static final long serialVersionUID = 1L;
-
-    /** row index of the tuple. */
-    private int row;
-
-    /** input TupleBatch. */
-    private TupleBatch inputTB;
-
-    /** if found a replacement. */
-    private boolean replaced;
-
-    /** if the given tuple doesn't exist. */
-    private boolean unique;
-
-    @Override
-    public void value(final int index) {
-      if (TupleUtils.tupleEquals(inputTB, keyColIndices, row, uniqueTuples, keyColIndices, index)) {
-        unique = false;
-        Column<?> valueColumn = inputTB.getDataColumns().get(valueColIndex);
-        if (shouldReplace(index, valueColumn, row)) {
-          uniqueTuples.replace(valueColIndex, index, valueColumn, row);
-          replaced = true;
-        }
-      }
-    }
-  };
+  public JoinHashTable getTable() {
+    return uniqueTuples;
+  }
 
   @Override
   public int numTuples() {
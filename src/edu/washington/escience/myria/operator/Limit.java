@@ -5,6 +5,7 @@ import java.util.Objects;
 import javax.annotation.Nonnull;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.primitives.Ints;
 
 import edu.washington.escience.myria.DbException;
@@ -12,9 +13,9 @@ import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.storage.TupleBatch;
 
 /**
- * A poor implementation of a Limit operator, which emits the first N tuples then drops the rest on the floor.
- * 
- * We would prefer one that stops the incoming stream, but this is not currently supported.
+ * A Limit operator, which emits the first N tuples then stops its child, see {@link Operator#stopEarly()}. The stop
+ * reaches the producers of any consumers below, so that remote fragments do not compute tuples that would be dropped.
+ * If the child is a {@link DbQueryScan}, the limit is also added to its SQL query.
  */
 public final class Limit extends UnaryOperator {
 
@@ -40,19 +41,33 @@ public final class Limit extends UnaryOperator {
     toEmit = this.limit;
   }
 
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) {
+    toEmit = limit;
+    if (getChild() instanceof DbQueryScan) {
+      ((DbQueryScan) getChild()).pushLimit(limit);
+    }
+  }
+
   @Override
   protected TupleBatch fetchNextReady() throws DbException {
     Operator child = getChild();
+    if (toEmit == 0) {
+      /* The child then reports EOS, and so does this operator. */
+      child.stopEarly();
+      return null;
+    }
     for (TupleBatch tb = child.nextReady(); tb != null; tb = child.nextReady()) {
-      if (tb.numTuples() <= toEmit) {
+      if (tb.numTuples() < toEmit) {
         toEmit -= tb.numTuples();
         return tb;
-      } else if (toEmit > 0) {
+      }
+      if (tb.numTuples() > toEmit) {
         tb = tb.prefix(Ints.checkedCast(toEmit));
-        toEmit = 0;
-        return tb;
       }
-      /* Else, drop on the floor. */
+      toEmit = 0;
+      child.stopEarly();
+      return tb;
     }
     return null;
   }
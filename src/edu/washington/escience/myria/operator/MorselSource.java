@@ -0,0 +1,60 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * The leaf of a pipeline that is run by {@link ParallelPipeline}. Each copy of the pipeline takes morsels, i.e.
+ * TupleBatches, from a queue that is shared by all copies, until the queue yields {@link #END_OF_MORSELS}.
+ */
+public final class MorselSource extends LeafOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** Marks that no more morsels will be put into a queue. One is put for each copy of the pipeline. */
+  static final TupleBatch END_OF_MORSELS = TupleBatch.eoiTupleBatch(Schema.EMPTY_SCHEMA);
+
+  /** The schema of the morsels. */
+  private Schema schema;
+  /** The queue of morsels, set by {@link ParallelPipeline} on each copy of the pipeline. */
+  private transient BlockingQueue<TupleBatch> morsels;
+
+  /**
+   * @param schema the schema of the morsels, or null if it is set later by {@link #setSchema(Schema)}.
+   */
+  public MorselSource(final Schema schema) {
+    this.schema = schema;
+  }
+
+  /**
+   * @param schema the schema of the morsels, i.e., of the child of the {@link ParallelPipeline}.
+   */
+  public void setSchema(final Schema schema) {
+    this.schema = Objects.requireNonNull(schema, "schema");
+  }
+
+  /**
+   * @param morsels the queue of morsels.
+   */
+  void setMorsels(final BlockingQueue<TupleBatch> morsels) {
+    this.morsels = morsels;
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws InterruptedException {
+    final TupleBatch morsel = morsels.take();
+    if (morsel == END_OF_MORSELS) {
+      return null;
+    }
+    return morsel;
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    return schema;
+  }
+}
@@ -459,6 +459,43 @@ public abstract class Operator implements Serializable {
    */
   protected abstract TupleBatch fetchNextReady() throws Exception;
 
+  /**
+   * Stop this operator before the end of its input, because its consumer needs no more tuples, e.g. a satisfied
+   * {@link Limit}. This operator and all its descendants are set to EOS, and may release their resources right away,
+   * see {@link #stopped()}, instead of when the fragment finishes. A
+   * {@link edu.washington.escience.myria.operator.network.Consumer} tells its producers to stop too.
+   * 
+   * @throws DbException if any error occurs
+   */
+  public final void stopEarly() throws DbException {
+    if (!open || eos()) {
+      return;
+    }
+    setEOS();
+    eoi = false;
+    for (final Operator child : getChildren()) {
+      if (child != null) {
+        child.stopEarly();
+      }
+    }
+    try {
+      stopped();
+    } catch (DbException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Release the resources that are no longer needed after {@link #stopEarly()}. {@link #cleanup()} is still called when
+   * the operator is closed.
+   * 
+   * @throws Exception if any error occurs
+   */
+  protected void stopped() throws Exception {
+  }
+
   /**
    * Explicitly set EOS for this operator.
    * 
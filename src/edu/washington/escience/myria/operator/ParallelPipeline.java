@@ -0,0 +1,263 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.SerializationUtils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.parallel.LocalFragment;
+import edu.washington.escience.myria.parallel.LocalFragmentResourceManager;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.concurrent.RenamingThreadFactory;
+
+/**
+ * Runs copies of a pipeline on several threads of the worker, so that a single fragment can use more than one core.
+ *
+ * The pipeline is a tree of operators with one {@link MorselSource} leaf. Each thread runs its own copy of the
+ * pipeline. The TupleBatches of the child are the morsels: the fragment thread pulls them from the child and puts them
+ * into a queue, from which the copies take them as soon as they are idle. The outputs of the copies are returned by
+ * this operator in the order in which they are produced, so the order of the input is not kept.
+ *
+ * Stateful operators in the pipeline keep one state per thread. For example, a MultiGroupByAggregate in PARTIAL mode
+ * in the pipeline and one in FINAL mode above this operator aggregate in parallel, without any state shared by the
+ * threads.
+ *
+ * The child must not produce EOIs.
+ */
+public final class ParallelPipeline extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The number of morsels per thread that may wait in the queue. */
+  private static final int QUEUED_MORSELS_PER_THREAD = 2;
+
+  /** The pipeline, copied for each thread. */
+  private Operator pipeline;
+  /** The number of threads, or 0 for one per available processor. */
+  private final int numThreads;
+
+  /** The threads that run the copies of the pipeline. */
+  private transient ExecutorService executor;
+  /** The morsels that are waiting for a copy of the pipeline. */
+  private transient BlockingQueue<TupleBatch> morsels;
+  /** The outputs of the copies of the pipeline. */
+  private transient ConcurrentLinkedQueue<TupleBatch> outputs;
+  /** The number of copies of the pipeline that have not finished. */
+  private transient AtomicInteger runningCopies;
+  /** The first failure of a copy of the pipeline, if any. */
+  private transient volatile Throwable failure;
+  /** The fragment to be woken up when a copy makes progress, or null outside of a fragment. */
+  private transient LocalFragment fragment;
+  /** True once the child is exhausted and all copies have been told so. */
+  private transient boolean inputDone;
+  /** The number of copies of the pipeline. */
+  private transient int copies;
+
+  /**
+   * @param child the source of the morsels.
+   * @param pipeline the pipeline, whose {@link MorselSource} leaf has the schema of the child, or null if it is set
+   *          later by {@link #setPipeline(Operator)}.
+   * @param numThreads the number of threads, or 0 for one per available processor.
+   */
+  public ParallelPipeline(final Operator child, final Operator pipeline, final int numThreads) {
+    super(child);
+    this.pipeline = pipeline;
+    Preconditions.checkArgument(numThreads >= 0, "numThreads must be non-negative");
+    this.numThreads = numThreads;
+  }
+
+  /**
+   * @param pipeline the pipeline, whose {@link MorselSource} leaf has the schema of the child.
+   */
+  public void setPipeline(final Operator pipeline) {
+    Preconditions.checkState(this.pipeline == null, "The pipeline of %s has already been set", getOpName());
+    this.pipeline = Objects.requireNonNull(pipeline, "pipeline");
+  }
+
+  /**
+   * @return the {@link MorselSource} leaf of the pipeline, or null if there is none.
+   */
+  public MorselSource getMorselSource() {
+    Preconditions.checkState(pipeline != null, "The pipeline of %s has not been set", getOpName());
+    return findSource(pipeline);
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws Exception {
+    Preconditions.checkState(pipeline != null, "The pipeline of %s has not been set", getOpName());
+    copies = numThreads > 0 ? numThreads : Runtime.getRuntime().availableProcessors();
+    morsels = new ArrayBlockingQueue<>(copies * QUEUED_MORSELS_PER_THREAD + copies);
+    outputs = new ConcurrentLinkedQueue<>();
+    runningCopies = new AtomicInteger(copies);
+    failure = null;
+    inputDone = false;
+    fragment = null;
+    if (execEnvVars != null) {
+      final LocalFragmentResourceManager resourceManager =
+          (LocalFragmentResourceManager) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_FRAGMENT_RESOURCE_MANAGER);
+      if (resourceManager != null) {
+        fragment = resourceManager.getFragment();
+      }
+    }
+
+    final List<Operator> instances = new ArrayList<>(copies);
+    for (int i = 0; i < copies; ++i) {
+      final Operator instance = SerializationUtils.clone(pipeline);
+      final MorselSource source = findSource(instance);
+      Preconditions.checkArgument(source != null, "The pipeline has no %s leaf", MorselSource.class.getSimpleName());
+      Preconditions.checkArgument(source.getSchema().equals(getChild().getSchema()),
+          "The schema of the %s leaf does not match the schema of the child", MorselSource.class.getSimpleName());
+      source.setMorsels(morsels);
+      instance.open(execEnvVars);
+      instances.add(instance);
+    }
+
+    executor = Executors.newFixedThreadPool(copies, new RenamingThreadFactory("Morsel worker of " + getOpName()));
+    for (final Operator instance : instances) {
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          runCopy(instance);
+        }
+      });
+    }
+  }
+
+  /**
+   * @param op the root of a copy of the pipeline.
+   * @return the {@link MorselSource} leaf of the copy, or null if there is none.
+   */
+  private static MorselSource findSource(final Operator op) {
+    if (op instanceof MorselSource) {
+      return (MorselSource) op;
+    }
+    for (Operator child : op.getChildren()) {
+      final MorselSource source = findSource(child);
+      if (source != null) {
+        return source;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Run a copy of the pipeline until its morsels are exhausted.
+   *
+   * @param instance the root of the copy.
+   */
+  private void runCopy(final Operator instance) {
+    try {
+      while (!instance.eos() && !Thread.currentThread().isInterrupted()) {
+        final TupleBatch tb = instance.nextReady();
+        if (tb != null) {
+          outputs.add(tb);
+        } else if (instance.eoi()) {
+          instance.setEOI(false);
+        }
+        wakeUp();
+      }
+    } catch (Throwable e) {
+      if (failure == null) {
+        failure = e;
+      }
+    } finally {
+      try {
+        instance.close();
+      } catch (DbException e) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+      runningCopies.decrementAndGet();
+      wakeUp();
+    }
+  }
+
+  /**
+   * Let the fragment pick up the progress of a copy of the pipeline.
+   */
+  private void wakeUp() {
+    if (fragment != null) {
+      fragment.notifyNewInput();
+    }
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    if (failure != null) {
+      throw new DbException("A copy of the pipeline failed", failure);
+    }
+
+    final Operator child = getChild();
+    while (!inputDone && morsels.remainingCapacity() > copies) {
+      final TupleBatch tb = child.nextReady();
+      if (tb != null) {
+        morsels.add(tb);
+      } else if (child.eos()) {
+        for (int i = 0; i < copies; ++i) {
+          morsels.add(MorselSource.END_OF_MORSELS);
+        }
+        inputDone = true;
+      } else {
+        if (child.eoi()) {
+          child.setEOI(false);
+        }
+        break;
+      }
+    }
+
+    return outputs.poll();
+  }
+
+  @Override
+  protected void checkEOSAndEOI() {
+    /*
+     * Copies may also finish before the input does, e.g. if they end in a limit. A failed copy sets the failure before
+     * it stops running, so a failure is never mistaken for the end of the outputs, and is thrown by fetchNextReady.
+     */
+    if (runningCopies.get() == 0 && outputs.isEmpty() && failure == null) {
+      setEOS();
+    }
+  }
+
+  @Override
+  protected void stopped() {
+    /* Interrupt the copies, their outputs are no longer needed. */
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  @Override
+  protected void cleanup() throws Exception {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+    morsels = null;
+    outputs = null;
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    if (pipeline == null) {
+      return null;
+    }
+    return pipeline.getSchema();
+  }
+}
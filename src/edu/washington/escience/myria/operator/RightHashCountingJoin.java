@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.operator;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
@@ -15,16 +16,24 @@ import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.ConstantValueColumn;
+import edu.washington.escience.myria.column.IntArrayColumn;
 import edu.washington.escience.myria.storage.MutableTupleBuffer;
+import edu.washington.escience.myria.storage.SpillFile;
+import edu.washington.escience.myria.storage.SpilledPartitions;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
 import edu.washington.escience.myria.storage.TupleUtils;
 import edu.washington.escience.myria.util.HashUtils;
+import edu.washington.escience.myria.util.MyriaUtils;
 
 /**
  * 
  * Counting join which will only build hash table of the right child.
  * 
+ * If the number of distinct keys from the right child exceeds the configured max number of in-memory tuples, see
+ * {@link SpilledPartitions#getMaxInMemoryTuples}, the keys of both children are partitioned by hash into files on disk
+ * and counted partition by partition once both children are EOS.
  */
 public class RightHashCountingJoin extends BinaryOperator {
   /**
@@ -65,6 +74,18 @@ public class RightHashCountingJoin extends BinaryOperator {
   /** The name of the single column output from this operator. */
   private final String columnName;
 
+  /** The name of the column that holds the number of occurrences of each spilled key from the right child. */
+  private static final String SPILLED_COUNT_COLUMN = "_occurredTimes";
+
+  /** The max number of keys in {@link #hashTable} before the children are spilled to disk. */
+  private transient long maxInMemoryTuples;
+  /** The directory to spill to. */
+  private transient File spillDirectory;
+  /** The spilled keys from the right child and their number of occurrences, or null if nothing has been spilled. */
+  private transient SpilledPartitions spilledRight;
+  /** The spilled keys from the left child, or null if nothing has been spilled. */
+  private transient SpilledPartitions spilledLeft;
+
   /**
    * Whether this operator has returned answer or not.
    * */
@@ -168,6 +189,14 @@ public class RightHashCountingJoin extends BinaryOperator {
     occurredTimes = null;
     ansTBB = null;
     ans = 0;
+    if (spilledRight != null) {
+      spilledRight.delete();
+      spilledRight = null;
+    }
+    if (spilledLeft != null) {
+      spilledLeft.delete();
+      spilledLeft = null;
+    }
   }
 
   @Override
@@ -236,6 +265,9 @@ public class RightHashCountingJoin extends BinaryOperator {
      */
     if (isEOIReady()) {
       if (left.eos() && right.eos() && (!hasReturnedAnswer)) {
+        if (spilledRight != null) {
+          countSpilledPartitions();
+        }
         ansTBB.putLong(0, ans);
         hasReturnedAnswer = true;
         return ansTBB.popAny();
@@ -255,38 +287,148 @@ public class RightHashCountingJoin extends BinaryOperator {
     doCountingJoin = new CountingJoinProcedure();
     ans = 0;
     ansTBB = new TupleBatchBuffer(getSchema());
+    maxInMemoryTuples = SpilledPartitions.getMaxInMemoryTuples(execEnvVars);
+    spillDirectory = SpilledPartitions.getSpillDirectory(execEnvVars);
   }
 
   /**
    * Process tuples from right child: build up hash tables.
    * 
    * @param tb the incoming TupleBatch.
+   * @throws DbException if there is an error spilling the keys to disk.
    */
-  protected void processRightChildTB(final TupleBatch tb) {
+  protected void processRightChildTB(final TupleBatch tb) throws DbException {
+    if (spilledRight != null) {
+      final TupleBatch keys =
+          tb.selectColumns(rightCompareIndx, hashTable.getSchema()).appendColumn(SPILLED_COUNT_COLUMN,
+              new ConstantValueColumn(1, Type.INT_TYPE, tb.numTuples()));
+      final int[] hashes = tb.getRowHashes(rightCompareIndx);
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        spilledRight.add(keys, row, hashes[row]);
+      }
+      return;
+    }
+
+    final int[] hashes = tb.getRowHashes(rightCompareIndx);
     for (int row = 0; row < tb.numTuples(); ++row) {
-      final int cntHashCode = HashUtils.hashSubRow(tb, rightCompareIndx, row);
+      final int cntHashCode = hashes[row];
       // only build hash table on two sides if none of the children is EOS
-      updateHashTableAndOccureTimes(tb, row, cntHashCode, hashTable, hashTableIndices, rightCompareIndx, occurredTimes);
+      updateHashTableAndOccureTimes(tb, row, cntHashCode, hashTable, hashTableIndices, rightCompareIndx,
+          occurredTimes, 1);
+    }
+    if (hashTable.numTuples() > maxInMemoryTuples) {
+      spill();
     }
   }
 
+  /**
+   * Move the keys in {@link #hashTable} and their number of occurrences to disk. From now on, the keys of both
+   * children are partitioned by hash and spilled to disk, and counted partition by partition once both children are
+   * EOS.
+   * 
+   * @throws DbException if there is an error spilling the keys to disk.
+   */
+  private void spill() throws DbException {
+    final Schema keySchema = hashTable.getSchema();
+    final int[] keyColumns = MyriaUtils.range(rightCompareIndx.length);
+    final int numPartitions = SpilledPartitions.DEFAULT_NUM_PARTITIONS;
+    spilledRight =
+        new SpilledPartitions(Schema.appendColumn(keySchema, Type.INT_TYPE, SPILLED_COUNT_COLUMN), spillDirectory,
+            numPartitions);
+    spilledLeft = new SpilledPartitions(getLeft().getSchema().getSubSchema(leftCompareIndx), spillDirectory,
+        numPartitions);
+
+    int index = 0;
+    for (final TupleBatch tb : hashTable.getAll()) {
+      final int[] counts = new int[tb.numTuples()];
+      for (int row = 0; row < counts.length; ++row) {
+        counts[row] = occurredTimes.get(index++);
+      }
+      final TupleBatch keys = tb.appendColumn(SPILLED_COUNT_COLUMN, new IntArrayColumn(counts, counts.length));
+      for (int row = 0; row < counts.length; ++row) {
+        spilledRight.add(keys, row, HashUtils.hashSubRow(tb, keyColumns, row));
+      }
+    }
+    hashTable = new MutableTupleBuffer(keySchema);
+    hashTableIndices = null;
+    occurredTimes = null;
+  }
+
+  /**
+   * Count the joining tuples of the spilled keys, one partition at a time, and add them to ans.
+   * 
+   * @throws DbException if there is an error reading or writing the spilled keys.
+   */
+  private void countSpilledPartitions() throws DbException {
+    spilledRight.finishWriting();
+    spilledLeft.finishWriting();
+    final Schema keySchema = hashTable.getSchema();
+    final int[] keyColumns = MyriaUtils.range(rightCompareIndx.length);
+    for (int partition = 0; partition < spilledLeft.numPartitions(); ++partition) {
+      if (spilledLeft.numTuples(partition) == 0) {
+        continue;
+      }
+
+      hashTable = new MutableTupleBuffer(keySchema);
+      hashTableIndices = new IntObjectHashMap<>();
+      occurredTimes = new IntArrayList();
+      final SpillFile.Reader rightReader = spilledRight.read(partition);
+      TupleBatch tb = rightReader.next();
+      while (tb != null) {
+        for (int row = 0; row < tb.numTuples(); ++row) {
+          updateHashTableAndOccureTimes(tb, row, HashUtils.hashSubRow(tb, keyColumns, row), hashTable,
+              hashTableIndices, keyColumns, occurredTimes, tb.getInt(keyColumns.length, row));
+        }
+        tb = rightReader.next();
+      }
+
+      final SpillFile.Reader leftReader = spilledLeft.read(partition);
+      tb = leftReader.next();
+      while (tb != null) {
+        countMatches(tb, keyColumns);
+        tb = leftReader.next();
+      }
+    }
+    hashTableIndices = null;
+    occurredTimes = null;
+  }
+
   /**
    * Process tuples from the left child: do the actual count join.
    * 
    * @param tb the incoming TupleBatch for processing join.
+   * @throws DbException if there is an error spilling the keys to disk.
    */
-  protected void processLeftChildTB(final TupleBatch tb) {
+  protected void processLeftChildTB(final TupleBatch tb) throws DbException {
+    if (spilledLeft != null) {
+      final TupleBatch keys = tb.selectColumns(leftCompareIndx, spilledLeft.getSchema());
+      final int[] hashes = tb.getRowHashes(leftCompareIndx);
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        spilledLeft.add(keys, row, hashes[row]);
+      }
+      return;
+    }
+    countMatches(tb, leftCompareIndx);
+  }
 
-    doCountingJoin.inputCmpColumns = leftCompareIndx;
+  /**
+   * Probe the hash table with the tuples of a TupleBatch and add the number of joining tuples to ans.
+   * 
+   * @param tb the probing TupleBatch.
+   * @param compareColumns the columns of tb that are compared to the keys in the hash table.
+   */
+  private void countMatches(final TupleBatch tb, final int[] compareColumns) {
+    doCountingJoin.inputCmpColumns = compareColumns;
     doCountingJoin.inputTB = tb;
     doCountingJoin.occuredTimesOnJoinAgainstChild = occurredTimes;
     doCountingJoin.joinAgainstHashTable = hashTable;
+    final int[] hashes = tb.getRowHashes(compareColumns);
     for (int row = 0; row < tb.numTuples(); ++row) {
 
       /*
        * update number of count of probing the other child's hash table.
        */
-      final int cntHashCode = HashUtils.hashSubRow(tb, doCountingJoin.inputCmpColumns, row);
+      final int cntHashCode = hashes[row];
       IntArrayList tuplesWithHashCode = hashTableIndices.get(cntHashCode);
       if (tuplesWithHashCode != null) {
         doCountingJoin.row = row;
@@ -303,10 +445,11 @@ public class RightHashCountingJoin extends BinaryOperator {
    * @param hashTableIndices the hash indices to be updated
    * @param compareColumns compareColumns of input tuple
    * @param occuredTimes occuredTimes array to be updated
+   * @param count the number of times the tuple occurred
    * */
   private void updateHashTableAndOccureTimes(final TupleBatch tb, final int row, final int hashCode,
       final MutableTupleBuffer hashTable, final IntObjectHashMap<IntArrayList> hashTableIndices,
-      final int[] compareColumns, final IntArrayList occuredTimes) {
+      final int[] compareColumns, final IntArrayList occuredTimes, final int count) {
 
     /* get the index of the tuple's hash code corresponding to */
     final int nextIndex = hashTable.numTuples();
@@ -326,7 +469,7 @@ public class RightHashCountingJoin extends BinaryOperator {
     for (int i = 0; i < tupleIndicesList.size(); ++i) {
       int index = tupleIndicesList.get(i);
       if (TupleUtils.tupleEquals(tb, compareColumns, row, hashTable, index)) {
-        occuredTimes.set(index, occuredTimes.get(index) + 1);
+        occuredTimes.set(index, occuredTimes.get(index) + count);
         found = true;
         break;
       }
@@ -337,7 +480,7 @@ public class RightHashCountingJoin extends BinaryOperator {
       for (int column = 0; column < hashTable.numColumns(); ++column) {
         hashTable.put(column, inputColumns.get(compareColumns[column]), row);
       }
-      occuredTimes.add(1);
+      occuredTimes.add(count);
     }
 
   }
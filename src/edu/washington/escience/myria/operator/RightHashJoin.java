@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.operator;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.List;
 
@@ -7,26 +8,28 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.gs.collections.api.block.procedure.primitive.IntProcedure;
-import com.gs.collections.impl.list.mutable.primitive.IntArrayList;
-import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.storage.JoinHashTable;
 import edu.washington.escience.myria.storage.MutableTupleBuffer;
 import edu.washington.escience.myria.storage.ReadableColumn;
+import edu.washington.escience.myria.storage.SpillFile;
+import edu.washington.escience.myria.storage.SpilledPartitions;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
-import edu.washington.escience.myria.storage.TupleUtils;
-import edu.washington.escience.myria.util.HashUtils;
 import edu.washington.escience.myria.util.MyriaArrayUtils;
 
 /**
  * This is an implementation of unbalanced hash join. This operator only builds hash tables for its right child, thus
  * will begin to output tuples after right child EOS.
  * 
+ * If the hash table grows beyond the configured max number of in-memory tuples, see
+ * {@link SpilledPartitions#getMaxInMemoryTuples}, the operator switches to a Grace hash join: the tuples of both
+ * children are partitioned by hash into files on disk, and once the left child is done, the partitions are joined one
+ * at a time, each with an in-memory hash table built from its right tuples.
  */
 public final class RightHashJoin extends BinaryOperator {
   /** Required for Java serialization. */
@@ -47,14 +50,10 @@ public final class RightHashJoin extends BinaryOperator {
   private final int[] rightCompareIndx;
 
   /**
-   * A hash table for tuples from child 2. {Hashcode -> List of tuple indices with the same hash code}
+   * A hash table for tuples from child 2.
    */
-  private transient IntObjectHashMap<IntArrayList> rightHashTableIndices;
+  private transient JoinHashTable rightHashTable;
 
-  /**
-   * The buffer holding the valid tuples from right.
-   */
-  private transient MutableTupleBuffer rightHashTable;
   /**
    * The buffer holding the results.
    */
@@ -64,50 +63,18 @@ public final class RightHashJoin extends BinaryOperator {
   /** Which columns in the right child are to be output. */
   private final int[] rightAnswerColumns;
 
-  /**
-   * Traverse through the list of tuples with the same hash code.
-   * */
-  private final class JoinProcedure implements IntProcedure {
-
-    /** serial version id. */
-    private static final long serialVersionUID = 1L;
-
-    /**
-     * Hash table.
-     * */
-    private MutableTupleBuffer joinAgainstHashTable;
-
-    /**
-     * 
-     * */
-    private int[] inputCmpColumns;
-
-    /**
-     * the columns to compare against.
-     * */
-    private int[] joinAgainstCmpColumns;
-    /**
-     * row index of the tuple.
-     * */
-    private int row;
-
-    /**
-     * input TupleBatch.
-     * */
-    private TupleBatch inputTB;
-
-    @Override
-    public void value(final int index) {
-      if (TupleUtils.tupleEquals(inputTB, inputCmpColumns, row, joinAgainstHashTable, joinAgainstCmpColumns, index)) {
-        addToAns(inputTB, row, joinAgainstHashTable, index);
-      }
-    }
-  };
-
-  /**
-   * Traverse through the list of tuples.
-   * */
-  private transient JoinProcedure doJoin;
+  /** The max number of tuples in {@link #rightHashTable} before the children are spilled to disk. */
+  private transient long maxInMemoryTuples;
+  /** The directory to spill to. */
+  private transient File spillDirectory;
+  /** The spilled tuples from the right child, or null if the right child has not been spilled. */
+  private transient SpilledPartitions spilledRight;
+  /** The spilled tuples from the left child, or null if the right child has not been spilled. */
+  private transient SpilledPartitions spilledLeft;
+  /** The partition currently being joined from disk, or -1 if no spilled partitions are being joined. */
+  private transient int joinPartition;
+  /** The reader over the spilled left tuples of {@link #joinPartition}. */
+  private transient SpillFile.Reader spilledLeftReader;
 
   /**
    * Construct an EquiJoin operator. It returns all columns from both children when the corresponding columns in
@@ -267,8 +234,19 @@ public final class RightHashJoin extends BinaryOperator {
   @Override
   protected void cleanup() throws DbException {
     rightHashTable = null;
-    rightHashTableIndices = null;
     ans = null;
+    if (spilledLeftReader != null) {
+      spilledLeftReader.close();
+      spilledLeftReader = null;
+    }
+    if (spilledRight != null) {
+      spilledRight.delete();
+      spilledRight = null;
+    }
+    if (spilledLeft != null) {
+      spilledLeft.delete();
+      spilledLeft = null;
+    }
   }
 
   @Override
@@ -331,6 +309,17 @@ public final class RightHashJoin extends BinaryOperator {
       }
       processRightChildTB(rightTB);
     }
+    if (spilledRight != null) {
+      spilledRight.finishWriting();
+    }
+
+    /* Continue joining the spilled partitions, if that is in progress. */
+    if (joinPartition >= 0) {
+      nexttb = joinSpilledPartitions();
+      if (nexttb != null) {
+        return nexttb;
+      }
+    }
 
     /* The right child is done, let's drain the left child. */
     final Operator left = getLeft();
@@ -358,40 +347,125 @@ public final class RightHashJoin extends BinaryOperator {
     }
 
     if (isEOIReady()) {
+      if (spilledLeft != null && spilledLeft.numTuples() > 0) {
+        nexttb = joinSpilledPartitions();
+        if (nexttb != null) {
+          return nexttb;
+        }
+      }
       nexttb = ans.popAny();
     }
 
     return nexttb;
   }
 
+  /**
+   * Join the spilled tuples of the left child with the spilled tuples of the right child, one partition at a time.
+   * Returns as soon as a full batch of results is available, and continues where it stopped at the next call.
+   * 
+   * @return a full TupleBatch of results, or null if all partitions have been joined.
+   * @throws DbException if there is an error reading or writing the spilled tuples.
+   */
+  private TupleBatch joinSpilledPartitions() throws DbException {
+    if (joinPartition < 0) {
+      spilledLeft.finishWriting();
+      joinPartition = 0;
+      loadSpilledPartition();
+    }
+
+    while (joinPartition < spilledLeft.numPartitions()) {
+      final TupleBatch leftTB = spilledLeftReader.next();
+      if (leftTB == null) {
+        ++joinPartition;
+        loadSpilledPartition();
+        continue;
+      }
+      probe(leftTB);
+      final TupleBatch nexttb = ans.popFilled();
+      if (nexttb != null) {
+        return nexttb;
+      }
+    }
+
+    /* All partitions have been joined, the left tuples of the next iteration will be spilled anew. */
+    joinPartition = -1;
+    spilledLeftReader = null;
+    rightHashTable = null;
+    spilledLeft.clear();
+    return null;
+  }
+
+  /**
+   * Skip to the first partition, starting at {@link #joinPartition}, that has spilled left tuples, build the hash table
+   * from its right tuples and open a reader over its left tuples.
+   * 
+   * @throws DbException if there is an error reading the spilled tuples.
+   */
+  private void loadSpilledPartition() throws DbException {
+    while (joinPartition < spilledLeft.numPartitions() && spilledLeft.numTuples(joinPartition) == 0) {
+      ++joinPartition;
+    }
+    if (joinPartition == spilledLeft.numPartitions()) {
+      return;
+    }
+
+    rightHashTable = new JoinHashTable(getRight().getSchema(), rightCompareIndx);
+    final SpillFile.Reader rightReader = spilledRight.read(joinPartition);
+    TupleBatch rightTB = rightReader.next();
+    while (rightTB != null) {
+      final int[] hashes = rightTB.getRowHashes(rightCompareIndx);
+      for (int row = 0; row < rightTB.numTuples(); ++row) {
+        rightHashTable.add(rightTB, row, hashes[row]);
+      }
+      rightTB = rightReader.next();
+    }
+    spilledLeftReader = spilledLeft.read(joinPartition);
+  }
+
   @Override
   public void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
     final Operator right = getRight();
 
-    rightHashTableIndices = new IntObjectHashMap<>();
-    rightHashTable = new MutableTupleBuffer(right.getSchema());
+    rightHashTable = new JoinHashTable(right.getSchema(), rightCompareIndx);
 
     ans = new TupleBatchBuffer(getSchema());
-    doJoin = new JoinProcedure();
+
+    maxInMemoryTuples = SpilledPartitions.getMaxInMemoryTuples(execEnvVars);
+    spillDirectory = SpilledPartitions.getSpillDirectory(execEnvVars);
+    joinPartition = -1;
   }
 
   /**
    * Process the tuples from left child.
    * 
    * @param tb TupleBatch to be processed.
+   * @throws DbException if there is an error spilling the tuples to disk.
    */
-  protected void processLeftChildTB(final TupleBatch tb) {
-    doJoin.joinAgainstHashTable = rightHashTable;
-    doJoin.inputCmpColumns = leftCompareIndx;
-    doJoin.joinAgainstCmpColumns = rightCompareIndx;
-    doJoin.inputTB = tb;
+  protected void processLeftChildTB(final TupleBatch tb) throws DbException {
+    if (spilledLeft != null) {
+      final int[] hashes = tb.getRowHashes(leftCompareIndx);
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        spilledLeft.add(tb, row, hashes[row]);
+      }
+      return;
+    }
+    probe(tb);
+  }
 
+  /**
+   * Join the tuples of a TupleBatch from the left child with {@link #rightHashTable} and add the results to ans.
+   * 
+   * @param tb TupleBatch to be processed.
+   */
+  private void probe(final TupleBatch tb) {
+    final MutableTupleBuffer joinAgainst = rightHashTable.getData();
+    final int[] hashes = tb.getRowHashes(leftCompareIndx);
     for (int row = 0; row < tb.numTuples(); ++row) {
-      final int cntHashCode = HashUtils.hashSubRow(tb, doJoin.inputCmpColumns, row);
-      IntArrayList tuplesWithHashCode = rightHashTableIndices.get(cntHashCode);
-      if (tuplesWithHashCode != null) {
-        doJoin.row = row;
-        tuplesWithHashCode.forEach(doJoin);
+      final int cntHashCode = hashes[row];
+      int index = rightHashTable.firstMatch(tb, leftCompareIndx, row, cntHashCode);
+      while (index != JoinHashTable.NONE) {
+        addToAns(tb, row, joinAgainst, index);
+        index = rightHashTable.nextMatch(tb, leftCompareIndx, row, index);
       }
     }
   }
@@ -400,36 +474,39 @@ public final class RightHashJoin extends BinaryOperator {
    * Process the tuples from right child.
    * 
    * @param tb TupleBatch to be processed.
+   * @throws DbException if there is an error spilling the tuples to disk.
    */
-  protected void processRightChildTB(final TupleBatch tb) {
-
+  protected void processRightChildTB(final TupleBatch tb) throws DbException {
+    final int[] hashes = tb.getRowHashes(rightCompareIndx);
     for (int row = 0; row < tb.numTuples(); ++row) {
-      final int cntHashCode = HashUtils.hashSubRow(tb, rightCompareIndx, row);
-      // only build hash table on two sides if none of the children is EOS
-      addToHashTable(tb, row, rightHashTable, rightHashTableIndices, cntHashCode);
+      final int cntHashCode = hashes[row];
+      if (spilledRight != null) {
+        spilledRight.add(tb, row, cntHashCode);
+      } else {
+        rightHashTable.add(tb, row, cntHashCode);
+      }
+    }
+    if (spilledRight == null && rightHashTable.numTuples() > maxInMemoryTuples) {
+      spill();
     }
-
   }
 
   /**
-   * @param tb the source TupleBatch
-   * @param row the row number to get added to hash table
-   * @param hashTable the target hash table
-   * @param hashTable1IndicesLocal hash table 1 indices local
-   * @param hashCode the hashCode of the tb.
-   * */
-  private void addToHashTable(final TupleBatch tb, final int row, final MutableTupleBuffer hashTable,
-      final IntObjectHashMap<IntArrayList> hashTable1IndicesLocal, final int hashCode) {
-    final int nextIndex = hashTable.numTuples();
-    IntArrayList tupleIndicesList = hashTable1IndicesLocal.get(hashCode);
-    if (tupleIndicesList == null) {
-      tupleIndicesList = new IntArrayList(1);
-      hashTable1IndicesLocal.put(hashCode, tupleIndicesList);
-    }
-    tupleIndicesList.add(nextIndex);
-    List<? extends Column<?>> inputColumns = tb.getDataColumns();
-    for (int column = 0; column < tb.numColumns(); column++) {
-      hashTable.put(column, inputColumns.get(column), row);
+   * Move the tuples in {@link #rightHashTable} to disk. From now on, the tuples of both children are partitioned by
+   * hash and spilled to disk, and joined partition by partition once the left child is done.
+   * 
+   * @throws DbException if there is an error spilling the tuples to disk.
+   */
+  private void spill() throws DbException {
+    final int numPartitions = SpilledPartitions.DEFAULT_NUM_PARTITIONS;
+    spilledRight = new SpilledPartitions(getRight().getSchema(), spillDirectory, numPartitions);
+    spilledLeft = new SpilledPartitions(getLeft().getSchema(), spillDirectory, numPartitions);
+    for (final TupleBatch tb : rightHashTable.getData().getAll()) {
+      final int[] hashes = tb.getRowHashes(rightCompareIndx);
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        spilledRight.add(tb, row, hashes[row]);
+      }
     }
+    rightHashTable = null;
   }
 }
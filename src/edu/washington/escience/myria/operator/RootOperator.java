@@ -116,6 +116,10 @@ public abstract class RootOperator extends Operator {
 
   @Override
   protected final TupleBatch fetchNextReady() throws DbException {
+    if (outputNotNeeded()) {
+      /* The child then reports EOS below. */
+      child.stopEarly();
+    }
     TupleBatch tb = null;
     tb = child.nextReady();
     if (tb != null) {
@@ -125,10 +129,29 @@ public abstract class RootOperator extends Operator {
       childEOI();
     } else if (child.eos()) {
       childEOS();
+    } else {
+      childNotReady();
     }
     return tb;
   }
 
+  /**
+   * Called if the child has no tuples ready and is neither EOS nor EOI, before control is returned to the task.
+   * 
+   * @throws DbException if any error occurs.
+   * */
+  protected void childNotReady() throws DbException {
+  }
+
+  /**
+   * @return true if the tuples of the child are no longer needed, e.g. because all the consumers of a
+   *         {@link edu.washington.escience.myria.operator.network.Producer} have stopped. The child is then stopped
+   *         early, see {@link Operator#stopEarly()}.
+   */
+  protected boolean outputNotNeeded() {
+    return false;
+  }
+
   /**
    * @return the source of the tuples that this Root operator consumes.
    */
@@ -1,6 +1,7 @@
 package edu.washington.escience.myria.operator;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.google.common.collect.ImmutableMap;
@@ -53,6 +54,35 @@ public abstract class StreamingState implements Serializable {
    * */
   public abstract TupleBatch update(TupleBatch tb);
 
+  /**
+   * Takes all the TBs of an iteration, updates its internal states, and returns the delta of the iteration, i.e., the
+   * tuples that are new or changed in the state after the whole iteration. Unlike calling {@link #update(TupleBatch)}
+   * on each TB, a tuple that changes several times during the iteration is only returned once, with its final value.
+   *
+   * The default implementation collects the iteration in a temporary state first. Subclasses should override it if
+   * they can compute the delta directly.
+   *
+   * @param tbs the input tuple batches of the iteration.
+   * @return the delta of the iteration.
+   * */
+  public List<TupleBatch> updateIteration(final List<TupleBatch> tbs) {
+    final StreamingState tmpState = newInstanceFromMyself();
+    tmpState.setAttachedOperator(op);
+    tmpState.init(null);
+    for (TupleBatch tb : tbs) {
+      tmpState.update(tb);
+    }
+    final List<TupleBatch> delta = new ArrayList<TupleBatch>();
+    for (TupleBatch tb : tmpState.exportState()) {
+      final TupleBatch newtb = update(tb);
+      if (newtb != null) {
+        delta.add(newtb);
+      }
+    }
+    tmpState.cleanup();
+    return delta;
+  }
+
   /**
    * @return its output schema.
    */
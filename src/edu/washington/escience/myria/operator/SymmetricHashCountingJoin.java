@@ -19,7 +19,6 @@ import edu.washington.escience.myria.storage.MutableTupleBuffer;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
 import edu.washington.escience.myria.storage.TupleUtils;
-import edu.washington.escience.myria.util.HashUtils;
 
 /**
  * This is an implementation of hash equal join. The same as in DupElim, this implementation does not keep the
@@ -347,12 +346,13 @@ public final class SymmetricHashCountingJoin extends BinaryOperator {
       leftHashTable = null;
     }
 
+    final int[] hashes = tb.getRowHashes(doCountingJoin.inputCmpColumns);
     for (int row = 0; row < tb.numTuples(); ++row) {
 
       /*
        * update number of count of probing the other child's hash table.
        */
-      final int cntHashCode = HashUtils.hashSubRow(tb, doCountingJoin.inputCmpColumns, row);
+      final int cntHashCode = hashes[row];
       IntArrayList tuplesWithHashCode = hashTable2IndicesLocal.get(cntHashCode);
       if (tuplesWithHashCode != null) {
         doCountingJoin.row = row;
@@ -0,0 +1,231 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.storage.MutableTupleBuffer;
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleBatchSorter;
+import edu.washington.escience.myria.storage.TupleUtils;
+
+/**
+ * Returns the first K tuples of its input in sort order, in sort order. This is the result of an
+ * {@link InMemoryOrderBy} followed by a {@link Limit}, but at most K tuples are held at any time.
+ *
+ * The kept tuples are stored in a {@link MutableTupleBuffer}, and a binary heap of their rows keeps the tuple that
+ * sorts last at the root. An input tuple is compared with the root only, and replaces it in place if it sorts before
+ * it. Once the child is EOS, the kept tuples are sorted with a {@link TupleBatchSorter}.
+ *
+ * Since the output is sorted, the top K tuples of several workers can be combined with a {@link Merge} followed by a
+ * {@link Limit}, or with another TopK, at a collector.
+ */
+public final class TopK extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The initial capacity of {@link #heap}, which grows as tuples are kept, up to K. */
+  private static final int INITIAL_HEAP_CAPACITY = 64;
+
+  /** Which columns to sort the tuples by. */
+  private final int[] sortColumns;
+  /** True for each column that should be sorted ascending. */
+  private final boolean[] ascending;
+  /** The number of tuples to keep. */
+  private final int k;
+
+  /** The kept tuples. */
+  private transient MutableTupleBuffer top;
+  /** The rows of {@link #top}, as a heap whose root is the tuple that sorts last. */
+  private transient int[] heap;
+  /** The number of kept tuples. */
+  private transient int size;
+  /** The sorted kept tuples, null until the child is EOS. */
+  private transient TupleBatchSorter sorted;
+  /** The position of the next tuple in {@link #sorted} to be returned. */
+  private transient int sortedPosition;
+  /** Buffers tuples until they are returned. */
+  private transient TupleBatchBuffer ans;
+
+  /**
+   * @param child the source of the tuples.
+   * @param sortColumns the columns that should be ordered by
+   * @param ascending true for each column that should be sorted ascending
+   * @param k the number of tuples to keep.
+   */
+  public TopK(final Operator child, final int[] sortColumns, final boolean[] ascending, final int k) {
+    super(child);
+    Preconditions.checkArgument(sortColumns.length == ascending.length,
+        "sort columns number should be equal to ascending orders number");
+    Preconditions.checkArgument(k >= 0, "k must be non-negative");
+    this.sortColumns = sortColumns;
+    this.ascending = ascending;
+    this.k = k;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) {
+    top = new MutableTupleBuffer(getSchema());
+    heap = new int[Math.min(k, INITIAL_HEAP_CAPACITY)];
+    size = 0;
+    sorted = null;
+    sortedPosition = 0;
+    ans = new TupleBatchBuffer(getSchema());
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    final Operator child = getChild();
+    while (!child.eos()) {
+      final TupleBatch tb = child.nextReady();
+      if (tb == null) {
+        if (child.eos()) {
+          break;
+        }
+        return null;
+      }
+      final List<? extends Column<?>> columns = tb.getDataColumns();
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        offer(tb, columns, row);
+      }
+    }
+
+    if (sorted == null) {
+      sorted = new TupleBatchSorter(top.getAll(), sortColumns, ascending);
+    }
+    while (sortedPosition < sorted.numTuples()) {
+      ans.put(sorted.getBatch(sortedPosition), sorted.getRow(sortedPosition));
+      ++sortedPosition;
+      final TupleBatch nexttb = ans.popFilled();
+      if (nexttb != null) {
+        return nexttb;
+      }
+    }
+    return ans.popAny();
+  }
+
+  /**
+   * Keep an input tuple if it is among the first K tuples so far.
+   *
+   * @param tb the batch of the tuple.
+   * @param columns the columns of the batch.
+   * @param row the row of the tuple in the batch.
+   */
+  private void offer(final TupleBatch tb, final List<? extends Column<?>> columns, final int row) {
+    if (size < k) {
+      for (int column = 0; column < columns.size(); ++column) {
+        top.put(column, columns.get(column), row);
+      }
+      if (size == heap.length) {
+        /* K may be much larger than the input, so the heap is only grown as tuples arrive. */
+        heap = Arrays.copyOf(heap, (int) Math.min(k, 2L * heap.length));
+      }
+      heap[size] = size;
+      siftUp(size);
+      ++size;
+    } else if (k > 0 && compare(tb, row, top, heap[0]) < 0) {
+      /* The tuple that sorts last is dropped, and its row reused. */
+      for (int column = 0; column < columns.size(); ++column) {
+        top.replace(column, heap[0], columns.get(column), row);
+      }
+      siftDown(0);
+    }
+  }
+
+  /**
+   * @param table1 a table.
+   * @param row1 a row of table1.
+   * @param table2 another table.
+   * @param row2 a row of table2.
+   * @return a negative integer, zero, or a positive integer as the first tuple sorts before, with, or after the second.
+   */
+  private int compare(final ReadableTable table1, final int row1, final ReadableTable table2, final int row2) {
+    return TupleUtils.tupleCompare(table1, sortColumns, row1, table2, sortColumns, row2, ascending);
+  }
+
+  /**
+   * @param i a position in the heap.
+   * @param j another position in the heap.
+   * @return true if the tuple at i sorts after the tuple at j.
+   */
+  private boolean after(final int i, final int j) {
+    return compare(top, heap[i], top, heap[j]) > 0;
+  }
+
+  /**
+   * Move the tuple at a position of the heap up to its place.
+   *
+   * @param position the position.
+   */
+  private void siftUp(final int position) {
+    int child = position;
+    while (child > 0) {
+      final int parent = (child - 1) >>> 1;
+      if (!after(child, parent)) {
+        return;
+      }
+      swap(child, parent);
+      child = parent;
+    }
+  }
+
+  /**
+   * Move the tuple at a position of the heap down to its place.
+   *
+   * @param position the position.
+   */
+  private void siftDown(final int position) {
+    int parent = position;
+    while (true) {
+      int largest = parent;
+      final int left = 2 * parent + 1;
+      final int right = left + 1;
+      if (left < size && after(left, largest)) {
+        largest = left;
+      }
+      if (right < size && after(right, largest)) {
+        largest = right;
+      }
+      if (largest == parent) {
+        return;
+      }
+      swap(parent, largest);
+      parent = largest;
+    }
+  }
+
+  /**
+   * @param i a position in the heap.
+   * @param j another position in the heap.
+   */
+  private void swap(final int i, final int j) {
+    final int tmp = heap[i];
+    heap[i] = heap[j];
+    heap[j] = tmp;
+  }
+
+  @Override
+  protected void cleanup() {
+    top = null;
+    heap = null;
+    sorted = null;
+    ans = null;
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    Operator child = getChild();
+    if (child == null) {
+      return null;
+    }
+    return child.getSchema();
+  }
+}
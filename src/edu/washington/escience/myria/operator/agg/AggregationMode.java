@@ -0,0 +1,16 @@
+package edu.washington.escience.myria.operator.agg;
+
+/**
+ * How a grouped aggregate splits its work, so that a local aggregate can reduce the data before it is shuffled.
+ */
+public enum AggregationMode {
+  /** Aggregate the input tuples and produce the results. */
+  FULL,
+  /**
+   * Aggregate the input tuples and produce the group keys followed by the partial results of the aggregators, see
+   * {@link GroupedStates#getPartialSchema()}.
+   */
+  PARTIAL,
+  /** Merge the output of one or more {@link #PARTIAL} aggregates and produce the results. */
+  FINAL
+}
@@ -54,4 +54,11 @@ public interface Aggregator extends Serializable {
    * @return the schema of the outputs of this {@link Aggregator}.
    */
   Schema getResultSchema();
+
+  /**
+   * Create the states of this {@link Aggregator} for many groups at once, as used by grouped aggregates.
+   * 
+   * @return new, empty {@link GroupedStates} of this {@link Aggregator}.
+   */
+  GroupedStates newGroupedStates();
 }
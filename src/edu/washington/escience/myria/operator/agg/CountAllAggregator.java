@@ -1,5 +1,7 @@
 package edu.washington.escience.myria.operator.agg;
 
+import java.util.Arrays;
+
 import com.google.common.math.LongMath;
 
 import edu.washington.escience.myria.DbException;
@@ -7,6 +9,7 @@ import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.storage.AppendableTable;
 import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.TupleBatch;
 
 /**
  * An aggregator that counts the number of rows in its input.
@@ -46,9 +49,89 @@ public final class CountAllAggregator implements Aggregator {
     return new CountAllState();
   }
 
+  @Override
+  public GroupedStates newGroupedStates() {
+    return new CountAllGroupedStates();
+  }
+
   /** Private internal class that wraps the state required by this Aggregator as an object. */
   private final class CountAllState {
     /** The number of tuples seen so far. */
     private long count = 0;
   }
+
+  /** The counts of many groups in one primitive array. The partial result of a group is its count. */
+  private static final class CountAllGroupedStates implements GroupedStates {
+    /** The number of groups that the array can hold initially. */
+    private static final int INITIAL_CAPACITY = 64;
+    /** The count of each group. */
+    private long[] counts = new long[0];
+    /** The number of groups whose state has been created. */
+    private int numGroups;
+
+    /**
+     * Create the states of all groups up to and including the specified one.
+     * 
+     * @param group the id of a group.
+     */
+    private void ensureGroup(final int group) {
+      if (group >= counts.length) {
+        counts = Arrays.copyOf(counts, Math.max(group + 1, Math.max(INITIAL_CAPACITY, counts.length * 2)));
+      }
+      Arrays.fill(counts, numGroups, group + 1, 0);
+      numGroups = group + 1;
+    }
+
+    @Override
+    public void addRow(final ReadableTable from, final int row, final int group) {
+      if (group >= numGroups) {
+        ensureGroup(group);
+      }
+      counts[group] = LongMath.checkedAdd(counts[group], 1);
+    }
+
+    @Override
+    public void addRows(final TupleBatch from, final int[] groups) {
+      final int numTuples = from.numTuples();
+      int maxGroup = -1;
+      for (int row = 0; row < numTuples; ++row) {
+        maxGroup = Math.max(maxGroup, groups[row]);
+      }
+      if (maxGroup >= numGroups) {
+        ensureGroup(maxGroup);
+      }
+      /* A count grows by one per row, so it cannot overflow. */
+      for (int row = 0; row < numTuples; ++row) {
+        counts[groups[row]]++;
+      }
+    }
+
+    @Override
+    public void getResult(final AppendableTable dest, final int destColumn, final int group) {
+      dest.putLong(destColumn, counts[group]);
+    }
+
+    @Override
+    public Schema getPartialSchema() {
+      return SCHEMA;
+    }
+
+    @Override
+    public void getPartialResult(final AppendableTable dest, final int destColumn, final int group) {
+      dest.putLong(destColumn, counts[group]);
+    }
+
+    @Override
+    public void addPartialRow(final ReadableTable from, final int fromColumn, final int row, final int group) {
+      if (group >= numGroups) {
+        ensureGroup(group);
+      }
+      counts[group] = LongMath.checkedAdd(counts[group], from.getLong(fromColumn, row));
+    }
+
+    @Override
+    public void clear() {
+      numGroups = 0;
+    }
+  }
 }
@@ -7,8 +7,11 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.math.LongMath;
 
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.storage.AppendableTable;
 import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.ImmutableIntArray;
 
 /**
  * Knows how to compute some aggregates over a DoubleColumn.
@@ -50,6 +53,10 @@ public final class DoubleAggregator extends PrimitiveAggregator {
     if (!needsStats) {
       return;
     }
+    if (from instanceof TupleBatch) {
+      addDoubleColumn(((TupleBatch) from).getDataColumns().get(fromColumn), d);
+      return;
+    }
     for (int i = 0; i < numTuples; i++) {
       addDoubleStats(from.getDouble(fromColumn, i), d);
     }
@@ -67,6 +74,34 @@ public final class DoubleAggregator extends PrimitiveAggregator {
     }
   }
 
+  /**
+   * Helper function to add all values of a column to this aggregator, reading them straight from the backing array of
+   * the column and its selection vector, if any. Note this does NOT update count.
+   * 
+   * @param column the values to be added
+   * @param state the state of the aggregate, which will be mutated.
+   */
+  private void addDoubleColumn(final Column<?> column, final DoubleAggState state) {
+    final double[] values = column.getUnfilteredColumn().getDoubleArray();
+    final ImmutableIntArray selection = column.getSelectionVector();
+    final int numTuples = column.size();
+    double sum = state.sum;
+    double sumSquared = state.sumSquared;
+    double min = state.min;
+    double max = state.max;
+    for (int i = 0; i < numTuples; i++) {
+      final double value = values[selection == null ? i : selection.get(i)];
+      sum += value;
+      sumSquared += value * value;
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+    }
+    state.sum = sum;
+    state.sumSquared = sumSquared;
+    state.min = min;
+    state.max = max;
+  }
+
   /**
    * Helper function to add value to this aggregator. Note this does NOT update count.
    * 
@@ -136,6 +171,11 @@ public final class DoubleAggregator extends PrimitiveAggregator {
     return Type.DOUBLE_TYPE;
   }
 
+  @Override
+  public GroupedStates newGroupedStates() {
+    return new DoubleGroupedStates(this, fromColumn);
+  }
+
   @Override
   public Object getInitialState() {
     return new DoubleAggState();
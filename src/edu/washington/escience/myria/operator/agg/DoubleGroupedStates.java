@@ -0,0 +1,207 @@
+package edu.washington.escience.myria.operator.agg;
+
+import java.util.Arrays;
+
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.util.ImmutableIntArray;
+
+/**
+ * {@link PrimitiveGroupedStates} of a {@link FloatAggregator} or a {@link DoubleAggregator}. All statistics are kept
+ * in <code>double[]</code>s, which hold FLOAT values exactly.
+ */
+final class DoubleGroupedStates extends PrimitiveGroupedStates {
+
+  /** True if the input is a FLOAT column, false if it is a DOUBLE column. */
+  private final boolean floatInput;
+  /** The sum of each group. */
+  private double[] sums = new double[0];
+  /** The sum squared of each group. */
+  private double[] sumSqs = new double[0];
+  /** The min of each group. */
+  private double[] mins = new double[0];
+  /** The max of each group. */
+  private double[] maxs = new double[0];
+
+  /**
+   * @param aggregator the aggregator that owns the states.
+   * @param fromColumn which column of the input the aggregator operates over.
+   */
+  DoubleGroupedStates(final PrimitiveAggregator aggregator, final int fromColumn) {
+    super(aggregator, fromColumn);
+    floatInput = aggregator.getType() == Type.FLOAT_TYPE;
+  }
+
+  @Override
+  protected void resize(final int capacity) {
+    if (needsSum()) {
+      sums = Arrays.copyOf(sums, capacity);
+    }
+    if (needsSumSq()) {
+      sumSqs = Arrays.copyOf(sumSqs, capacity);
+    }
+    if (needsMin()) {
+      mins = Arrays.copyOf(mins, capacity);
+    }
+    if (needsMax()) {
+      maxs = Arrays.copyOf(maxs, capacity);
+    }
+  }
+
+  @Override
+  protected void initGroup(final int group) {
+    if (needsSum()) {
+      sums[group] = 0;
+    }
+    if (needsSumSq()) {
+      sumSqs[group] = 0;
+    }
+    if (needsMin()) {
+      mins[group] = Double.POSITIVE_INFINITY;
+    }
+    if (needsMax()) {
+      maxs[group] = Double.NEGATIVE_INFINITY;
+    }
+  }
+
+  @Override
+  protected void addValue(final ReadableTable from, final int row, final int group) {
+    if (floatInput) {
+      addValue(from.getFloat(fromColumn, row), group);
+    } else {
+      addValue(from.getDouble(fromColumn, row), group);
+    }
+  }
+
+  @Override
+  protected void addValues(final Column<?> column, final int[] groups) {
+    final ImmutableIntArray selection = column.getSelectionVector();
+    final int numTuples = column.size();
+    if (floatInput) {
+      final float[] values = column.getUnfilteredColumn().getFloatArray();
+      for (int i = 0; i < numTuples; ++i) {
+        addValue(values[selection == null ? i : selection.get(i)], groups[i]);
+      }
+    } else {
+      final double[] values = column.getUnfilteredColumn().getDoubleArray();
+      for (int i = 0; i < numTuples; ++i) {
+        addValue(values[selection == null ? i : selection.get(i)], groups[i]);
+      }
+    }
+  }
+
+  /**
+   * @param value a FLOAT value to be added to the statistics of a group, squared as a FLOAT like
+   *          {@link FloatAggregator} does.
+   * @param group the id of the group.
+   */
+  private void addValue(final float value, final int group) {
+    addValue(value, value * value, group);
+  }
+
+  /**
+   * @param value a DOUBLE value to be added to the statistics of a group.
+   * @param group the id of the group.
+   */
+  private void addValue(final double value, final int group) {
+    addValue(value, value * value, group);
+  }
+
+  /**
+   * @param value a value to be added to the statistics of a group.
+   * @param square the square of the value.
+   * @param group the id of the group.
+   */
+  private void addValue(final double value, final double square, final int group) {
+    if (needsSum()) {
+      sums[group] += value;
+    }
+    if (needsSumSq()) {
+      sumSqs[group] += square;
+    }
+    if (needsMin()) {
+      mins[group] = Math.min(mins[group], value);
+    }
+    if (needsMax()) {
+      maxs[group] = Math.max(maxs[group], value);
+    }
+  }
+
+  @Override
+  protected double getSum(final int group) {
+    return sums[group];
+  }
+
+  @Override
+  protected double getSumSq(final int group) {
+    return sumSqs[group];
+  }
+
+  @Override
+  protected void putSum(final AppendableTable dest, final int destColumn, final int group) {
+    dest.putDouble(destColumn, sums[group]);
+  }
+
+  @Override
+  protected void putSumSq(final AppendableTable dest, final int destColumn, final int group) {
+    dest.putDouble(destColumn, sumSqs[group]);
+  }
+
+  @Override
+  protected void putMin(final AppendableTable dest, final int destColumn, final int group) {
+    putValue(dest, destColumn, mins[group]);
+  }
+
+  @Override
+  protected void putMax(final AppendableTable dest, final int destColumn, final int group) {
+    putValue(dest, destColumn, maxs[group]);
+  }
+
+  /**
+   * @param dest the destination table.
+   * @param destColumn the destination column, of the type of the input.
+   * @param value the value to be appended.
+   */
+  private void putValue(final AppendableTable dest, final int destColumn, final double value) {
+    if (floatInput) {
+      dest.putFloat(destColumn, (float) value);
+    } else {
+      dest.putDouble(destColumn, value);
+    }
+  }
+
+  /**
+   * @param from the source table.
+   * @param column a column of the type of the input.
+   * @param row the row of the value.
+   * @return the value.
+   */
+  private double getValue(final ReadableTable from, final int column, final int row) {
+    if (floatInput) {
+      return from.getFloat(column, row);
+    }
+    return from.getDouble(column, row);
+  }
+
+  @Override
+  protected void mergeSum(final ReadableTable from, final int column, final int row, final int group) {
+    sums[group] += from.getDouble(column, row);
+  }
+
+  @Override
+  protected void mergeSumSq(final ReadableTable from, final int column, final int row, final int group) {
+    sumSqs[group] += from.getDouble(column, row);
+  }
+
+  @Override
+  protected void mergeMin(final ReadableTable from, final int column, final int row, final int group) {
+    mins[group] = Math.min(mins[group], getValue(from, column, row));
+  }
+
+  @Override
+  protected void mergeMax(final ReadableTable from, final int column, final int row, final int group) {
+    maxs[group] = Math.max(maxs[group], getValue(from, column, row));
+  }
+}
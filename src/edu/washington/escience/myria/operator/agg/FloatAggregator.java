@@ -7,8 +7,11 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.math.LongMath;
 
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.storage.AppendableTable;
 import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.ImmutableIntArray;
 
 /**
  * Knows how to compute some aggregates over a FloatColumn.
@@ -52,6 +55,10 @@ public final class FloatAggregator extends PrimitiveAggregator {
     if (!needsStats) {
       return;
     }
+    if (from instanceof TupleBatch) {
+      addFloatColumn(((TupleBatch) from).getDataColumns().get(fromColumn), f);
+      return;
+    }
     for (int i = 0; i < numTuples; i++) {
       addFloatStats(from.getFloat(fromColumn, i), f);
     }
@@ -69,6 +76,34 @@ public final class FloatAggregator extends PrimitiveAggregator {
     }
   }
 
+  /**
+   * Helper function to add all values of a column to this aggregator, reading them straight from the backing array of
+   * the column and its selection vector, if any. Note this does NOT update count.
+   * 
+   * @param column the values to be added
+   * @param state the state of the aggregate, which will be mutated.
+   */
+  private void addFloatColumn(final Column<?> column, final FloatAggState state) {
+    final float[] values = column.getUnfilteredColumn().getFloatArray();
+    final ImmutableIntArray selection = column.getSelectionVector();
+    final int numTuples = column.size();
+    double sum = state.sum;
+    double sumSquared = state.sumSquared;
+    float min = state.min;
+    float max = state.max;
+    for (int i = 0; i < numTuples; i++) {
+      final float value = values[selection == null ? i : selection.get(i)];
+      sum += value;
+      sumSquared += value * value;
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+    }
+    state.sum = sum;
+    state.sumSquared = sumSquared;
+    state.min = min;
+    state.max = max;
+  }
+
   /**
    * Helper function to add value to this aggregator. Note this does NOT update count.
    * 
@@ -138,6 +173,11 @@ public final class FloatAggregator extends PrimitiveAggregator {
     return AVAILABLE_AGG;
   }
 
+  @Override
+  public GroupedStates newGroupedStates() {
+    return new DoubleGroupedStates(this, fromColumn);
+  }
+
   @Override
   public Object getInitialState() {
     return new FloatAggState();
@@ -0,0 +1,77 @@
+package edu.washington.escience.myria.operator.agg;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * The states of one {@link Aggregator} for many groups, which are identified by dense ids 0, 1, 2, ... The state of a
+ * group is created the first time the group is updated.
+ *
+ * Besides the final results, implementations may expose their state as <i>partial results</i>: a fixed set of columns
+ * that can be shipped to another worker or spilled to disk, and merged into the state of the same group later. Partial
+ * results of the same group can be merged in any order.
+ */
+public interface GroupedStates {
+
+  /**
+   * Update the state of a group using the specified row of the specified table.
+   *
+   * @param from the source {@link ReadableTable}.
+   * @param row the specified row.
+   * @param group the id of the group.
+   * @throws DbException if there is an error.
+   */
+  void addRow(ReadableTable from, int row, int group) throws DbException;
+
+  /**
+   * Update the states of many groups using all rows of the specified TupleBatch.
+   *
+   * @param from the source {@link TupleBatch}.
+   * @param groups the id of the group of each row of <code>from</code>.
+   * @throws DbException if there is an error.
+   */
+  void addRows(TupleBatch from, int[] groups) throws DbException;
+
+  /**
+   * Append the aggregate result(s) of a group to the given table starting from the given column.
+   *
+   * @param dest where to store the aggregate result.
+   * @param destColumn the starting index into which aggregates will be output.
+   * @param group the id of the group.
+   * @throws DbException if there is an error.
+   */
+  void getResult(AppendableTable dest, int destColumn, int group) throws DbException;
+
+  /**
+   * @return the schema of the partial results, or null if these states cannot be split into partial results.
+   */
+  Schema getPartialSchema();
+
+  /**
+   * Append the partial result of a group to the given table starting from the given column.
+   *
+   * @param dest where to store the partial result.
+   * @param destColumn the starting index into which the columns of {@link #getPartialSchema()} will be output.
+   * @param group the id of the group.
+   */
+  void getPartialResult(AppendableTable dest, int destColumn, int group);
+
+  /**
+   * Merge a partial result into the state of a group.
+   *
+   * @param from the source {@link ReadableTable}.
+   * @param fromColumn the first of the columns of from that hold the partial result.
+   * @param row the row of the partial result.
+   * @param group the id of the group.
+   * @throws DbException if there is an error.
+   */
+  void addPartialRow(ReadableTable from, int fromColumn, int row, int group) throws DbException;
+
+  /**
+   * Remove the states of all groups. Memory may be kept for reuse.
+   */
+  void clear();
+}
@@ -7,8 +7,11 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.math.LongMath;
 
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.storage.AppendableTable;
 import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.ImmutableIntArray;
 
 /**
  * Knows how to compute some aggregate over a set of IntFields.
@@ -52,6 +55,10 @@ public final class IntegerAggregator extends PrimitiveAggregator {
     if (!needsStats) {
       return;
     }
+    if (from instanceof TupleBatch) {
+      addIntColumn(((TupleBatch) from).getDataColumns().get(fromColumn), istate);
+      return;
+    }
     for (int i = 0; i < numTuples; i++) {
       addIntStats(from.getInt(fromColumn, i), istate);
     }
@@ -69,6 +76,45 @@ public final class IntegerAggregator extends PrimitiveAggregator {
     }
   }
 
+  /**
+   * Helper function to add all values of a column to this aggregator, reading them straight from the backing array of
+   * the column and its selection vector, if any. Note this does NOT update count.
+   * 
+   * @param column the values to be added
+   * @param state the state of the aggregate, which will be mutated.
+   */
+  private void addIntColumn(final Column<?> column, final IntAggState state) {
+    final int[] values = column.getUnfilteredColumn().getIntArray();
+    final ImmutableIntArray selection = column.getSelectionVector();
+    final int numTuples = column.size();
+    /* The sum of up to 2^31 ints cannot overflow a long, so only the total has to be checked. */
+    long sum = 0;
+    long sumSquared = 0;
+    int min = state.min;
+    int max = state.max;
+    for (int i = 0; i < numTuples; i++) {
+      final int value = values[selection == null ? i : selection.get(i)];
+      sum += value;
+      if (needsSumSq) {
+        sumSquared += ((long) value) * value;
+        /* Squares are non-negative and at most 2^62, so an overflow makes the sum negative. */
+        if (sumSquared < 0) {
+          throw new ArithmeticException("overflow");
+        }
+      }
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+    }
+    if (needsSum) {
+      state.sum = LongMath.checkedAdd(state.sum, sum);
+    }
+    if (needsSumSq) {
+      state.sumSquared = LongMath.checkedAdd(state.sumSquared, sumSquared);
+    }
+    state.min = min;
+    state.max = max;
+  }
+
   /**
    * Helper function to add value to this aggregator. Note this does NOT update count.
    * 
@@ -139,6 +185,11 @@ public final class IntegerAggregator extends PrimitiveAggregator {
     return Type.LONG_TYPE;
   }
 
+  @Override
+  public GroupedStates newGroupedStates() {
+    return new LongGroupedStates(this, fromColumn);
+  }
+
   @Override
   public Object getInitialState() {
     return new IntAggState();
@@ -7,8 +7,11 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.math.LongMath;
 
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.storage.AppendableTable;
 import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.ImmutableIntArray;
 
 /**
  * Knows how to compute some aggregates over a LongColumn.
@@ -51,6 +54,10 @@ public final class LongAggregator extends PrimitiveAggregator {
     if (!needsStats) {
       return;
     }
+    if (from instanceof TupleBatch) {
+      addLongColumn(((TupleBatch) from).getDataColumns().get(fromColumn), lstate);
+      return;
+    }
     for (int i = 0; i < numTuples; i++) {
       addLongStats(from.getLong(fromColumn, i), lstate);
     }
@@ -68,6 +75,38 @@ public final class LongAggregator extends PrimitiveAggregator {
     }
   }
 
+  /**
+   * Helper function to add all values of a column to this aggregator, reading them straight from the backing array of
+   * the column and its selection vector, if any. Note this does NOT update count.
+   * 
+   * @param column the values to be added
+   * @param state the state of the aggregate, which will be mutated.
+   */
+  private void addLongColumn(final Column<?> column, final LongAggState state) {
+    final long[] values = column.getUnfilteredColumn().getLongArray();
+    final ImmutableIntArray selection = column.getSelectionVector();
+    final int numTuples = column.size();
+    long sum = state.sum;
+    long sumSquared = state.sumSquared;
+    long min = state.min;
+    long max = state.max;
+    for (int i = 0; i < numTuples; i++) {
+      final long value = values[selection == null ? i : selection.get(i)];
+      if (needsSum) {
+        sum = LongMath.checkedAdd(sum, value);
+      }
+      if (needsSumSq) {
+        sumSquared = LongMath.checkedAdd(sumSquared, LongMath.checkedMultiply(value, value));
+      }
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+    }
+    state.sum = sum;
+    state.sumSquared = sumSquared;
+    state.min = min;
+    state.max = max;
+  }
+
   /**
    * Helper function to add value to this aggregator. Note this does NOT update count.
    * 
@@ -138,6 +177,11 @@ public final class LongAggregator extends PrimitiveAggregator {
     return Type.LONG_TYPE;
   }
 
+  @Override
+  public GroupedStates newGroupedStates() {
+    return new LongGroupedStates(this, fromColumn);
+  }
+
   @Override
   public Object getInitialState() {
     return new LongAggState();
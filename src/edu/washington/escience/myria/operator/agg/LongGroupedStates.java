@@ -0,0 +1,189 @@
+package edu.washington.escience.myria.operator.agg;
+
+import java.util.Arrays;
+
+import com.google.common.math.LongMath;
+
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.util.ImmutableIntArray;
+
+/**
+ * {@link PrimitiveGroupedStates} of an {@link IntegerAggregator} or a {@link LongAggregator}. All statistics are kept
+ * in <code>long[]</code>s, which hold INT values exactly.
+ */
+final class LongGroupedStates extends PrimitiveGroupedStates {
+
+  /** True if the input is an INT column, false if it is a LONG column. */
+  private final boolean intInput;
+  /** The sum of each group. */
+  private long[] sums = new long[0];
+  /** The sum squared of each group. */
+  private long[] sumSqs = new long[0];
+  /** The min of each group. */
+  private long[] mins = new long[0];
+  /** The max of each group. */
+  private long[] maxs = new long[0];
+
+  /**
+   * @param aggregator the aggregator that owns the states.
+   * @param fromColumn which column of the input the aggregator operates over.
+   */
+  LongGroupedStates(final PrimitiveAggregator aggregator, final int fromColumn) {
+    super(aggregator, fromColumn);
+    intInput = aggregator.getType() == Type.INT_TYPE;
+  }
+
+  @Override
+  protected void resize(final int capacity) {
+    if (needsSum()) {
+      sums = Arrays.copyOf(sums, capacity);
+    }
+    if (needsSumSq()) {
+      sumSqs = Arrays.copyOf(sumSqs, capacity);
+    }
+    if (needsMin()) {
+      mins = Arrays.copyOf(mins, capacity);
+    }
+    if (needsMax()) {
+      maxs = Arrays.copyOf(maxs, capacity);
+    }
+  }
+
+  @Override
+  protected void initGroup(final int group) {
+    if (needsSum()) {
+      sums[group] = 0;
+    }
+    if (needsSumSq()) {
+      sumSqs[group] = 0;
+    }
+    if (needsMin()) {
+      mins[group] = Long.MAX_VALUE;
+    }
+    if (needsMax()) {
+      maxs[group] = Long.MIN_VALUE;
+    }
+  }
+
+  @Override
+  protected void addValue(final ReadableTable from, final int row, final int group) {
+    addValue(getValue(from, fromColumn, row), group);
+  }
+
+  @Override
+  protected void addValues(final Column<?> column, final int[] groups) {
+    final ImmutableIntArray selection = column.getSelectionVector();
+    final int numTuples = column.size();
+    if (intInput) {
+      final int[] values = column.getUnfilteredColumn().getIntArray();
+      for (int i = 0; i < numTuples; ++i) {
+        addValue(values[selection == null ? i : selection.get(i)], groups[i]);
+      }
+    } else {
+      final long[] values = column.getUnfilteredColumn().getLongArray();
+      for (int i = 0; i < numTuples; ++i) {
+        addValue(values[selection == null ? i : selection.get(i)], groups[i]);
+      }
+    }
+  }
+
+  /**
+   * @param value a value to be added to the statistics of a group.
+   * @param group the id of the group.
+   */
+  private void addValue(final long value, final int group) {
+    if (needsSum()) {
+      sums[group] = LongMath.checkedAdd(sums[group], value);
+    }
+    if (needsSumSq()) {
+      // don't need to check value*value if value is an int
+      final long square = intInput ? value * value : LongMath.checkedMultiply(value, value);
+      sumSqs[group] = LongMath.checkedAdd(sumSqs[group], square);
+    }
+    if (needsMin()) {
+      mins[group] = Math.min(mins[group], value);
+    }
+    if (needsMax()) {
+      maxs[group] = Math.max(maxs[group], value);
+    }
+  }
+
+  @Override
+  protected double getSum(final int group) {
+    return sums[group];
+  }
+
+  @Override
+  protected double getSumSq(final int group) {
+    return sumSqs[group];
+  }
+
+  @Override
+  protected void putSum(final AppendableTable dest, final int destColumn, final int group) {
+    dest.putLong(destColumn, sums[group]);
+  }
+
+  @Override
+  protected void putSumSq(final AppendableTable dest, final int destColumn, final int group) {
+    dest.putLong(destColumn, sumSqs[group]);
+  }
+
+  @Override
+  protected void putMin(final AppendableTable dest, final int destColumn, final int group) {
+    putValue(dest, destColumn, mins[group]);
+  }
+
+  @Override
+  protected void putMax(final AppendableTable dest, final int destColumn, final int group) {
+    putValue(dest, destColumn, maxs[group]);
+  }
+
+  /**
+   * @param dest the destination table.
+   * @param destColumn the destination column, of the type of the input.
+   * @param value the value to be appended.
+   */
+  private void putValue(final AppendableTable dest, final int destColumn, final long value) {
+    if (intInput) {
+      dest.putInt(destColumn, (int) value);
+    } else {
+      dest.putLong(destColumn, value);
+    }
+  }
+
+  /**
+   * @param from the source table.
+   * @param column a column of the type of the input.
+   * @param row the row of the value.
+   * @return the value.
+   */
+  private long getValue(final ReadableTable from, final int column, final int row) {
+    if (intInput) {
+      return from.getInt(column, row);
+    }
+    return from.getLong(column, row);
+  }
+
+  @Override
+  protected void mergeSum(final ReadableTable from, final int column, final int row, final int group) {
+    sums[group] = LongMath.checkedAdd(sums[group], from.getLong(column, row));
+  }
+
+  @Override
+  protected void mergeSumSq(final ReadableTable from, final int column, final int row, final int group) {
+    sumSqs[group] = LongMath.checkedAdd(sumSqs[group], from.getLong(column, row));
+  }
+
+  @Override
+  protected void mergeMin(final ReadableTable from, final int column, final int row, final int group) {
+    mins[group] = Math.min(mins[group], getValue(from, column, row));
+  }
+
+  @Override
+  protected void mergeMax(final ReadableTable from, final int column, final int row, final int group) {
+    maxs[group] = Math.max(maxs[group], getValue(from, column, row));
+  }
+}
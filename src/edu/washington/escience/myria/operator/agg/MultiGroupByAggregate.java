@@ -1,7 +1,6 @@
 package edu.washington.escience.myria.operator.agg;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.File;
 import java.util.Objects;
 
 import javax.annotation.Nullable;
@@ -9,26 +8,35 @@ import javax.annotation.Nullable;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
-import com.gs.collections.impl.list.mutable.primitive.IntArrayList;
-import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
-import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.operator.Operator;
 import edu.washington.escience.myria.operator.UnaryOperator;
+import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.JoinHashTable;
+import edu.washington.escience.myria.storage.MutableTupleBuffer;
+import edu.washington.escience.myria.storage.SpillFile;
+import edu.washington.escience.myria.storage.SpilledPartitions;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
-import edu.washington.escience.myria.storage.TupleBuffer;
 import edu.washington.escience.myria.storage.TupleUtils;
-import edu.washington.escience.myria.util.HashUtils;
 
 /**
  * The Aggregation operator that computes an aggregate (e.g., sum, avg, max, min). This variant supports aggregates over
  * multiple columns, group by multiple columns.
- * 
+ *
+ * The distinct group keys are stored in a {@link JoinHashTable} and identified by their position in it; the states of
+ * each aggregator are kept in {@link GroupedStates} indexed by that position. If there are more groups than
+ * {@link MyriaSystemConfigKeys#OPERATOR_HASH_TABLE_MAX_TUPLES} allows and all aggregators have partial results, the
+ * groups are written to disk as partial results, partitioned by the hash of their keys, and merged one partition at a
+ * time once the child is EOS.
+ *
+ * With {@link AggregationMode#PARTIAL} this operator produces the group keys followed by the partial results, so that
+ * a pre-shuffle aggregate can reduce the data that is sent to an {@link AggregationMode#FINAL} aggregate.
+ *
  * @see Aggregate
  * @see SingleGroupByAggregate
  */
@@ -37,18 +45,12 @@ public final class MultiGroupByAggregate extends UnaryOperator {
   /** Java requires this. **/
   private static final long serialVersionUID = 1L;
 
-  /** Holds the distinct grouping keys. */
-  private transient TupleBuffer groupKeys;
-  /** Final group keys. */
-  private List<TupleBatch> groupKeyList;
-  /** Holds the corresponding aggregation state for each group key in {@link #groupKeys}. */
-  private transient List<Object[]> aggStates;
-  /** Maps the hash of a grouping key to a list of indices in {@link #groupKeys}. */
-  private transient IntObjectHashMap<IntArrayList> groupKeyMap;
   /** The schema of the columns indicated by the group keys. */
   private Schema groupSchema;
   /** The schema of the aggregation result. */
   private Schema aggSchema;
+  /** The schema of the group keys followed by the partial results, or null if an aggregator has no partial results. */
+  private Schema partialSchema;
 
   /** Factories to make the Aggregators. **/
   private final AggregatorFactory[] factories;
@@ -58,41 +60,91 @@ public final class MultiGroupByAggregate extends UnaryOperator {
   private final int[] gfields;
   /** An array [0, 1, .., gfields.length-1] used for comparing tuples. */
   private final int[] grpRange;
+  /** Whether this aggregate produces results or partial results, and whether it consumes tuples or partial results. */
+  private final AggregationMode mode;
+  /** In {@link AggregationMode#FINAL} mode, the schema of the input of the partial aggregates. */
+  private final Schema partialInputSchema;
+
+  /** Holds the distinct grouping keys. The id of a group is the index of its keys. */
+  private transient JoinHashTable groups;
+  /** The states of each aggregator, indexed by group id. */
+  private transient GroupedStates[] states;
+  /** The group id of each row of the TupleBatch being aggregated. */
+  private transient int[] groupIds;
+  /** The max number of groups to keep in memory before they are spilled to disk. */
+  private transient long maxInMemoryGroups;
+  /** The directory to spill to. */
+  private transient File spillDirectory;
+  /** The spilled partial results, or null if nothing has been spilled. */
+  private transient SpilledPartitions spilled;
+  /** Whether the results are being produced. */
+  private transient boolean producingResults;
+  /** The next group in {@link #groups} whose result is to be produced. */
+  private transient int nextGroup;
+  /** The next spilled partition to be merged. */
+  private transient int nextPartition;
+  /** Buffers results until they are returned. */
+  private transient TupleBatchBuffer ans;
 
   /**
    * Groups the input tuples according to the specified grouping fields, then produces the specified aggregates.
-   * 
+   *
    * @param child The Operator that is feeding us tuples.
    * @param gfields The columns over which we are grouping the result.
    * @param factories The factories that will produce the {@link Aggregator}s for each group..
    */
   public MultiGroupByAggregate(@Nullable final Operator child, final int[] gfields,
       final AggregatorFactory... factories) {
+    this(child, gfields, AggregationMode.FULL, null, factories);
+  }
+
+  /**
+   * Groups the input tuples according to the specified grouping fields, then produces the specified aggregates or
+   * their partial results.
+   *
+   * In {@link AggregationMode#FINAL} mode, the child produces the output of {@link AggregationMode#PARTIAL} aggregates
+   * with the same grouping fields and factories, and <code>partialInputSchema</code> is the schema of their input.
+   *
+   * @param child The Operator that is feeding us tuples.
+   * @param gfields The columns over which we are grouping the result.
+   * @param mode whether to produce results or partial results, and whether to consume tuples or partial results.
+   * @param partialInputSchema in {@link AggregationMode#FINAL} mode, the schema of the input of the partial aggregates.
+   * @param factories The factories that will produce the {@link Aggregator}s for each group..
+   */
+  public MultiGroupByAggregate(@Nullable final Operator child, final int[] gfields, final AggregationMode mode,
+      @Nullable final Schema partialInputSchema, final AggregatorFactory... factories) {
     super(child);
     this.gfields = Objects.requireNonNull(gfields, "gfields");
     this.factories = Objects.requireNonNull(factories, "factories");
+    this.mode = Objects.requireNonNull(mode, "mode");
     Preconditions.checkArgument(gfields.length > 1, "to use MultiGroupByAggregate, must group over multiple fields");
     Preconditions.checkArgument(factories.length != 0, "to use MultiGroupByAggregate, must specify some aggregates");
+    Preconditions.checkArgument(mode != AggregationMode.FINAL || partialInputSchema != null,
+        "a FINAL aggregate needs the input schema of the PARTIAL aggregates");
+    this.partialInputSchema = partialInputSchema;
     grpRange = new int[gfields.length];
     for (int i = 0; i < gfields.length; ++i) {
       grpRange[i] = i;
     }
-    groupKeyList = null;
   }
 
   @Override
   protected void cleanup() throws DbException {
-    groupKeys = null;
-    aggStates = null;
-    groupKeyMap = null;
-    groupKeyList = null;
+    if (spilled != null) {
+      spilled.delete();
+      spilled = null;
+    }
+    groups = null;
+    states = null;
+    groupIds = null;
+    ans = null;
   }
 
   /**
    * Returns the next tuple. If there is a group by field, then the first field is the field by which we are grouping,
    * and the second field is the result of computing the aggregate, If there is no group by field, then the result tuple
    * should contain one field representing the result of the aggregate. Should return null if there are no more tuples.
-   * 
+   *
    * @throws DbException if any error occurs.
    * @return result TB.
    */
@@ -106,28 +158,13 @@ public final class MultiGroupByAggregate extends UnaryOperator {
 
     TupleBatch tb = child.nextReady();
     while (tb != null) {
-      for (int row = 0; row < tb.numTuples(); ++row) {
-        int rowHash = HashUtils.hashSubRow(tb, gfields, row);
-        IntArrayList hashMatches = groupKeyMap.get(rowHash);
-        if (hashMatches == null) {
-          hashMatches = newKey(rowHash);
-          newGroup(tb, row, hashMatches);
-          continue;
-        }
-        boolean found = false;
-        for (int i = 0; i < hashMatches.size(); i++) {
-          int value = hashMatches.get(i);
-          if (TupleUtils.tupleEquals(tb, gfields, row, groupKeys, grpRange, value)) {
-            updateGroup(tb, row, aggStates.get(value));
-            found = true;
-            break;
-          }
-        }
-
-        if (!found) {
-          newGroup(tb, row, hashMatches);
-        }
-        Preconditions.checkState(groupKeys.numTuples() == aggStates.size());
+      if (mode == AggregationMode.FINAL) {
+        aggregate(tb, grpRange, true);
+      } else {
+        aggregate(tb, gfields, false);
+      }
+      if (groups.numTuples() > maxInMemoryGroups && partialSchema != null) {
+        spillGroups();
       }
       tb = child.nextReady();
     }
@@ -144,51 +181,109 @@ public final class MultiGroupByAggregate extends UnaryOperator {
   }
 
   /**
-   * Since row <code>row</code> in {@link TupleBatch} <code>tb</code> does not appear in {@link #groupKeys}, create a
-   * new group for it.
-   * 
+   * Update the groups with the rows of a TupleBatch.
+   *
    * @param tb the source {@link TupleBatch}
-   * @param row the row in <code>tb</code> that contains the new group
-   * @param hashMatches the list of all rows in the output {@link TupleBuffer}s that match this hash.
+   * @param keyColumns the grouping columns of <code>tb</code>.
+   * @param partial whether <code>tb</code> holds partial results that follow the grouping columns.
+   * @throws DbException if there is an error.
+   */
+  private void aggregate(final TupleBatch tb, final int[] keyColumns, final boolean partial) throws DbException {
+    final int numTuples = tb.numTuples();
+    if (groupIds.length < numTuples) {
+      groupIds = new int[numTuples];
+    }
+    final int[] hashes = tb.getRowHashes(keyColumns);
+    for (int row = 0; row < numTuples; ++row) {
+      final int rowHash = hashes[row];
+      int group = groups.firstMatch(tb, keyColumns, row, rowHash);
+      if (group == JoinHashTable.NONE) {
+        group = groups.numTuples();
+        groups.add(tb, keyColumns, row, rowHash);
+      }
+      groupIds[row] = group;
+    }
+    if (partial) {
+      int column = keyColumns.length;
+      for (GroupedStates state : states) {
+        for (int row = 0; row < numTuples; ++row) {
+          state.addPartialRow(tb, column, row, groupIds[row]);
+        }
+        column += state.getPartialSchema().numColumns();
+      }
+    } else {
+      for (GroupedStates state : states) {
+        state.addRows(tb, groupIds);
+      }
+    }
+  }
+
+  /**
+   * Append the keys and the results or partial results of a group to a table.
+   *
+   * @param dest the destination table.
+   * @param group the id of the group.
+   * @param partial whether to append the partial results.
    * @throws DbException if there is an error.
    */
-  private void newGroup(final TupleBatch tb, final int row, final IntArrayList hashMatches) throws DbException {
-    int newIndex = groupKeys.numTuples();
-    for (int column = 0; column < gfields.length; ++column) {
-      TupleUtils.copyValue(tb, gfields[column], row, groupKeys, column);
+  private void appendGroup(final AppendableTable dest, final int group, final boolean partial) throws DbException {
+    final MutableTupleBuffer keys = groups.getData();
+    for (int column = 0; column < grpRange.length; ++column) {
+      TupleUtils.copyValue(keys, column, group, dest, column);
+    }
+    int column = grpRange.length;
+    for (int agg = 0; agg < states.length; ++agg) {
+      if (partial) {
+        states[agg].getPartialResult(dest, column, group);
+        column += states[agg].getPartialSchema().numColumns();
+      } else {
+        states[agg].getResult(dest, column, group);
+        column += aggregators[agg].getResultSchema().numColumns();
+      }
     }
-    hashMatches.add(newIndex);
-    Object[] curAggStates = AggUtils.allocateAggStates(aggregators);
-    aggStates.add(curAggStates);
-    updateGroup(tb, row, curAggStates);
-    Preconditions.checkState(groupKeys.numTuples() == aggStates.size(), "groupKeys %s != groupAggs %s", groupKeys
-        .numTuples(), aggStates.size());
   }
 
   /**
-   * Called when there is no list yet of which output aggregators match the specified hash. Creates a new int list to
-   * store these matches, and insert it into the {@link #groupKeyMap}.
-   * 
-   * @param groupHash the hash of the grouping columns in a tuple
-   * @return the new (empty still) int list storing which output aggregators match the specified hash
+   * Write the partial results of all groups in memory to their spilled partitions, and remove the groups from memory.
+   *
+   * @throws DbException if there is an error writing to disk.
    */
-  private IntArrayList newKey(final int groupHash) {
-    IntArrayList matches = new IntArrayList(1);
-    groupKeyMap.put(groupHash, matches);
-    return matches;
+  private void spillGroups() throws DbException {
+    if (spilled == null) {
+      spilled = new SpilledPartitions(partialSchema, spillDirectory, SpilledPartitions.DEFAULT_NUM_PARTITIONS);
+    }
+    final TupleBatchBuffer buffer = new TupleBatchBuffer(partialSchema);
+    for (int group = 0; group < groups.numTuples(); ++group) {
+      appendGroup(buffer, group, true);
+      final TupleBatch filled = buffer.popFilled();
+      if (filled != null) {
+        spillBatch(filled);
+      }
+    }
+    for (TupleBatch tb = buffer.popAny(); tb != null; tb = buffer.popAny()) {
+      spillBatch(tb);
+    }
+    resetGroups();
   }
 
   /**
-   * Update the aggregation states with the tuples in the specified row.
-   * 
-   * @param tb the source {@link TupleBatch}
-   * @param row the row in <code>tb</code> that contains the new values
-   * @param curAggStates the aggregation states to be updated.
-   * @throws DbException if there is an error.
+   * @param tb partial results to be appended to their spilled partitions.
+   * @throws DbException if there is an error writing to disk.
    */
-  private void updateGroup(final TupleBatch tb, final int row, final Object[] curAggStates) throws DbException {
-    for (int agg = 0; agg < aggregators.length; ++agg) {
-      aggregators[agg].addRow(tb, row, curAggStates[agg]);
+  private void spillBatch(final TupleBatch tb) throws DbException {
+    final int[] hashes = tb.getRowHashes(grpRange);
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      spilled.add(tb, row, hashes[row]);
+    }
+  }
+
+  /**
+   * Remove all groups from memory.
+   */
+  private void resetGroups() {
+    groups = new JoinHashTable(groupSchema, grpRange);
+    for (GroupedStates state : states) {
+      state.clear();
     }
   }
 
@@ -198,38 +293,65 @@ public final class MultiGroupByAggregate extends UnaryOperator {
    */
   private TupleBatch getResultBatch() throws DbException {
     Preconditions.checkState(getChild().eos(), "cannot extract results from an aggregate until child has reached EOS");
-    if (groupKeyList == null) {
-      groupKeyList = Lists.newLinkedList(groupKeys.finalResult());
-      groupKeys = null;
+    if (!producingResults) {
+      producingResults = true;
+      if (spilled != null) {
+        /* Every group has to be merged with its spilled partial results. */
+        spillGroups();
+        spilled.finishWriting();
+      }
     }
 
-    if (groupKeyList.isEmpty()) {
-      return null;
+    final boolean partial = mode == AggregationMode.PARTIAL;
+    while (true) {
+      while (nextGroup < groups.numTuples()) {
+        appendGroup(ans, nextGroup, partial);
+        ++nextGroup;
+        final TupleBatch filled = ans.popFilled();
+        if (filled != null) {
+          return filled;
+        }
+      }
+      if (spilled == null || nextPartition == spilled.numPartitions()) {
+        break;
+      }
+      mergePartition(nextPartition);
+      ++nextPartition;
     }
+    return ans.popAny();
+  }
 
-    TupleBatch curGroupKeys = groupKeyList.remove(0);
-    TupleBatchBuffer curGroupAggs = new TupleBatchBuffer(aggSchema);
-    for (int row = 0; row < curGroupKeys.numTuples(); ++row) {
-      Object[] rowAggs = aggStates.get(row);
-      int curCol = 0;
-      for (int agg = 0; agg < aggregators.length; ++agg) {
-        aggregators[agg].getResult(curGroupAggs, curCol, rowAggs[agg]);
-        curCol += aggregators[agg].getResultSchema().numColumns();
-      }
+  /**
+   * Replace the groups in memory by the merged partial results of a spilled partition.
+   *
+   * @param partition the spilled partition.
+   * @throws DbException if there is an error reading from disk.
+   */
+  private void mergePartition(final int partition) throws DbException {
+    resetGroups();
+    nextGroup = 0;
+    if (spilled.numTuples(partition) == 0) {
+      return;
+    }
+    final SpillFile.Reader reader = spilled.read(partition);
+    for (TupleBatch tb = reader.next(); tb != null; tb = reader.next()) {
+      aggregate(tb, grpRange, true);
+    }
+  }
+
+  /**
+   * @return the schema of the tuples that the aggregators operate on.
+   */
+  private Schema getAggregatedSchema() {
+    if (mode == AggregationMode.FINAL) {
+      return partialInputSchema;
     }
-    TupleBatch aggResults = curGroupAggs.popAny();
-    Preconditions.checkState(curGroupKeys.numTuples() == aggResults.numTuples(),
-        "curGroupKeys size %s != aggResults size %s", curGroupKeys.numTuples(), aggResults.numTuples());
-
-    /* Note: as of Java7 sublists of sublists do what we want -- the sublists are at most one deep. */
-    aggStates = aggStates.subList(curGroupKeys.numTuples(), aggStates.size());
-    return new TupleBatch(getSchema(), ImmutableList.<Column<?>> builder().addAll(curGroupKeys.getDataColumns())
-        .addAll(aggResults.getDataColumns()).build());
+    return getChild().getSchema();
   }
 
   /**
    * The schema of the aggregate output. Grouping fields first and then aggregate fields. The aggregate
-   * 
+   *
    * @return the resulting schema
    */
   @Override
@@ -238,7 +360,7 @@ public final class MultiGroupByAggregate extends UnaryOperator {
     if (child == null) {
       return null;
     }
-    Schema inputSchema = child.getSchema();
+    Schema inputSchema = getAggregatedSchema();
     if (inputSchema == null) {
       return null;
     }
@@ -248,26 +370,79 @@ public final class MultiGroupByAggregate extends UnaryOperator {
     /* Build the output schema from the group schema and the aggregates. */
     final ImmutableList.Builder<Type> aggTypes = ImmutableList.<Type> builder();
     final ImmutableList.Builder<String> aggNames = ImmutableList.<String> builder();
-
+    final Aggregator[] aggs;
     try {
-      for (Aggregator agg : AggUtils.allocateAggs(factories, inputSchema)) {
-        Schema curAggSchema = agg.getResultSchema();
-        aggTypes.addAll(curAggSchema.getColumnTypes());
-        aggNames.addAll(curAggSchema.getColumnNames());
-      }
+      aggs = AggUtils.allocateAggs(factories, inputSchema);
     } catch (DbException e) {
       throw new RuntimeException("unable to allocate aggregators to determine output schema", e);
     }
+    for (Aggregator agg : aggs) {
+      Schema curAggSchema = agg.getResultSchema();
+      aggTypes.addAll(curAggSchema.getColumnTypes());
+      aggNames.addAll(curAggSchema.getColumnNames());
+    }
     aggSchema = new Schema(aggTypes, aggNames);
+    if (mode == AggregationMode.FULL) {
+      /* Only needed for spilling, so it is built in init. */
+      partialSchema = null;
+    } else {
+      partialSchema = buildPartialSchema(aggs);
+      Preconditions.checkArgument(partialSchema != null, "%s aggregates need aggregators with partial results", mode);
+    }
+
+    if (mode == AggregationMode.PARTIAL) {
+      return partialSchema;
+    }
     return Schema.merge(groupSchema, aggSchema);
   }
 
+  /**
+   * The partial results of different aggregators may have the same names, e.g., SUM(x) and AVG(x) both keep sum_x, so
+   * the names are prefixed with the index of their aggregator.
+   *
+   * @param aggs the aggregators.
+   * @return the schema of the group keys followed by the partial results, or null if an aggregator has no partial
+   *         results.
+   */
+  private Schema buildPartialSchema(final Aggregator[] aggs) {
+    final ImmutableList.Builder<Type> partialTypes = ImmutableList.<Type> builder();
+    final ImmutableList.Builder<String> partialNames = ImmutableList.<String> builder();
+    for (int agg = 0; agg < aggs.length; ++agg) {
+      Schema curPartialSchema = aggs[agg].newGroupedStates().getPartialSchema();
+      if (curPartialSchema == null) {
+        return null;
+      }
+      partialTypes.addAll(curPartialSchema.getColumnTypes());
+      for (String name : curPartialSchema.getColumnNames()) {
+        partialNames.add("agg" + agg + "_" + name);
+      }
+    }
+    return Schema.merge(groupSchema, new Schema(partialTypes.build(), partialNames.build()));
+  }
+
   @Override
   protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
     Preconditions.checkState(getSchema() != null, "unable to determine schema in init");
-    aggregators = AggUtils.allocateAggs(factories, getChild().getSchema());
-    groupKeys = new TupleBuffer(groupSchema);
-    aggStates = new ArrayList<>();
-    groupKeyMap = new IntObjectHashMap<>();
+    if (mode == AggregationMode.FINAL) {
+      Preconditions.checkState(getChild().getSchema().getColumnTypes().equals(partialSchema.getColumnTypes()),
+          "the child of a FINAL aggregate must produce %s, not %s", partialSchema, getChild().getSchema());
+    }
+    aggregators = AggUtils.allocateAggs(factories, getAggregatedSchema());
+    if (mode == AggregationMode.FULL) {
+      partialSchema = buildPartialSchema(aggregators);
+    }
+    states = new GroupedStates[aggregators.length];
+    for (int agg = 0; agg < aggregators.length; ++agg) {
+      states[agg] = aggregators[agg].newGroupedStates();
+    }
+    groups = new JoinHashTable(groupSchema, grpRange);
+    groupIds = new int[TupleBatch.BATCH_SIZE];
+    maxInMemoryGroups = SpilledPartitions.getMaxInMemoryTuples(execEnvVars);
+    spillDirectory = SpilledPartitions.getSpillDirectory(execEnvVars);
+    spilled = null;
+    producingResults = false;
+    nextGroup = 0;
+    nextPartition = 0;
+    ans = new TupleBatchBuffer(getSchema());
   }
 };
@@ -0,0 +1,70 @@
+package edu.washington.escience.myria.operator.agg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * {@link GroupedStates} that keep one state object per group, as created by {@link Aggregator#getInitialState()}. Used
+ * by aggregators whose state has no primitive layout. These states have no partial results.
+ */
+final class ObjectGroupedStates implements GroupedStates {
+
+  /** The aggregator that owns the states. */
+  private final Aggregator aggregator;
+  /** The state of each group. */
+  private final List<Object> states;
+
+  /**
+   * @param aggregator the aggregator that owns the states.
+   */
+  ObjectGroupedStates(final Aggregator aggregator) {
+    this.aggregator = aggregator;
+    states = new ArrayList<>();
+  }
+
+  @Override
+  public void addRow(final ReadableTable from, final int row, final int group) throws DbException {
+    while (states.size() <= group) {
+      states.add(aggregator.getInitialState());
+    }
+    aggregator.addRow(from, row, states.get(group));
+  }
+
+  @Override
+  public void addRows(final TupleBatch from, final int[] groups) throws DbException {
+    for (int row = 0; row < from.numTuples(); ++row) {
+      addRow(from, row, groups[row]);
+    }
+  }
+
+  @Override
+  public void getResult(final AppendableTable dest, final int destColumn, final int group) throws DbException {
+    aggregator.getResult(dest, destColumn, states.get(group));
+  }
+
+  @Override
+  public Schema getPartialSchema() {
+    return null;
+  }
+
+  @Override
+  public void getPartialResult(final AppendableTable dest, final int destColumn, final int group) {
+    throw new UnsupportedOperationException(aggregator.getClass().getSimpleName() + " has no partial results");
+  }
+
+  @Override
+  public void addPartialRow(final ReadableTable from, final int fromColumn, final int row, final int group) {
+    throw new UnsupportedOperationException(aggregator.getClass().getSimpleName() + " has no partial results");
+  }
+
+  @Override
+  public void clear() {
+    states.clear();
+  }
+}
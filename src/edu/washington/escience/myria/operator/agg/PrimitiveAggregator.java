@@ -42,6 +42,8 @@ public abstract class PrimitiveAggregator implements Aggregator, Serializable {
     STDEV
   };
 
+  /** The name of the field being aggregated, for naming output columns. */
+  protected final String fieldName;
   /** Does this aggregator need to compute the count? */
   protected final boolean needsCount;
   /** Does this aggregator need to compute the sum? */
@@ -76,6 +78,7 @@ public abstract class PrimitiveAggregator implements Aggregator, Serializable {
   protected PrimitiveAggregator(final String fieldName, final AggregationOp[] aggOps) {
     Objects.requireNonNull(aggOps, "aggOps");
     Objects.requireNonNull(fieldName, "fieldName");
+    this.fieldName = fieldName;
 
     this.aggOps = new LinkedHashSet<>(Arrays.asList(aggOps));
 
@@ -151,4 +154,9 @@ public abstract class PrimitiveAggregator implements Aggregator, Serializable {
   public final Schema getResultSchema() {
     return resultSchema;
   }
+
+  @Override
+  public GroupedStates newGroupedStates() {
+    return new ObjectGroupedStates(this);
+  }
 }
@@ -0,0 +1,359 @@
+package edu.washington.escience.myria.operator.agg;
+
+import java.util.Arrays;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.math.LongMath;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
+import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * {@link GroupedStates} of a numeric {@link PrimitiveAggregator}, laid out as one primitive array per statistic and
+ * indexed by group id, so that no object is allocated per group.
+ *
+ * The partial result of a group consists of the statistics that the aggregator needs, in the order count, sum, sum of
+ * squares, min, max.
+ */
+abstract class PrimitiveGroupedStates implements GroupedStates {
+
+  /** The number of groups that the arrays can hold initially. */
+  private static final int INITIAL_CAPACITY = 64;
+
+  /** The aggregator that owns the states. */
+  private final PrimitiveAggregator aggregator;
+  /** Which column of the input the aggregator operates over. */
+  protected final int fromColumn;
+  /** Does the aggregator need to compute the count? */
+  private final boolean needsCount;
+  /** Does the aggregator need to compute the sum? */
+  private final boolean needsSum;
+  /** Does the aggregator need to compute the sum squared? */
+  private final boolean needsSumSq;
+  /** Does the aggregator need to compute the min? */
+  private final boolean needsMin;
+  /** Does the aggregator need to compute the max? */
+  private final boolean needsMax;
+  /** Does the aggregator need to compute tuple-level stats? */
+  private final boolean needsStats;
+  /** The schema of the partial results. */
+  private final Schema partialSchema;
+
+  /** The count of each group. */
+  private long[] counts;
+  /** The number of groups whose state has been created. */
+  private int numGroups;
+
+  /**
+   * @param aggregator the aggregator that owns the states.
+   * @param fromColumn which column of the input the aggregator operates over.
+   */
+  PrimitiveGroupedStates(final PrimitiveAggregator aggregator, final int fromColumn) {
+    this.aggregator = aggregator;
+    this.fromColumn = fromColumn;
+    needsCount = aggregator.needsCount;
+    needsSum = aggregator.needsSum;
+    needsSumSq = aggregator.needsSumSq;
+    needsMin = aggregator.needsMin;
+    needsMax = aggregator.needsMax;
+    needsStats = aggregator.needsStats;
+    counts = new long[0];
+
+    final ImmutableList.Builder<Type> types = ImmutableList.builder();
+    final ImmutableList.Builder<String> names = ImmutableList.builder();
+    if (needsCount) {
+      types.add(Type.LONG_TYPE);
+      names.add("count_" + aggregator.fieldName);
+    }
+    if (needsSum) {
+      types.add(aggregator.getSumType());
+      names.add("sum_" + aggregator.fieldName);
+    }
+    if (needsSumSq) {
+      types.add(aggregator.getSumType());
+      names.add("sumsq_" + aggregator.fieldName);
+    }
+    if (needsMin) {
+      types.add(aggregator.getType());
+      names.add("min_" + aggregator.fieldName);
+    }
+    if (needsMax) {
+      types.add(aggregator.getType());
+      names.add("max_" + aggregator.fieldName);
+    }
+    partialSchema = new Schema(types, names);
+  }
+
+  /**
+   * Create the states of all groups up to and including the specified one.
+   *
+   * @param group the id of a group.
+   */
+  private void ensureGroup(final int group) {
+    while (numGroups <= group) {
+      if (numGroups == counts.length) {
+        final int capacity = Math.max(INITIAL_CAPACITY, counts.length * 2);
+        counts = Arrays.copyOf(counts, capacity);
+        resize(capacity);
+      }
+      counts[numGroups] = 0;
+      initGroup(numGroups);
+      ++numGroups;
+    }
+  }
+
+  @Override
+  public final void addRow(final ReadableTable from, final int row, final int group) {
+    if (group >= numGroups) {
+      ensureGroup(group);
+    }
+    if (needsCount) {
+      counts[group] = LongMath.checkedAdd(counts[group], 1);
+    }
+    if (needsStats) {
+      addValue(from, row, group);
+    }
+  }
+
+  @Override
+  public final void addRows(final TupleBatch from, final int[] groups) {
+    final int numTuples = from.numTuples();
+    int maxGroup = -1;
+    for (int row = 0; row < numTuples; ++row) {
+      maxGroup = Math.max(maxGroup, groups[row]);
+    }
+    if (maxGroup >= numGroups) {
+      ensureGroup(maxGroup);
+    }
+    if (needsCount) {
+      /* A count grows by one per row, so it cannot overflow. */
+      for (int row = 0; row < numTuples; ++row) {
+        counts[groups[row]]++;
+      }
+    }
+    if (needsStats) {
+      addValues(from.getDataColumns().get(fromColumn), groups);
+    }
+  }
+
+  @Override
+  public final void getResult(final AppendableTable dest, final int destColumn, final int group) {
+    final long count = counts[group];
+    int idx = destColumn;
+    for (AggregationOp op : aggregator.aggOps) {
+      switch (op) {
+        case AVG:
+          dest.putDouble(idx, getSum(group) / count);
+          break;
+        case COUNT:
+          dest.putLong(idx, count);
+          break;
+        case MAX:
+          putMax(dest, idx, group);
+          break;
+        case MIN:
+          putMin(dest, idx, group);
+          break;
+        case STDEV:
+          double first = getSumSq(group) / count;
+          double second = getSum(group) / count;
+          dest.putDouble(idx, Math.sqrt(first - second * second));
+          break;
+        case SUM:
+          putSum(dest, idx, group);
+          break;
+      }
+      idx++;
+    }
+  }
+
+  @Override
+  public final Schema getPartialSchema() {
+    return partialSchema;
+  }
+
+  @Override
+  public final void getPartialResult(final AppendableTable dest, final int destColumn, final int group) {
+    int idx = destColumn;
+    if (needsCount) {
+      dest.putLong(idx++, counts[group]);
+    }
+    if (needsSum) {
+      putSum(dest, idx++, group);
+    }
+    if (needsSumSq) {
+      putSumSq(dest, idx++, group);
+    }
+    if (needsMin) {
+      putMin(dest, idx++, group);
+    }
+    if (needsMax) {
+      putMax(dest, idx++, group);
+    }
+  }
+
+  @Override
+  public final void addPartialRow(final ReadableTable from, final int firstColumn, final int row, final int group) {
+    if (group >= numGroups) {
+      ensureGroup(group);
+    }
+    int idx = firstColumn;
+    if (needsCount) {
+      counts[group] = LongMath.checkedAdd(counts[group], from.getLong(idx++, row));
+    }
+    if (needsSum) {
+      mergeSum(from, idx++, row, group);
+    }
+    if (needsSumSq) {
+      mergeSumSq(from, idx++, row, group);
+    }
+    if (needsMin) {
+      mergeMin(from, idx++, row, group);
+    }
+    if (needsMax) {
+      mergeMax(from, idx++, row, group);
+    }
+  }
+
+  @Override
+  public final void clear() {
+    numGroups = 0;
+  }
+
+  /**
+   * @return true if the aggregator needs to compute the sum.
+   */
+  protected final boolean needsSum() {
+    return needsSum;
+  }
+
+  /**
+   * @return true if the aggregator needs to compute the sum squared.
+   */
+  protected final boolean needsSumSq() {
+    return needsSumSq;
+  }
+
+  /**
+   * @return true if the aggregator needs to compute the min.
+   */
+  protected final boolean needsMin() {
+    return needsMin;
+  }
+
+  /**
+   * @return true if the aggregator needs to compute the max.
+   */
+  protected final boolean needsMax() {
+    return needsMax;
+  }
+
+  /**
+   * Grow the arrays of the statistics.
+   *
+   * @param capacity the new number of groups that the arrays hold.
+   */
+  protected abstract void resize(int capacity);
+
+  /**
+   * Reset the statistics of a group, which may have held the state of a group before {@link #clear()}.
+   *
+   * @param group the id of the group.
+   */
+  protected abstract void initGroup(int group);
+
+  /**
+   * Add a value to the statistics of a group. Note this does NOT update count.
+   *
+   * @param from the source table.
+   * @param row the row of the value in {@link #fromColumn}.
+   * @param group the id of the group.
+   */
+  protected abstract void addValue(ReadableTable from, int row, int group);
+
+  /**
+   * Add all values of a column to the statistics of their groups, reading them straight from the backing array of the
+   * column and its selection vector, if any. Note this does NOT update count.
+   *
+   * @param column the values to be added.
+   * @param groups the id of the group of each value.
+   */
+  protected abstract void addValues(Column<?> column, int[] groups);
+
+  /**
+   * @param group the id of a group.
+   * @return the sum of the group.
+   */
+  protected abstract double getSum(int group);
+
+  /**
+   * @param group the id of a group.
+   * @return the sum squared of the group.
+   */
+  protected abstract double getSumSq(int group);
+
+  /**
+   * @param dest the destination table.
+   * @param destColumn the destination column.
+   * @param group the id of a group.
+   */
+  protected abstract void putSum(AppendableTable dest, int destColumn, int group);
+
+  /**
+   * @param dest the destination table.
+   * @param destColumn the destination column.
+   * @param group the id of a group.
+   */
+  protected abstract void putSumSq(AppendableTable dest, int destColumn, int group);
+
+  /**
+   * @param dest the destination table.
+   * @param destColumn the destination column.
+   * @param group the id of a group.
+   */
+  protected abstract void putMin(AppendableTable dest, int destColumn, int group);
+
+  /**
+   * @param dest the destination table.
+   * @param destColumn the destination column.
+   * @param group the id of a group.
+   */
+  protected abstract void putMax(AppendableTable dest, int destColumn, int group);
+
+  /**
+   * @param from the source table.
+   * @param column the column of the partial sum.
+   * @param row the row of the partial result.
+   * @param group the id of a group.
+   */
+  protected abstract void mergeSum(ReadableTable from, int column, int row, int group);
+
+  /**
+   * @param from the source table.
+   * @param column the column of the partial sum squared.
+   * @param row the row of the partial result.
+   * @param group the id of a group.
+   */
+  protected abstract void mergeSumSq(ReadableTable from, int column, int row, int group);
+
+  /**
+   * @param from the source table.
+   * @param column the column of the partial min.
+   * @param row the row of the partial result.
+   * @param group the id of a group.
+   */
+  protected abstract void mergeMin(ReadableTable from, int column, int row, int group);
+
+  /**
+   * @param from the source table.
+   * @param column the column of the partial max.
+   * @param row the row of the partial result.
+   * @param group the id of a group.
+   */
+  protected abstract void mergeMax(ReadableTable from, int column, int row, int group);
+}
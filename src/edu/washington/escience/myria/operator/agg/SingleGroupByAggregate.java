@@ -1,28 +1,27 @@
 package edu.washington.escience.myria.operator.agg;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Objects;
 
 import javax.annotation.Nullable;
 
-import org.joda.time.DateTime;
-
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
-import com.gs.collections.impl.map.mutable.primitive.DoubleObjectHashMap;
-import com.gs.collections.impl.map.mutable.primitive.FloatObjectHashMap;
-import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
-import com.gs.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import com.gs.collections.impl.map.mutable.primitive.DoubleIntHashMap;
+import com.gs.collections.impl.map.mutable.primitive.FloatIntHashMap;
+import com.gs.collections.impl.map.mutable.primitive.IntIntHashMap;
+import com.gs.collections.impl.map.mutable.primitive.LongIntHashMap;
+import com.gs.collections.impl.map.mutable.primitive.ObjectIntHashMap;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.operator.Operator;
 import edu.washington.escience.myria.operator.UnaryOperator;
-import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.MutableTupleBuffer;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleUtils;
 
 /**
  * The Aggregation operator that computes an aggregate (e.g., sum, avg, max, min) with a single group by column.
@@ -39,6 +38,11 @@ public class SingleGroupByAggregate extends UnaryOperator {
    */
   private static final long serialVersionUID = 1L;
 
+  /**
+   * Marks a group key that has no group yet.
+   */
+  private static final int NO_GROUP = -1;
+
   /**
    * Factories to create the {@link Aggregator}s.
    */
@@ -55,41 +59,45 @@ public class SingleGroupByAggregate extends UnaryOperator {
   private Type gColumnType;
 
   /**
-   * The buffer storing in-progress group by results. {groupby-column-value -> Aggregator Array} when the group key is
-   * String
+   * The group id of each group key when the group key is String or DateTime.
    */
-  private transient HashMap<String, Object[]> stringAggState;
-
+  private transient ObjectIntHashMap<Object> objectGroups;
   /**
-   * The buffer storing in-progress group by results. {groupby-column-value -> Aggregator Array} when the group key is
-   * DateTime.
+   * The group id of each group key when the group key is int.
    */
-  private transient HashMap<DateTime, Object[]> datetimeAggState;
-
+  private transient IntIntHashMap intGroups;
   /**
-   * The buffer storing in-progress group by results when the group key is int.
+   * The group id of each group key when the group key is boolean. True is index 0, False is index 1.
    */
-  private transient IntObjectHashMap<Object[]> intAggState;
+  private transient int[] booleanGroups;
   /**
-   * The buffer storing in-progress group by results when the group key is boolean.
+   * The group id of each group key when the group key is long.
    */
-  private transient Object[][] booleanAggState;
+  private transient LongIntHashMap longGroups;
   /**
-   * The buffer storing in-progress group by results when the group key is long.
+   * The group id of each group key when the group key is float.
    */
-  private transient LongObjectHashMap<Object[]> longAggState;
+  private transient FloatIntHashMap floatGroups;
   /**
-   * The buffer storing in-progress group by results when the group key is float.
+   * The group id of each group key when the group key is double.
    */
-  private transient FloatObjectHashMap<Object[]> floatAggState;
+  private transient DoubleIntHashMap doubleGroups;
   /**
-   * The buffer storing in-progress group by results when the group key is double.
+   * The group keys, indexed by group id.
    */
-  private transient DoubleObjectHashMap<Object[]> doubleAggState;
+  private transient MutableTupleBuffer groupKeys;
   /**
    * The aggregators that will initialize and update the state.
    */
   private Aggregator[] aggregators;
+  /**
+   * The states of each aggregator, indexed by group id.
+   */
+  private transient GroupedStates[] states;
+  /**
+   * The group id of each row of the TupleBatch being processed.
+   */
+  private transient int[] groupIds;
 
   /**
    * The buffer storing results after group by is done.
@@ -111,97 +119,114 @@ public class SingleGroupByAggregate extends UnaryOperator {
 
   @Override
   protected final void cleanup() throws DbException {
-    stringAggState = null;
-    datetimeAggState = null;
-    doubleAggState = null;
-    booleanAggState = null;
-    floatAggState = null;
-    intAggState = null;
-    longAggState = null;
+    objectGroups = null;
+    doubleGroups = null;
+    booleanGroups = null;
+    floatGroups = null;
+    intGroups = null;
+    longGroups = null;
+    groupKeys = null;
+    states = null;
+    groupIds = null;
     resultBuffer = null;
   }
 
   /**
-   * Utility function to fetch or create/initialize the aggregation state for the group corresponding to the data in the
-   * specified table and row.
+   * Create a new group for the key in the specified row.
    * 
-   * @param table the data to be aggregated.
-   * @param row which row of the table is to be aggregated.
-   * @return the aggregation state for that row.
-   * @throws DbException if there is an error.
+   * @param tb the data to be aggregated.
+   * @param row the row that holds the new group key.
+   * @return the id of the new group.
    */
-  private Object[] getAggState(final ReadableTable table, final int row) throws DbException {
-    Object[] aggState = null;
+  private int newGroup(final TupleBatch tb, final int row) {
+    final int group = groupKeys.numTuples();
+    TupleUtils.copyValue(tb, gColumn, row, groupKeys, 0);
+    return group;
+  }
+
+  /**
+   * Fill {@link #groupIds} with the id of the group of each row of the specified TupleBatch, creating groups for new
+   * keys. The type of the key is dispatched once per batch, and the keys are read from the backing array of the
+   * group-by column.
+   * 
+   * @param tb the data to be aggregated.
+   */
+  private void computeGroupIds(final TupleBatch tb) {
+    final int numTuples = tb.numTuples();
+    final Column<?> column = tb.getDataColumns().get(gColumn);
     switch (gColumnType) {
       case BOOLEAN_TYPE:
-        boolean groupByBool = table.getBoolean(gColumn, row);
-        if (groupByBool) {
-          aggState = booleanAggState[0];
-        } else {
-          aggState = booleanAggState[1];
-        }
-        if (aggState == null) {
-          aggState = AggUtils.allocateAggStates(aggregators);
-          if (groupByBool) {
-            booleanAggState[0] = aggState;
-          } else {
-            booleanAggState[1] = aggState;
+        for (int row = 0; row < numTuples; ++row) {
+          final int index = column.getBoolean(row) ? 0 : 1;
+          if (booleanGroups[index] == NO_GROUP) {
+            booleanGroups[index] = newGroup(tb, row);
           }
+          groupIds[row] = booleanGroups[index];
         }
         break;
       case STRING_TYPE:
-        String groupByString = table.getString(gColumn, row);
-        aggState = stringAggState.get(groupByString);
-        if (aggState == null) {
-          aggState = AggUtils.allocateAggStates(aggregators);
-          stringAggState.put(groupByString, aggState);
-        }
-        break;
       case DATETIME_TYPE:
-        DateTime groupByDateTime = table.getDateTime(gColumn, row);
-        aggState = datetimeAggState.get(groupByDateTime);
-        if (aggState == null) {
-          aggState = AggUtils.allocateAggStates(aggregators);
-          datetimeAggState.put(groupByDateTime, aggState);
+        for (int row = 0; row < numTuples; ++row) {
+          final Object key = column.getObject(row);
+          int group = objectGroups.getIfAbsent(key, NO_GROUP);
+          if (group == NO_GROUP) {
+            group = newGroup(tb, row);
+            objectGroups.put(key, group);
+          }
+          groupIds[row] = group;
         }
         break;
-      case INT_TYPE:
-        int groupByInt = table.getInt(gColumn, row);
-        aggState = intAggState.get(groupByInt);
-        if (aggState == null) {
-          aggState = AggUtils.allocateAggStates(aggregators);
-          intAggState.put(groupByInt, aggState);
+      case INT_TYPE: {
+        final int[] keys = column.getIntArray();
+        for (int row = 0; row < numTuples; ++row) {
+          int group = intGroups.getIfAbsent(keys[row], NO_GROUP);
+          if (group == NO_GROUP) {
+            group = newGroup(tb, row);
+            intGroups.put(keys[row], group);
+          }
+          groupIds[row] = group;
         }
         break;
-      case LONG_TYPE:
-        long groupByLong = table.getLong(gColumn, row);
-        aggState = longAggState.get(groupByLong);
-        if (aggState == null) {
-          aggState = AggUtils.allocateAggStates(aggregators);
-          longAggState.put(groupByLong, aggState);
+      }
+      case LONG_TYPE: {
+        final long[] keys = column.getLongArray();
+        for (int row = 0; row < numTuples; ++row) {
+          int group = longGroups.getIfAbsent(keys[row], NO_GROUP);
+          if (group == NO_GROUP) {
+            group = newGroup(tb, row);
+            longGroups.put(keys[row], group);
+          }
+          groupIds[row] = group;
         }
         break;
-      case FLOAT_TYPE:
-        float groupByFloat = table.getFloat(gColumn, row);
-        aggState = floatAggState.get(groupByFloat);
-        if (aggState == null) {
-          aggState = AggUtils.allocateAggStates(aggregators);
-          floatAggState.put(groupByFloat, aggState);
+      }
+      case FLOAT_TYPE: {
+        final float[] keys = column.getFloatArray();
+        for (int row = 0; row < numTuples; ++row) {
+          int group = floatGroups.getIfAbsent(keys[row], NO_GROUP);
+          if (group == NO_GROUP) {
+            group = newGroup(tb, row);
+            floatGroups.put(keys[row], group);
+          }
+          groupIds[row] = group;
         }
         break;
-      case DOUBLE_TYPE:
-        double groupByDouble = table.getDouble(gColumn, row);
-        aggState = doubleAggState.get(groupByDouble);
-        if (aggState == null) {
-          aggState = AggUtils.allocateAggStates(aggregators);
-          doubleAggState.put(groupByDouble, aggState);
+      }
+      case DOUBLE_TYPE: {
+        final double[] keys = column.getDoubleArray();
+        for (int row = 0; row < numTuples; ++row) {
+          int group = doubleGroups.getIfAbsent(keys[row], NO_GROUP);
+          if (group == NO_GROUP) {
+            group = newGroup(tb, row);
+            doubleGroups.put(keys[row], group);
+          }
+          groupIds[row] = group;
         }
         break;
+      }
+      default:
+        throw new IllegalStateException("Aggregating values of unknown type.");
     }
-    if (aggState == null) {
-      throw new IllegalStateException("Aggregating values of unknown type.");
-    }
-    return aggState;
   }
 
   /**
@@ -209,27 +234,12 @@ public class SingleGroupByAggregate extends UnaryOperator {
    * @throws DbException if there is an error.
    */
   private void processTupleBatch(final TupleBatch tb) throws DbException {
-    for (int i = 0; i < tb.numTuples(); ++i) {
-      Object[] groupAgg = getAggState(tb, i);
-      for (int agg = 0; agg < aggregators.length; ++agg) {
-        aggregators[agg].addRow(tb, i, groupAgg[agg]);
-      }
+    if (groupIds.length < tb.numTuples()) {
+      groupIds = new int[tb.numTuples()];
     }
-  }
-
-  /**
-   * Helper function for appending results to an output tuple buffer. By convention, the single-column aggregation key
-   * goes in column 0, and the aggregates are appended starting at column 1.
-   * 
-   * @param resultBuffer where the tuples will be appended.
-   * @param aggState the states corresponding to all aggregators.
-   * @throws DbException if there is an error.
-   */
-  private void concatResults(final TupleBatchBuffer resultBuffer, final Object[] aggState) throws DbException {
-    int index = 1;
-    for (int agg = 0; agg < aggregators.length; ++agg) {
-      aggregators[agg].getResult(resultBuffer, index, aggState[agg]);
-      index += aggregators[agg].getResultSchema().numColumns();
+    computeGroupIds(tb);
+    for (GroupedStates state : states) {
+      state.addRows(tb, groupIds);
     }
   }
 
@@ -238,56 +248,15 @@ public class SingleGroupByAggregate extends UnaryOperator {
    * @throws DbException if there is an error.
    */
   private void generateResult(final TupleBatchBuffer resultBuffer) throws DbException {
-
-    switch (gColumnType) {
-      case BOOLEAN_TYPE:
-        for (int boolBucket = 0; boolBucket < 2; ++boolBucket) {
-          Object[] aggState = booleanAggState[boolBucket];
-          if (aggState != null) {
-            /* True is index 0 in booleanAggState, False is index 1. */
-            resultBuffer.putBoolean(0, boolBucket == 0);
-            concatResults(resultBuffer, aggState);
-          }
-        }
-        break;
-      case STRING_TYPE:
-        for (final Map.Entry<String, Object[]> e : stringAggState.entrySet()) {
-          resultBuffer.putString(0, e.getKey());
-          concatResults(resultBuffer, e.getValue());
-        }
-        break;
-      case DATETIME_TYPE:
-        for (final Map.Entry<DateTime, Object[]> e : datetimeAggState.entrySet()) {
-          resultBuffer.putDateTime(0, e.getKey());
-          concatResults(resultBuffer, e.getValue());
-        }
-        break;
-      case INT_TYPE:
-        for (int key : intAggState.keySet().toArray()) {
-          resultBuffer.putInt(0, key);
-          concatResults(resultBuffer, intAggState.get(key));
-        }
-        break;
-      case LONG_TYPE:
-        for (long key : longAggState.keySet().toArray()) {
-          resultBuffer.putLong(0, key);
-          concatResults(resultBuffer, longAggState.get(key));
-        }
-        break;
-      case FLOAT_TYPE:
-        for (float key : floatAggState.keySet().toArray()) {
-          resultBuffer.putFloat(0, key);
-          concatResults(resultBuffer, floatAggState.get(key));
-        }
-        break;
-      case DOUBLE_TYPE:
-        for (double key : doubleAggState.keySet().toArray()) {
-          resultBuffer.putDouble(0, key);
-          concatResults(resultBuffer, doubleAggState.get(key));
-        }
-        break;
+    for (int group = 0; group < groupKeys.numTuples(); ++group) {
+      /* By convention, the single-column aggregation key goes in column 0, and the aggregates start at column 1. */
+      TupleUtils.copyValue(groupKeys, 0, group, resultBuffer, 0);
+      int index = 1;
+      for (int agg = 0; agg < aggregators.length; ++agg) {
+        states[agg].getResult(resultBuffer, index, group);
+        index += aggregators[agg].getResultSchema().numColumns();
+      }
     }
-
   }
 
   @Override
@@ -329,29 +298,33 @@ public class SingleGroupByAggregate extends UnaryOperator {
     Preconditions.checkState(getSchema() != null, "unable to determine schema in init");
 
     aggregators = AggUtils.allocateAggs(factories, getChild().getSchema());
+    states = new GroupedStates[aggregators.length];
+    for (int agg = 0; agg < aggregators.length; ++agg) {
+      states[agg] = aggregators[agg].newGroupedStates();
+    }
+    groupIds = new int[TupleBatch.BATCH_SIZE];
+    groupKeys = new MutableTupleBuffer(getSchema().getSubSchema(new int[] { 0 }));
     resultBuffer = new TupleBatchBuffer(getSchema());
 
     switch (gColumnType) {
       case BOOLEAN_TYPE:
-        booleanAggState = new Object[2][];
+        booleanGroups = new int[] { NO_GROUP, NO_GROUP };
         break;
       case INT_TYPE:
-        intAggState = new IntObjectHashMap<Object[]>();
+        intGroups = new IntIntHashMap();
         break;
       case LONG_TYPE:
-        longAggState = new LongObjectHashMap<Object[]>();
+        longGroups = new LongIntHashMap();
         break;
       case FLOAT_TYPE:
-        floatAggState = new FloatObjectHashMap<Object[]>();
+        floatGroups = new FloatIntHashMap();
         break;
       case DOUBLE_TYPE:
-        doubleAggState = new DoubleObjectHashMap<Object[]>();
+        doubleGroups = new DoubleIntHashMap();
         break;
       case STRING_TYPE:
-        stringAggState = new HashMap<String, Object[]>();
-        break;
       case DATETIME_TYPE:
-        datetimeAggState = new HashMap<DateTime, Object[]>();
+        objectGroups = new ObjectIntHashMap<Object>();
         break;
     }
   }
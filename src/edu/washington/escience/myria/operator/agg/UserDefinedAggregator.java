@@ -87,6 +87,11 @@ public class UserDefinedAggregator implements Aggregator {
     return resultSchema;
   }
 
+  @Override
+  public GroupedStates newGroupedStates() {
+    return new ObjectGroupedStates(this);
+  }
+
   @Override
   public Object getInitialState() {
     return initialState.clone();
@@ -136,6 +136,13 @@ public class Consumer extends LeafOperator {
     workerEOI.clear();
   }
 
+  @Override
+  protected final void stopped() {
+    /* Releasing the input before the EOS of a stream tells its producer to stop. */
+    taskResourceManager.releaseInputBuffer(this);
+    inputBuffer = null;
+  }
+
   @Override
   protected final void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
     workerEOS = new BitSet(sourceWorkers.size());
@@ -3,6 +3,8 @@ package edu.washington.escience.myria.operator.network;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.jboss.netty.channel.ChannelFuture;
 
@@ -54,6 +56,16 @@ public abstract class Producer extends RootOperator {
    * */
   private transient boolean[] ioChannelsAvail;
 
+  /**
+   * For each output channel, 1 if its consumer needs no more data.
+   * */
+  private transient AtomicIntegerArray stoppedChannels;
+
+  /**
+   * The number of output channels whose consumer needs no more data.
+   * */
+  private transient AtomicInteger numStoppedChannels;
+
   /**
    * output buffers of partitions.
    * */
@@ -196,11 +208,14 @@ public abstract class Producer extends RootOperator {
     taskResourceManager =
         (LocalFragmentResourceManager) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_FRAGMENT_RESOURCE_MANAGER);
     partitionBuffers = new TupleBatchBuffer[numOfPartition];
+    final int batchSize = TupleBatch.batchSize(getSchema(), TupleBatch.getMaxBatchBytes(execEnvVars));
     for (int i = 0; i < numOfPartition; i++) {
-      partitionBuffers[i] = new TupleBatchBuffer(getSchema());
+      partitionBuffers[i] = new TupleBatchBuffer(getSchema(), batchSize);
     }
     ioChannels = new StreamOutputChannel[outputIDs.length];
     ioChannelsAvail = new boolean[outputIDs.length];
+    stoppedChannels = new AtomicIntegerArray(outputIDs.length);
+    numStoppedChannels = new AtomicInteger();
     pendingTuplesToSend = new ArrayList<LinkedList<TupleBatch>>();
     localizedOutputIDs = new StreamIOChannelID[outputIDs.length];
     for (int i = 0; i < outputIDs.length; i++) {
@@ -239,6 +254,15 @@ public abstract class Producer extends RootOperator {
         taskResourceManager.getFragment().notifyOutputEnabled(localizedOutputIDs[i]);
       }
     });
+    ioChannels[i].addListener(StreamOutputChannel.OUTPUT_STOPPED, new IPCEventListener() {
+      @Override
+      public void triggered(final IPCEvent event) {
+        if (stoppedChannels.compareAndSet(i, 0, 1)) {
+          numStoppedChannels.incrementAndGet();
+          taskResourceManager.getFragment().notifyNewInput();
+        }
+      }
+    });
     ioChannelsAvail[i] = true;
   }
 
@@ -393,6 +417,11 @@ public abstract class Producer extends RootOperator {
       if (!ioChannelsAvail[i] && (mode.equals(FTMode.ABANDON) || mode.equals(FTMode.REJOIN))) {
         continue;
       }
+      if (stoppedChannels.get(i) != 0 && mode.equals(FTMode.NONE)) {
+        /* The consumer needs no more data. */
+        pendingTuplesToSend.get(i).clear();
+        continue;
+      }
       while (true) {
         TupleBatch tb = pendingTuplesToSend.get(i).poll();
         if (tb == null) {
@@ -541,6 +570,16 @@ public abstract class Producer extends RootOperator {
     return ioChannels;
   }
 
+  /**
+   * Without fault tolerance, the child is stopped once the consumers of all the channels have stopped, e.g. because
+   * they ended in a satisfied Limit. With fault tolerance, a consumer may be restarted and need the data again.
+   * */
+  @Override
+  protected final boolean outputNotNeeded() {
+    return ioChannels.length > 0 && numStoppedChannels.get() == ioChannels.length
+        && taskResourceManager.getFragment().getLocalSubQuery().getFTMode().equals(FTMode.NONE);
+  }
+
   /**
    * process EOS and EOI logic.
    * */
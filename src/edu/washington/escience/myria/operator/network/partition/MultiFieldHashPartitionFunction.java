@@ -10,7 +10,6 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.storage.TupleBatch;
-import edu.washington.escience.myria.util.HashUtils;
 
 /**
  * Implementation that uses multiple fields as the key to hash
@@ -65,11 +64,17 @@ public final class MultiFieldHashPartitionFunction extends PartitionFunction {
     return indexes;
   }
 
+  @Override
+  public int[] hashColumns() {
+    return indexes.clone();
+  }
+
   @Override
   public int[] partition(@Nonnull final TupleBatch tb) {
     final int[] result = new int[tb.numTuples()];
+    final int[] hashes = tb.getRowHashes(indexes);
     for (int i = 0; i < result.length; i++) {
-      int p = HashUtils.hashSubRow(tb, indexes, i) % numPartition();
+      int p = hashes[i] % numPartition();
       if (p < 0) {
         p = p + numPartition();
       }
@@ -23,6 +23,7 @@ import edu.washington.escience.myria.storage.TupleBatch;
     @Type(value = RoundRobinPartitionFunction.class, name = "RoundRobin"),
     @Type(value = SingleFieldHashPartitionFunction.class, name = "SingleFieldHash"),
     @Type(value = MultiFieldHashPartitionFunction.class, name = "MultiFieldHash"),
+    @Type(value = SkewAwareHashPartitionFunction.class, name = "SkewAwareHash"),
     @Type(value = WholeTupleHashPartitionFunction.class, name = "WholeTupleHash") })
 public abstract class PartitionFunction implements Serializable {
 
@@ -66,6 +67,18 @@ public abstract class PartitionFunction implements Serializable {
    */
   public abstract int[] partition(@Nonnull final TupleBatch data);
 
+  /**
+   * Two partition functions with the same hash columns and the same number of partitions send every tuple to the same
+   * partition. This is how the catalog knows that a relation is already partitioned as a shuffle would partition it.
+   * 
+   * @return the columns whose hash, as in {@link TupleBatch#getRowHashes(int[])}, alone decides the partition of a
+   *         tuple, or null if the partition depends on anything else.
+   */
+  @Nullable
+  public int[] hashColumns() {
+    return null;
+  }
+
   /**
    * Set the number of output partitions.
    * 
@@ -62,6 +62,14 @@ public final class SingleFieldHashPartitionFunction extends PartitionFunction {
     return index;
   }
 
+  @Override
+  public int[] hashColumns() {
+    if (seedIndex != 0) {
+      return null;
+    }
+    return new int[] { index };
+  }
+
   /**
    * @param tb data.
    * @return partitions.
@@ -69,8 +77,11 @@ public final class SingleFieldHashPartitionFunction extends PartitionFunction {
   @Override
   public int[] partition(final TupleBatch tb) {
     final int[] result = new int[tb.numTuples()];
+    /* With the default seed, the hash of the field is the one that hash-based operators use, so it is kept. */
+    final int[] hashes = seedIndex == 0 ? tb.getRowHashes(new int[] { index }) : null;
     for (int i = 0; i < result.length; i++) {
-      int p = HashUtils.hashValue(tb, index, i, seedIndex) % numPartition();
+      final int hashCode = hashes == null ? HashUtils.hashValue(tb, index, i, seedIndex) : hashes[i];
+      int p = hashCode % numPartition();
       if (p < 0) {
         p = p + numPartition();
       }
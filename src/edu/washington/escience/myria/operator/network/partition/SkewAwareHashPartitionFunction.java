@@ -0,0 +1,233 @@
+package edu.washington.escience.myria.operator.network.partition;
+
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.JoinHashTable;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.DateTimeUtils;
+import edu.washington.escience.myria.util.HashUtils;
+
+/**
+ * A hash partition function that knows the heavy hitters of the key, i.e., the keys so frequent that the worker they
+ * hash to would get far more tuples than the others.
+ *
+ * A key that is not a heavy hitter goes to the worker its hash maps to, its home worker, as with
+ * {@link MultiFieldHashPartitionFunction}. The tuples of a heavy hitter are spread over a group of {@link #spread}
+ * workers starting at its home worker. The two inputs of a join use the same heavy hitters: the skewed input sends
+ * each tuple of a heavy hitter to one worker of the group in turn, and the other input, with
+ * <code>replicateHeavyHitters</code> set, sends each tuple of a heavy hitter to all the workers of the group. So every
+ * pair of matching tuples still meets on exactly one worker.
+ *
+ * Since a tuple may go to several workers, the partitions of this function are cells, as for
+ * {@link MFMDHashPartitionFunction}. For <code>n</code> workers, there are <code>2n</code> cells: cell
+ * <code>i &lt; n</code> is worker <code>i</code>, and cell <code>n + i</code> is the group of worker <code>i</code>,
+ * see {@link #cellPartition()}.
+ *
+ * The heavy hitters are given by the query plan, e.g., from statistics of the relations. They cannot be detected while
+ * partitioning, because the producers of both inputs on all the workers must agree on them.
+ */
+public final class SkewAwareHashPartitionFunction extends PartitionFunction {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The indices of the key. */
+  @JsonProperty
+  private final int[] indexes;
+
+  /** The heavy hitters, each a list of the values of the key columns. */
+  @JsonProperty
+  private final List<List<Object>> heavyHitters;
+
+  /** True to send each tuple of a heavy hitter to all the workers of its group, false to one of them. */
+  @JsonProperty
+  private final boolean replicateHeavyHitters;
+
+  /** The number of workers a heavy hitter is spread over, or null for all of them. */
+  @JsonProperty
+  private final Integer spread;
+
+  /** The heavy hitters, indexed on their values, built from the schema of the first TupleBatch. */
+  private transient JoinHashTable heavyHitterTable;
+
+  /** The next worker of its group that a tuple of a heavy hitter is sent to, relative to its home worker. */
+  private int nextInGroup = 0;
+
+  /**
+   * @param numPartitions the number of cells, twice the number of workers.
+   * @param indexes the indices of the key.
+   * @param heavyHitters the heavy hitters, each a list of the values of the key columns.
+   * @param replicateHeavyHitters true to send each tuple of a heavy hitter to all the workers of its group.
+   * @param spread the number of workers a heavy hitter is spread over, or null for all of them.
+   */
+  @JsonCreator
+  public SkewAwareHashPartitionFunction(@Nullable @JsonProperty("numPartitions") final Integer numPartitions,
+      @JsonProperty(value = "indexes", required = true) final int[] indexes,
+      @JsonProperty(value = "heavyHitters", required = true) final List<List<Object>> heavyHitters,
+      @JsonProperty("replicateHeavyHitters") final Boolean replicateHeavyHitters,
+      @JsonProperty("spread") final Integer spread) {
+    super(numPartitions);
+    Objects.requireNonNull(indexes, "indexes");
+    Objects.requireNonNull(heavyHitters, "heavyHitters");
+    Preconditions.checkArgument(indexes.length > 0, "SkewAwareHash requires at least 1 field to hash");
+    for (int i = 0; i < indexes.length; ++i) {
+      Preconditions.checkArgument(indexes[i] >= 0, "SkewAwareHash field index %s cannot take negative value %s", i,
+          indexes[i]);
+    }
+    final ImmutableList.Builder<List<Object>> keys = ImmutableList.builder();
+    for (List<Object> key : heavyHitters) {
+      Preconditions.checkArgument(key.size() == indexes.length, "heavy hitter %s should have %s values", key,
+          indexes.length);
+      keys.add(ImmutableList.copyOf(key));
+    }
+    Preconditions.checkArgument(numPartitions == null || numPartitions % 2 == 0,
+        "SkewAwareHash requires two cells per worker");
+    Preconditions.checkArgument(spread == null || spread > 0, "spread must be null or > 0");
+    this.indexes = indexes;
+    this.heavyHitters = keys.build();
+    this.replicateHeavyHitters = MoreObjects.firstNonNull(replicateHeavyHitters, Boolean.FALSE);
+    this.spread = spread;
+  }
+
+  /**
+   * @param numWorkers the number of workers.
+   * @return the number of cells of this partition function for that many workers.
+   */
+  public static int numCells(final int numWorkers) {
+    return 2 * numWorkers;
+  }
+
+  /**
+   * @return the number of workers.
+   */
+  private int numWorkers() {
+    return numPartition() / 2;
+  }
+
+  /**
+   * @return the number of workers in the group of a heavy hitter.
+   */
+  private int groupSize() {
+    if (spread == null) {
+      return numWorkers();
+    }
+    return Math.min(spread, numWorkers());
+  }
+
+  /**
+   * @return the mapping from cells to workers, in the format of the cell partition of a
+   *         {@link edu.washington.escience.myria.operator.network.GenericShuffleProducer}.
+   */
+  public int[][] cellPartition() {
+    final int numWorkers = numWorkers();
+    final int groupSize = groupSize();
+    final int[][] result = new int[numPartition()][];
+    for (int i = 0; i < numWorkers; ++i) {
+      result[i] = new int[] { i };
+      result[numWorkers + i] = new int[groupSize];
+      for (int j = 0; j < groupSize; ++j) {
+        result[numWorkers + i][j] = (i + j) % numWorkers;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the indices of the key.
+   */
+  public int[] getIndexes() {
+    return indexes;
+  }
+
+  @Override
+  public int[] partition(@Nonnull final TupleBatch tb) {
+    if (heavyHitterTable == null) {
+      heavyHitterTable = buildHeavyHitterTable(tb.getSchema());
+    }
+    final int numWorkers = numWorkers();
+    final int groupSize = groupSize();
+    final int[] result = new int[tb.numTuples()];
+    final int[] hashes = tb.getRowHashes(indexes);
+    for (int i = 0; i < result.length; i++) {
+      final int hashCode = hashes[i];
+      int home = hashCode % numWorkers;
+      if (home < 0) {
+        home = home + numWorkers;
+      }
+      if (heavyHitterTable.numTuples() == 0
+          || heavyHitterTable.firstMatch(tb, indexes, i, hashCode) == JoinHashTable.NONE) {
+        result[i] = home;
+      } else if (replicateHeavyHitters) {
+        result[i] = numWorkers + home;
+      } else {
+        result[i] = (home + nextInGroup) % numWorkers;
+        nextInGroup = (nextInGroup + 1) % groupSize;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param schema the schema of the partitioned tuples.
+   * @return the heavy hitters, converted to the types of the key columns and indexed on their values.
+   */
+  private JoinHashTable buildHeavyHitterTable(final Schema schema) {
+    final Schema keySchema = schema.getSubSchema(indexes);
+    final int[] keyColumns = new int[indexes.length];
+    for (int i = 0; i < keyColumns.length; ++i) {
+      keyColumns[i] = i;
+    }
+    final TupleBatchBuffer keys = new TupleBatchBuffer(keySchema);
+    for (List<Object> key : heavyHitters) {
+      for (int i = 0; i < keyColumns.length; ++i) {
+        keys.putObject(i, toType(key.get(i), keySchema.getColumnType(i)));
+      }
+    }
+    final JoinHashTable table = new JoinHashTable(keySchema, keyColumns);
+    for (TupleBatch batch : keys.getAll()) {
+      for (int row = 0; row < batch.numTuples(); ++row) {
+        table.add(batch, row, HashUtils.hashSubRow(batch, keyColumns, row));
+      }
+    }
+    return table;
+  }
+
+  /**
+   * @param value a value of a heavy hitter, as deserialized from JSON.
+   * @param type the type of its key column.
+   * @return the value as that type.
+   */
+  private static Object toType(final Object value, final Type type) {
+    switch (type) {
+      case BOOLEAN_TYPE:
+        return Boolean.valueOf(value.toString());
+      case INT_TYPE:
+        return ((Number) value).intValue();
+      case LONG_TYPE:
+        return ((Number) value).longValue();
+      case FLOAT_TYPE:
+        return ((Number) value).floatValue();
+      case DOUBLE_TYPE:
+        return ((Number) value).doubleValue();
+      case DATETIME_TYPE:
+        return DateTimeUtils.parse(value.toString());
+      case STRING_TYPE:
+        return value.toString();
+      default:
+        throw new UnsupportedOperationException("SkewAwareHash does not support keys of type " + type);
+    }
+  }
+}
@@ -7,7 +7,6 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import edu.washington.escience.myria.storage.TupleBatch;
-import edu.washington.escience.myria.util.HashUtils;
 
 /**
  * Partition of tuples by the hash code of the whole tuple.
@@ -28,8 +27,14 @@ public final class WholeTupleHashPartitionFunction extends PartitionFunction {
   @Override
   public int[] partition(@Nonnull final TupleBatch tb) {
     final int[] result = new int[tb.numTuples()];
+    final int[] allColumns = new int[tb.numColumns()];
+    for (int i = 0; i < allColumns.length; i++) {
+      allColumns[i] = i;
+    }
+    /* The hash of all the columns in order is the hash of the row. */
+    final int[] hashes = tb.getRowHashes(allColumns);
     for (int i = 0; i < result.length; i++) {
-      int p = HashUtils.hashRow(tb, i) % numPartition();
+      int p = hashes[i] % numPartition();
       if (p < 0) {
         p = p + numPartition();
       }
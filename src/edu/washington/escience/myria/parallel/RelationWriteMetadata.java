@@ -6,11 +6,13 @@ import java.util.Objects;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import com.google.common.collect.ImmutableSet;
 
 import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
 
 /**
  * Holds metadata about a relation that is created by a subquery.
@@ -28,6 +30,8 @@ public class RelationWriteMetadata implements Serializable {
   private final boolean overwrite;
   /** Whether the relation being written is a temporary or a permanent relation. */
   private final boolean temporary;
+  /** How the relation is partitioned across its workers, or null if unknown. */
+  private PartitionFunction partitionFunction;
 
   /**
    * Constructs a new relation metadata object.
@@ -78,6 +82,28 @@ public class RelationWriteMetadata implements Serializable {
     return temporary;
   }
 
+  /**
+   * Get how the relation is partitioned across its workers. Partition <code>i</code> is stored on the
+   * <code>i</code>-th worker in increasing order of worker id, as written by a
+   * {@link edu.washington.escience.myria.operator.network.GenericShuffleProducer}.
+   * 
+   * @return how the relation is partitioned across its workers, or null if unknown.
+   */
+  @Nullable
+  public PartitionFunction getPartitionFunction() {
+    return partitionFunction;
+  }
+
+  /**
+   * Set how the relation is partitioned across its workers.
+   * 
+   * @param partitionFunction how the relation is partitioned across its workers, or null if unknown.
+   * @see #getPartitionFunction()
+   */
+  public void setPartitionFunction(@Nullable final PartitionFunction partitionFunction) {
+    this.partitionFunction = partitionFunction;
+  }
+
   /**
    * Get the key of the relation to be written.
    * 
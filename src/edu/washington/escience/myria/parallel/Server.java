@@ -5,6 +5,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.PipedOutputStream;
+import java.net.URLEncoder;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -29,6 +30,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.apache.commons.lang.text.StrSubstitutor;
+import org.apache.commons.lang3.SerializationUtils;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
@@ -72,6 +74,7 @@ import edu.washington.escience.myria.operator.DbQueryScan;
 import edu.washington.escience.myria.operator.DuplicateTBGenerator;
 import edu.washington.escience.myria.operator.EOSSource;
 import edu.washington.escience.myria.operator.EmptyRelation;
+import edu.washington.escience.myria.operator.FileScan;
 import edu.washington.escience.myria.operator.Operator;
 import edu.washington.escience.myria.operator.RootOperator;
 import edu.washington.escience.myria.operator.SinkRoot;
@@ -84,6 +87,7 @@ import edu.washington.escience.myria.operator.network.CollectConsumer;
 import edu.washington.escience.myria.operator.network.CollectProducer;
 import edu.washington.escience.myria.operator.network.GenericShuffleConsumer;
 import edu.washington.escience.myria.operator.network.GenericShuffleProducer;
+import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
 import edu.washington.escience.myria.operator.network.partition.RoundRobinPartitionFunction;
 import edu.washington.escience.myria.parallel.ipc.IPCConnectionPool;
 import edu.washington.escience.myria.parallel.ipc.IPCMessage;
@@ -433,6 +437,10 @@ public final class Server {
     int inputBufferRecoverTrigger =
         Integer.valueOf(catalog.getConfigurationValue(MyriaSystemConfigKeys.OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER));
 
+    final String dataCompressionName = catalog.getConfigurationValue(MyriaSystemConfigKeys.IPC_DATA_COMPRESSION);
+    final TransportMessageSerializer.Compression dataCompression =
+        TransportMessageSerializer.Compression.of(dataCompressionName);
+
     execEnvVars = new ConcurrentHashMap<>();
     for (Entry<String, String> cE : allConfigurations.entrySet()) {
       execEnvVars.put(cE.getKey(), cE.getValue());
@@ -457,7 +465,8 @@ public final class Server {
     connectionPool =
         new IPCConnectionPool(MyriaConstants.MASTER_ID, computingUnits, IPCConfigurations
             .createMasterIPCServerBootstrap(this), IPCConfigurations.createMasterIPCClientBootstrap(this),
-            new TransportMessageSerializer(), new QueueBasedShortMessageProcessor<TransportMessage>(messageQueue),
+            new TransportMessageSerializer(dataCompression),
+            new QueueBasedShortMessageProcessor<TransportMessage>(messageQueue),
             inputBufferCapacity, inputBufferRecoverTrigger);
 
     scheduledTaskExecutor =
@@ -745,6 +754,7 @@ public final class Server {
 
     connectionPool.shutdown();
     connectionPool.releaseExternalResources();
+    TransportMessageSerializer.releaseIdleCodecs();
     if (ipcPipelineExecutor != null && !ipcPipelineExecutor.isShutdown()) {
       ipcPipelineExecutor.shutdown();
     }
@@ -996,6 +1006,59 @@ public final class Server {
     return getDatasetStatus(relationKey);
   }
 
+  /**
+   * Ingest the given dataset by having each worker read its own split of the input and insert it locally, so that the
+   * tuples do not pass through the master. The source of the scan must be readable by every worker, e.g. a file on a
+   * shared file system or in HDFS.
+   * 
+   * @param relationKey the name of the dataset.
+   * @param workersToIngest restrict the workers to ingest data (null for all)
+   * @param indexes the indexes created.
+   * @param scan the scan of the whole input, whose source must be seekable, see {@link FileScan#setSplit(int, int)}.
+   * @return the status of the ingested dataset.
+   * @throws InterruptedException interrupted
+   * @throws DbException if there is an error
+   */
+  public DatasetStatus parallelIngestDataset(final RelationKey relationKey, final Set<Integer> workersToIngest,
+      final List<List<IndexRef>> indexes, final FileScan scan) throws InterruptedException, DbException {
+    /* Figure out the workers we will use. If workersToIngest is null, use all active workers. */
+    Set<Integer> actualWorkers = workersToIngest;
+    if (workersToIngest == null) {
+      actualWorkers = getAliveWorkers();
+    }
+    Preconditions.checkArgument(actualWorkers.size() > 0, "Must use > 0 workers");
+    try {
+      Preconditions.checkArgument(scan.canSplit(), "Cannot split the input of %s", scan);
+    } catch (IOException e) {
+      throw new DbException("Error accessing the input", e);
+    }
+    int[] workersArray = MyriaUtils.integerSetToIntArray(actualWorkers);
+
+    /* The workers' plans: each one reads and inserts its own split. */
+    Map<Integer, SubQueryPlan> workerPlans = new HashMap<>();
+    for (int i = 0; i < workersArray.length; ++i) {
+      FileScan split = SerializationUtils.clone(scan);
+      split.setSplit(i, workersArray.length);
+      workerPlans.put(workersArray[i], new SubQueryPlan(new DbInsert(split, relationKey, true, indexes)));
+    }
+
+    ListenableFuture<Query> qf;
+    try {
+      qf =
+          queryManager.submitQuery("ingest " + relationKey.toString(), "ingest " + relationKey.toString(), "ingest "
+              + relationKey.toString(getDBMS()), new SubQueryPlan(new SinkRoot(new EOSSource())), workerPlans);
+    } catch (CatalogException e) {
+      throw new DbException("Error submitting query", e);
+    }
+    try {
+      qf.get();
+    } catch (ExecutionException e) {
+      throw new DbException("Error executing query", e.getCause());
+    }
+
+    return getDatasetStatus(relationKey);
+  }
+
   /**
    * @param relationKey the relationalKey of the dataset to import
    * @param schema the schema of the dataset to import
@@ -1052,6 +1115,17 @@ public final class Server {
     return catalog.getWorkersForRelation(relationKey, storedRelationId);
   }
 
+  /**
+   * @param relationKey the key of the desired relation.
+   * @param storedRelationId indicates which copy of the desired relation we want to scan.
+   * @return how the specified copy of the relation is partitioned across the workers that store it, or null if unknown.
+   * @throws CatalogException if there is an error accessing the catalog.
+   */
+  public PartitionFunction getPartitionFunctionForRelation(final RelationKey relationKey,
+      final Integer storedRelationId) throws CatalogException {
+    return catalog.getPartitionFunction(relationKey, storedRelationId);
+  }
+
   /**
    * @param queryId the query that owns the desired temp relation.
    * @param relationKey the key of the desired temp relation.
@@ -1231,6 +1305,60 @@ public final class Server {
     }
   }
 
+  /**
+   * Get the URLs from which the partitions of the specified relation can be downloaded directly from the workers, in
+   * parallel and without passing through the master.
+   * 
+   * @param relationKey the relation to be downloaded.
+   * @param format the format of the data, one of csv, tsv and json.
+   * @return the URL of the partition of each worker that stores the relation.
+   * @throws DbException if there is an error in the system, direct downloads are disabled or a worker that stores the
+   *           relation is not alive.
+   */
+  public Map<Integer, String> getDataStreamUrls(final RelationKey relationKey, final String format)
+      throws DbException {
+    final int portOffset = Integer.parseInt(getConfiguration(MyriaSystemConfigKeys.WORKER_DATA_HTTP_PORT_OFFSET));
+    if (portOffset <= 0) {
+      throw new DbException("Direct downloads from workers are disabled, see "
+          + MyriaSystemConfigKeys.WORKER_DATA_HTTP_PORT_OFFSET);
+    }
+
+    /* Get the relation's schema, to make sure it exists, and the workers that store it. */
+    final Schema schema;
+    final Set<Integer> scanWorkers;
+    try {
+      schema = catalog.getSchema(relationKey);
+      Preconditions.checkArgument(schema != null, "relation %s was not found", relationKey);
+      scanWorkers = getWorkersForRelation(relationKey, null);
+    } catch (CatalogException e) {
+      throw new DbException(e);
+    }
+
+    final String query;
+    try {
+      query =
+          Joiner.on('&').join("user=" + URLEncoder.encode(relationKey.getUserName(), "UTF-8"),
+              "program=" + URLEncoder.encode(relationKey.getProgramName(), "UTF-8"),
+              "relation=" + URLEncoder.encode(relationKey.getRelationName(), "UTF-8"),
+              "schema=" + URLEncoder.encode(MyriaJsonMapperProvider.getMapper().writeValueAsString(schema), "UTF-8"),
+              "format=" + URLEncoder.encode(format, "UTF-8"));
+    } catch (IOException e) {
+      throw new DbException(e);
+    }
+
+    final Map<Integer, String> urls = new HashMap<>(scanWorkers.size());
+    for (Integer worker : scanWorkers) {
+      final SocketInfo workerInfo = workers.get(worker);
+      if (workerInfo == null || !aliveWorkers.containsKey(worker)) {
+        /* Skipping it would silently download only part of the relation. */
+        throw new DbException("Worker " + worker + ", which stores part of " + relationKey + ", is not alive");
+      }
+      urls.put(worker, "http://" + workerInfo.getHost() + ":" + (workerInfo.getPort() + portOffset)
+          + WorkerDataServer.DATA_PATH + "?" + query);
+    }
+    return urls;
+  }
+
   /**
    * Start a query that streams tuples from the specified relation to the specified {@link TupleWriter}.
    * 
@@ -314,6 +314,10 @@ public final class SubQuery extends QueryPlan {
       }
       Preconditions.checkArgument(schema.equals(existingSchema),
           "Cannot append to %s with changed Schema %s (old Schema: %s)", relationKey, schema, existingSchema);
+      if (!existingWorkers.equals(metadata.getWorkers())) {
+        /* The partitions of the appended tuples do not line up with those of the existing ones. */
+        metadata.setPartitionFunction(null);
+      }
       for (int w : existingWorkers) {
         metadata.addWorker(w);
       }
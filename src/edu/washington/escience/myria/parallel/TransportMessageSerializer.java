@@ -1,6 +1,11 @@
 package edu.washington.escience.myria.parallel;
 
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
@@ -12,6 +17,7 @@ import com.google.common.base.Preconditions;
 import com.google.protobuf.CodedInputStream;
 
 import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.parallel.ipc.PayloadSerializer;
 import edu.washington.escience.myria.proto.TransportProto.TransportMessage;
 import edu.washington.escience.myria.storage.TupleBatch;
@@ -20,6 +26,11 @@ import edu.washington.escience.myria.util.IPCUtils;
 /**
  * This class monitors all the input/output IPC data. It makes sure that all input data are of {@link TransportMessage}
  * type. And it does all IPC exception catching and recording.
+ *
+ * Every serialized message starts with one byte that names the format of the rest of the message, so the receiver
+ * decodes whatever format the sender picked. Unless they are compressed, {@link TupleBatch}es are sent in the
+ * {@link TupleBatchWireFormat} and deserialized into TupleBatches of the schema that is attached to the input buffer.
+ * Only TupleBatches of at least {@link #MIN_COMPRESSED_BYTES} bytes are compressed.
  * */
 @Sharable
 public class TransportMessageSerializer implements PayloadSerializer {
@@ -27,6 +38,64 @@ public class TransportMessageSerializer implements PayloadSerializer {
   /** The logger for this class. */
   protected static final Logger LOGGER = LoggerFactory.getLogger(TransportMessageSerializer.class);
 
+  /**
+   * The block codecs of serialized messages.
+   */
+  public enum Compression {
+    /** The message is not compressed. */
+    NONE,
+    /** The message is preceded by its length as an int and compressed by {@link Deflater#BEST_SPEED} deflate. */
+    DEFLATE;
+
+    /**
+     * @param name the name of a codec, as in
+     *          {@link edu.washington.escience.myria.MyriaSystemConfigKeys#IPC_DATA_COMPRESSION}.
+     * @return the codec, or {@link #NONE} if name is null.
+     */
+    public static Compression of(final String name) {
+      if (name == null) {
+        return NONE;
+      }
+      return valueOf(name.toUpperCase());
+    }
+  }
+
+  /** The format of a {@link TransportMessage}. */
+  private static final byte FORMAT_PROTOBUF = 0;
+  /** The format of a {@link TransportMessage} compressed by {@link Compression#DEFLATE}. */
+  private static final byte FORMAT_DEFLATED_PROTOBUF = 1;
+  /** The format of a TupleBatch in the {@link TupleBatchWireFormat}. */
+  private static final byte FORMAT_TUPLE_BATCH = 2;
+
+  /** Serialized TupleBatches smaller than this are not worth compressing. */
+  public static final int MIN_COMPRESSED_BYTES = 4096;
+
+  /** The max number of idle deflaters and inflaters kept for reuse. The others free their native memory at once. */
+  private static final int MAX_IDLE_CODECS = Runtime.getRuntime().availableProcessors();
+
+  /** The idle deflaters, reused across messages. */
+  private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(MAX_IDLE_CODECS);
+
+  /** The idle inflaters, reused across messages. */
+  private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(MAX_IDLE_CODECS);
+
+  /** The codec of outgoing TupleBatches. */
+  private final Compression dataCompression;
+
+  /**
+   * A serializer that does not compress outgoing messages.
+   */
+  public TransportMessageSerializer() {
+    this(Compression.NONE);
+  }
+
+  /**
+   * @param dataCompression the codec of outgoing TupleBatches.
+   */
+  public TransportMessageSerializer(final Compression dataCompression) {
+    this.dataCompression = Preconditions.checkNotNull(dataCompression, "dataCompression");
+  }
+
   @Override
   public final ChannelBuffer serialize(final Object m) {
     Preconditions.checkNotNull(m);
@@ -35,14 +104,22 @@ public class TransportMessageSerializer implements PayloadSerializer {
       // case 1: TransportMessage.QUERY
       // case 2: TransportMessage.CONTROL
       // TransportMessage.DATA is not possible to occur here
-      return ChannelBuffers.wrappedBuffer(((TransportMessage) m).toByteArray());
+      return uncompressed(((TransportMessage) m).toByteArray());
     } else if (m instanceof TupleBatch) {
       // case 3: TupleBatch
       TupleBatch tb = (TupleBatch) m;
       if (!tb.isEOI()) {
-        return ChannelBuffers.wrappedBuffer(((TupleBatch) m).toTransportMessage().toByteArray());
+        if (dataCompression == Compression.NONE) {
+          return ChannelBuffers.wrappedBuffer(ChannelBuffers.wrappedBuffer(new byte[] { FORMAT_TUPLE_BATCH }),
+              TupleBatchWireFormat.encode(tb));
+        }
+        byte[] data = tb.toTransportMessage().toByteArray();
+        if (data.length >= MIN_COMPRESSED_BYTES) {
+          return deflated(data);
+        }
+        return uncompressed(data);
       } else {
-        return ChannelBuffers.wrappedBuffer(IPCUtils.EOI.toByteArray());
+        return uncompressed(IPCUtils.EOI.toByteArray());
       }
     } else {
       throw new IllegalArgumentException(MyriaConstants.SYSTEM_NAME + " IPC only supports "
@@ -52,12 +129,64 @@ public class TransportMessageSerializer implements PayloadSerializer {
   }
 
   /**
-   * @param buf input data buffer.
+   * Free the native memory of the idle deflaters and inflaters, e.g., once the connection pool is shut down.
+   */
+  static void releaseIdleCodecs() {
+    for (Deflater deflater = DEFLATERS.poll(); deflater != null; deflater = DEFLATERS.poll()) {
+      deflater.end();
+    }
+    for (Inflater inflater = INFLATERS.poll(); inflater != null; inflater = INFLATERS.poll()) {
+      inflater.end();
+    }
+  }
+
+  /**
+   * @param data a serialized message.
+   * @return the message preceded by its format.
+   */
+  private static ChannelBuffer uncompressed(final byte[] data) {
+    return ChannelBuffers.wrappedBuffer(new byte[] { FORMAT_PROTOBUF }, data);
+  }
+
+  /**
+   * @param data a serialized message.
+   * @return the deflated message preceded by its format, or the uncompressed message if it does not shrink.
+   */
+  private static ChannelBuffer deflated(final byte[] data) {
+    Deflater deflater = DEFLATERS.poll();
+    if (deflater == null) {
+      deflater = new Deflater(Deflater.BEST_SPEED);
+    }
+    final byte[] out = new byte[data.length];
+    final int length;
+    final boolean finished;
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      length = deflater.deflate(out);
+      finished = deflater.finished();
+    } finally {
+      deflater.reset();
+      if (!DEFLATERS.offer(deflater)) {
+        deflater.end();
+      }
+    }
+    if (!finished) {
+      /* The message does not compress. */
+      return uncompressed(data);
+    }
+    final ChannelBuffer header = ChannelBuffers.buffer(1 + Integer.SIZE / Byte.SIZE);
+    header.writeByte(FORMAT_DEFLATED_PROTOBUF);
+    header.writeInt(data.length);
+    return ChannelBuffers.wrappedBuffer(header, ChannelBuffers.wrappedBuffer(out, 0, length));
+  }
+
+  /**
+   * @param buf input data buffer, after the format of the message.
    * @return Deserialized transport message
    * @throws IOException if any IO errors.
    */
   private TransportMessage deSerializeTransportMessage(final ChannelBuffer buf) throws IOException {
-
     final byte[] array;
     final int offset;
     final int length = buf.readableBytes();
@@ -74,10 +203,55 @@ public class TransportMessageSerializer implements PayloadSerializer {
     return TransportMessage.parseFrom(cis);
   }
 
+  /**
+   * @param buf a {@link Compression#DEFLATE} message, after its format.
+   * @return the inflated message.
+   * @throws IOException if the message is corrupted.
+   */
+  private static byte[] inflate(final ChannelBuffer buf) throws IOException {
+    final byte[] out = new byte[buf.readInt()];
+    final byte[] in = new byte[buf.readableBytes()];
+    buf.readBytes(in);
+    Inflater inflater = INFLATERS.poll();
+    if (inflater == null) {
+      inflater = new Inflater();
+    }
+    try {
+      inflater.setInput(in);
+      if (inflater.inflate(out) != out.length || !inflater.finished()) {
+        throw new IOException("Corrupted deflated IPC message");
+      }
+    } catch (DataFormatException e) {
+      throw new IOException(e);
+    } finally {
+      inflater.reset();
+      if (!INFLATERS.offer(inflater)) {
+        inflater.end();
+      }
+    }
+    return out;
+  }
+
+  /**
+   * @return a {@link TransportMessage}, or a {@link TupleBatch} if the message is in the {@link TupleBatchWireFormat}.
+   * @param buffer serialized buffer.
+   * @param processor not used.
+   * @param att the {@link Schema} of the input buffer that receives TupleBatches, or null.
+   * @throws IOException if any I/O error occurs.
+   */
   @Override
   public final Object deSerialize(final ChannelBuffer buffer, final Object processor, final Object att)
       throws IOException {
-    TransportMessage tm = deSerializeTransportMessage(buffer);
-    return tm;
+    final byte format = buffer.readByte();
+    switch (format) {
+      case FORMAT_PROTOBUF:
+        return deSerializeTransportMessage(buffer);
+      case FORMAT_DEFLATED_PROTOBUF:
+        return TransportMessage.parseFrom(inflate(buffer));
+      case FORMAT_TUPLE_BATCH:
+        return TupleBatchWireFormat.decode(buffer, (Schema) att);
+      default:
+        throw new IOException("Unknown format of an IPC message: " + format);
+    }
   }
 }
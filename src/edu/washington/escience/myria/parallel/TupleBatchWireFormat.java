@@ -0,0 +1,289 @@
+package edu.washington.escience.myria.parallel;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.DirectChannelBufferFactory;
+import org.joda.time.DateTime;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.BooleanColumn;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.DateTimeColumn;
+import edu.washington.escience.myria.column.DoubleBufferColumn;
+import edu.washington.escience.myria.column.FloatBufferColumn;
+import edu.washington.escience.myria.column.IntBufferColumn;
+import edu.washington.escience.myria.column.LongBufferColumn;
+import edu.washington.escience.myria.column.StringArrayColumn;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.ImmutableIntArray;
+
+/**
+ * The native binary encoding of a non-EOI {@link TupleBatch} on the IPC path. Unlike a protobuf DataMessage, the
+ * columns are written in bulk from their backing arrays into direct buffers, and the numeric columns of a received
+ * batch wrap the received buffer instead of being copied out of it.
+ *
+ * The encoding is the number of tuples and the number of columns, followed by each column as its {@link Type} ordinal
+ * (a byte), the length of its data in bytes and its data. All numbers are big-endian. A column of n rows stores:
+ * <ul>
+ * <li>INT, LONG, FLOAT, DOUBLE: the n values.</li>
+ * <li>DATETIME: the n values as milliseconds since the epoch.</li>
+ * <li>BOOLEAN: n bytes, each 0 or 1.</li>
+ * <li>STRING: the n lengths of the UTF-8 encoded values as ints, followed by the encoded values.</li>
+ * </ul>
+ * The row hashes cached by the batch, see {@link TupleBatch#getRowHashes(int[])}, are not sent: they would add 4
+ * bytes per row to every hash shuffle, and the receiver recomputes them only if it hashes on some columns.
+ */
+final class TupleBatchWireFormat {
+
+  /** Allocates small direct buffers by slicing large preallocated ones. */
+  private static final ChannelBufferFactory BUFFER_FACTORY = DirectChannelBufferFactory.getInstance();
+  /** The size of the header of a batch: the number of tuples and the number of columns. */
+  private static final int BATCH_HEADER_BYTES = 2 * Integer.SIZE / Byte.SIZE;
+  /** The size of the header of a column: its type and the length of its data. */
+  private static final int COLUMN_HEADER_BYTES = 1 + Integer.SIZE / Byte.SIZE;
+  /** The size of an int. */
+  private static final int INT_BYTES = Integer.SIZE / Byte.SIZE;
+  /** The size of a long. */
+  private static final int LONG_BYTES = Long.SIZE / Byte.SIZE;
+  /** The size of a float. */
+  private static final int FLOAT_BYTES = Float.SIZE / Byte.SIZE;
+  /** The size of a double. */
+  private static final int DOUBLE_BYTES = Double.SIZE / Byte.SIZE;
+
+  /** Utility class cannot be constructed. */
+  private TupleBatchWireFormat() {
+  }
+
+  /**
+   * @param tb a non-EOI TupleBatch.
+   * @return the encoded batch, as a composite of one buffer per column.
+   */
+  static ChannelBuffer encode(final TupleBatch tb) {
+    final List<? extends Column<?>> columns = tb.getDataColumns();
+    final ChannelBuffer[] parts = new ChannelBuffer[columns.size() + 1];
+    parts[0] = BUFFER_FACTORY.getBuffer(BATCH_HEADER_BYTES);
+    parts[0].writeInt(tb.numTuples());
+    parts[0].writeInt(columns.size());
+    for (int i = 0; i < columns.size(); ++i) {
+      parts[i + 1] = encodeColumn(columns.get(i));
+    }
+    return ChannelBuffers.wrappedBuffer(parts);
+  }
+
+  /**
+   * @param column a column.
+   * @return the type, the length and the data of the column.
+   */
+  private static ChannelBuffer encodeColumn(final Column<?> column) {
+    final int numTuples = column.size();
+    final Column<?> unfiltered = column.getUnfilteredColumn();
+    final ImmutableIntArray selection = column.getSelectionVector();
+    final ChannelBuffer buf;
+    switch (column.getType()) {
+      case INT_TYPE: {
+        buf = newColumnBuffer(Type.INT_TYPE, numTuples * INT_BYTES);
+        final int[] values = unfiltered.getIntArray();
+        if (selection == null) {
+          dataView(buf, numTuples * INT_BYTES).asIntBuffer().put(values, 0, numTuples);
+        } else {
+          for (int i = 0; i < numTuples; ++i) {
+            buf.writeInt(values[selection.get(i)]);
+          }
+        }
+        break;
+      }
+      case LONG_TYPE: {
+        buf = newColumnBuffer(Type.LONG_TYPE, numTuples * LONG_BYTES);
+        final long[] values = unfiltered.getLongArray();
+        if (selection == null) {
+          dataView(buf, numTuples * LONG_BYTES).asLongBuffer().put(values, 0, numTuples);
+        } else {
+          for (int i = 0; i < numTuples; ++i) {
+            buf.writeLong(values[selection.get(i)]);
+          }
+        }
+        break;
+      }
+      case FLOAT_TYPE: {
+        buf = newColumnBuffer(Type.FLOAT_TYPE, numTuples * FLOAT_BYTES);
+        final float[] values = unfiltered.getFloatArray();
+        if (selection == null) {
+          dataView(buf, numTuples * FLOAT_BYTES).asFloatBuffer().put(values, 0, numTuples);
+        } else {
+          for (int i = 0; i < numTuples; ++i) {
+            buf.writeFloat(values[selection.get(i)]);
+          }
+        }
+        break;
+      }
+      case DOUBLE_TYPE: {
+        buf = newColumnBuffer(Type.DOUBLE_TYPE, numTuples * DOUBLE_BYTES);
+        final double[] values = unfiltered.getDoubleArray();
+        if (selection == null) {
+          dataView(buf, numTuples * DOUBLE_BYTES).asDoubleBuffer().put(values, 0, numTuples);
+        } else {
+          for (int i = 0; i < numTuples; ++i) {
+            buf.writeDouble(values[selection.get(i)]);
+          }
+        }
+        break;
+      }
+      case DATETIME_TYPE:
+        buf = newColumnBuffer(Type.DATETIME_TYPE, numTuples * LONG_BYTES);
+        for (int i = 0; i < numTuples; ++i) {
+          buf.writeLong(column.getDateTime(i).getMillis());
+        }
+        break;
+      case BOOLEAN_TYPE:
+        buf = newColumnBuffer(Type.BOOLEAN_TYPE, numTuples);
+        for (int i = 0; i < numTuples; ++i) {
+          buf.writeByte(column.getBoolean(i) ? 1 : 0);
+        }
+        break;
+      case STRING_TYPE: {
+        final byte[][] values = new byte[numTuples][];
+        int length = numTuples * INT_BYTES;
+        for (int i = 0; i < numTuples; ++i) {
+          values[i] = column.getString(i).getBytes(StandardCharsets.UTF_8);
+          length += values[i].length;
+        }
+        buf = newColumnBuffer(Type.STRING_TYPE, length);
+        for (byte[] value : values) {
+          buf.writeInt(value.length);
+        }
+        for (byte[] value : values) {
+          buf.writeBytes(value);
+        }
+        break;
+      }
+      default:
+        throw new UnsupportedOperationException("Serializing a column of type " + column.getType());
+    }
+    return buf;
+  }
+
+  /**
+   * @param type the type of a column.
+   * @param length the length of the data of the column in bytes.
+   * @return a buffer that holds the header of the column and has room for its data.
+   */
+  private static ChannelBuffer newColumnBuffer(final Type type, final int length) {
+    final ChannelBuffer buf = BUFFER_FACTORY.getBuffer(COLUMN_HEADER_BYTES + length);
+    buf.writeByte(type.ordinal());
+    buf.writeInt(length);
+    return buf;
+  }
+
+  /**
+   * Claim the next bytes of a buffer, to be filled in bulk through the returned view. Direct buffers return views of
+   * their memory rather than copies.
+   *
+   * @param buf a buffer.
+   * @param length the number of bytes to be written.
+   * @return a big-endian view of the claimed bytes.
+   */
+  private static ByteBuffer dataView(final ChannelBuffer buf, final int length) {
+    final ByteBuffer view = buf.toByteBuffer(buf.writerIndex(), length).order(ByteOrder.BIG_ENDIAN);
+    buf.writerIndex(buf.writerIndex() + length);
+    return view;
+  }
+
+  /**
+   * @param buf an encoded batch, positioned after the header byte of the message.
+   * @param schema the schema of the batch, or null to name the columns by their position.
+   * @return the decoded batch. Its numeric columns wrap <code>buf</code>.
+   * @throws IllegalArgumentException if the columns of the batch do not have the types of <code>schema</code>.
+   */
+  static TupleBatch decode(final ChannelBuffer buf, final Schema schema) {
+    final int numTuples = buf.readInt();
+    final int numColumns = buf.readInt();
+    Preconditions.checkArgument(schema == null || schema.numColumns() == numColumns,
+        "Received a batch of %s columns, but the schema %s of the channel has %s", numColumns, schema,
+        schema == null ? null : schema.numColumns());
+    final List<Column<?>> columns = new ArrayList<>(numColumns);
+    final ImmutableList.Builder<Type> types = ImmutableList.builder();
+    for (int i = 0; i < numColumns; ++i) {
+      final int ordinal = buf.readUnsignedByte();
+      Preconditions.checkArgument(ordinal < Type.values().length, "Received column %s of unknown type %s", i, ordinal);
+      final Type type = Type.values()[ordinal];
+      Preconditions.checkArgument(schema == null || schema.getColumnType(i) == type,
+          "Received column %s of type %s, but the schema %s of the channel expects %s", i, type, schema,
+          schema == null ? null : schema.getColumnType(i));
+      final int length = buf.readInt();
+      columns.add(decodeColumn(type, buf.readSlice(length), numTuples));
+      types.add(type);
+    }
+    if (schema == null) {
+      return new TupleBatch(new Schema(types.build()), columns, numTuples);
+    }
+    return new TupleBatch(schema, columns, numTuples);
+  }
+
+  /**
+   * @param type the type of the column.
+   * @param data the data of the column.
+   * @param numTuples the number of rows of the column.
+   * @return the decoded column.
+   */
+  private static Column<?> decodeColumn(final Type type, final ChannelBuffer data, final int numTuples) {
+    switch (type) {
+      case INT_TYPE:
+        return new IntBufferColumn(readOnlyView(data).asIntBuffer());
+      case LONG_TYPE:
+        return new LongBufferColumn(readOnlyView(data).asLongBuffer());
+      case FLOAT_TYPE:
+        return new FloatBufferColumn(readOnlyView(data).asFloatBuffer());
+      case DOUBLE_TYPE:
+        return new DoubleBufferColumn(readOnlyView(data).asDoubleBuffer());
+      case DATETIME_TYPE: {
+        final DateTime[] values = new DateTime[numTuples];
+        for (int i = 0; i < numTuples; ++i) {
+          values[i] = new DateTime(data.readLong());
+        }
+        return new DateTimeColumn(values, numTuples);
+      }
+      case BOOLEAN_TYPE: {
+        final BitSet values = new BitSet(numTuples);
+        for (int i = 0; i < numTuples; ++i) {
+          values.set(i, data.readByte() != 0);
+        }
+        return new BooleanColumn(values, numTuples);
+      }
+      case STRING_TYPE: {
+        final int[] lengths = new int[numTuples];
+        for (int i = 0; i < numTuples; ++i) {
+          lengths[i] = data.readInt();
+        }
+        final String[] values = new String[numTuples];
+        for (int i = 0; i < numTuples; ++i) {
+          values[i] = data.toString(data.readerIndex(), lengths[i], StandardCharsets.UTF_8);
+          data.skipBytes(lengths[i]);
+        }
+        return new StringArrayColumn(values, numTuples);
+      }
+      default:
+        throw new UnsupportedOperationException("Deserializing a column of type " + type);
+    }
+  }
+
+  /**
+   * @param data the data of a column.
+   * @return a read-only big-endian view of the data, which shares its memory unless the data is spread over several
+   *         buffers.
+   */
+  private static ByteBuffer readOnlyView(final ChannelBuffer data) {
+    return data.toByteBuffer().asReadOnlyBuffer().order(ByteOrder.BIG_ENDIAN);
+  }
+}
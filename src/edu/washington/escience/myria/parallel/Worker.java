@@ -33,6 +33,7 @@ import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.MyriaConstants.FTMode;
 import edu.washington.escience.myria.MyriaSystemConfigKeys;
 import edu.washington.escience.myria.accessmethod.ConnectionInfo;
+import edu.washington.escience.myria.accessmethod.JdbcAccessMethod;
 import edu.washington.escience.myria.coordinator.catalog.CatalogException;
 import edu.washington.escience.myria.coordinator.catalog.WorkerCatalog;
 import edu.washington.escience.myria.parallel.ipc.IPCConnectionPool;
@@ -347,6 +348,11 @@ public final class Worker {
    */
   private volatile OrderedMemoryAwareThreadPoolExecutor pipelineExecutor;
 
+  /**
+   * Serves the partitions of relations to clients, or null if direct downloads are disabled.
+   */
+  private WorkerDataServer dataServer;
+
   /**
    * Current working directory. It's the logical root of the worker. All the data the worker and the operators running
    * on the worker can access should be put under this directory.
@@ -616,9 +622,13 @@ public final class Worker {
     int inputBufferRecoverTrigger =
         Integer.valueOf(catalog.getConfigurationValue(MyriaSystemConfigKeys.OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER));
 
+    final String dataCompressionName = catalog.getConfigurationValue(MyriaSystemConfigKeys.IPC_DATA_COMPRESSION);
+    final TransportMessageSerializer.Compression dataCompression =
+        TransportMessageSerializer.Compression.of(dataCompressionName);
+
     connectionPool =
         new IPCConnectionPool(myID, computingUnits, IPCConfigurations.createWorkerIPCServerBootstrap(this),
-            IPCConfigurations.createWorkerIPCClientBootstrap(this), new TransportMessageSerializer(),
+            IPCConfigurations.createWorkerIPCClientBootstrap(this), new TransportMessageSerializer(dataCompression),
             new WorkerShortMessageProcessor(this), inputBufferCapacity, inputBufferRecoverTrigger);
     activeQueries = new ConcurrentHashMap<>();
     executingSubQueries = new ConcurrentHashMap<>();
@@ -739,11 +749,24 @@ public final class Worker {
       }
     }
     connectionPool.releaseExternalResources();
+    TransportMessageSerializer.releaseIdleCodecs();
+
+    if (dataServer != null) {
+      dataServer.stop();
+    }
 
     if (pipelineExecutor != null && !pipelineExecutor.isShutdown()) {
       pipelineExecutor.shutdown();
     }
 
+    synchronized (this) {
+      if (profilingLogger != null) {
+        profilingLogger.close();
+        profilingLogger = null;
+      }
+    }
+    JdbcAccessMethod.closeConnectionPools();
+
     if (LOGGER.isInfoEnabled()) {
       LOGGER.info("shutdown IPC completed");
     }
@@ -813,6 +836,14 @@ public final class Worker {
         MyriaConstants.WORKER_SHUTDOWN_CHECKER_INTERVAL, TimeUnit.MILLISECONDS);
     scheduledTaskExecutor.scheduleAtFixedRate(new HeartbeatReporter(), 0, MyriaConstants.HEARTBEAT_INTERVAL,
         TimeUnit.MILLISECONDS);
+
+    final String dataPortOffset = getConfiguration(MyriaSystemConfigKeys.WORKER_DATA_HTTP_PORT_OFFSET);
+    if (dataPortOffset != null && Integer.parseInt(dataPortOffset) > 0) {
+      dataServer =
+          new WorkerDataServer(catalog.getWorkers().get(myID).getPort() + Integer.parseInt(dataPortOffset),
+              (ConnectionInfo) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_DATABASE_CONN_INFO));
+      dataServer.start();
+    }
   }
 
   /**
@@ -843,6 +874,9 @@ public final class Worker {
    */
   public synchronized ProfilingLogger getProfilingLogger() throws DbException {
     if (profilingLogger == null || !profilingLogger.isValid()) {
+      if (profilingLogger != null) {
+        profilingLogger.close();
+      }
       profilingLogger = null;
       ConnectionInfo connectionInfo = (ConnectionInfo) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_DATABASE_CONN_INFO);
       if (connectionInfo.getDbms().equals(MyriaConstants.STORAGE_SYSTEM_POSTGRESQL)) {
@@ -0,0 +1,133 @@
+package edu.washington.escience.myria.parallel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.util.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.washington.escience.myria.CsvTupleWriter;
+import edu.washington.escience.myria.JsonTupleWriter;
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.TupleWriter;
+import edu.washington.escience.myria.accessmethod.AccessMethod;
+import edu.washington.escience.myria.accessmethod.ConnectionInfo;
+import edu.washington.escience.myria.api.MyriaJsonMapperProvider;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * A small HTTP server on a worker that streams the worker's partition of a relation straight out of its local
+ * database, so that a client can download a large relation from all of its workers in parallel instead of through the
+ * master. The master hands out the URLs, see {@link Server#getDataStreamUrls(RelationKey, String)}.
+ *
+ * A request is <code>GET /data?user=...&program=...&relation=...&schema=...&format=...</code>, where schema is the
+ * {@link Schema} of the relation in JSON and format is one of csv, tsv and json.
+ */
+final class WorkerDataServer {
+  /** The logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(WorkerDataServer.class);
+
+  /** The path at which the partitions of relations are served. */
+  static final String DATA_PATH = "/data";
+
+  /** The HTTP server. */
+  private final HttpServer httpServer;
+  /** The connection to the local database. */
+  private final ConnectionInfo connectionInfo;
+
+  /**
+   * @param port the port the server will listen on.
+   * @param connectionInfo the connection to the local database.
+   */
+  WorkerDataServer(final int port, final ConnectionInfo connectionInfo) {
+    this.connectionInfo = connectionInfo;
+    httpServer = HttpServer.createSimpleServer(null, port);
+    httpServer.getServerConfiguration().addHttpHandler(new HttpHandler() {
+      @Override
+      public void service(final Request request, final Response response) throws Exception {
+        streamRelation(request, response);
+      }
+    }, DATA_PATH);
+  }
+
+  /**
+   * Start serving requests.
+   *
+   * @throws IOException if the server cannot bind its port.
+   */
+  void start() throws IOException {
+    httpServer.start();
+    LOGGER.info("Worker data server started on {}", httpServer.getListeners());
+  }
+
+  /**
+   * Stop serving requests.
+   */
+  void stop() {
+    httpServer.shutdownNow();
+  }
+
+  /**
+   * Stream the local partition of the requested relation to the client.
+   *
+   * @param request the request.
+   * @param response the response.
+   * @throws Exception if there is an error reading or sending the relation.
+   */
+  private void streamRelation(final Request request, final Response response) throws Exception {
+    final RelationKey relationKey;
+    final Schema schema;
+    try {
+      relationKey =
+          RelationKey.of(request.getParameter("user"), request.getParameter("program"), request
+              .getParameter("relation"));
+      schema = MyriaJsonMapperProvider.getMapper().readValue(request.getParameter("schema"), Schema.class);
+    } catch (IllegalArgumentException | NullPointerException | IOException e) {
+      response.sendError(HttpStatus.BAD_REQUEST_400.getStatusCode(), "Invalid relation or schema: " + e.getMessage());
+      return;
+    }
+
+    final String format = request.getParameter("format");
+    final OutputStream output = response.getOutputStream();
+    final TupleWriter writer;
+    if ("csv".equals(format) || format == null) {
+      response.setContentType("application/octet-stream");
+      writer = new CsvTupleWriter(output);
+    } else if ("tsv".equals(format)) {
+      response.setContentType("application/octet-stream");
+      writer = new CsvTupleWriter('\t', output);
+    } else if ("json".equals(format)) {
+      response.setContentType("application/json; charset=UTF-8");
+      writer = new JsonTupleWriter(output);
+    } else {
+      response.sendError(HttpStatus.BAD_REQUEST_400.getStatusCode(), "format must be 'csv', 'tsv', or 'json'");
+      return;
+    }
+
+    final AccessMethod accessMethod = AccessMethod.of(connectionInfo.getDbms(), connectionInfo, true);
+    boolean done = false;
+    try {
+      final Iterator<TupleBatch> batches =
+          accessMethod.tupleBatchIteratorFromQuery("SELECT * FROM " + relationKey.toString(connectionInfo.getDbms()),
+              schema);
+      writer.writeColumnHeaders(schema.getColumnNames());
+      while (batches.hasNext()) {
+        writer.writeTuples(batches.next());
+      }
+      writer.done();
+      done = true;
+    } finally {
+      if (!done) {
+        writer.error();
+      }
+      accessMethod.close();
+    }
+  }
+}
@@ -1163,8 +1163,10 @@ public final class IPCConnectionPool implements ExternalResourceReleasable {
         StreamInputChannel<?> sic = inputBuffer.getInputChannel(id);
         Channel c = sic.getIOChannel();
         if (c != null) {
+          // The stream has not ended yet, tell the producer that no more data is needed.
+          c.write(new IPCMessage.Meta.STOP(id.getStreamID()));
           ChannelContext cc = ChannelContext.getChannelContext(c);
-          cc.getRegisteredChannelContext().getIOPair().deMapInputChannel();
+          cc.getRegisteredChannelContext().getIOPair().stopInputChannel();
         }
 
       }
@@ -15,11 +15,12 @@ public interface IPCMessage {
    * */
   enum Header {
     /***/
-    EOS, BOS, CONNECT, DISCONNECT, PING, DATA
+    EOS, BOS, CONNECT, DISCONNECT, PING, DATA, STOP
   }
 
   /**
-   * Meta IPCMessages, used inside the IPC module only. It has the following cases: EOS, BOS, CONNECT, DISCONNECT, PING.
+   * Meta IPCMessages, used inside the IPC module only. It has the following cases: EOS, BOS, CONNECT, DISCONNECT, PING,
+   * STOP.
    * */
   abstract class Meta implements IPCMessage {
 
@@ -113,6 +114,57 @@ public interface IPCMessage {
 
     }
 
+    /**
+     * STOP, sent back by the consumer of a stream that needs no more data from it.
+     * */
+    static final class STOP extends Meta {
+      /**
+       * stream id.
+       * */
+      private final long streamID;
+      /**
+       * serialize value.
+       * */
+      private final ChannelBuffer serializeValue;
+
+      /**
+       * @param streamID stream id.
+       * */
+      public STOP(final long streamID) {
+        this.streamID = streamID;
+        ChannelBuffer bb = ChannelBuffers.buffer(1 + Long.SIZE / Byte.SIZE);
+        bb.writeByte((byte) Header.STOP.ordinal());
+        bb.writeLong(streamID);
+        serializeValue = ChannelBuffers.unmodifiableBuffer(bb);
+      }
+
+      /**
+       * @return the stream id.
+       * */
+      long getStreamID() {
+        return streamID;
+      }
+
+      @Override
+      public ChannelBuffer serialize() {
+        return serializeValue.duplicate();
+      }
+
+      /**
+       * @return De-serialize the STOP message.
+       * @param bb serialized data.
+       * */
+      public static STOP deSerialize(final ChannelBuffer bb) {
+        return new STOP(bb.readLong());
+      }
+
+      @Override
+      public String toString() {
+        return "IPCMessage.Meta.STOP(" + streamID + ")";
+      }
+
+    }
+
     /**
      * CONNECT.
      * */
@@ -207,6 +259,8 @@ public interface IPCMessage {
         return EOS;
       } else if (type == Header.PING.ordinal()) {
         return PING;
+      } else if (type == Header.STOP.ordinal()) {
+        return STOP.deSerialize(bb);
       } else {
         return null;
       }
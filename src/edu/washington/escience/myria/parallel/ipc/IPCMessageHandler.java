@@ -19,6 +19,7 @@ import org.slf4j.LoggerFactory;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.parallel.ipc.ChannelContext.RegisteredChannelContext;
 import edu.washington.escience.myria.proto.TransportProto.TransportMessage;
+import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.util.IPCUtils;
 import edu.washington.escience.myria.util.concurrent.ThreadStackDump;
 
@@ -136,10 +137,27 @@ public final class IPCMessageHandler extends SimpleChannelHandler {
         cc.getRegisteredChannelContext().getIOPair().mapInputChannel(ic);
       }
       return;
+    } else if (metaMessage instanceof IPCMessage.Meta.STOP) {
+      // The consumer of the stream that this channel is the output of needs no more data.
+      final long streamID = ((IPCMessage.Meta.STOP) metaMessage).getStreamID();
+      StreamOutputChannel<Object> oc = cc.getRegisteredChannelContext().getIOPair().getOutputChannel();
+      if (oc != null && oc.getID().getStreamID() == streamID) {
+        oc.fireOutputStopped();
+      } else if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("STOP received for stream {}, which has already ended. Physical channel: {}", streamID,
+            ChannelContext.channelToString(ch));
+      }
+      return;
     } else if (metaMessage == IPCMessage.Meta.EOS) {
       if (existingIChannel == null) {
-        LOGGER.error("EOS received from a non-stream channel {}. From RemoteID:{}.",
-            ChannelContext.channelToString(ch), remoteID);
+        if (cc.getRegisteredChannelContext().getIOPair().consumeInputStopped()) {
+          /* The consumer of the stream stopped early and already released its input. */
+          LOGGER.debug("EOS received from a stopped stream channel {}. From RemoteID:{}.",
+              ChannelContext.channelToString(ch), remoteID);
+        } else {
+          LOGGER.error("EOS received from a non-stream channel {}. From RemoteID:{}.",
+              ChannelContext.channelToString(ch), remoteID);
+        }
       } else {
         long streamID = cc.getRegisteredChannelContext().getIOPair().getInputChannel().getID().getStreamID();
         receiveRegisteredData(ch, cc, IPCMessage.StreamData.eos(remoteID, streamID));
@@ -198,7 +216,10 @@ public final class IPCMessageHandler extends SimpleChannelHandler {
     StreamIOChannelPair ecp = cc.getRegisteredChannelContext().getIOPair();
     final int remoteID = cc.getRegisteredChannelContext().getRemoteID();
     StreamInputChannel<Object> ic = ecp.getInputChannel();
-    if (ic == null) {
+    if (ic == null && ecp.isInputStopped()) {
+      // data of a stopped stream that was sent before the producer received the STOP, no longer needed
+      return;
+    } else if (ic == null) {
       // connectionless message processing
       ShortMessageProcessor<Object> smp = ownerConnectionPool.getShortMessageProcessor();
       smp.processMessage(ch, IPCMessage.Data.wrap(remoteID, message));
@@ -226,27 +247,41 @@ public final class IPCMessageHandler extends SimpleChannelHandler {
         final ChannelContext cc = ChannelContext.getChannelContext(ch);
         final int remoteID = cc.getRegisteredChannelContext().getRemoteID();
 
-        TransportMessage tm = (TransportMessage) ownerConnectionPool.getPayloadSerializer().deSerialize(cb, null, null);
-        switch (tm.getType()) {
-          case DATA:
-            StreamInputChannel<?> ic = cc.getRegisteredChannelContext().getIOPair().getInputChannel();
-            if (ic != null) {
-              StreamInputBuffer<?> sib = ic.getInputBuffer();
-              msg = IPCUtils.tmToTupleBatch(tm.getDataMessage(), (Schema) sib.getAttachment());
-            } else {
-              // got a message from a physical channel which is not bound to a logical input channel, ignore
-              // the binding may have been cleaned up due to failure
-              LOGGER.warn("Unknown data message from {} }, through {}, msg: {}", remoteID, ChannelContext
-                  .channelToString(ctx.getChannel()), tm.getDataMessage());
-              return;
-            }
-            break;
-          case QUERY:
-          case CONTROL:
-            msg = tm;
-            break;
-          default:
-            throw new IllegalArgumentException("Unknown message type: " + tm.getType().name());
+        StreamInputChannel<?> ic = cc.getRegisteredChannelContext().getIOPair().getInputChannel();
+        Schema schema = null;
+        if (ic != null) {
+          schema = (Schema) ic.getInputBuffer().getAttachment();
+        }
+        Object payload = ownerConnectionPool.getPayloadSerializer().deSerialize(cb, null, schema);
+        if (payload instanceof TupleBatch) {
+          // a data message that was deserialized straight into a TupleBatch
+          if (ic == null) {
+            LOGGER.warn("Unknown data message from {} }, through {}, msg: {}", remoteID, ChannelContext
+                .channelToString(ctx.getChannel()), payload);
+            return;
+          }
+          msg = payload;
+        } else {
+          TransportMessage tm = (TransportMessage) payload;
+          switch (tm.getType()) {
+            case DATA:
+              if (ic != null) {
+                msg = IPCUtils.tmToTupleBatch(tm.getDataMessage(), schema);
+              } else {
+                // got a message from a physical channel which is not bound to a logical input channel, ignore
+                // the binding may have been cleaned up due to failure
+                LOGGER.warn("Unknown data message from {} }, through {}, msg: {}", remoteID, ChannelContext
+                    .channelToString(ctx.getChannel()), tm.getDataMessage());
+                return;
+              }
+              break;
+            case QUERY:
+            case CONTROL:
+              msg = tm;
+              break;
+            default:
+              throw new IllegalArgumentException("Unknown message type: " + tm.getType().name());
+          }
         }
       }
     }
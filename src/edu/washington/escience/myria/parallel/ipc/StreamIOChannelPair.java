@@ -41,6 +41,11 @@ class StreamIOChannelPair {
    * */
   private StreamOutputChannel<?> outputStreamChannel;
 
+  /**
+   * True if the input stream channel was released by its consumer before the EOS of the stream, until the EOS arrives.
+   * */
+  private boolean inputStopped;
+
   /**
    * Owner channel context. A StreamIOChannelPair must be attached to a channel.
    * */
@@ -97,6 +102,7 @@ class StreamIOChannelPair {
             + " already attached to stream input channel " + inputStreamChannel.getID());
       }
       inputStreamChannel = inputChannel;
+      inputStopped = false;
       inputChannel.attachIOChannel(ioChannel);
     } finally {
       inputMappingLock.unlock();
@@ -131,6 +137,48 @@ class StreamIOChannelPair {
     }
   }
 
+  /**
+   * Remove the link between a logical input channel and a physical IO channel before the EOS of the stream, because
+   * its consumer needs no more data. The EOS that the producer still sends is then expected.
+   * */
+  final void stopInputChannel() {
+    inputMappingLock.lock();
+    try {
+      deMapInputChannel();
+      inputStopped = true;
+    } finally {
+      inputMappingLock.unlock();
+    }
+  }
+
+  /**
+   * @return true if the input stream channel was stopped by {@link #stopInputChannel()} and has not received its EOS
+   *         yet.
+   * */
+  final boolean isInputStopped() {
+    inputMappingLock.lock();
+    try {
+      return inputStopped;
+    } finally {
+      inputMappingLock.unlock();
+    }
+  }
+
+  /**
+   * @return true if the input stream channel was stopped by {@link #stopInputChannel()} and has not received its EOS
+   *         yet, which is then consumed.
+   * */
+  final boolean consumeInputStopped() {
+    inputMappingLock.lock();
+    try {
+      final boolean stopped = inputStopped;
+      inputStopped = false;
+      return stopped;
+    } finally {
+      inputMappingLock.unlock();
+    }
+  }
+
   /**
    * Link the logical outputChannel with the physical ioChannel.
    *
@@ -31,6 +31,11 @@ public class StreamOutputChannel<PAYLOAD> extends StreamIOChannel {
    * */
   private final ConcurrentLinkedQueue<IPCEventListener> outputRecoverListeners;
 
+  /**
+   * Output stopped listeners.
+   * */
+  private final ConcurrentLinkedQueue<IPCEventListener> outputStopListeners;
+
   /**
    * owner IPC pool.
    * */
@@ -46,6 +51,11 @@ public class StreamOutputChannel<PAYLOAD> extends StreamIOChannel {
    * */
   public static final EventType OUTPUT_RECOVERED = new EventType("Output recovered");
 
+  /**
+   * Output stopped event, when the consumer at the other end needs no more data.
+   * */
+  public static final EventType OUTPUT_STOPPED = new EventType("Output stopped");
+
   /**
    * Channel release future.
    * */
@@ -61,6 +71,7 @@ public class StreamOutputChannel<PAYLOAD> extends StreamIOChannel {
     super(ecID);
     outputDisableListeners = new ConcurrentLinkedQueue<IPCEventListener>();
     outputRecoverListeners = new ConcurrentLinkedQueue<IPCEventListener>();
+    outputStopListeners = new ConcurrentLinkedQueue<IPCEventListener>();
     this.ownerPool = ownerPool;
     ChannelContext.getChannelContext(initialPhysicalChannel).getRegisteredChannelContext().getIOPair()
     .mapOutputChannel(this);
@@ -179,6 +190,43 @@ public class StreamOutputChannel<PAYLOAD> extends StreamIOChannel {
     });
   }
 
+  /**
+   * The output stopped event.
+   * */
+  private final IPCEvent outputStoppedEvent = new IPCEvent() {
+
+    @Override
+    public Object getAttachment() {
+      return StreamOutputChannel.this;
+    }
+
+    @Override
+    public EventType getType() {
+      return OUTPUT_STOPPED;
+    }
+
+  };
+
+  /**
+   * Fire an output stopped event. All the output stopped event listeners will be notified.
+   * */
+  final void fireOutputStopped() {
+    ownerPool.getIPCEventProcessor().execute(new OrderedExecutorService.KeyRunnable<StreamOutputChannel<PAYLOAD>>() {
+
+      @Override
+      public void run() {
+        for (IPCEventListener l : outputStopListeners) {
+          l.triggered(outputStoppedEvent);
+        }
+      }
+
+      @Override
+      public StreamOutputChannel<PAYLOAD> getKey() {
+        return StreamOutputChannel.this;
+      }
+    });
+  }
+
   /**
    * @param t event type.
    * @param l event listener.
@@ -188,6 +236,8 @@ public class StreamOutputChannel<PAYLOAD> extends StreamIOChannel {
       outputDisableListeners.add(l);
     } else if (t == OUTPUT_RECOVERED) {
       outputRecoverListeners.add(l);
+    } else if (t == OUTPUT_STOPPED) {
+      outputStopListeners.add(l);
     } else {
       throw new IllegalArgumentException("Unsupported event: " + t);
     }
@@ -1,8 +1,16 @@
 package edu.washington.escience.myria.profiling;
 
-import java.sql.SQLException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -21,14 +29,32 @@ import edu.washington.escience.myria.parallel.SubQueryId;
 import edu.washington.escience.myria.parallel.WorkerSubQuery;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.concurrent.RenamingThreadFactory;
 
 /**
  * A logger for profiling data.
+ * 
+ * Recording does not block the operators: each thread that records events or sent tuples writes them into its own
+ * {@link ProfilingRingBuffer}, and a background thread drains the buffers every {@link #DRAIN_INTERVAL_MILLIS} and
+ * writes the records to the database in batches. When a buffer is full, its records are dropped and counted instead.
+ * The buffer of a thread that has ended is discarded once it is drained. Only the background thread uses the database
+ * connection and the {@link TupleBatchBuffer}s.
  */
 public class ProfilingLogger {
   /** The logger for this class. */
   private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(ProfilingLogger.class);
 
+  /** The number of records in the ring buffer of a thread. */
+  private static final int RING_BUFFER_RECORDS = 4096;
+  /** The max number of resource stats waiting to be written. */
+  private static final int MAX_QUEUED_RESOURCES = 64 * 1024;
+  /** How often the buffers are drained. */
+  private static final long DRAIN_INTERVAL_MILLIS = 1000;
+  /** The first long of an event record. */
+  private static final long EVENT_RECORD = 0;
+  /** The first long of a sent record. */
+  private static final long SENT_RECORD = 1;
+
   /** The connection to the database database. */
   private final JdbcAccessMethod accessMethod;
 
@@ -41,6 +67,32 @@ public class ProfilingLogger {
   /** Buffer for tuples sent. */
   private final TupleBatchBuffer resources;
 
+  /** The ring buffers of all the threads that have recorded events or sent tuples. */
+  private final ConcurrentLinkedQueue<ProfilingRingBuffer> ringBuffers = new ConcurrentLinkedQueue<>();
+  /** The ring buffer of the current thread. */
+  private final ThreadLocal<ProfilingRingBuffer> ringBuffer = new ThreadLocal<ProfilingRingBuffer>() {
+    @Override
+    protected ProfilingRingBuffer initialValue() {
+      final ProfilingRingBuffer buffer = new ProfilingRingBuffer(RING_BUFFER_RECORDS, Thread.currentThread());
+      ringBuffers.add(buffer);
+      return buffer;
+    }
+  };
+  /** The resource stats waiting to be written. */
+  private final ConcurrentLinkedQueue<ResourceStats> queuedResources = new ConcurrentLinkedQueue<>();
+  /** The number of elements of {@link #queuedResources}. */
+  private final AtomicInteger numQueuedResources = new AtomicInteger();
+  /** The number of resource stats dropped because too many were waiting. */
+  private final AtomicLong droppedResources = new AtomicLong();
+  /** The number of records dropped by the ring buffers that have been discarded. */
+  private long droppedByDiscarded;
+  /** The number of dropped records that has been reported in the log. */
+  private long reportedDropped;
+  /** Whether the connection to the database was valid when last checked by the background thread. */
+  private volatile boolean valid = true;
+  /** The background thread that writes the records. */
+  private final ScheduledExecutorService writer;
+
   /**
    * Default constructor.
    * 
@@ -68,6 +120,21 @@ public class ProfilingLogger {
     events = new TupleBatchBuffer(MyriaConstants.EVENT_PROFILING_SCHEMA);
     sent = new TupleBatchBuffer(MyriaConstants.SENT_PROFILING_SCHEMA);
     resources = new TupleBatchBuffer(MyriaConstants.RESOURCE_PROFILING_SCHEMA);
+
+    writer = Executors.newSingleThreadScheduledExecutor(new RenamingThreadFactory("Profiling log writer"));
+    writer.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          drain();
+          valid = accessMethod.getConnection().isValid(1);
+        } catch (Throwable e) {
+          /* Keep draining, otherwise all records from now on are dropped. */
+          LOGGER.error("Error writing profiling data", e);
+          valid = false;
+        }
+      }
+    }, DRAIN_INTERVAL_MILLIS, DRAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
   }
 
   /**
@@ -152,83 +219,159 @@ public class ProfilingLogger {
   }
 
   /**
-   * Appends a single event appearing in an operator to a batch that is flushed either after a certain number of events
-   * are in the batch or {@link #flushEventsBatch()} is called.
+   * Records a single event appearing in an operator. The event is written by the background thread, or dropped if the
+   * ring buffer of the current thread is full.
    * 
    * @param operator the operator where this record was logged
    * @param numTuples the number of tuples
    * @param startTime the start time of the event in ns
-   * 
-   * @throws DbException if insertion in the database fails
    */
-  public synchronized void recordEvent(final Operator operator, final long numTuples, final long startTime)
-      throws DbException {
-    SubQueryId sq = operator.getSubQueryId();
-    events.putLong(0, sq.getQueryId());
-    events.putInt(1, (int) sq.getSubqueryId());
-    events.putInt(2, operator.getFragmentId());
-    events.putInt(3, Preconditions.checkNotNull(operator.getOpId(), "opId"));
-    events.putLong(4, startTime);
-    events.putLong(5, getTime(operator));
-    events.putLong(6, numTuples);
-
-    flush(MyriaConstants.EVENT_PROFILING_RELATION, events.popFilled());
+  public void recordEvent(final Operator operator, final long numTuples, final long startTime) {
+    final long endTime = getTime(operator);
+    final ProfilingRingBuffer buffer = ringBuffer.get();
+    final int offset = buffer.claim();
+    if (offset < 0) {
+      return;
+    }
+    final SubQueryId sq = operator.getSubQueryId();
+    final long[] slots = buffer.slots();
+    slots[offset] = EVENT_RECORD;
+    slots[offset + 1] = sq.getQueryId();
+    slots[offset + 2] = sq.getSubqueryId();
+    slots[offset + 3] = operator.getFragmentId();
+    slots[offset + 4] = Preconditions.checkNotNull(operator.getOpId(), "opId");
+    slots[offset + 5] = startTime;
+    slots[offset + 6] = endTime;
+    slots[offset + 7] = numTuples;
+    buffer.publish();
   }
 
   /**
-   * Record that data was sent to a worker. The buffer is flushed at a particular number of tuples or on a call to
-   * {@link #flush()}.
+   * Record that data was sent to a worker. The record is written by the background thread, or dropped if the ring
+   * buffer of the current thread is full.
    * 
    * @param operator the operator where this record was logged
    * @param numTuples the number of tuples sent.
    * @param destWorkerId the worker if that we send the data to
-   * @throws DbException if insertion in the database fails
    */
-  public synchronized void recordSent(final Operator operator, final int numTuples, final int destWorkerId)
-      throws DbException {
-    SubQueryId sq = operator.getSubQueryId();
-    sent.putLong(0, sq.getQueryId());
-    sent.putInt(1, (int) sq.getSubqueryId());
-    sent.putInt(2, operator.getFragmentId());
-    sent.putLong(3, getTime(operator));
-    sent.putLong(4, numTuples);
-    sent.putInt(5, destWorkerId);
-
-    flush(MyriaConstants.SENT_PROFILING_RELATION, sent.popFilled());
+  public void recordSent(final Operator operator, final int numTuples, final int destWorkerId) {
+    final long time = getTime(operator);
+    final ProfilingRingBuffer buffer = ringBuffer.get();
+    final int offset = buffer.claim();
+    if (offset < 0) {
+      return;
+    }
+    final SubQueryId sq = operator.getSubQueryId();
+    final long[] slots = buffer.slots();
+    slots[offset] = SENT_RECORD;
+    slots[offset + 1] = sq.getQueryId();
+    slots[offset + 2] = sq.getSubqueryId();
+    slots[offset + 3] = operator.getFragmentId();
+    slots[offset + 4] = time;
+    slots[offset + 5] = numTuples;
+    slots[offset + 6] = destWorkerId;
+    buffer.publish();
   }
 
   /**
-   * Record a single resource stats. The buffer is flushed at a particular number of tuples or on a call to
-   * {@link #flush()}.
+   * Record a single resource stats. The stats are written by the background thread, or dropped if too many are
+   * waiting.
    * 
    * @param stats the resource stats.
+   */
+  public void recordResource(final ResourceStats stats) {
+    if (numQueuedResources.incrementAndGet() > MAX_QUEUED_RESOURCES) {
+      numQueuedResources.decrementAndGet();
+      droppedResources.incrementAndGet();
+      return;
+    }
+    queuedResources.add(stats);
+  }
+
+  /**
+   * Write all the records so far to the database, and wait until they are written.
+   * 
    * @throws DbException if insertion in the database fails
    */
-  public synchronized void recordResource(final ResourceStats stats) throws DbException {
-    resources.putLong(0, stats.getTimestamp());
-    resources.putInt(1, stats.getOpId());
-    resources.putString(2, stats.getMeasurement());
-    resources.putLong(3, stats.getValue());
-    resources.putLong(4, stats.getQueryId());
-    resources.putLong(5, stats.getSubqueryId());
-
-    flush(MyriaConstants.RESOURCE_PROFILING_RELATION, resources.popFilled());
+  public void flush() throws DbException {
+    runOnWriter(new Callable<Void>() {
+      @Override
+      public Void call() throws DbException {
+        drain();
+        flush(MyriaConstants.SENT_PROFILING_RELATION, sent.popAny());
+        flush(MyriaConstants.EVENT_PROFILING_RELATION, events.popAny());
+        flush(MyriaConstants.RESOURCE_PROFILING_RELATION, resources.popAny());
+
+        Preconditions.checkState(sent.numTuples() == 0, "Unwritten sent profiling data.");
+        Preconditions.checkState(events.numTuples() == 0, "Unwritten event profiling data.");
+        Preconditions.checkState(resources.numTuples() == 0, "Unwritten resource profiling data.");
+        return null;
+      }
+    });
   }
 
   /**
-   * Flush the profiling buffers. The buffer is flushed at a particular number of tuples or on a call to
-   * {@link #flush()}.
+   * Move the records of the ring buffers and the queued resource stats into the tuple buffers, and write the full
+   * batches. Only called on the background thread.
    * 
    * @throws DbException if insertion in the database fails
    */
-  public synchronized void flush() throws DbException {
-    flush(MyriaConstants.SENT_PROFILING_RELATION, sent.popAny());
-    flush(MyriaConstants.EVENT_PROFILING_RELATION, events.popAny());
-    flush(MyriaConstants.RESOURCE_PROFILING_RELATION, resources.popAny());
-
-    Preconditions.checkState(sent.numTuples() == 0, "Unwritten sent profiling data.");
-    Preconditions.checkState(events.numTuples() == 0, "Unwritten event profiling data.");
-    Preconditions.checkState(resources.numTuples() == 0, "Unwritten resource profiling data.");
+  private void drain() throws DbException {
+    long dropped = droppedResources.get() + droppedByDiscarded;
+    for (Iterator<ProfilingRingBuffer> it = ringBuffers.iterator(); it.hasNext();) {
+      final ProfilingRingBuffer buffer = it.next();
+      /* Checked before draining, so that a dead owner cannot have written records that are not drained. */
+      final boolean ownerDead = buffer.isOwnerDead();
+      dropped += buffer.dropped();
+      final long[] slots = buffer.slots();
+      for (int offset = buffer.peek(); offset >= 0; offset = buffer.peek()) {
+        if (slots[offset] == EVENT_RECORD) {
+          events.putLong(0, slots[offset + 1]);
+          events.putInt(1, (int) slots[offset + 2]);
+          events.putInt(2, (int) slots[offset + 3]);
+          events.putInt(3, (int) slots[offset + 4]);
+          events.putLong(4, slots[offset + 5]);
+          events.putLong(5, slots[offset + 6]);
+          events.putLong(6, slots[offset + 7]);
+        } else {
+          sent.putLong(0, slots[offset + 1]);
+          sent.putInt(1, (int) slots[offset + 2]);
+          sent.putInt(2, (int) slots[offset + 3]);
+          sent.putLong(3, slots[offset + 4]);
+          sent.putLong(4, slots[offset + 5]);
+          sent.putInt(5, (int) slots[offset + 6]);
+        }
+        buffer.release();
+      }
+      if (ownerDead) {
+        droppedByDiscarded += buffer.dropped();
+        it.remove();
+      }
+    }
+    for (ResourceStats stats = queuedResources.poll(); stats != null; stats = queuedResources.poll()) {
+      numQueuedResources.decrementAndGet();
+      resources.putLong(0, stats.getTimestamp());
+      resources.putInt(1, stats.getOpId());
+      resources.putString(2, stats.getMeasurement());
+      resources.putLong(3, stats.getValue());
+      resources.putLong(4, stats.getQueryId());
+      resources.putLong(5, stats.getSubqueryId());
+    }
+    if (dropped > reportedDropped) {
+      LOGGER.warn("Dropped {} profiling records because they were recorded faster than they could be written.",
+          dropped - reportedDropped);
+      reportedDropped = dropped;
+    }
+
+    for (TupleBatch tb = events.popFilled(); tb != null; tb = events.popFilled()) {
+      flush(MyriaConstants.EVENT_PROFILING_RELATION, tb);
+    }
+    for (TupleBatch tb = sent.popFilled(); tb != null; tb = sent.popFilled()) {
+      flush(MyriaConstants.SENT_PROFILING_RELATION, tb);
+    }
+    for (TupleBatch tb = resources.popFilled(); tb != null; tb = resources.popFilled()) {
+      flush(MyriaConstants.RESOURCE_PROFILING_RELATION, tb);
+    }
   }
 
   /**
@@ -248,22 +391,61 @@ public class ProfilingLogger {
 
     accessMethod.tupleBatchInsert(relationKey, tupleBatch);
 
-    LOGGER.info("Writing profiling data to {} took {} milliseconds.", relationKey, TimeUnit.NANOSECONDS.toMillis(System
-        .nanoTime()
-        - startTime));
+    LOGGER.debug("Writing profiling data to {} took {} milliseconds.", relationKey, TimeUnit.NANOSECONDS
+        .toMillis(System.nanoTime() - startTime));
   }
 
   /**
-   * Returns {@code true} if the current JDBC connection is active.
+   * Run a task on the background thread, which owns the database connection, and wait for it.
    * 
-   * @return {@code true} if the current JDBC connection is active.
+   * @param task the task.
+   * @param <T> the type of the result of the task.
+   * @return the result of the task.
+   * @throws DbException if the task fails or cannot be run.
    */
-  public boolean isValid() {
+  private <T> T runOnWriter(final Callable<T> task) throws DbException {
+    try {
+      return writer.submit(task).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DbException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof DbException) {
+        throw (DbException) e.getCause();
+      }
+      throw new DbException(e.getCause());
+    } catch (RejectedExecutionException e) {
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * Write the remaining records, then stop the background thread and close the database connection.
+   */
+  public void close() {
     try {
-      return accessMethod.getConnection().isValid(1);
-    } catch (SQLException e) {
-      LOGGER.warn("Error checking connection validity", e);
-      return false;
+      flush();
+    } catch (DbException e) {
+      LOGGER.error("Error flushing profiling logger", e);
+    }
+    writer.shutdown();
+    try {
+      writer.awaitTermination(DRAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+      accessMethod.close();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (DbException e) {
+      LOGGER.warn("Error closing the profiling connection", e);
     }
   }
+
+  /**
+   * Returns {@code true} if the current JDBC connection is active. This does not block: the connection is checked by
+   * the background thread each time it drains the buffers.
+   * 
+   * @return {@code true} if the current JDBC connection is active.
+   */
+  public boolean isValid() {
+    return valid && !writer.isShutdown();
+  }
 }
@@ -0,0 +1,113 @@
+package edu.washington.escience.myria.profiling;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A bounded ring buffer of fixed-size profiling records, written by one thread and read by another without locks.
+ *
+ * A record is {@link #RECORD_LONGS} longs in {@link #slots()}. The writer calls {@link #claim()}, fills the record at
+ * the returned offset, and calls {@link #publish()}. The reader calls {@link #peek()}, reads the record at the returned
+ * offset, and calls {@link #release()}. A record that does not fit is dropped and counted instead of blocking the
+ * writer.
+ *
+ * The buffer only holds a weak reference to the thread that writes it, so that a buffer whose thread has ended can be
+ * drained and discarded, see {@link #isOwnerDead()}.
+ */
+final class ProfilingRingBuffer {
+  /** The number of longs in a record. */
+  static final int RECORD_LONGS = 8;
+
+  /** The records. */
+  private final long[] slots;
+  /** The number of records minus one. */
+  private final int mask;
+  /** The number of records read so far. Only set by the reader. */
+  private final AtomicLong head = new AtomicLong();
+  /** The number of records written so far. Only set by the writer. */
+  private final AtomicLong tail = new AtomicLong();
+  /** The number of records dropped because the buffer was full. Only set by the writer. */
+  private volatile long dropped;
+  /** The thread that writes the buffer. */
+  private final WeakReference<Thread> owner;
+
+  /**
+   * @param capacity the max number of records in the buffer, a power of two.
+   * @param owner the thread that writes the buffer.
+   */
+  ProfilingRingBuffer(final int capacity, final Thread owner) {
+    Preconditions.checkArgument(capacity > 0 && Integer.bitCount(capacity) == 1, "capacity must be a power of two");
+    slots = new long[capacity * RECORD_LONGS];
+    mask = capacity - 1;
+    this.owner = new WeakReference<>(owner);
+  }
+
+  /**
+   * Called by the reader. Once this returns true, no record is written anymore, so the buffer can be discarded after
+   * the remaining records are read.
+   *
+   * @return true if the thread that writes the buffer has ended.
+   */
+  boolean isOwnerDead() {
+    final Thread thread = owner.get();
+    return thread == null || !thread.isAlive();
+  }
+
+  /**
+   * @return the records.
+   */
+  long[] slots() {
+    return slots;
+  }
+
+  /**
+   * Called by the writer.
+   *
+   * @return the offset in {@link #slots()} of the next record to be written, or -1 if the buffer is full, in which case
+   *         the record is counted as dropped.
+   */
+  int claim() {
+    final long t = tail.get();
+    if (t - head.get() > mask) {
+      ++dropped;
+      return -1;
+    }
+    return (int) (t & mask) * RECORD_LONGS;
+  }
+
+  /**
+   * Called by the writer to make the record of the last {@link #claim()} visible to the reader.
+   */
+  void publish() {
+    tail.lazySet(tail.get() + 1);
+  }
+
+  /**
+   * Called by the reader.
+   *
+   * @return the offset in {@link #slots()} of the oldest unread record, or -1 if there is none.
+   */
+  int peek() {
+    final long h = head.get();
+    if (h == tail.get()) {
+      return -1;
+    }
+    return (int) (h & mask) * RECORD_LONGS;
+  }
+
+  /**
+   * Called by the reader to free the record of the last {@link #peek()}.
+   */
+  void release() {
+    head.lazySet(head.get() + 1);
+  }
+
+  /**
+   * @return the number of records dropped so far because the buffer was full.
+   */
+  long dropped() {
+    return dropped;
+  }
+}
@@ -0,0 +1,275 @@
+package edu.washington.escience.myria.storage;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
+
+/**
+ * A hash table for the build side of a hash join or the groups of a hash aggregate. The tuples are stored in a
+ * {@link MutableTupleBuffer} and indexed by their position in it.
+ *
+ * The index is an open-addressing table with linear probing. Every slot stores the full 32-bit hash of its keys and the
+ * first and last tuple with that hash; tuples that share a hash are chained through the primitive array {@link #next},
+ * so no per-key objects are allocated. If the key is a single INT or LONG column, the keys are additionally stored
+ * inline in a primitive array so that probes compare them without going through the tuple buffer.
+ */
+public final class JoinHashTable {
+
+  /** Marks an empty slot or the end of a chain. */
+  public static final int NONE = -1;
+  /** Initial number of slots, must be a power of two. */
+  private static final int INITIAL_CAPACITY = 1 << 10;
+  /** Initial number of tuples that the per-tuple arrays can hold. */
+  private static final int INITIAL_TUPLE_CAPACITY = TupleBatch.BATCH_SIZE;
+
+  /** The tuples in this hash table. */
+  private final MutableTupleBuffer data;
+  /** The key columns of the tuples in {@link #data}. */
+  private final int[] keyColumns;
+  /** Either {@link Type#INT_TYPE} or {@link Type#LONG_TYPE} if the key is a single column of that type, else null. */
+  private final Type inlineKeyType;
+
+  /** The hash stored in each slot. */
+  private int[] slotHashes;
+  /** The first tuple with the hash of each slot, or {@link #NONE} if the slot is empty. */
+  private int[] slotHeads;
+  /** The last tuple with the hash of each slot. */
+  private int[] slotTails;
+  /** The number of non-empty slots. */
+  private int numUsedSlots;
+
+  /** The next tuple with the same hash as each tuple, or {@link #NONE}. */
+  private int[] next;
+  /** The keys of each tuple if the key is a single INT column. */
+  private int[] intKeys;
+  /** The keys of each tuple if the key is a single LONG column. */
+  private long[] longKeys;
+
+  /**
+   * @param schema the schema of the tuples to be stored.
+   * @param keyColumns the key columns of the tuples to be stored.
+   */
+  public JoinHashTable(final Schema schema, final int[] keyColumns) {
+    Preconditions.checkNotNull(keyColumns, "keyColumns");
+    data = new MutableTupleBuffer(schema);
+    this.keyColumns = keyColumns;
+    final Type firstKeyType = keyColumns.length == 0 ? null : schema.getColumnType(keyColumns[0]);
+    if (keyColumns.length == 1 && (firstKeyType == Type.INT_TYPE || firstKeyType == Type.LONG_TYPE)) {
+      inlineKeyType = firstKeyType;
+    } else {
+      inlineKeyType = null;
+    }
+
+    slotHashes = new int[INITIAL_CAPACITY];
+    slotHeads = new int[INITIAL_CAPACITY];
+    slotTails = new int[INITIAL_CAPACITY];
+    Arrays.fill(slotHeads, NONE);
+    next = new int[INITIAL_TUPLE_CAPACITY];
+    if (inlineKeyType == Type.INT_TYPE) {
+      intKeys = new int[INITIAL_TUPLE_CAPACITY];
+    } else if (inlineKeyType == Type.LONG_TYPE) {
+      longKeys = new long[INITIAL_TUPLE_CAPACITY];
+    }
+  }
+
+  /**
+   * @return the tuples in this hash table, indexed by the values returned from {@link #firstMatch} and
+   *         {@link #nextMatch}.
+   */
+  public MutableTupleBuffer getData() {
+    return data;
+  }
+
+  /**
+   * @return the number of tuples in this hash table.
+   */
+  public int numTuples() {
+    return data.numTuples();
+  }
+
+  /**
+   * Append a tuple to this hash table.
+   *
+   * @param tb the source TupleBatch.
+   * @param row the row of the tuple in tb.
+   * @param hashCode the hash of the key columns of the tuple, see
+   *          {@link edu.washington.escience.myria.util.HashUtils#hashSubRow}.
+   */
+  public void add(final TupleBatch tb, final int row, final int hashCode) {
+    insert(tb, keyColumns, row, hashCode);
+    final List<? extends Column<?>> inputColumns = tb.getDataColumns();
+    for (int column = 0; column < tb.numColumns(); column++) {
+      data.put(column, inputColumns.get(column), row);
+    }
+    growIfFull();
+  }
+
+  /**
+   * Append a projection of a tuple to this hash table, e.g., the grouping columns of an input tuple of an aggregate.
+   *
+   * @param tb the source TupleBatch.
+   * @param columns the columns of tb that make up the stored tuple, in the order of the schema of this hash table.
+   * @param row the row of the tuple in tb.
+   * @param hashCode the hash of the key columns of the stored tuple.
+   */
+  public void add(final TupleBatch tb, final int[] columns, final int row, final int hashCode) {
+    final int[] sourceKeyColumns = new int[keyColumns.length];
+    for (int i = 0; i < keyColumns.length; ++i) {
+      sourceKeyColumns[i] = columns[keyColumns[i]];
+    }
+    insert(tb, sourceKeyColumns, row, hashCode);
+    final List<? extends Column<?>> inputColumns = tb.getDataColumns();
+    for (int column = 0; column < columns.length; column++) {
+      data.put(column, inputColumns.get(columns[column]), row);
+    }
+    growIfFull();
+  }
+
+  /**
+   * Index a new tuple, before its values are appended to {@link #data}.
+   *
+   * @param tb the source TupleBatch.
+   * @param sourceKeyColumns the key columns of the tuple in tb.
+   * @param row the row of the tuple in tb.
+   * @param hashCode the hash of the key columns of the tuple.
+   */
+  private void insert(final TupleBatch tb, final int[] sourceKeyColumns, final int row, final int hashCode) {
+    final int index = data.numTuples();
+    ensureTupleCapacity(index + 1);
+    if (inlineKeyType == Type.INT_TYPE) {
+      intKeys[index] = tb.getInt(sourceKeyColumns[0], row);
+    } else if (inlineKeyType == Type.LONG_TYPE) {
+      longKeys[index] = tb.getLong(sourceKeyColumns[0], row);
+    }
+    next[index] = NONE;
+
+    final int slot = findSlot(hashCode);
+    if (slotHeads[slot] == NONE) {
+      slotHashes[slot] = hashCode;
+      slotHeads[slot] = index;
+      ++numUsedSlots;
+    } else {
+      next[slotTails[slot]] = index;
+    }
+    slotTails[slot] = index;
+  }
+
+  /**
+   * Grow the slots if the table became too full by inserting a tuple.
+   */
+  private void growIfFull() {
+    if (numUsedSlots * 4 > slotHeads.length * 3) {
+      rehash(slotHeads.length * 2);
+    }
+  }
+
+  /**
+   * @param tb the probing TupleBatch.
+   * @param compareColumns the columns of tb that are compared to the key columns of this hash table.
+   * @param row the probing row in tb.
+   * @param hashCode the hash of the compare columns of the probing row.
+   * @return the index of the first tuple whose key equals the probing row, or {@link #NONE}.
+   */
+  public int firstMatch(final ReadableTable tb, final int[] compareColumns, final int row, final int hashCode) {
+    final int slot = findSlot(hashCode);
+    return skipToMatch(tb, compareColumns, row, slotHeads[slot]);
+  }
+
+  /**
+   * @param tb the probing TupleBatch.
+   * @param compareColumns the columns of tb that are compared to the key columns of this hash table.
+   * @param row the probing row in tb.
+   * @param index the index of the previous match, as returned by {@link #firstMatch} or {@link #nextMatch}.
+   * @return the index of the next tuple whose key equals the probing row, or {@link #NONE}.
+   */
+  public int nextMatch(final ReadableTable tb, final int[] compareColumns, final int row, final int index) {
+    return skipToMatch(tb, compareColumns, row, next[index]);
+  }
+
+  /**
+   * @param tb the probing TupleBatch.
+   * @param compareColumns the columns of tb that are compared to the key columns of this hash table.
+   * @param row the probing row in tb.
+   * @param start the first candidate on the chain.
+   * @return the index of the first tuple on the chain starting at <code>start</code> whose key equals the probing
+   *         row, or {@link #NONE}.
+   */
+  private int skipToMatch(final ReadableTable tb, final int[] compareColumns, final int row, final int start) {
+    int index = start;
+    if (inlineKeyType == Type.INT_TYPE) {
+      final int key = tb.getInt(compareColumns[0], row);
+      while (index != NONE && intKeys[index] != key) {
+        index = next[index];
+      }
+    } else if (inlineKeyType == Type.LONG_TYPE) {
+      final long key = tb.getLong(compareColumns[0], row);
+      while (index != NONE && longKeys[index] != key) {
+        index = next[index];
+      }
+    } else {
+      while (index != NONE && !TupleUtils.tupleEquals(tb, compareColumns, row, data, keyColumns, index)) {
+        index = next[index];
+      }
+    }
+    return index;
+  }
+
+  /**
+   * @param hashCode a hash.
+   * @return the slot that holds the hash, or the empty slot where it should be inserted.
+   */
+  private int findSlot(final int hashCode) {
+    final int mask = slotHeads.length - 1;
+    int slot = (hashCode ^ (hashCode >>> 16)) & mask;
+    while (slotHeads[slot] != NONE && slotHashes[slot] != hashCode) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * Grow the slot arrays and reinsert all used slots.
+   *
+   * @param capacity the new number of slots, must be a power of two.
+   */
+  private void rehash(final int capacity) {
+    final int[] oldHashes = slotHashes;
+    final int[] oldHeads = slotHeads;
+    final int[] oldTails = slotTails;
+    slotHashes = new int[capacity];
+    slotHeads = new int[capacity];
+    slotTails = new int[capacity];
+    Arrays.fill(slotHeads, NONE);
+    for (int i = 0; i < oldHeads.length; ++i) {
+      if (oldHeads[i] != NONE) {
+        final int slot = findSlot(oldHashes[i]);
+        slotHashes[slot] = oldHashes[i];
+        slotHeads[slot] = oldHeads[i];
+        slotTails[slot] = oldTails[i];
+      }
+    }
+  }
+
+  /**
+   * Grow the per-tuple arrays so that they can hold at least the specified number of tuples.
+   *
+   * @param numTuples the required number of tuples.
+   */
+  private void ensureTupleCapacity(final int numTuples) {
+    if (numTuples <= next.length) {
+      return;
+    }
+    final int capacity = Math.max(numTuples, next.length * 2);
+    next = Arrays.copyOf(next, capacity);
+    if (intKeys != null) {
+      intKeys = Arrays.copyOf(intKeys, capacity);
+    } else if (longKeys != null) {
+      longKeys = Arrays.copyOf(longKeys, capacity);
+    }
+  }
+}
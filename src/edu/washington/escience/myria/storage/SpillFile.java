@@ -0,0 +1,268 @@
+package edu.washington.escience.myria.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.proto.DataProto.DataMessage;
+import edu.washington.escience.myria.util.IPCUtils;
+
+/**
+ * An on-disk run of tuples, used by operators whose in-memory state would exceed their memory budget.
+ *
+ * Tuples are buffered and written as column-encoded {@link DataMessage}s, the same encoding that is used to ship
+ * TupleBatches between workers, and are read back in the order they were written. The file is created lazily in a spill
+ * directory under the working directory of the worker and is removed by {@link #clear()} or {@link #delete()}.
+ */
+public final class SpillFile {
+  /** The logger for this class. */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(SpillFile.class);
+
+  /** The name of the spill directory under the working directory. */
+  private static final String SPILL_DIRECTORY = "spill";
+
+  /** The schema of the tuples. */
+  private final Schema schema;
+  /** The directory that holds the file. */
+  private final File directory;
+  /** The prefix of the file name. */
+  private final String prefix;
+  /** Tuples that have not been written yet. */
+  private final TupleBatchBuffer buffer;
+  /** The file, or null if nothing has been written to it. */
+  private File file;
+  /** The open output stream, or null. */
+  private OutputStream output;
+  /** The number of tuples. */
+  private long numTuples;
+  /** Whether {@link #finishWriting()} has been called since the last {@link #clear()}. */
+  private boolean finished;
+
+  /**
+   * @param schema the schema of the tuples.
+   * @param directory the directory to write the file to.
+   * @param prefix the prefix of the file name.
+   */
+  public SpillFile(final Schema schema, final File directory, final String prefix) {
+    this.schema = Preconditions.checkNotNull(schema, "schema");
+    this.directory = Preconditions.checkNotNull(directory, "directory");
+    this.prefix = Preconditions.checkNotNull(prefix, "prefix");
+    buffer = new TupleBatchBuffer(schema);
+  }
+
+  /**
+   * @param execEnvVars the execution environment variables of an operator, may be null.
+   * @param key the configuration key of the memory budget, see {@link MyriaSystemConfigKeys}.
+   * @param defaultValue the value to use if the key is not configured.
+   * @return the max number of tuples that the operator keeps in memory.
+   */
+  public static long getMaxInMemoryTuples(final Map<String, Object> execEnvVars, final String key,
+      final long defaultValue) {
+    final Object value = execEnvVars == null ? null : execEnvVars.get(key);
+    if (value == null) {
+      return defaultValue;
+    }
+    return Long.parseLong(value.toString());
+  }
+
+  /**
+   * @param execEnvVars the execution environment variables of an operator.
+   * @return the directory to spill to: a subdirectory of the working directory, or of the system temporary directory if
+   *         no working directory is configured.
+   */
+  public static File getSpillDirectory(final Map<String, Object> execEnvVars) {
+    final Object workingDirectory =
+        execEnvVars == null ? null : execEnvVars.get(MyriaSystemConfigKeys.WORKING_DIRECTORY);
+    if (workingDirectory == null) {
+      return new File(System.getProperty("java.io.tmpdir"), "myria-" + SPILL_DIRECTORY);
+    }
+    return new File(workingDirectory.toString(), SPILL_DIRECTORY);
+  }
+
+  /**
+   * @return the schema of the tuples.
+   */
+  public Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * @return the number of tuples.
+   */
+  public long numTuples() {
+    return numTuples;
+  }
+
+  /**
+   * Append a tuple.
+   *
+   * @param tb the source TupleBatch.
+   * @param row the row of the tuple in tb.
+   * @throws DbException if there is an error writing to disk.
+   */
+  public void add(final TupleBatch tb, final int row) throws DbException {
+    Preconditions.checkState(!finished, "Cannot add tuples after finishWriting() until clear() is called.");
+    buffer.put(tb, row);
+    ++numTuples;
+    final TupleBatch filled = buffer.popFilled();
+    if (filled != null) {
+      write(filled);
+    }
+  }
+
+  /**
+   * Write the remaining buffered tuples and close the file. Tuples may be read after this call. Calling it more than
+   * once has no effect.
+   *
+   * @throws DbException if there is an error writing to disk.
+   */
+  public void finishWriting() throws DbException {
+    if (finished) {
+      return;
+    }
+    TupleBatch tb = buffer.popAny();
+    while (tb != null) {
+      write(tb);
+      tb = buffer.popAny();
+    }
+    if (output != null) {
+      try {
+        output.close();
+      } catch (IOException e) {
+        throw new DbException("Error closing spill file " + file, e);
+      }
+      output = null;
+    }
+    finished = true;
+  }
+
+  /**
+   * @return a reader over the TupleBatches, after {@link #finishWriting()}.
+   * @throws DbException if the file cannot be opened.
+   */
+  public Reader read() throws DbException {
+    Preconditions.checkState(finished, "Call finishWriting() first.");
+    if (file == null) {
+      return new Reader(schema, null);
+    }
+    try {
+      return new Reader(schema, new BufferedInputStream(new FileInputStream(file)));
+    } catch (IOException e) {
+      throw new DbException("Error opening spill file " + file, e);
+    }
+  }
+
+  /**
+   * Remove all tuples and delete the file, after which new tuples can be added.
+   */
+  public void clear() {
+    delete();
+    buffer.clear();
+    numTuples = 0;
+    finished = false;
+  }
+
+  /**
+   * Close and delete the file.
+   */
+  public void delete() {
+    if (output != null) {
+      try {
+        output.close();
+      } catch (IOException e) {
+        LOGGER.warn("Error closing spill file {}", file, e);
+      }
+      output = null;
+    }
+    if (file != null) {
+      if (!file.delete()) {
+        LOGGER.warn("Could not delete spill file {}", file);
+      }
+      file = null;
+    }
+  }
+
+  /**
+   * @param tb the TupleBatch to be appended to the file.
+   * @throws DbException if there is an error writing to disk.
+   */
+  private void write(final TupleBatch tb) throws DbException {
+    try {
+      if (output == null) {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+          throw new DbException("Could not create spill directory " + directory);
+        }
+        file = File.createTempFile(prefix, ".tmp", directory);
+        output = new BufferedOutputStream(new FileOutputStream(file));
+      }
+      tb.toTransportMessage().getDataMessage().writeDelimitedTo(output);
+    } catch (IOException e) {
+      throw new DbException("Error writing spill file " + file, e);
+    }
+  }
+
+  /**
+   * Reads the TupleBatches of a spill file in the order they were written.
+   */
+  public static final class Reader {
+    /** The schema of the tuples. */
+    private final Schema schema;
+    /** The input, or null if the file is empty. */
+    private InputStream input;
+
+    /**
+     * @param schema the schema of the tuples.
+     * @param input the input, or null if the file is empty.
+     */
+    private Reader(final Schema schema, final InputStream input) {
+      this.schema = schema;
+      this.input = input;
+    }
+
+    /**
+     * @return the next TupleBatch, or null if the file has been read completely.
+     * @throws DbException if there is an error reading from disk.
+     */
+    public TupleBatch next() throws DbException {
+      if (input == null) {
+        return null;
+      }
+      try {
+        final DataMessage dm = DataMessage.parseDelimitedFrom(input);
+        if (dm == null) {
+          close();
+          return null;
+        }
+        return IPCUtils.tmToTupleBatch(dm, schema);
+      } catch (IOException e) {
+        throw new DbException("Error reading spill file", e);
+      }
+    }
+
+    /**
+     * Close the underlying file.
+     */
+    public void close() {
+      if (input == null) {
+        return;
+      }
+      try {
+        input.close();
+      } catch (IOException e) {
+        LOGGER.warn("Error closing spill file", e);
+      }
+      input = null;
+    }
+  }
+}
@@ -0,0 +1,150 @@
+package edu.washington.escience.myria.storage;
+
+import java.io.File;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
+import edu.washington.escience.myria.Schema;
+
+/**
+ * A set of on-disk runs of tuples, one {@link SpillFile} per hash partition. Used by hash-based operators whose
+ * in-memory state would exceed {@link MyriaSystemConfigKeys#OPERATOR_HASH_TABLE_MAX_TUPLES}.
+ */
+public final class SpilledPartitions {
+  /** The default number of partitions. */
+  public static final int DEFAULT_NUM_PARTITIONS = 32;
+
+  /** The schema of the tuples. */
+  private final Schema schema;
+  /** The file of each partition. */
+  private final SpillFile[] files;
+  /** The total number of tuples. */
+  private long numTuples;
+
+  /**
+   * @param schema the schema of the tuples.
+   * @param directory the directory to write the files to.
+   * @param numPartitions the number of partitions.
+   */
+  public SpilledPartitions(final Schema schema, final File directory, final int numPartitions) {
+    Preconditions.checkArgument(numPartitions > 0, "numPartitions must be positive");
+    this.schema = Preconditions.checkNotNull(schema, "schema");
+    files = new SpillFile[numPartitions];
+    for (int i = 0; i < numPartitions; ++i) {
+      files[i] = new SpillFile(schema, directory, "partition" + i + "_");
+    }
+  }
+
+  /**
+   * @param execEnvVars the execution environment variables of an operator.
+   * @return the max number of tuples that a hash-based operator keeps in memory, see
+   *         {@link MyriaSystemConfigKeys#OPERATOR_HASH_TABLE_MAX_TUPLES}.
+   */
+  public static long getMaxInMemoryTuples(final Map<String, Object> execEnvVars) {
+    return SpillFile.getMaxInMemoryTuples(execEnvVars, MyriaSystemConfigKeys.OPERATOR_HASH_TABLE_MAX_TUPLES,
+        MyriaConstants.OPERATOR_HASH_TABLE_MAX_TUPLES_DEFAULT_VALUE);
+  }
+
+  /**
+   * @param execEnvVars the execution environment variables of an operator.
+   * @return the directory to spill to, see {@link SpillFile#getSpillDirectory}.
+   */
+  public static File getSpillDirectory(final Map<String, Object> execEnvVars) {
+    return SpillFile.getSpillDirectory(execEnvVars);
+  }
+
+  /**
+   * @return the schema of the tuples.
+   */
+  public Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * @return the number of partitions.
+   */
+  public int numPartitions() {
+    return files.length;
+  }
+
+  /**
+   * @return the total number of tuples in all partitions.
+   */
+  public long numTuples() {
+    return numTuples;
+  }
+
+  /**
+   * @param partition the partition.
+   * @return the number of tuples in the partition.
+   */
+  public long numTuples(final int partition) {
+    return files[partition].numTuples();
+  }
+
+  /**
+   * @param hashCode the hash of the key columns of a tuple.
+   * @return the partition that the tuple belongs to. Uses the high bits of the hash, so that the tuples of a partition
+   *         still spread over the slots of a hash table, which uses the low bits.
+   */
+  public int partitionOf(final int hashCode) {
+    return (hashCode >>> Short.SIZE) % files.length;
+  }
+
+  /**
+   * Append a tuple to its partition.
+   *
+   * @param tb the source TupleBatch.
+   * @param row the row of the tuple in tb.
+   * @param hashCode the hash of the key columns of the tuple.
+   * @throws DbException if there is an error writing to disk.
+   */
+  public void add(final TupleBatch tb, final int row, final int hashCode) throws DbException {
+    files[partitionOf(hashCode)].add(tb, row);
+    ++numTuples;
+  }
+
+  /**
+   * Write the remaining buffered tuples and close the files. Tuples may be read after this call. Calling it more than
+   * once has no effect.
+   *
+   * @throws DbException if there is an error writing to disk.
+   */
+  public void finishWriting() throws DbException {
+    for (SpillFile file : files) {
+      file.finishWriting();
+    }
+  }
+
+  /**
+   * @param partition the partition to be read, after {@link #finishWriting()}.
+   * @return a reader over the TupleBatches of the partition.
+   * @throws DbException if the file of the partition cannot be opened.
+   */
+  public SpillFile.Reader read(final int partition) throws DbException {
+    return files[partition].read();
+  }
+
+  /**
+   * Remove all tuples and delete the files, after which new tuples can be added.
+   */
+  public void clear() {
+    for (SpillFile file : files) {
+      file.clear();
+    }
+    numTuples = 0;
+  }
+
+  /**
+   * Close and delete all files.
+   */
+  public void delete() {
+    for (SpillFile file : files) {
+      file.delete();
+    }
+  }
+}
@@ -4,6 +4,7 @@ import java.io.Serializable;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import net.jcip.annotations.ThreadSafe;
@@ -13,13 +14,17 @@ import org.joda.time.DateTime;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.column.PrefixColumn;
 import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
 import edu.washington.escience.myria.proto.TransportProto.TransportMessage;
+import edu.washington.escience.myria.util.HashUtils;
 import edu.washington.escience.myria.util.IPCUtils;
+import edu.washington.escience.myria.util.ImmutableIntArray;
 
 /**
  * Container class for a batch of tuples. The goal is to amortize memory management overhead.
@@ -29,8 +34,12 @@ import edu.washington.escience.myria.util.IPCUtils;
 public class TupleBatch implements ReadableTable, Serializable {
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
-  /** The hard-coded number of tuples in a batch. */
+  /** The max number of tuples in a batch. Batches of wide tuples hold fewer, see {@link #batchSize(Schema, long)}. */
   public static final int BATCH_SIZE = 10 * 1000;
+  /** The min number of tuples in a batch that {@link #batchSize(Schema, long)} picks. */
+  public static final int MIN_BATCH_SIZE = 64;
+  /** The assumed size of a string, in bytes, when the size of a tuple is estimated. */
+  private static final int ESTIMATED_STRING_BYTES = 32;
   /** Schema of tuples in this batch. */
   private final Schema schema;
   /** Tuple data stored as columns in this batch. */
@@ -39,6 +48,27 @@ public class TupleBatch implements ReadableTable, Serializable {
   private final int numTuples;
   /** Whether this TB is an EOI TB. */
   private final boolean isEOI;
+  /** The hashes of the rows on some columns, once computed or received, see {@link #getRowHashes(int[])}. */
+  private transient volatile RowHashes rowHashes;
+
+  /**
+   * The hashes of the rows of a batch on some columns.
+   */
+  private static final class RowHashes {
+    /** The hashed columns. */
+    private final int[] columns;
+    /** The hash of each row. */
+    private final int[] hashes;
+
+    /**
+     * @param columns the hashed columns.
+     * @param hashes the hash of each row.
+     */
+    private RowHashes(final int[] columns, final int[] hashes) {
+      this.columns = columns;
+      this.hashes = hashes;
+    }
+  }
 
   /**
    * EOI TB constructor.
@@ -63,7 +93,9 @@ public class TupleBatch implements ReadableTable, Serializable {
    */
   public TupleBatch rename(final List<String> columnNames) {
     Schema newSchema = Schema.of(schema.getColumnTypes(), Objects.requireNonNull(columnNames, "columnNames"));
-    return new TupleBatch(newSchema, columns, numTuples, isEOI);
+    final TupleBatch ret = new TupleBatch(newSchema, columns, numTuples, isEOI);
+    ret.rowHashes = rowHashes;
+    return ret;
   }
 
   /**
@@ -141,18 +173,119 @@ public class TupleBatch implements ReadableTable, Serializable {
   public final TupleBatch filter(final BitSet filter) {
     Preconditions.checkArgument(filter.length() <= numTuples(),
         "Error: trying to filter a TupleBatch of length %s with a filter of length %s", numTuples(), filter.length());
-    int newNumTuples = filter.cardinality();
 
     /* Shortcut: the filter is full, so all current tuples are retained. Just return this. */
-    if (newNumTuples == numTuples) {
+    if (filter.cardinality() == numTuples) {
       return this;
     }
 
+    return filter(ImmutableIntArray.ofSetBits(filter));
+  }
+
+  /**
+   * Return a new TupleBatch that contains only the specified rows of the current dataset. No data is copied: all
+   * columns of the returned batch share the specified selection vector over the columns of this batch, and the
+   * surviving rows are only compacted when the batch is serialized.
+   * 
+   * @param rows the rows to be retained, in ascending order.
+   * @return a TupleBatch that contains only the specified rows of the current dataset.
+   */
+  public final TupleBatch filter(final ImmutableIntArray rows) {
     ImmutableList.Builder<Column<?>> newColumns = ImmutableList.builder();
     for (Column<?> column : columns) {
-      newColumns.add(column.filter(filter));
+      newColumns.add(column.filter(rows));
+    }
+    final TupleBatch ret = new TupleBatch(schema, newColumns.build(), rows.length(), isEOI);
+    final RowHashes cached = rowHashes;
+    if (cached != null) {
+      final int[] hashes = new int[rows.length()];
+      for (int i = 0; i < hashes.length; ++i) {
+        hashes[i] = cached.hashes[rows.get(i)];
+      }
+      ret.rowHashes = new RowHashes(cached.columns, hashes);
+    }
+    return ret;
+  }
+
+  /**
+   * Return the hash of the specified columns of each row, as computed by {@link HashUtils#hashSubRow}. The hashes are
+   * computed once, in one pass over the columns, and kept with this batch, so that e.g. the partition function of a
+   * shuffle and the hash table of the operator that consumes the shuffle do not hash the same rows twice. The hashes
+   * are kept by the batches returned by {@link #filter}, and are sent with this batch over the network.
+   * 
+   * @param hashColumns the columns to be hashed. Order matters.
+   * @return the hash of each row. Must not be modified.
+   */
+  public final int[] getRowHashes(final int[] hashColumns) {
+    final RowHashes cached = rowHashes;
+    if (cached != null && Arrays.equals(cached.columns, hashColumns)) {
+      return cached.hashes;
+    }
+    final int[] hashes = HashUtils.hashSubRows(this, hashColumns);
+    rowHashes = new RowHashes(hashColumns.clone(), hashes);
+    return hashes;
+  }
+
+  /**
+   * @return the columns of the row hashes kept with this batch, or null if there are none.
+   */
+  public final int[] getRowHashColumns() {
+    final RowHashes cached = rowHashes;
+    if (cached == null) {
+      return null;
+    }
+    return cached.columns;
+  }
+
+  /**
+   * @param schema the schema of a tuple.
+   * @return the estimated size of a tuple in bytes, as serialized.
+   */
+  public static int estimatedTupleBytes(final Schema schema) {
+    int bytes = 0;
+    for (Type type : schema.getColumnTypes()) {
+      switch (type) {
+        case BOOLEAN_TYPE:
+          bytes += 1;
+          break;
+        case INT_TYPE:
+        case FLOAT_TYPE:
+          bytes += Integer.SIZE / Byte.SIZE;
+          break;
+        case LONG_TYPE:
+        case DOUBLE_TYPE:
+        case DATETIME_TYPE:
+          bytes += Long.SIZE / Byte.SIZE;
+          break;
+        case STRING_TYPE:
+          bytes += Integer.SIZE / Byte.SIZE + ESTIMATED_STRING_BYTES;
+          break;
+      }
+    }
+    return Math.max(bytes, 1);
+  }
+
+  /**
+   * @param schema the schema of the batches.
+   * @param maxBatchBytes the max size of a batch in bytes.
+   * @return the number of tuples in a batch of the schema that fits in <code>maxBatchBytes</code>, between
+   *         {@link #MIN_BATCH_SIZE} and {@link #BATCH_SIZE}.
+   */
+  public static int batchSize(final Schema schema, final long maxBatchBytes) {
+    final long tuples = maxBatchBytes / estimatedTupleBytes(schema);
+    return (int) Math.max(MIN_BATCH_SIZE, Math.min(BATCH_SIZE, tuples));
+  }
+
+  /**
+   * @param execEnvVars the execution environment variables of an operator.
+   * @return the max size of a batch in bytes, as configured by {@link MyriaSystemConfigKeys#OPERATOR_BATCH_MAX_BYTES}.
+   */
+  public static long getMaxBatchBytes(final Map<String, Object> execEnvVars) {
+    final Object value = execEnvVars == null ? null : execEnvVars.get(MyriaSystemConfigKeys.OPERATOR_BATCH_MAX_BYTES);
+    if (value == null) {
+      return MyriaConstants.OPERATOR_BATCH_MAX_BYTES_DEFAULT_VALUE;
     }
-    return new TupleBatch(schema, newColumns.build(), newNumTuples, isEOI);
+    return Long.parseLong(value.toString());
   }
 
   /**
@@ -169,7 +302,34 @@ public class TupleBatch implements ReadableTable, Serializable {
     for (Column<?> column : columns) {
       newColumns.add(new PrefixColumn(column, prefix));
     }
-    return new TupleBatch(schema, newColumns.build(), prefix, isEOI);
+    final TupleBatch ret = new TupleBatch(schema, newColumns.build(), prefix, isEOI);
+    final RowHashes cached = rowHashes;
+    if (cached != null) {
+      ret.rowHashes = new RowHashes(cached.columns, Arrays.copyOf(cached.hashes, prefix));
+    }
+    return ret;
+  }
+
+  /**
+   * Split this batch into batches of at most <code>maxTuples</code> rows. The rows are not copied.
+   * 
+   * @param maxTuples the max number of rows of each batch.
+   * @return the batches, in the order of their rows, or a list of only this batch if it is small enough.
+   */
+  public final List<TupleBatch> split(final int maxTuples) {
+    Preconditions.checkArgument(maxTuples > 0, "maxTuples must be positive");
+    if (numTuples <= maxTuples) {
+      return ImmutableList.of(this);
+    }
+    final ImmutableList.Builder<TupleBatch> batches = ImmutableList.builder();
+    for (int start = 0; start < numTuples; start += maxTuples) {
+      final int[] rows = new int[Math.min(maxTuples, numTuples - start)];
+      for (int i = 0; i < rows.length; ++i) {
+        rows[i] = start + i;
+      }
+      batches.add(filter(new ImmutableIntArray(rows)));
+    }
+    return batches.build();
   }
 
   @Override
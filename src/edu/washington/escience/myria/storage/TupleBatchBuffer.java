@@ -29,6 +29,8 @@ public class TupleBatchBuffer implements AppendableTable {
   private final Schema schema;
   /** Convenience constant; must match schema.numColumns() and currentColumns.size(). */
   private final int numColumns;
+  /** The max number of tuples in an emitted TupleBatch. */
+  private final int maxBatchTuples;
   /** List of completed TupleBatch objects. */
   private final List<TupleBatch> readyTuples;
   /** Internal state used to build up a TupleBatch. */
@@ -51,6 +53,19 @@ public class TupleBatchBuffer implements AppendableTable {
    * @param schema specified the columns of the emitted TupleBatch objects.
    */
   public TupleBatchBuffer(final Schema schema) {
+    this(schema, TupleBatch.BATCH_SIZE);
+  }
+
+  /**
+   * Constructs an empty TupleBatchBuffer to hold tuples matching the specified Schema.
+   * 
+   * @param schema specified the columns of the emitted TupleBatch objects.
+   * @param maxBatchTuples the max number of tuples in an emitted TupleBatch, at most {@link TupleBatch#BATCH_SIZE}.
+   */
+  public TupleBatchBuffer(final Schema schema, final int maxBatchTuples) {
+    Preconditions.checkArgument(maxBatchTuples > 0 && maxBatchTuples <= TupleBatch.BATCH_SIZE,
+        "maxBatchTuples must be in [1, %s]", TupleBatch.BATCH_SIZE);
+    this.maxBatchTuples = maxBatchTuples;
     this.schema = Objects.requireNonNull(schema);
     readyTuples = new LinkedList<TupleBatch>();
     currentBuildingColumns = ColumnFactory.allocateColumns(schema);
@@ -63,7 +78,7 @@ public class TupleBatchBuffer implements AppendableTable {
   }
 
   /**
-   * Append the tuple batch directly into readyTuples.
+   * Append the tuple batch directly into readyTuples, split into batches of at most the max number of tuples.
    * 
    * @param tb the TB.
    */
@@ -75,7 +90,7 @@ public class TupleBatchBuffer implements AppendableTable {
     finishBatch();
 
     readyTuplesNum += tb.numTuples();
-    readyTuples.add(tb);
+    readyTuples.addAll(tb.split(maxBatchTuples));
   }
 
   /**
@@ -116,7 +131,7 @@ public class TupleBatchBuffer implements AppendableTable {
       numColumnsReady = 0;
       columnsReady.clear();
       /* See if the current batch is full and finish it if so. */
-      if (currentInProgressTuples == TupleBatch.BATCH_SIZE) {
+      if (currentInProgressTuples == maxBatchTuples) {
         finishBatch();
       }
     }
@@ -351,7 +366,7 @@ public class TupleBatchBuffer implements AppendableTable {
           + leftAnswerColumns.length));
     }
     currentInProgressTuples++;
-    if (currentInProgressTuples == TupleBatch.BATCH_SIZE) {
+    if (currentInProgressTuples == maxBatchTuples) {
       finishBatch();
     }
   }
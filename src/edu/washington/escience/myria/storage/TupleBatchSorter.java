@@ -0,0 +1,392 @@
+package edu.washington.escience.myria.storage;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.column.Column;
+
+/**
+ * Sorts the tuples of a list of TupleBatches without copying them.
+ *
+ * The sort columns are gathered into one primitive array each, and an <code>int[]</code> of row indices is sorted with
+ * a stable merge sort whose comparisons read those arrays through comparators specialized for the column type. Neither
+ * the row indices nor the values are boxed, and the type of a column is looked up once instead of once per comparison.
+ */
+public final class TupleBatchSorter {
+
+  /** Ranges shorter than this are sorted by insertion sort. */
+  private static final int INSERTION_SORT_THRESHOLD = 7;
+
+  /** The sorted TupleBatches. */
+  private final List<TupleBatch> batches;
+  /** The comparators of the sort columns, in order. */
+  private final SortKey[] keys;
+  /** The batch of each tuple, by global index. */
+  private final int[] batchOf;
+  /** The row of each tuple in its batch, by global index. */
+  private final int[] rowOf;
+  /** The global indices of the tuples, in sorted order. */
+  private final int[] order;
+
+  /**
+   * Sort the tuples.
+   *
+   * @param batches the TupleBatches whose tuples are sorted. They all have the same schema.
+   * @param sortColumns the columns to sort by.
+   * @param ascending true for each sort column that should be sorted ascending.
+   */
+  public TupleBatchSorter(final List<TupleBatch> batches, final int[] sortColumns, final boolean[] ascending) {
+    Preconditions.checkArgument(sortColumns.length == ascending.length,
+        "sort columns number should be equal to ascending orders number");
+    this.batches = batches;
+
+    int numTuples = 0;
+    for (TupleBatch tb : batches) {
+      numTuples += tb.numTuples();
+    }
+    batchOf = new int[numTuples];
+    rowOf = new int[numTuples];
+    int index = 0;
+    for (int batch = 0; batch < batches.size(); ++batch) {
+      final int batchSize = batches.get(batch).numTuples();
+      for (int row = 0; row < batchSize; ++row) {
+        batchOf[index] = batch;
+        rowOf[index] = row;
+        ++index;
+      }
+    }
+
+    /* With no tuples there is nothing to compare, and no batch to look up the column types in. */
+    keys = new SortKey[numTuples == 0 ? 0 : sortColumns.length];
+    for (int i = 0; i < keys.length; ++i) {
+      keys[i] = gather(sortColumns[i], ascending[i], numTuples);
+    }
+
+    order = new int[numTuples];
+    for (int i = 0; i < numTuples; ++i) {
+      order[i] = i;
+    }
+    mergeSort(order.clone(), order, 0, numTuples);
+  }
+
+  /**
+   * @return the number of sorted tuples.
+   */
+  public int numTuples() {
+    return order.length;
+  }
+
+  /**
+   * @param position a position in the sorted order.
+   * @return the TupleBatch that holds the tuple at that position.
+   */
+  public TupleBatch getBatch(final int position) {
+    return batches.get(batchOf[order[position]]);
+  }
+
+  /**
+   * @param position a position in the sorted order.
+   * @return the row of the tuple at that position in {@link #getBatch}.
+   */
+  public int getRow(final int position) {
+    return rowOf[order[position]];
+  }
+
+  /**
+   * @param column a sort column.
+   * @param ascending true if it is sorted ascending.
+   * @param numTuples the total number of tuples.
+   * @return a comparator over the values of the column, gathered from all batches into one array.
+   */
+  private SortKey gather(final int column, final boolean ascending, final int numTuples) {
+    int offset = 0;
+    switch (batches.get(0).getSchema().getColumnType(column)) {
+      case BOOLEAN_TYPE: {
+        final boolean[] values = new boolean[numTuples];
+        for (TupleBatch tb : batches) {
+          System.arraycopy(getColumn(tb, column).getBooleanArray(), 0, values, offset, tb.numTuples());
+          offset += tb.numTuples();
+        }
+        return new BooleanSortKey(values, ascending);
+      }
+      case DATETIME_TYPE: {
+        final DateTime[] values = new DateTime[numTuples];
+        for (TupleBatch tb : batches) {
+          System.arraycopy(getColumn(tb, column).getDateTimeArray(), 0, values, offset, tb.numTuples());
+          offset += tb.numTuples();
+        }
+        return new ObjectSortKey<DateTime>(values, ascending);
+      }
+      case DOUBLE_TYPE: {
+        final double[] values = new double[numTuples];
+        for (TupleBatch tb : batches) {
+          System.arraycopy(getColumn(tb, column).getDoubleArray(), 0, values, offset, tb.numTuples());
+          offset += tb.numTuples();
+        }
+        return new DoubleSortKey(values, ascending);
+      }
+      case FLOAT_TYPE: {
+        final float[] values = new float[numTuples];
+        for (TupleBatch tb : batches) {
+          System.arraycopy(getColumn(tb, column).getFloatArray(), 0, values, offset, tb.numTuples());
+          offset += tb.numTuples();
+        }
+        return new FloatSortKey(values, ascending);
+      }
+      case INT_TYPE: {
+        final int[] values = new int[numTuples];
+        for (TupleBatch tb : batches) {
+          System.arraycopy(getColumn(tb, column).getIntArray(), 0, values, offset, tb.numTuples());
+          offset += tb.numTuples();
+        }
+        return new IntSortKey(values, ascending);
+      }
+      case LONG_TYPE: {
+        final long[] values = new long[numTuples];
+        for (TupleBatch tb : batches) {
+          System.arraycopy(getColumn(tb, column).getLongArray(), 0, values, offset, tb.numTuples());
+          offset += tb.numTuples();
+        }
+        return new LongSortKey(values, ascending);
+      }
+      case STRING_TYPE: {
+        final String[] values = new String[numTuples];
+        for (TupleBatch tb : batches) {
+          System.arraycopy(getColumn(tb, column).getStringArray(), 0, values, offset, tb.numTuples());
+          offset += tb.numTuples();
+        }
+        return new ObjectSortKey<String>(values, ascending);
+      }
+    }
+    throw new IllegalStateException("Invalid type.");
+  }
+
+  /**
+   * @param tb a TupleBatch.
+   * @param column a column index.
+   * @return the column of tb.
+   */
+  private static Column<?> getColumn(final TupleBatch tb, final int column) {
+    return tb.getDataColumns().get(column);
+  }
+
+  /**
+   * @param a the global index of a tuple.
+   * @param b the global index of another tuple.
+   * @return a negative integer, zero, or a positive integer as tuple a sorts before, with, or after tuple b.
+   */
+  private int compare(final int a, final int b) {
+    for (SortKey key : keys) {
+      final int compared = key.compare(a, b);
+      if (compared != 0) {
+        return compared;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Stable merge sort of <code>dest[low, high)</code>, with <code>src</code> holding the same values on entry and
+   * used as scratch space.
+   *
+   * @param src the scratch array.
+   * @param dest the array to be sorted.
+   * @param low the first index, inclusive.
+   * @param high the last index, exclusive.
+   */
+  private void mergeSort(final int[] src, final int[] dest, final int low, final int high) {
+    final int length = high - low;
+    if (length < INSERTION_SORT_THRESHOLD) {
+      for (int i = low + 1; i < high; ++i) {
+        final int value = dest[i];
+        int j = i;
+        while (j > low && compare(dest[j - 1], value) > 0) {
+          dest[j] = dest[j - 1];
+          --j;
+        }
+        dest[j] = value;
+      }
+      return;
+    }
+
+    final int mid = (low + high) >>> 1;
+    mergeSort(dest, src, low, mid);
+    mergeSort(dest, src, mid, high);
+
+    /* The two halves are already in order. */
+    if (compare(src[mid - 1], src[mid]) <= 0) {
+      System.arraycopy(src, low, dest, low, length);
+      return;
+    }
+
+    for (int i = low, p = low, q = mid; i < high; ++i) {
+      if (q >= high || p < mid && compare(src[p], src[q]) <= 0) {
+        dest[i] = src[p++];
+      } else {
+        dest[i] = src[q++];
+      }
+    }
+  }
+
+  /**
+   * Compares two tuples by the values of one sort column.
+   */
+  private abstract static class SortKey {
+    /** True if the column is sorted ascending. */
+    private final boolean ascending;
+
+    /**
+     * @param ascending true if the column is sorted ascending.
+     */
+    SortKey(final boolean ascending) {
+      this.ascending = ascending;
+    }
+
+    /**
+     * @param a the global index of a tuple.
+     * @param b the global index of another tuple.
+     * @return the comparison of the values of a and b, in sort order.
+     */
+    final int compare(final int a, final int b) {
+      final int compared = compareValues(a, b);
+      if (ascending) {
+        return compared;
+      }
+      return -compared;
+    }
+
+    /**
+     * @param a the global index of a tuple.
+     * @param b the global index of another tuple.
+     * @return the ascending comparison of the values of a and b.
+     */
+    abstract int compareValues(int a, int b);
+  }
+
+  /** Compares BOOLEAN values. */
+  private static final class BooleanSortKey extends SortKey {
+    /** The values. */
+    private final boolean[] values;
+
+    /**
+     * @param values the values.
+     * @param ascending true if the column is sorted ascending.
+     */
+    BooleanSortKey(final boolean[] values, final boolean ascending) {
+      super(ascending);
+      this.values = values;
+    }
+
+    @Override
+    int compareValues(final int a, final int b) {
+      return Boolean.compare(values[a], values[b]);
+    }
+  }
+
+  /** Compares DOUBLE values. */
+  private static final class DoubleSortKey extends SortKey {
+    /** The values. */
+    private final double[] values;
+
+    /**
+     * @param values the values.
+     * @param ascending true if the column is sorted ascending.
+     */
+    DoubleSortKey(final double[] values, final boolean ascending) {
+      super(ascending);
+      this.values = values;
+    }
+
+    @Override
+    int compareValues(final int a, final int b) {
+      return Double.compare(values[a], values[b]);
+    }
+  }
+
+  /** Compares FLOAT values. */
+  private static final class FloatSortKey extends SortKey {
+    /** The values. */
+    private final float[] values;
+
+    /**
+     * @param values the values.
+     * @param ascending true if the column is sorted ascending.
+     */
+    FloatSortKey(final float[] values, final boolean ascending) {
+      super(ascending);
+      this.values = values;
+    }
+
+    @Override
+    int compareValues(final int a, final int b) {
+      return Float.compare(values[a], values[b]);
+    }
+  }
+
+  /** Compares INT values. */
+  private static final class IntSortKey extends SortKey {
+    /** The values. */
+    private final int[] values;
+
+    /**
+     * @param values the values.
+     * @param ascending true if the column is sorted ascending.
+     */
+    IntSortKey(final int[] values, final boolean ascending) {
+      super(ascending);
+      this.values = values;
+    }
+
+    @Override
+    int compareValues(final int a, final int b) {
+      return Integer.compare(values[a], values[b]);
+    }
+  }
+
+  /** Compares LONG values. */
+  private static final class LongSortKey extends SortKey {
+    /** The values. */
+    private final long[] values;
+
+    /**
+     * @param values the values.
+     * @param ascending true if the column is sorted ascending.
+     */
+    LongSortKey(final long[] values, final boolean ascending) {
+      super(ascending);
+      this.values = values;
+    }
+
+    @Override
+    int compareValues(final int a, final int b) {
+      return Long.compare(values[a], values[b]);
+    }
+  }
+
+  /**
+   * Compares STRING or DATETIME values.
+   *
+   * @param <T> the type of the values.
+   */
+  private static final class ObjectSortKey<T extends Comparable<? super T>> extends SortKey {
+    /** The values. */
+    private final T[] values;
+
+    /**
+     * @param values the values.
+     * @param ascending true if the column is sorted ascending.
+     */
+    ObjectSortKey(final T[] values, final boolean ascending) {
+      super(ascending);
+      this.values = values;
+    }
+
+    @Override
+    int compareValues(final int a, final int b) {
+      return values[a].compareTo(values[b]);
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package edu.washington.escience.myria.util;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A Bloom filter of 32-bit hash codes, e.g., the row hashes of a TupleBatch on its key columns. A hash code that was
+ * added is always reported as possibly contained; one that was not is reported as contained with a small probability.
+ *
+ * The bits of the filter are stored in words of 64 bits, which can be read and merged one at a time, so that the
+ * filters built on several workers can be sent around as tuples and combined into one.
+ */
+public final class BloomFilter {
+
+  /** The default number of bits of a filter. */
+  public static final int DEFAULT_NUM_BITS = 1 << 20;
+  /** The default number of bits set per hash code. */
+  public static final int DEFAULT_NUM_HASHES = 3;
+
+  /** The bits. */
+  private final long[] words;
+  /** The number of bits minus one. */
+  private final int mask;
+  /** The number of bits set per hash code. */
+  private final int numHashes;
+
+  /**
+   * @param numBits the number of bits, a power of two not less than 64.
+   * @param numHashes the number of bits set per hash code.
+   */
+  public BloomFilter(final int numBits, final int numHashes) {
+    Preconditions.checkArgument(numBits >= Long.SIZE && Integer.bitCount(numBits) == 1,
+        "numBits must be a power of two not less than %s", Long.SIZE);
+    Preconditions.checkArgument(numHashes > 0, "numHashes must be > 0");
+    words = new long[numBits / Long.SIZE];
+    mask = numBits - 1;
+    this.numHashes = numHashes;
+  }
+
+  /**
+   * @param hash a hash code.
+   * @return the step between the bits of the hash code, which is odd so that the bits are distinct.
+   */
+  private static int step(final int hash) {
+    return (Integer.rotateLeft(hash, 16) * 0x9E3779B9) | 1;
+  }
+
+  /**
+   * @param hash the hash code to be added.
+   */
+  public void add(final int hash) {
+    final int step = step(hash);
+    int bit = hash;
+    for (int i = 0; i < numHashes; ++i) {
+      final int index = bit & mask;
+      words[index >>> 6] |= 1L << index;
+      bit += step;
+    }
+  }
+
+  /**
+   * @param hash a hash code.
+   * @return false if the hash code was not added, true if it may have been.
+   */
+  public boolean mightContain(final int hash) {
+    final int step = step(hash);
+    int bit = hash;
+    for (int i = 0; i < numHashes; ++i) {
+      final int index = bit & mask;
+      if ((words[index >>> 6] & (1L << index)) == 0) {
+        return false;
+      }
+      bit += step;
+    }
+    return true;
+  }
+
+  /**
+   * @return the number of bits of the filter.
+   */
+  public int numBits() {
+    return mask + 1;
+  }
+
+  /**
+   * @return the number of bits set per hash code.
+   */
+  public int numHashes() {
+    return numHashes;
+  }
+
+  /**
+   * @return the number of words of the filter.
+   */
+  public int numWords() {
+    return words.length;
+  }
+
+  /**
+   * @param index the index of a word.
+   * @return the bits of the word.
+   */
+  public long getWord(final int index) {
+    return words[index];
+  }
+
+  /**
+   * Add the hash codes of another filter with the same number of bits and hashes, one word at a time.
+   *
+   * @param index the index of a word.
+   * @param bits the bits of that word in the other filter.
+   */
+  public void mergeWord(final int index, final long bits) {
+    words[index] |= bits;
+  }
+}
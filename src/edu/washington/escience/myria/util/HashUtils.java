@@ -96,6 +96,88 @@ public final class HashUtils {
     return hasher.hash().asInt();
   }
 
+  /**
+   * Compute the hash code of the specified columns in every row of the given table, equal to {@link #hashSubRow} for
+   * each row. The table is hashed one column at a time, so the type of each column is looked at once, and a single INT
+   * or LONG column is hashed without a streaming hasher.
+   * 
+   * @param table the table containing the values to be hashed
+   * @param hashColumns the columns to be hashed. Order matters
+   * @return the hash code of the specified columns in each row of the given table
+   */
+  public static int[] hashSubRows(final ReadableTable table, final int[] hashColumns) {
+    Objects.requireNonNull(table, "table");
+    Objects.requireNonNull(hashColumns, "hashColumns");
+    final int numTuples = table.numTuples();
+    final int[] hashes = new int[numTuples];
+    final HashFunction hashFunction = HASH_FUNCTIONS[0];
+    if (hashColumns.length == 1) {
+      final ReadableColumn column = table.asColumn(hashColumns[0]);
+      switch (column.getType()) {
+        case INT_TYPE:
+          for (int row = 0; row < numTuples; ++row) {
+            hashes[row] = hashFunction.hashInt(column.getInt(row)).asInt();
+          }
+          return hashes;
+        case LONG_TYPE:
+          for (int row = 0; row < numTuples; ++row) {
+            hashes[row] = hashFunction.hashLong(column.getLong(row)).asInt();
+          }
+          return hashes;
+        default:
+          break;
+      }
+    }
+
+    final Hasher[] hashers = new Hasher[numTuples];
+    for (int row = 0; row < numTuples; ++row) {
+      hashers[row] = hashFunction.newHasher();
+    }
+    for (int column : hashColumns) {
+      addValues(hashers, table.asColumn(column));
+    }
+    for (int row = 0; row < numTuples; ++row) {
+      hashes[row] = hashers[row].hash().asInt();
+    }
+    return hashes;
+  }
+
+  /**
+   * Add the value of each row of the specified column to the hasher of the row.
+   * 
+   * @param hashers the hasher of each row
+   * @param column the column containing the values
+   */
+  private static void addValues(final Hasher[] hashers, final ReadableColumn column) {
+    switch (column.getType()) {
+      case DOUBLE_TYPE:
+        for (int row = 0; row < hashers.length; ++row) {
+          hashers[row].putDouble(column.getDouble(row));
+        }
+        return;
+      case FLOAT_TYPE:
+        for (int row = 0; row < hashers.length; ++row) {
+          hashers[row].putFloat(column.getFloat(row));
+        }
+        return;
+      case INT_TYPE:
+        for (int row = 0; row < hashers.length; ++row) {
+          hashers[row].putInt(column.getInt(row));
+        }
+        return;
+      case LONG_TYPE:
+        for (int row = 0; row < hashers.length; ++row) {
+          hashers[row].putLong(column.getLong(row));
+        }
+        return;
+      default:
+        for (int row = 0; row < hashers.length; ++row) {
+          addValue(hashers[row], column, row);
+        }
+        return;
+    }
+  }
+
   /**
    * Add the value at the specified row and column to the specified hasher.
    * 
@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.util;
 
+import java.util.BitSet;
 import java.util.Iterator;
 
 import com.google.common.base.Preconditions;
@@ -23,6 +24,20 @@ public class ImmutableIntArray implements Iterable<Integer> {
   /** An ImmutableList<Integer> view of the indices of validTuples. */
   private final int[] valueArray;
 
+  /**
+   * @param bits a bitmap.
+   * @return the indices of the set bits in ascending order.
+   * */
+  public static ImmutableIntArray ofSetBits(final BitSet bits) {
+    final int[] indices = new int[bits.cardinality()];
+    int count = 0;
+    for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+      indices[count] = i;
+      count++;
+    }
+    return new ImmutableIntArray(indices);
+  }
+
   /**
    * @return the index'th element
    * @param index the index
@@ -0,0 +1,214 @@
+package edu.washington.escience.myria.systemtest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.httpclient.HttpStatus;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.api.encoding.CollectConsumerEncoding;
+import edu.washington.escience.myria.api.encoding.CollectProducerEncoding;
+import edu.washington.escience.myria.api.encoding.DbInsertEncoding;
+import edu.washington.escience.myria.api.encoding.OperatorEncoding;
+import edu.washington.escience.myria.api.encoding.PlanFragmentEncoding;
+import edu.washington.escience.myria.api.encoding.QueryConstruct;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.api.encoding.QueryEncoding;
+import edu.washington.escience.myria.api.encoding.QueryStatusEncoding;
+import edu.washington.escience.myria.api.encoding.QueryStatusEncoding.Status;
+import edu.washington.escience.myria.api.encoding.ShuffleConsumerEncoding;
+import edu.washington.escience.myria.api.encoding.ShuffleProducerEncoding;
+import edu.washington.escience.myria.api.encoding.SymmetricHashJoinEncoding;
+import edu.washington.escience.myria.api.encoding.TableScanEncoding;
+import edu.washington.escience.myria.api.encoding.plan.SubQueryEncoding;
+import edu.washington.escience.myria.io.ByteArraySource;
+import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
+import edu.washington.escience.myria.util.JsonAPIUtils;
+
+/**
+ * Joins relations that are stored partitioned on the join key, so that their shuffles are replaced by local exchanges,
+ * and checks that the result is the same as when they are shuffled.
+ */
+public class CoPartitionedJoinTest extends SystemTestBase {
+
+  private static final Schema SCHEMA = Schema.ofFields("key", Type.LONG_TYPE, "value", Type.LONG_TYPE);
+  private static final int NUM_TUPLES = 2000;
+  private static final int NUM_KEYS = 300;
+
+  private static final RelationKey LEFT_RAW = RelationKey.of("test", "copartition", "left_raw");
+  private static final RelationKey RIGHT_RAW = RelationKey.of("test", "copartition", "right_raw");
+  private static final RelationKey LEFT = RelationKey.of("test", "copartition", "left");
+  private static final RelationKey RIGHT = RelationKey.of("test", "copartition", "right");
+  private static final RelationKey RESULT_SHUFFLED = RelationKey.of("test", "copartition", "result_shuffled");
+  private static final RelationKey RESULT_LOCAL = RelationKey.of("test", "copartition", "result_local");
+
+  /**
+   * Ingest random tuples, and return the number of tuples of each key.
+   */
+  private Map<Long, Integer> ingestRandom(final RelationKey relationKey, final long seed) throws Exception {
+    Random random = new Random(seed);
+    Map<Long, Integer> counts = Maps.newHashMap();
+    StringBuilder csv = new StringBuilder();
+    for (int i = 0; i < NUM_TUPLES; ++i) {
+      long key = random.nextInt(NUM_KEYS);
+      csv.append(key).append(',').append(i).append('\n');
+      Integer count = counts.get(key);
+      counts.put(key, count == null ? 1 : count + 1);
+    }
+    HttpURLConnection conn =
+        JsonAPIUtils.ingestData("localhost", masterDaemonPort, ingest(relationKey, SCHEMA, new ByteArraySource(csv
+            .toString().getBytes()), ','));
+    assertEquals(HttpURLConnection.HTTP_CREATED, conn.getResponseCode());
+    conn.disconnect();
+    return counts;
+  }
+
+  private void runQuery(final List<PlanFragmentEncoding> fragments) throws Exception {
+    QueryEncoding query = new QueryEncoding();
+    query.plan = new SubQueryEncoding(fragments);
+    query.logicalRa = "co-partitioned join test";
+    query.rawQuery = query.logicalRa;
+    HttpURLConnection conn = submitQuery(query);
+    assertEquals(HttpStatus.SC_ACCEPTED, conn.getResponseCode());
+    long queryId = getQueryStatus(conn).queryId;
+    conn.disconnect();
+    while (!server.getQueryManager().queryCompleted(queryId)) {
+      Thread.sleep(1);
+    }
+    QueryStatusEncoding status = server.getQueryManager().getQueryStatus(queryId);
+    assertEquals(status.message, Status.SUCCESS, status.status);
+  }
+
+  /** A fragment that scans a relation and shuffles it on the key. */
+  private static PlanFragmentEncoding scanAndShuffle(final int opId, final RelationKey relationKey) {
+    TableScanEncoding scan = new TableScanEncoding();
+    scan.opId = opId;
+    scan.relationKey = relationKey;
+    ShuffleProducerEncoding producer = new ShuffleProducerEncoding();
+    producer.opId = opId + 1;
+    producer.argChild = scan.opId;
+    producer.argPf = new SingleFieldHashPartitionFunction(null, 0);
+    return PlanFragmentEncoding.of(scan, producer);
+  }
+
+  /** A fragment that inserts the tuples of a shuffle. */
+  private static PlanFragmentEncoding consumeAndInsert(final int opId, final int producerId,
+      final RelationKey relationKey) {
+    ShuffleConsumerEncoding consumer = new ShuffleConsumerEncoding();
+    consumer.opId = opId;
+    consumer.argOperatorId = producerId;
+    DbInsertEncoding insert = new DbInsertEncoding();
+    insert.opId = opId + 1;
+    insert.argChild = consumer.opId;
+    insert.relationKey = relationKey;
+    insert.argOverwriteTable = true;
+    return PlanFragmentEncoding.of(consumer, insert);
+  }
+
+  /** The join of two relations on their keys, both shuffled on the key. */
+  private static List<PlanFragmentEncoding> joinPlan(final RelationKey left, final RelationKey right,
+      final RelationKey result) {
+    ShuffleConsumerEncoding leftConsumer = new ShuffleConsumerEncoding();
+    leftConsumer.opId = 4;
+    leftConsumer.argOperatorId = 1;
+    ShuffleConsumerEncoding rightConsumer = new ShuffleConsumerEncoding();
+    rightConsumer.opId = 5;
+    rightConsumer.argOperatorId = 3;
+    SymmetricHashJoinEncoding join = new SymmetricHashJoinEncoding();
+    join.opId = 6;
+    join.argChild1 = leftConsumer.opId;
+    join.argChild2 = rightConsumer.opId;
+    join.argColumns1 = new int[] { 0 };
+    join.argColumns2 = new int[] { 0 };
+    join.argSelect1 = new int[] { 0, 1 };
+    join.argSelect2 = new int[] { 1 };
+    join.argColumnNames = ImmutableList.of("key", "left_value", "right_value");
+    DbInsertEncoding insert = new DbInsertEncoding();
+    insert.opId = 7;
+    insert.argChild = join.opId;
+    insert.relationKey = result;
+    insert.argOverwriteTable = true;
+    return ImmutableList.of(scanAndShuffle(0, left), scanAndShuffle(2, right), PlanFragmentEncoding.of(leftConsumer,
+        rightConsumer, join, insert));
+  }
+
+  private static int countShuffles(final List<PlanFragmentEncoding> fragments) {
+    int count = 0;
+    for (PlanFragmentEncoding fragment : fragments) {
+      for (OperatorEncoding<?> operator : fragment.operators) {
+        if (operator instanceof ShuffleProducerEncoding || operator instanceof ShuffleConsumerEncoding) {
+          ++count;
+        }
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void testCoPartitionedJoin() throws Exception {
+    Map<Long, Integer> leftCounts = ingestRandom(LEFT_RAW, 1);
+    Map<Long, Integer> rightCounts = ingestRandom(RIGHT_RAW, 2);
+    long expected = 0;
+    for (Map.Entry<Long, Integer> entry : leftCounts.entrySet()) {
+      Integer rightCount = rightCounts.get(entry.getKey());
+      if (rightCount != null) {
+        expected += entry.getValue() * rightCount;
+      }
+    }
+
+    /* Store both relations partitioned on the key. */
+    runQuery(ImmutableList.of(scanAndShuffle(0, LEFT_RAW), consumeAndInsert(2, 1, LEFT)));
+    runQuery(ImmutableList.of(scanAndShuffle(0, RIGHT_RAW), consumeAndInsert(2, 1, RIGHT)));
+    for (RelationKey relationKey : ImmutableList.of(LEFT, RIGHT)) {
+      PartitionFunction pf = server.getPartitionFunctionForRelation(relationKey, null);
+      assertEquals(workerIDs.length, pf.numPartition());
+      assertArrayEquals(new int[] { 0 }, pf.hashColumns());
+    }
+
+    /* The shuffles of the partitioned relations are replaced, but not those of the raw ones. */
+    List<PlanFragmentEncoding> local = joinPlan(LEFT, RIGHT, RESULT_LOCAL);
+    List<PlanFragmentEncoding> constructed = joinPlan(LEFT, RIGHT, RESULT_LOCAL);
+    QueryConstruct.instantiate(constructed, new ConstructArgs(server, 0));
+    assertEquals(0, countShuffles(constructed));
+    constructed = joinPlan(LEFT_RAW, RIGHT_RAW, RESULT_SHUFFLED);
+    QueryConstruct.instantiate(constructed, new ConstructArgs(server, 0));
+    assertEquals(4, countShuffles(constructed));
+
+    runQuery(joinPlan(LEFT_RAW, RIGHT_RAW, RESULT_SHUFFLED));
+    runQuery(local);
+    assertEquals(expected, server.getDatasetStatus(RESULT_SHUFFLED).getNumTuples());
+    assertEquals(expected, server.getDatasetStatus(RESULT_LOCAL).getNumTuples());
+
+    /* Appending tuples from a single worker forgets the partitioning. */
+    TableScanEncoding scan = new TableScanEncoding();
+    scan.opId = 0;
+    scan.relationKey = LEFT_RAW;
+    CollectProducerEncoding producer = new CollectProducerEncoding();
+    producer.opId = 1;
+    producer.argChild = scan.opId;
+    CollectConsumerEncoding consumer = new CollectConsumerEncoding();
+    consumer.opId = 2;
+    consumer.argOperatorId = producer.opId;
+    DbInsertEncoding insert = new DbInsertEncoding();
+    insert.opId = 3;
+    insert.argChild = consumer.opId;
+    insert.relationKey = LEFT;
+    insert.argOverwriteTable = false;
+    runQuery(ImmutableList.of(PlanFragmentEncoding.of(scan, producer), PlanFragmentEncoding.of(consumer, insert)));
+    assertEquals(2 * NUM_TUPLES, server.getDatasetStatus(LEFT).getNumTuples());
+    assertNull(server.getPartitionFunctionForRelation(LEFT, null));
+  }
+}
@@ -0,0 +1,105 @@
+package edu.washington.escience.myria.systemtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.api.encoding.QueryStatusEncoding.Status;
+import edu.washington.escience.myria.operator.DbQueryScan;
+import edu.washington.escience.myria.operator.EOSSource;
+import edu.washington.escience.myria.operator.Limit;
+import edu.washington.escience.myria.operator.RootOperator;
+import edu.washington.escience.myria.operator.SinkRoot;
+import edu.washington.escience.myria.operator.failures.DelayInjector;
+import edu.washington.escience.myria.operator.network.CollectConsumer;
+import edu.washington.escience.myria.operator.network.CollectProducer;
+import edu.washington.escience.myria.operator.network.GenericShuffleConsumer;
+import edu.washington.escience.myria.operator.network.GenericShuffleProducer;
+import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
+import edu.washington.escience.myria.parallel.ExchangePairID;
+import edu.washington.escience.myria.parallel.QueryFuture;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+/**
+ * A Limit that is satisfied stops the producers of its input on the other side of an exchange. The producers are slowed
+ * down so that the query can only finish in time if they end early.
+ */
+public class LimitStopTest extends SystemTestBase {
+
+  private static final RelationKey TABLE = RelationKey.of("test", "limitstop", "testtable");
+  private static final Schema SCHEMA = new Schema(ImmutableList.of(Type.LONG_TYPE, Type.STRING_TYPE), ImmutableList
+      .of("id", "name"));
+  /** The number of batches per worker. Each is delayed by one second, so reading them all takes this many seconds. */
+  private static final int NUM_BATCHES = 60;
+  private static final long LIMIT = 10;
+  /** Much less than the time to produce all the batches. */
+  private static final long TIMEOUT_SECONDS = 20;
+
+  private void createTestTable() throws Exception {
+    createTable(workerIDs[0], TABLE, "id long, name varchar(20)");
+    createTable(workerIDs[1], TABLE, "id long, name varchar(20)");
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (long i = 0; i < (long) TupleBatch.BATCH_SIZE * NUM_BATCHES; ++i) {
+      tbb.putLong(0, i);
+      tbb.putString(1, "name" + i);
+      TupleBatch tb;
+      while ((tb = tbb.popFilled()) != null) {
+        insert(workerIDs[0], TABLE, SCHEMA, tb);
+        insert(workerIDs[1], TABLE, SCHEMA, tb);
+      }
+    }
+  }
+
+  /** A scan of the test table that takes one second per batch. */
+  private static DelayInjector slowScan() {
+    return new DelayInjector(1, TimeUnit.SECONDS, new DbQueryScan(TABLE, SCHEMA));
+  }
+
+  private void assertFinishesEarly(final QueryFuture qf) throws Exception {
+    Uninterruptibles.getUninterruptibly(qf, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    assertEquals(Status.SUCCESS, server.getQueryManager().getQueryStatus(qf.getQueryId()).status);
+  }
+
+  @Test
+  public void limitOverCollectTest() throws Exception {
+    createTestTable();
+
+    final ExchangePairID serverReceiveID = ExchangePairID.newID();
+    final HashMap<Integer, RootOperator[]> workerPlans = new HashMap<Integer, RootOperator[]>();
+    for (int workerID : workerIDs) {
+      workerPlans.put(workerID, new RootOperator[] { new CollectProducer(slowScan(), serverReceiveID, MASTER_ID) });
+    }
+    final CollectConsumer serverCollect = new CollectConsumer(SCHEMA, serverReceiveID, workerIDs);
+    final SinkRoot serverPlan = new SinkRoot(new Limit(LIMIT, serverCollect));
+
+    assertFinishesEarly(server.submitQueryPlan(serverPlan, workerPlans));
+    assertEquals(LIMIT, serverPlan.getCount());
+  }
+
+  @Test
+  public void limitOverShuffleTest() throws Exception {
+    createTestTable();
+
+    final ExchangePairID shuffleID = ExchangePairID.newID();
+    final HashMap<Integer, RootOperator[]> workerPlans = new HashMap<Integer, RootOperator[]>();
+    for (int workerID : workerIDs) {
+      final GenericShuffleProducer producer =
+          new GenericShuffleProducer(slowScan(), shuffleID, workerIDs, new SingleFieldHashPartitionFunction(
+              workerIDs.length, 0));
+      final GenericShuffleConsumer consumer = new GenericShuffleConsumer(SCHEMA, shuffleID, workerIDs);
+      workerPlans.put(workerID, new RootOperator[] { producer, new SinkRoot(new Limit(LIMIT, consumer)) });
+    }
+
+    assertFinishesEarly(server.submitQueryPlan(new SinkRoot(new EOSSource()), workerPlans));
+  }
+}
@@ -0,0 +1,139 @@
+package edu.washington.escience.myria.systemtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.HttpURLConnection;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.httpclient.HttpStatus;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.api.encoding.DbInsertEncoding;
+import edu.washington.escience.myria.api.encoding.MorselSourceEncoding;
+import edu.washington.escience.myria.api.encoding.MultiGroupByAggregateEncoding;
+import edu.washington.escience.myria.api.encoding.ParallelPipelineEncoding;
+import edu.washington.escience.myria.api.encoding.PlanFragmentEncoding;
+import edu.washington.escience.myria.api.encoding.QueryEncoding;
+import edu.washington.escience.myria.api.encoding.QueryStatusEncoding;
+import edu.washington.escience.myria.api.encoding.QueryStatusEncoding.Status;
+import edu.washington.escience.myria.api.encoding.ShuffleConsumerEncoding;
+import edu.washington.escience.myria.api.encoding.ShuffleProducerEncoding;
+import edu.washington.escience.myria.api.encoding.TableScanEncoding;
+import edu.washington.escience.myria.api.encoding.plan.SubQueryEncoding;
+import edu.washington.escience.myria.io.ByteArraySource;
+import edu.washington.escience.myria.operator.agg.AggregationMode;
+import edu.washington.escience.myria.operator.agg.AggregatorFactory;
+import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
+import edu.washington.escience.myria.operator.agg.SingleColumnAggregatorFactory;
+import edu.washington.escience.myria.operator.network.partition.MultiFieldHashPartitionFunction;
+import edu.washington.escience.myria.util.JsonAPIUtils;
+
+/**
+ * Aggregates a relation with PARTIAL aggregates inside a ParallelPipeline and FINAL aggregates after a shuffle, through
+ * the JSON encodings of the operators.
+ */
+public class ParallelPipelineTest extends SystemTestBase {
+
+  private static final Schema SCHEMA = Schema.ofFields("a", Type.LONG_TYPE, "b", Type.LONG_TYPE, "value",
+      Type.LONG_TYPE);
+  private static final int NUM_TUPLES = 20000;
+  private static final int NUM_KEYS = 300;
+
+  private static final RelationKey INPUT = RelationKey.of("test", "parallelpipeline", "input");
+  private static final RelationKey RESULT = RelationKey.of("test", "parallelpipeline", "result");
+
+  @Test
+  public void testParallelAggregate() throws Exception {
+    Random random = new Random(1);
+    Map<Long, Long> sums = Maps.newHashMap();
+    StringBuilder csv = new StringBuilder();
+    for (int i = 0; i < NUM_TUPLES; ++i) {
+      long key = random.nextInt(NUM_KEYS);
+      csv.append(key / 10).append(',').append(key % 10).append(',').append(i).append('\n');
+      Long sum = sums.get(key);
+      sums.put(key, sum == null ? i : sum + i);
+    }
+    HttpURLConnection conn =
+        JsonAPIUtils.ingestData("localhost", masterDaemonPort, ingest(INPUT, SCHEMA, new ByteArraySource(csv
+            .toString().getBytes()), ','));
+    assertEquals(HttpURLConnection.HTTP_CREATED, conn.getResponseCode());
+    conn.disconnect();
+
+    AggregatorFactory[] aggregators =
+        new AggregatorFactory[] { new SingleColumnAggregatorFactory(2, AggregationOp.SUM) };
+
+    TableScanEncoding scan = new TableScanEncoding();
+    scan.opId = 0;
+    scan.relationKey = INPUT;
+    MorselSourceEncoding source = new MorselSourceEncoding();
+    source.opId = 1;
+    MultiGroupByAggregateEncoding partial = new MultiGroupByAggregateEncoding();
+    partial.opId = 2;
+    partial.argChild = source.opId;
+    partial.argGroupFields = new int[] { 0, 1 };
+    partial.aggregators = aggregators;
+    partial.argMode = AggregationMode.PARTIAL;
+    ParallelPipelineEncoding parallel = new ParallelPipelineEncoding();
+    parallel.opId = 3;
+    parallel.argChild = scan.opId;
+    parallel.argPipeline = partial.opId;
+    parallel.argNumThreads = 4;
+    ShuffleProducerEncoding producer = new ShuffleProducerEncoding();
+    producer.opId = 4;
+    producer.argChild = parallel.opId;
+    producer.argPf = new MultiFieldHashPartitionFunction(null, new int[] { 0, 1 });
+
+    ShuffleConsumerEncoding consumer = new ShuffleConsumerEncoding();
+    consumer.opId = 5;
+    consumer.argOperatorId = producer.opId;
+    MultiGroupByAggregateEncoding fin = new MultiGroupByAggregateEncoding();
+    fin.opId = 6;
+    fin.argChild = consumer.opId;
+    fin.argGroupFields = new int[] { 0, 1 };
+    fin.aggregators = aggregators;
+    fin.argMode = AggregationMode.FINAL;
+    fin.argPartialInputSchema = SCHEMA;
+    DbInsertEncoding insert = new DbInsertEncoding();
+    insert.opId = 7;
+    insert.argChild = fin.opId;
+    insert.relationKey = RESULT;
+    insert.argOverwriteTable = true;
+
+    QueryEncoding query = new QueryEncoding();
+    query.plan =
+        new SubQueryEncoding(ImmutableList.of(PlanFragmentEncoding.of(scan, source, partial, parallel, producer),
+            PlanFragmentEncoding.of(consumer, fin, insert)));
+    query.logicalRa = "parallel pipeline test";
+    query.rawQuery = query.logicalRa;
+    conn = submitQuery(query);
+    assertEquals(HttpStatus.SC_ACCEPTED, conn.getResponseCode());
+    long queryId = getQueryStatus(conn).queryId;
+    conn.disconnect();
+    while (!server.getQueryManager().queryCompleted(queryId)) {
+      Thread.sleep(1);
+    }
+    QueryStatusEncoding status = server.getQueryManager().getQueryStatus(queryId);
+    assertEquals(status.message, Status.SUCCESS, status.status);
+
+    String result =
+        JsonAPIUtils.download("localhost", masterDaemonPort, RESULT.getUserName(), RESULT.getProgramName(), RESULT
+            .getRelationName(), "csv");
+    Map<Long, Long> actual = Maps.newHashMap();
+    for (String line : result.split("\n")) {
+      String[] fields = line.trim().split(",");
+      if (fields.length != 3 || !Character.isDigit(fields[0].charAt(0))) {
+        /* The header. */
+        continue;
+      }
+      actual.put(Long.parseLong(fields[0]) * 10 + Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+    }
+    assertEquals(sums, actual);
+  }
+}
@@ -0,0 +1,284 @@
+package edu.washington.escience.myria.accessmethod;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.washington.escience.myria.accessmethod.JdbcConnectionPool.PooledConnection;
+
+public class JdbcConnectionPoolTest {
+
+  /** The dbms of the fake driver. */
+  private static final String DBMS = "myriafake";
+
+  /** The pool under test. */
+  private JdbcConnectionPool pool;
+
+  /** The state of a fake connection, which supports only what the pool uses. */
+  private static final class FakeConnection implements InvocationHandler {
+    private boolean closed = false;
+    private boolean autoCommit = true;
+    private boolean readOnly = false;
+    private boolean rolledBack = false;
+    /** Whether isValid returns true. */
+    private boolean valid = true;
+    /** Whether isValid times out. */
+    private boolean validationTimesOut = false;
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "close":
+          closed = true;
+          return null;
+        case "isClosed":
+          return closed;
+        case "isValid":
+          if (validationTimesOut) {
+            throw new SQLTimeoutException("validation timed out");
+          }
+          return valid && !closed;
+        case "getAutoCommit":
+          return autoCommit;
+        case "setAutoCommit":
+          autoCommit = (Boolean) args[0];
+          return null;
+        case "isReadOnly":
+          return readOnly;
+        case "setReadOnly":
+          readOnly = (Boolean) args[0];
+          return null;
+        case "rollback":
+          rolledBack = true;
+          return null;
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "equals":
+          return proxy == args[0];
+        case "toString":
+          return "FakeConnection@" + System.identityHashCode(proxy);
+        default:
+          throw new UnsupportedOperationException(method.getName());
+      }
+    }
+  }
+
+  /** Opens fake connections for the urls of {@link #DBMS}. */
+  public static final class FakeDriver implements Driver {
+    /** The number of connections opened so far. */
+    private static final AtomicInteger NUM_OPENED = new AtomicInteger();
+
+    @Override
+    public Connection connect(final String url, final Properties info) {
+      if (!acceptsURL(url)) {
+        return null;
+      }
+      NUM_OPENED.incrementAndGet();
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+          new Class<?>[] { Connection.class }, new FakeConnection());
+    }
+
+    @Override
+    public boolean acceptsURL(final String url) {
+      return url.startsWith("jdbc:" + DBMS + ":");
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(final String url, final Properties info) {
+      return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+      return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+      return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+      return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+      throw new SQLFeatureNotSupportedException();
+    }
+  }
+
+  @BeforeClass
+  public static void registerDriver() throws SQLException {
+    DriverManager.registerDriver(new FakeDriver());
+  }
+
+  @After
+  public void closePool() {
+    if (pool != null) {
+      pool.close();
+    }
+  }
+
+  /** A new pool of fake connections. */
+  private static JdbcConnectionPool newPool(final int maxOpen, final long borrowTimeoutMillis,
+      final long validationIdleMillis) {
+    final JdbcInfo jdbcInfo = JdbcInfo.of(FakeDriver.class.getName(), DBMS, "localhost", 5432, "test", "user", "pass");
+    return new JdbcConnectionPool(jdbcInfo, maxOpen, borrowTimeoutMillis, validationIdleMillis);
+  }
+
+  private static FakeConnection fake(final PooledConnection connection) {
+    return (FakeConnection) Proxy.getInvocationHandler(connection.getConnection());
+  }
+
+  @Test
+  public void testReuse() throws Exception {
+    pool = newPool(2, 1000, TimeUnit.MINUTES.toMillis(1));
+    final int opened = FakeDriver.NUM_OPENED.get();
+
+    final PooledConnection first = pool.borrow();
+    first.getConnection().setAutoCommit(false);
+    first.getConnection().setReadOnly(true);
+    first.release();
+    assertTrue(fake(first).rolledBack);
+    assertTrue(fake(first).autoCommit);
+    assertFalse(fake(first).readOnly);
+
+    /* A connection that was used recently is reused without validation, even if it would not pass. */
+    fake(first).valid = false;
+    final PooledConnection second = pool.borrow();
+    assertSame(first, second);
+    assertFalse(fake(second).closed);
+    assertEquals(1, pool.numOpen());
+    assertEquals(opened + 1, FakeDriver.NUM_OPENED.get());
+    second.release();
+  }
+
+  @Test
+  public void testCapTimesOut() throws Exception {
+    pool = newPool(2, 50, TimeUnit.MINUTES.toMillis(1));
+    final PooledConnection first = pool.borrow();
+    final PooledConnection second = pool.borrow();
+    try {
+      pool.borrow();
+      fail("Expected a timeout once the max number of connections are open");
+    } catch (SQLException e) {
+      assertTrue(e.getMessage().contains("Timed out"));
+    }
+    assertEquals(2, pool.numOpen());
+    first.release();
+    second.release();
+  }
+
+  @Test
+  public void testCapWaitsForRelease() throws Exception {
+    pool = newPool(1, TimeUnit.SECONDS.toMillis(30), TimeUnit.MINUTES.toMillis(1));
+    final PooledConnection first = pool.borrow();
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final Future<PooledConnection> waiting = executor.submit(new Callable<PooledConnection>() {
+        @Override
+        public PooledConnection call() throws Exception {
+          return pool.borrow();
+        }
+      });
+      Thread.sleep(100);
+      assertFalse(waiting.isDone());
+
+      first.release();
+      final PooledConnection second = waiting.get(30, TimeUnit.SECONDS);
+      assertSame(first, second);
+      assertEquals(1, pool.numOpen());
+      second.release();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testEvictBroken() throws Exception {
+    /* Validate every idle connection before it is reused. */
+    pool = newPool(1, 1000, -1);
+    final PooledConnection first = pool.borrow();
+    first.release();
+    fake(first).valid = false;
+
+    final PooledConnection second = pool.borrow();
+    assertNotSame(first, second);
+    assertTrue(fake(first).closed);
+    assertEquals(1, pool.numOpen());
+    second.release();
+  }
+
+  @Test
+  public void testEvictTimedOut() throws Exception {
+    pool = newPool(1, 1000, -1);
+    final PooledConnection first = pool.borrow();
+    first.release();
+    fake(first).validationTimesOut = true;
+
+    final PooledConnection second = pool.borrow();
+    assertNotSame(first, second);
+    assertTrue(fake(first).closed);
+    assertEquals(1, pool.numOpen());
+    second.release();
+  }
+
+  @Test
+  public void testReleaseClosed() throws Exception {
+    pool = newPool(1, 50, TimeUnit.MINUTES.toMillis(1));
+    final PooledConnection first = pool.borrow();
+    first.getConnection().close();
+    first.release();
+    assertEquals(0, pool.numOpen());
+
+    /* The closed connection made room for a new one. */
+    final PooledConnection second = pool.borrow();
+    assertNotSame(first, second);
+    second.release();
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    pool = newPool(2, 1000, TimeUnit.MINUTES.toMillis(1));
+    final PooledConnection idle = pool.borrow();
+    final PooledConnection borrowed = pool.borrow();
+    idle.release();
+
+    pool.close();
+    assertTrue(fake(idle).closed);
+    assertFalse(fake(borrowed).closed);
+    assertEquals(1, pool.numOpen());
+
+    borrowed.release();
+    assertTrue(fake(borrowed).closed);
+    assertEquals(0, pool.numOpen());
+  }
+}
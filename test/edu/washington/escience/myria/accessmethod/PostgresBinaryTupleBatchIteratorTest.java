@@ -0,0 +1,270 @@
+package edu.washington.escience.myria.accessmethod;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSetMetaData;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+import org.postgresql.copy.CopyOut;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+public class PostgresBinaryTupleBatchIteratorTest {
+
+  private static final Schema ALL_TYPES = Schema.ofFields("b", Type.BOOLEAN_TYPE, "i", Type.INT_TYPE, "l",
+      Type.LONG_TYPE, "f", Type.FLOAT_TYPE, "d", Type.DOUBLE_TYPE, "t", Type.DATETIME_TYPE, "s", Type.STRING_TYPE);
+
+  /** Microseconds from the Java epoch to the PostgreSQL epoch, 2000-01-01. */
+  private static final long PG_EPOCH_MICROS = TimeUnit.SECONDS.toMicros(946684800L);
+
+  /** Writes the binary COPY format. */
+  private static final class CopyWriter {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+
+    CopyWriter() throws IOException {
+      out.write("PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1));
+      out.writeInt(0);
+      /* A header extension, which is skipped. */
+      out.writeInt(3);
+      out.write(new byte[] { 1, 2, 3 });
+    }
+
+    CopyWriter tuple(final int numFields) throws IOException {
+      out.writeShort(numFields);
+      return this;
+    }
+
+    CopyWriter bool(final boolean value) throws IOException {
+      out.writeInt(1);
+      out.writeByte(value ? 1 : 0);
+      return this;
+    }
+
+    CopyWriter int4(final int value) throws IOException {
+      out.writeInt(4);
+      out.writeInt(value);
+      return this;
+    }
+
+    CopyWriter int8(final long value) throws IOException {
+      out.writeInt(8);
+      out.writeLong(value);
+      return this;
+    }
+
+    CopyWriter float4(final float value) throws IOException {
+      out.writeInt(4);
+      out.writeFloat(value);
+      return this;
+    }
+
+    CopyWriter float8(final double value) throws IOException {
+      out.writeInt(8);
+      out.writeDouble(value);
+      return this;
+    }
+
+    CopyWriter timestamp(final DateTime value) throws IOException {
+      final long localMillis = DateTimeZone.getDefault().convertUTCToLocal(value.getMillis());
+      return int8(TimeUnit.MILLISECONDS.toMicros(localMillis) - PG_EPOCH_MICROS);
+    }
+
+    CopyWriter text(final String value) throws IOException {
+      final byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(encoded.length);
+      out.write(encoded);
+      return this;
+    }
+
+    CopyWriter nul() throws IOException {
+      out.writeInt(-1);
+      return this;
+    }
+
+    /** The results with the trailer, returned in chunks of the given size. */
+    CopyOut copyOut(final int chunkSize) throws IOException {
+      out.writeShort(-1);
+      final byte[] data = bytes.toByteArray();
+      return (CopyOut) Proxy.newProxyInstance(CopyOut.class.getClassLoader(), new Class<?>[] { CopyOut.class },
+          new InvocationHandler() {
+            private int position = 0;
+
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+              if (!method.getName().equals("readFromCopy")) {
+                throw new UnsupportedOperationException(method.getName());
+              }
+              if (position == data.length) {
+                return null;
+              }
+              final int end = Math.min(data.length, position + chunkSize);
+              final byte[] chunk = Arrays.copyOfRange(data, position, end);
+              position = end;
+              return chunk;
+            }
+          });
+    }
+  }
+
+  @Test
+  public void testAllTypes() throws Exception {
+    final DateTime time = new DateTime(2014, 6, 30, 12, 34, 56, 789);
+    final CopyWriter writer = new CopyWriter();
+    writer.tuple(7).bool(true).int4(-42).int8(Long.MAX_VALUE).float4(1.5f).float8(-2.25).timestamp(time).text(
+        "caf\u00e9");
+    writer.tuple(7).bool(false).int4(Integer.MIN_VALUE).int8(0).float4(0).float8(Double.MAX_VALUE).timestamp(time)
+        .text("");
+
+    /* Small chunks, so that values are split across the chunks. */
+    final PostgresBinaryTupleBatchIterator it =
+        new PostgresBinaryTupleBatchIterator(writer.copyOut(5), ALL_TYPES, TupleBatch.BATCH_SIZE, null);
+    assertTrue(it.hasNext());
+    final TupleBatch tb = it.next();
+    assertFalse(it.hasNext());
+    assertEquals(2, tb.numTuples());
+    assertEquals(ALL_TYPES, tb.getSchema());
+
+    assertTrue(tb.getBoolean(0, 0));
+    assertEquals(-42, tb.getInt(1, 0));
+    assertEquals(Long.MAX_VALUE, tb.getLong(2, 0));
+    assertEquals(1.5f, tb.getFloat(3, 0), 0);
+    assertEquals(-2.25, tb.getDouble(4, 0), 0);
+    assertEquals(time.getMillis(), tb.getDateTime(5, 0).getMillis());
+    assertEquals("caf\u00e9", tb.getString(6, 0));
+
+    assertFalse(tb.getBoolean(0, 1));
+    assertEquals(Integer.MIN_VALUE, tb.getInt(1, 1));
+    assertEquals(0, tb.getLong(2, 1));
+    assertEquals(Double.MAX_VALUE, tb.getDouble(4, 1), 0);
+    assertEquals("", tb.getString(6, 1));
+  }
+
+  @Test
+  public void testNullNumbersReadAsZero() throws Exception {
+    final Schema schema =
+        Schema.ofFields("b", Type.BOOLEAN_TYPE, "i", Type.INT_TYPE, "l", Type.LONG_TYPE, "f", Type.FLOAT_TYPE, "d",
+            Type.DOUBLE_TYPE);
+    final CopyWriter writer = new CopyWriter();
+    writer.tuple(5).nul().nul().nul().nul().nul();
+
+    final PostgresBinaryTupleBatchIterator it =
+        new PostgresBinaryTupleBatchIterator(writer.copyOut(1024), schema, TupleBatch.BATCH_SIZE, null);
+    assertTrue(it.hasNext());
+    final TupleBatch tb = it.next();
+    assertEquals(1, tb.numTuples());
+    assertFalse(tb.getBoolean(0, 0));
+    assertEquals(0, tb.getInt(1, 0));
+    assertEquals(0, tb.getLong(2, 0));
+    assertEquals(0, tb.getFloat(3, 0), 0);
+    assertEquals(0, tb.getDouble(4, 0), 0);
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testNullStringRejected() throws Exception {
+    final CopyWriter writer = new CopyWriter();
+    writer.tuple(1).nul();
+    new PostgresBinaryTupleBatchIterator(writer.copyOut(1024), Schema.ofFields("s", Type.STRING_TYPE),
+        TupleBatch.BATCH_SIZE, null).hasNext();
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testWrongLengthRejected() throws Exception {
+    final CopyWriter writer = new CopyWriter();
+    /* An int8 where an int4 is expected. */
+    writer.tuple(1).int8(1);
+    new PostgresBinaryTupleBatchIterator(writer.copyOut(1024), Schema.ofFields("i", Type.INT_TYPE),
+        TupleBatch.BATCH_SIZE, null).hasNext();
+  }
+
+  @Test(expected = DbException.class)
+  public void testBadSignatureRejected() throws Exception {
+    final CopyOut copyOut =
+        (CopyOut) Proxy.newProxyInstance(CopyOut.class.getClassLoader(), new Class<?>[] { CopyOut.class },
+            new InvocationHandler() {
+              @Override
+              public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                return new byte[32];
+              }
+            });
+    new PostgresBinaryTupleBatchIterator(copyOut, ALL_TYPES, TupleBatch.BATCH_SIZE, null);
+  }
+
+  @Test
+  public void testBatchSize() throws Exception {
+    final CopyWriter writer = new CopyWriter();
+    for (int i = 0; i < 5; ++i) {
+      writer.tuple(1).int8(i);
+    }
+    final PostgresBinaryTupleBatchIterator it =
+        new PostgresBinaryTupleBatchIterator(writer.copyOut(1024), Schema.ofFields("l", Type.LONG_TYPE), 2, null);
+    long expected = 0;
+    for (int size : new int[] { 2, 2, 1 }) {
+      assertTrue(it.hasNext());
+      final TupleBatch tb = it.next();
+      assertEquals(size, tb.numTuples());
+      for (int row = 0; row < size; ++row) {
+        assertEquals(expected++, tb.getLong(0, row));
+      }
+    }
+    assertFalse(it.hasNext());
+  }
+
+  @Test
+  public void testCopyStatementKeepsQuery() {
+    assertEquals("COPY (SELECT a, b FROM t ORDER BY b DESC) TO STDOUT WITH BINARY", PostgresBinaryTupleBatchIterator
+        .copyStatement(" SELECT a, b FROM t ORDER BY b DESC; "));
+  }
+
+  /** A description of results whose columns have the given PostgreSQL types. */
+  private static ResultSetMetaData metaData(final String... typeNames) {
+    return (ResultSetMetaData) Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(),
+        new Class<?>[] { ResultSetMetaData.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            switch (method.getName()) {
+              case "getColumnCount":
+                return typeNames.length;
+              case "getColumnTypeName":
+                return typeNames[(Integer) args[0] - 1];
+              default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+          }
+        });
+  }
+
+  @Test
+  public void testCanDecode() throws Exception {
+    assertTrue(PostgresBinaryTupleBatchIterator.canDecode(metaData("bool", "int4", "int8", "float4", "float8",
+        "timestamp", "text"), ALL_TYPES));
+    final Schema strings = new Schema(ImmutableList.of(Type.STRING_TYPE, Type.STRING_TYPE, Type.STRING_TYPE));
+    assertTrue(PostgresBinaryTupleBatchIterator.canDecode(metaData("varchar", "bpchar", "name"), strings));
+
+    final Schema longs = Schema.ofFields("l", Type.LONG_TYPE);
+    assertFalse(PostgresBinaryTupleBatchIterator.canDecode(metaData("int4"), longs));
+    assertFalse(PostgresBinaryTupleBatchIterator.canDecode(metaData("numeric"), longs));
+    assertFalse(PostgresBinaryTupleBatchIterator.canDecode(metaData("int8", "int8"), longs));
+    assertFalse(PostgresBinaryTupleBatchIterator.canDecode(metaData("timestamptz"), Schema.ofFields("t",
+        Type.DATETIME_TYPE)));
+    assertFalse(PostgresBinaryTupleBatchIterator.canDecode(null, longs));
+  }
+}
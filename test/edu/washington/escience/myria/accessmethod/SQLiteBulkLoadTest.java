@@ -0,0 +1,117 @@
+package edu.washington.escience.myria.accessmethod;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.almworks.sqlite4java.SQLiteConnection;
+import com.almworks.sqlite4java.SQLiteStatement;
+
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class SQLiteBulkLoadTest {
+
+  private static final Schema SCHEMA = Schema.ofFields("id", Type.INT_TYPE, "name", Type.STRING_TYPE);
+  private static final RelationKey LOADED = RelationKey.of("test", "bulkload", "loaded");
+  private static final RelationKey OTHER = RelationKey.of("test", "bulkload", "other");
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File dbFile;
+  private SQLiteInfo sqliteInfo;
+
+  @Before
+  public void setUp() throws Exception {
+    Logger.getLogger("com.almworks.sqlite4java").setLevel(Level.WARNING);
+    dbFile = new File(tempFolder.getRoot(), "bulkload.db");
+    /* As DbInsert does. */
+    final SQLiteConnection conn = new SQLiteConnection(dbFile);
+    conn.open(true);
+    conn.exec("PRAGMA journal_mode=WAL;");
+    conn.dispose();
+    sqliteInfo = SQLiteInfo.of(dbFile.getAbsolutePath());
+  }
+
+  /** @return a batch of the given number of tuples, starting at id <code>first</code>. */
+  private static TupleBatch batch(final int first, final int numTuples) {
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int i = first; i < first + numTuples; ++i) {
+      tbb.putInt(0, i);
+      tbb.putString(1, "name" + i);
+    }
+    return tbb.popAny();
+  }
+
+  /** @return the number of tuples in the relation, read through a separate connection. */
+  private long count(final RelationKey relation) throws Exception {
+    final SQLiteConnection conn = new SQLiteConnection(dbFile);
+    try {
+      conn.open(false);
+      final SQLiteStatement statement =
+          conn.prepare("SELECT COUNT(*) FROM " + relation.toString(MyriaConstants.STORAGE_SYSTEM_SQLITE) + ";");
+      assertTrue(statement.step());
+      return statement.columnLong(0);
+    } finally {
+      conn.dispose();
+    }
+  }
+
+  @Test
+  public void testSeveralCommits() throws Exception {
+    final SQLiteAccessMethod accessMethod = new SQLiteAccessMethod(sqliteInfo, false);
+    try {
+      accessMethod.createTableIfNotExists(LOADED, SCHEMA);
+      accessMethod.setBulkLoadCommitTuples(100);
+      accessMethod.beginBulkLoad(LOADED, SCHEMA);
+      for (int i = 0; i < 10; ++i) {
+        accessMethod.tupleBatchInsert(LOADED, batch(i * 35, 35));
+      }
+      /* The last commit was after 315 tuples. */
+      assertEquals(315, count(LOADED));
+      accessMethod.finishBulkLoad();
+      assertEquals(350, count(LOADED));
+    } finally {
+      accessMethod.close();
+    }
+  }
+
+  @Test
+  public void testConcurrentInsertWhileIdle() throws Exception {
+    final SQLiteAccessMethod loader = new SQLiteAccessMethod(sqliteInfo, false);
+    final SQLiteAccessMethod other = new SQLiteAccessMethod(sqliteInfo, false);
+    try {
+      loader.createTableIfNotExists(LOADED, SCHEMA);
+      other.createTableIfNotExists(OTHER, SCHEMA);
+      loader.beginBulkLoad(LOADED, SCHEMA);
+      loader.tupleBatchInsert(LOADED, batch(0, 50));
+      /* As DbInsert does while its child has no tuples ready. */
+      loader.commitBulkLoad();
+      assertEquals(50, count(LOADED));
+
+      /* The load is idle, so it does not hold the write lock. */
+      other.tupleBatchInsert(OTHER, batch(0, 20));
+      assertEquals(20, count(OTHER));
+
+      loader.tupleBatchInsert(LOADED, batch(50, 50));
+      loader.finishBulkLoad();
+      assertEquals(100, count(LOADED));
+    } finally {
+      loader.close();
+      other.close();
+    }
+  }
+}
@@ -0,0 +1,232 @@
+package edu.washington.escience.myria.api.encoding;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.operator.network.partition.MultiFieldHashPartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
+
+/**
+ * Tests of the replacement of shuffles of co-partitioned relations, and of the partitioning recorded for inserts.
+ */
+public class QueryConstructTest {
+
+  private static final RelationKey LEFT = RelationKey.of("test", "copartition", "left");
+  private static final RelationKey RIGHT = RelationKey.of("test", "copartition", "right");
+  private static final RelationKey RESULT = RelationKey.of("test", "copartition", "result");
+
+  /** The stored relations, as they would be recorded in the Catalog. */
+  private static final class FakeStoredRelations implements QueryConstruct.StoredRelations {
+    private final Map<RelationKey, Set<Integer>> workers = Maps.newHashMap();
+    private final Map<RelationKey, PartitionFunction> partitionFunctions = Maps.newHashMap();
+
+    void put(final RelationKey relationKey, final Set<Integer> relationWorkers, final PartitionFunction pf) {
+      workers.put(relationKey, relationWorkers);
+      partitionFunctions.put(relationKey, pf);
+    }
+
+    @Override
+    public Set<Integer> getWorkers(final RelationKey relationKey, final Integer storedRelationId) {
+      return workers.get(relationKey);
+    }
+
+    @Override
+    public PartitionFunction getPartitionFunction(final RelationKey relationKey, final Integer storedRelationId) {
+      return partitionFunctions.get(relationKey);
+    }
+  }
+
+  /** A fragment that scans a relation and shuffles it. */
+  private static PlanFragmentEncoding scanAndShuffle(final int scanId, final RelationKey relationKey,
+      final int producerId, final PartitionFunction pf) {
+    TableScanEncoding scan = new TableScanEncoding();
+    scan.opId = scanId;
+    scan.relationKey = relationKey;
+    ShuffleProducerEncoding producer = new ShuffleProducerEncoding();
+    producer.opId = producerId;
+    producer.argChild = scan.opId;
+    producer.argPf = pf;
+    return PlanFragmentEncoding.of(scan, producer);
+  }
+
+  /** A fragment that joins the tuples of two shuffles on their first column and inserts the result. */
+  private static PlanFragmentEncoding join(final int leftProducerId, final int rightProducerId) {
+    ShuffleConsumerEncoding left = new ShuffleConsumerEncoding();
+    left.opId = 10;
+    left.argOperatorId = leftProducerId;
+    ShuffleConsumerEncoding right = new ShuffleConsumerEncoding();
+    right.opId = 11;
+    right.argOperatorId = rightProducerId;
+    SymmetricHashJoinEncoding join = new SymmetricHashJoinEncoding();
+    join.opId = 12;
+    join.argChild1 = left.opId;
+    join.argChild2 = right.opId;
+    join.argColumns1 = new int[] { 0 };
+    join.argColumns2 = new int[] { 0 };
+    join.argSelect1 = new int[] { 0 };
+    join.argSelect2 = new int[] { 1 };
+    DbInsertEncoding insert = new DbInsertEncoding();
+    insert.opId = 13;
+    insert.argChild = join.opId;
+    insert.relationKey = RESULT;
+    return PlanFragmentEncoding.of(left, right, join, insert);
+  }
+
+  /** The scans and the join of {@link #LEFT} and {@link #RIGHT}, both shuffled by a hash of their first column. */
+  private static List<PlanFragmentEncoding> joinPlan() {
+    return ImmutableList.of(scanAndShuffle(0, LEFT, 1, new SingleFieldHashPartitionFunction(null, 0)), scanAndShuffle(
+        2, RIGHT, 3, new SingleFieldHashPartitionFunction(null, 0)), join(1, 3));
+  }
+
+  private static int countShuffles(final List<PlanFragmentEncoding> fragments) {
+    int count = 0;
+    for (PlanFragmentEncoding fragment : fragments) {
+      for (OperatorEncoding<?> operator : fragment.operators) {
+        if (operator instanceof ShuffleProducerEncoding || operator instanceof ShuffleConsumerEncoding) {
+          ++count;
+        }
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void testCoPartitionedJoin() throws Exception {
+    FakeStoredRelations relations = new FakeStoredRelations();
+    relations.put(LEFT, ImmutableSet.of(2, 3), new SingleFieldHashPartitionFunction(2, 0));
+    relations.put(RIGHT, ImmutableSet.of(2, 3), new SingleFieldHashPartitionFunction(2, 0));
+    List<PlanFragmentEncoding> fragments = joinPlan();
+    QueryConstruct.elideCoPartitionedShuffles(fragments, relations);
+
+    assertEquals(0, countShuffles(fragments));
+    assertTrue(fragments.get(0).operators.get(1) instanceof LocalMultiwayProducerEncoding);
+    assertTrue(fragments.get(1).operators.get(1) instanceof LocalMultiwayProducerEncoding);
+    PlanFragmentEncoding joinFragment = fragments.get(2);
+    assertTrue(joinFragment.operators.get(0) instanceof LocalMultiwayConsumerEncoding);
+    assertTrue(joinFragment.operators.get(1) instanceof LocalMultiwayConsumerEncoding);
+    assertEquals(Integer.valueOf(1), ((LocalMultiwayConsumerEncoding) joinFragment.operators.get(0)).argOperatorId);
+    assertEquals(Integer.valueOf(3), ((LocalMultiwayConsumerEncoding) joinFragment.operators.get(1)).argOperatorId);
+
+    /* Once the scans set the workers of their fragments, the join runs on the workers that store the relations. */
+    fragments.get(0).workers = ImmutableList.of(2, 3);
+    fragments.get(1).workers = ImmutableList.of(2, 3);
+    QueryConstruct.verifyAndPropagateLocalEdgeConstraints(fragments);
+    assertEquals(ImmutableList.of(2, 3), joinFragment.workers);
+  }
+
+  @Test
+  public void testDifferentHashColumns() throws Exception {
+    FakeStoredRelations relations = new FakeStoredRelations();
+    relations.put(LEFT, ImmutableSet.of(1, 2), new SingleFieldHashPartitionFunction(2, 1));
+    relations.put(RIGHT, ImmutableSet.of(1, 2), new MultiFieldHashPartitionFunction(2, new int[] { 0, 1 }));
+    List<PlanFragmentEncoding> fragments = joinPlan();
+    QueryConstruct.elideCoPartitionedShuffles(fragments, relations);
+    assertEquals(4, countShuffles(fragments));
+  }
+
+  @Test
+  public void testNumPartitionsDifferentFromWorkers() throws Exception {
+    FakeStoredRelations relations = new FakeStoredRelations();
+    relations.put(LEFT, ImmutableSet.of(1, 2), new SingleFieldHashPartitionFunction(3, 0));
+    relations.put(RIGHT, ImmutableSet.of(1, 2), new SingleFieldHashPartitionFunction(3, 0));
+    List<PlanFragmentEncoding> fragments = joinPlan();
+    QueryConstruct.elideCoPartitionedShuffles(fragments, relations);
+    assertEquals(4, countShuffles(fragments));
+  }
+
+  @Test
+  public void testUnknownPartitioning() throws Exception {
+    FakeStoredRelations relations = new FakeStoredRelations();
+    relations.put(LEFT, ImmutableSet.of(1, 2), null);
+    relations.put(RIGHT, ImmutableSet.of(1, 2), new SingleFieldHashPartitionFunction(2, 0));
+    List<PlanFragmentEncoding> fragments = joinPlan();
+    QueryConstruct.elideCoPartitionedShuffles(fragments, relations);
+    /* Only the shuffle of the relation that is already partitioned is replaced. */
+    assertEquals(2, countShuffles(fragments));
+    assertTrue(fragments.get(0).operators.get(1) instanceof ShuffleProducerEncoding);
+    assertTrue(fragments.get(1).operators.get(1) instanceof LocalMultiwayProducerEncoding);
+  }
+
+  @Test
+  public void testOverrideWorkers() throws Exception {
+    FakeStoredRelations relations = new FakeStoredRelations();
+    relations.put(LEFT, ImmutableSet.of(1, 2), new SingleFieldHashPartitionFunction(2, 0));
+    relations.put(RIGHT, ImmutableSet.of(1, 2), new SingleFieldHashPartitionFunction(2, 0));
+
+    /* The workers of the join are set by the plan. */
+    List<PlanFragmentEncoding> fragments = joinPlan();
+    fragments.get(2).overrideWorkers = ImmutableList.of(1, 2);
+    QueryConstruct.elideCoPartitionedShuffles(fragments, relations);
+    assertEquals(4, countShuffles(fragments));
+
+    /* The workers of a scan are set by the plan. */
+    fragments = joinPlan();
+    fragments.get(0).overrideWorkers = ImmutableList.of(1);
+    QueryConstruct.elideCoPartitionedShuffles(fragments, relations);
+    assertEquals(2, countShuffles(fragments));
+    assertTrue(fragments.get(0).operators.get(1) instanceof ShuffleProducerEncoding);
+  }
+
+  @Test
+  public void testInputsOnDifferentWorkers() throws Exception {
+    FakeStoredRelations relations = new FakeStoredRelations();
+    relations.put(LEFT, ImmutableSet.of(1, 2), new SingleFieldHashPartitionFunction(2, 0));
+    relations.put(RIGHT, ImmutableSet.of(2, 3), new SingleFieldHashPartitionFunction(2, 0));
+    List<PlanFragmentEncoding> fragments = joinPlan();
+    QueryConstruct.elideCoPartitionedShuffles(fragments, relations);
+    assertEquals(4, countShuffles(fragments));
+  }
+
+  /** A fragment that inserts the tuples of a shuffle. */
+  private static PlanFragmentEncoding consumeAndInsert(final int producerId) {
+    ShuffleConsumerEncoding consumer = new ShuffleConsumerEncoding();
+    consumer.opId = 20;
+    consumer.argOperatorId = producerId;
+    DbInsertEncoding insert = new DbInsertEncoding();
+    insert.opId = 21;
+    insert.argChild = consumer.opId;
+    insert.relationKey = RESULT;
+    PlanFragmentEncoding fragment = PlanFragmentEncoding.of(consumer, insert);
+    fragment.workers = ImmutableList.of(1, 2, 3);
+    return fragment;
+  }
+
+  @Test
+  public void testPartitionFunctionsOfInserts() throws Exception {
+    /* A single hash column. */
+    PlanFragmentEncoding insertFragment = consumeAndInsert(1);
+    QueryConstruct.setPartitionFunctionsOfInserts(ImmutableList.of(scanAndShuffle(0, LEFT, 1,
+        new SingleFieldHashPartitionFunction(null, 1)), insertFragment));
+    PartitionFunction pf = ((DbInsertEncoding) insertFragment.operators.get(1)).partitionFunction;
+    assertEquals(3, pf.numPartition());
+    assertArrayEquals(new int[] { 1 }, pf.hashColumns());
+
+    /* Several hash columns. */
+    insertFragment = consumeAndInsert(1);
+    QueryConstruct.setPartitionFunctionsOfInserts(ImmutableList.of(scanAndShuffle(0, LEFT, 1,
+        new MultiFieldHashPartitionFunction(null, new int[] { 1, 0 })), insertFragment));
+    pf = ((DbInsertEncoding) insertFragment.operators.get(1)).partitionFunction;
+    assertEquals(3, pf.numPartition());
+    assertArrayEquals(new int[] { 1, 0 }, pf.hashColumns());
+
+    /* The insert does not directly consume the shuffle. */
+    List<PlanFragmentEncoding> fragments = joinPlan();
+    fragments.get(2).workers = ImmutableList.of(1, 2);
+    QueryConstruct.setPartitionFunctionsOfInserts(fragments);
+    assertNull(((DbInsertEncoding) fragments.get(2).operators.get(3)).partitionFunction);
+  }
+}
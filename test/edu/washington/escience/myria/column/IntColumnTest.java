@@ -4,12 +4,14 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.BufferOverflowException;
+import java.util.BitSet;
 
 import org.junit.Test;
 
 import edu.washington.escience.myria.column.builder.IntColumnBuilder;
 import edu.washington.escience.myria.proto.DataProto.ColumnMessage;
 import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.ImmutableIntArray;
 
 public class IntColumnTest {
 
@@ -33,6 +35,24 @@ public class IntColumnTest {
     assertTrue(original.build().toString().equals(deserialized.toString()));
   }
 
+  @Test
+  public void testFilteredProto() {
+    final IntColumnBuilder original = new IntColumnBuilder();
+    original.appendInt(1).appendInt(2).appendInt(5).appendInt(11).appendInt(17);
+    final BitSet bits = new BitSet();
+    bits.set(1);
+    bits.set(3);
+    bits.set(4);
+    /* Filtering twice composes the selection vectors: rows 1 and 4 of the original. */
+    final Column<Integer> filtered = original.build().filter(bits).filter(new ImmutableIntArray(new int[] { 0, 2 }));
+    assertEquals(2, filtered.size());
+    assertEquals(17, filtered.getIntArray()[1]);
+    final ColumnMessage serialized = filtered.serializeToProto();
+    final IntColumn deserialized = IntColumnBuilder.buildFromProtobuf(serialized, filtered.size());
+    assertEquals(2, deserialized.getInt(0));
+    assertEquals(17, deserialized.getInt(1));
+  }
+
   @Test
   public void testFull() {
     final IntColumnBuilder builder = new IntColumnBuilder();
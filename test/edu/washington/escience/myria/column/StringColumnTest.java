@@ -1,5 +1,6 @@
 package edu.washington.escience.myria.column;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.BufferOverflowException;
@@ -23,6 +24,39 @@ public class StringColumnTest {
     assertTrue(original.build().toString().equals(deserialized.toString()));
   }
 
+  @Test
+  public void testDictionaryProto() {
+    final StringColumnBuilder original = new StringColumnBuilder();
+    final String[] values = { "red", "green", "", "blue" };
+    for (int i = 0; i < 100; i++) {
+      original.appendString(values[i % values.length]);
+    }
+    final ColumnMessage serialized = original.build().serializeToProto();
+    assertEquals("redgreenblue", serialized.getStringColumn().getData().toStringUtf8());
+    final StringColumn deserialized = StringColumnBuilder.buildFromProtobuf(serialized, original.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(values[i % values.length], deserialized.getString(i));
+    }
+  }
+
+  @Test
+  public void testDistinctProto() {
+    /* The first rows are all distinct, so the dictionary is dropped and the later repeated values are stored again. */
+    final StringColumnBuilder original = new StringColumnBuilder();
+    final StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      final String value = "v" + (i < 500 ? i : i % 10);
+      original.appendString(value);
+      expected.append(value);
+    }
+    final ColumnMessage serialized = original.build().serializeToProto();
+    assertEquals(expected.toString(), serialized.getStringColumn().getData().toStringUtf8());
+    final StringColumn deserialized = StringColumnBuilder.buildFromProtobuf(serialized, original.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals("v" + (i < 500 ? i : i % 10), deserialized.getString(i));
+    }
+  }
+
   @Test
   public void testFull() {
     final StringColumnBuilder builder = new StringColumnBuilder();
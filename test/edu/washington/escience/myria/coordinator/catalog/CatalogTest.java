@@ -1,6 +1,8 @@
 package edu.washington.escience.myria.coordinator.catalog;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -26,9 +28,17 @@ import com.google.common.collect.ImmutableSet;
 
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.api.encoding.QueryEncoding;
 import edu.washington.escience.myria.api.encoding.QueryStatusEncoding;
+import edu.washington.escience.myria.operator.network.partition.MultiFieldHashPartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
+import edu.washington.escience.myria.parallel.RelationWriteMetadata;
 import edu.washington.escience.myria.parallel.SocketInfo;
+import edu.washington.escience.myria.parallel.SubQueryId;
 import edu.washington.escience.myria.util.FSUtils;
 
 public class CatalogTest {
@@ -343,4 +353,58 @@ public class CatalogTest {
     assertEquals(ImmutableSet.copyOf(qs.profilingMode), ImmutableSet.copyOf(query.profilingMode));
     assertEquals(qs.language, query.language);
   }
+
+  /**
+   * Test that the catalog records how relations are partitioned.
+   * 
+   * @throws CatalogException if there is an error in the Catalog.
+   */
+  @Test
+  public void testRelationPartitioning() throws CatalogException {
+    /* Turn off SQLite logging, it's annoying. */
+    Logger.getLogger("com.almworks.sqlite4java").setLevel(Level.OFF);
+
+    MasterCatalog catalog = MasterCatalog.createInMemory();
+    catalog.addWorker(1, "localhost:9001");
+    catalog.addWorker(2, "localhost:9002");
+    QueryEncoding query = new QueryEncoding();
+    query.rawQuery = "store partitioned relations";
+    query.logicalRa = "";
+    long queryId = catalog.newQuery(query);
+    Schema schema = new Schema(ImmutableList.of(Type.INT_TYPE, Type.LONG_TYPE), ImmutableList.of("a", "b"));
+
+    /* A relation partitioned on a hash of its columns. */
+    RelationKey partitioned = RelationKey.of("public", "adhoc", "partitioned");
+    RelationWriteMetadata meta = new RelationWriteMetadata(partitioned, schema, true, false);
+    meta.addWorker(1);
+    meta.addWorker(2);
+    meta.setPartitionFunction(new MultiFieldHashPartitionFunction(2, new int[] { 1, 0 }));
+    catalog.updateRelationMetadata(ImmutableMap.of(partitioned, meta), new SubQueryId(queryId, 0));
+    PartitionFunction pf = catalog.getPartitionFunction(partitioned, null);
+    assertEquals(2, pf.numPartition());
+    assertArrayEquals(new int[] { 1, 0 }, pf.hashColumns());
+
+    /* Appending tuples partitioned the same way keeps the partitioning. */
+    meta = new RelationWriteMetadata(partitioned, schema, false, false);
+    meta.addWorker(1);
+    meta.addWorker(2);
+    meta.setPartitionFunction(new MultiFieldHashPartitionFunction(2, new int[] { 1, 0 }));
+    catalog.updateRelationMetadata(ImmutableMap.of(partitioned, meta), new SubQueryId(queryId, 1));
+    assertArrayEquals(new int[] { 1, 0 }, catalog.getPartitionFunction(partitioned, null).hashColumns());
+
+    /* Appending tuples partitioned another way forgets it. */
+    meta = new RelationWriteMetadata(partitioned, schema, false, false);
+    meta.addWorker(1);
+    meta.addWorker(2);
+    meta.setPartitionFunction(new SingleFieldHashPartitionFunction(2, 0));
+    catalog.updateRelationMetadata(ImmutableMap.of(partitioned, meta), new SubQueryId(queryId, 2));
+    assertNull(catalog.getPartitionFunction(partitioned, null));
+
+    /* A relation partitioned in an unknown way. */
+    RelationKey unknown = RelationKey.of("public", "adhoc", "unknown");
+    meta = new RelationWriteMetadata(unknown, schema, true, false);
+    meta.addWorker(1);
+    catalog.updateRelationMetadata(ImmutableMap.of(unknown, meta), new SubQueryId(queryId, 3));
+    assertNull(catalog.getPartitionFunction(unknown, null));
+  }
 }
@@ -0,0 +1,77 @@
+package edu.washington.escience.myria.hash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.HashUtils;
+
+public class RowHashesTest {
+
+  private static final int NUM_TUPLES = 1000;
+
+  /*
+   * Generates a tuple batch with the following schema: a (int), b (long), c (string), d (double)
+   */
+  private TupleBatch generateTupleBatch() {
+    final Schema schema =
+        new Schema(ImmutableList.of(Type.INT_TYPE, Type.LONG_TYPE, Type.STRING_TYPE, Type.DOUBLE_TYPE), ImmutableList
+            .of("a", "b", "c", "d"));
+    Random rand = new Random();
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < NUM_TUPLES; i++) {
+      tbb.putInt(0, rand.nextInt());
+      tbb.putLong(1, rand.nextLong());
+      tbb.putString(2, "row" + rand.nextInt(100));
+      tbb.putDouble(3, rand.nextDouble());
+    }
+    return tbb.popAny();
+  }
+
+  @Test
+  public void testSameAsHashSubRow() {
+    TupleBatch tb = generateTupleBatch();
+    int[][] columnSets = { { 0 }, { 1 }, { 2 }, { 0, 2 }, { 3, 1, 0 } };
+    for (int[] columns : columnSets) {
+      int[] hashes = tb.getRowHashes(columns);
+      for (int i = 0; i < tb.numTuples(); i++) {
+        assertEquals(HashUtils.hashSubRow(tb, columns, i), hashes[i]);
+      }
+    }
+    int[] allColumns = { 0, 1, 2, 3 };
+    int[] hashes = tb.getRowHashes(allColumns);
+    for (int i = 0; i < tb.numTuples(); i++) {
+      assertEquals(HashUtils.hashRow(tb, i), hashes[i]);
+    }
+  }
+
+  @Test
+  public void testKeptByFilter() {
+    TupleBatch tb = generateTupleBatch();
+    int[] columns = { 0, 2 };
+    int[] hashes = tb.getRowHashes(columns);
+    assertSame(hashes, tb.getRowHashes(columns));
+
+    BitSet odd = new BitSet(tb.numTuples());
+    for (int i = 1; i < tb.numTuples(); i += 2) {
+      odd.set(i);
+    }
+    TupleBatch filtered = tb.filter(odd);
+    assertEquals(columns.length, filtered.getRowHashColumns().length);
+    int[] filteredHashes = filtered.getRowHashes(columns);
+    for (int i = 0; i < filtered.numTuples(); i++) {
+      assertEquals(hashes[2 * i + 1], filteredHashes[i]);
+      assertEquals(HashUtils.hashSubRow(filtered, columns, i), filteredHashes[i]);
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package edu.washington.escience.myria.hash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.network.partition.SkewAwareHashPartitionFunction;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class SkewAwareHashPartitionFunctionTest {
+
+  private static final int NUM_WORKERS = 4;
+  private static final int SPREAD = 3;
+  private static final int HEAVY_KEY = 7;
+  private static final int NUM_TUPLES = 100;
+
+  private static final List<List<Object>> HEAVY_HITTERS = ImmutableList.<List<Object>> of(ImmutableList
+      .<Object> of(HEAVY_KEY));
+
+  /*
+   * Generates a tuple batch with the following schema: a (int), b (long), where a alternates between the heavy hitter
+   * and other keys.
+   */
+  private TupleBatch generateTupleBatch() {
+    final Schema schema = new Schema(ImmutableList.of(Type.INT_TYPE, Type.LONG_TYPE), ImmutableList.of("a", "b"));
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < NUM_TUPLES; i++) {
+      tbb.putInt(0, i % 2 == 0 ? HEAVY_KEY : NUM_TUPLES + i);
+      tbb.putLong(1, i);
+    }
+    return tbb.popAny();
+  }
+
+  @Test
+  public void testMatchingTuplesMeet() {
+    TupleBatch tb = generateTupleBatch();
+    SkewAwareHashPartitionFunction spreadPf =
+        new SkewAwareHashPartitionFunction(SkewAwareHashPartitionFunction.numCells(NUM_WORKERS), new int[] { 0 },
+            HEAVY_HITTERS, false, SPREAD);
+    SkewAwareHashPartitionFunction replicatePf =
+        new SkewAwareHashPartitionFunction(SkewAwareHashPartitionFunction.numCells(NUM_WORKERS), new int[] { 0 },
+            HEAVY_HITTERS, true, SPREAD);
+    int[][] cellPartition = replicatePf.cellPartition();
+    int[] spreadCells = spreadPf.partition(tb);
+    int[] replicateCells = replicatePf.partition(tb);
+
+    Set<Integer> heavyWorkers = new HashSet<Integer>();
+    for (int i = 0; i < NUM_TUPLES; i++) {
+      /* The skewed input only sends to single workers. */
+      assertTrue(spreadCells[i] < NUM_WORKERS);
+      if (i % 2 == 0) {
+        heavyWorkers.add(spreadCells[i]);
+        assertEquals(SPREAD, cellPartition[replicateCells[i]].length);
+      } else {
+        assertEquals(spreadCells[i], replicateCells[i]);
+      }
+      /* Every tuple of the skewed input meets the matching tuples of the other input. */
+      assertTrue(Ints.contains(cellPartition[replicateCells[i]], spreadCells[i]));
+    }
+    /* The heavy hitter is spread over its whole group. */
+    assertEquals(SPREAD, heavyWorkers.size());
+  }
+}
@@ -13,7 +13,9 @@ import java.util.List;
 import java.util.Map;
 
 import org.joda.time.DateTime;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.primitives.Doubles;
@@ -22,6 +24,7 @@ import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
 
 import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
@@ -35,6 +38,7 @@ import edu.washington.escience.myria.column.builder.IntColumnBuilder;
 import edu.washington.escience.myria.column.builder.LongColumnBuilder;
 import edu.washington.escience.myria.column.builder.StringColumnBuilder;
 import edu.washington.escience.myria.operator.agg.Aggregate;
+import edu.washington.escience.myria.operator.agg.AggregationMode;
 import edu.washington.escience.myria.operator.agg.AggregatorFactory;
 import edu.washington.escience.myria.operator.agg.MultiGroupByAggregate;
 import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
@@ -50,6 +54,9 @@ import edu.washington.escience.myria.util.Tuple;
 
 public class AggregateTest {
 
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
   /**
    * Ensure that the given Schema matches the expected numeric aggregate types for the given Type.
    * 
@@ -905,6 +912,119 @@ public class AggregateTest {
     mga.close();
   }
 
+  @Test
+  public void testMultiGroupPartialFinalSpilled() throws DbException {
+    final int numTuples = 1000;
+    final Schema schema = Schema.ofFields(Type.INT_TYPE, "a", Type.INT_TYPE, "b", Type.LONG_TYPE, "c");
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    final Map<List<Integer>, long[]> expected = new HashMap<>();
+    for (int i = 0; i < numTuples; i++) {
+      tbb.putInt(0, i % 5);
+      tbb.putInt(1, i % 7);
+      tbb.putLong(2, i);
+      long[] sumAndCount = expected.get(ImmutableList.of(i % 5, i % 7));
+      if (sumAndCount == null) {
+        sumAndCount = new long[2];
+        expected.put(ImmutableList.of(i % 5, i % 7), sumAndCount);
+      }
+      sumAndCount[0] += i;
+      sumAndCount[1]++;
+    }
+
+    final int[] groupFields = new int[] { 0, 1 };
+    final AggregatorFactory factory = new SingleColumnAggregatorFactory(2, AggregationOp.SUM, AggregationOp.COUNT);
+    MultiGroupByAggregate partial =
+        new MultiGroupByAggregate(new TupleSource(tbb), groupFields, AggregationMode.PARTIAL, null, factory);
+    MultiGroupByAggregate mga =
+        new MultiGroupByAggregate(partial, groupFields, AggregationMode.FINAL, schema, factory);
+    Map<String, Object> envVars = TestEnvVars.get();
+    envVars.put(MyriaSystemConfigKeys.OPERATOR_HASH_TABLE_MAX_TUPLES, "3");
+    envVars.put(MyriaSystemConfigKeys.WORKING_DIRECTORY, tempFolder.getRoot().getAbsolutePath());
+    mga.open(envVars);
+    int numGroups = 0;
+    while (!mga.eos()) {
+      TupleBatch result = mga.nextReady();
+      if (result == null) {
+        continue;
+      }
+      assertEquals(4, result.numColumns());
+      for (int row = 0; row < result.numTuples(); ++row) {
+        long[] sumAndCount = expected.get(ImmutableList.of(result.getInt(0, row), result.getInt(1, row)));
+        assertNotNull(sumAndCount);
+        assertEquals(sumAndCount[0], result.getLong(2, row));
+        assertEquals(sumAndCount[1], result.getLong(3, row));
+        ++numGroups;
+      }
+    }
+    mga.close();
+    assertEquals(expected.size(), numGroups);
+  }
+
+  /**
+   * Checks the results of SUM(c) and AVG(c) grouped by a and b of the tuples (i % 5, i % 7, i) for i in [0, 1000).
+   *
+   * @param mga the aggregate.
+   * @param maxInMemoryGroups the number of groups above which the aggregate spills.
+   */
+  private void checkSumAndAvg(final MultiGroupByAggregate mga, final int maxInMemoryGroups) throws DbException {
+    final Map<List<Integer>, long[]> expected = new HashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      long[] sumAndCount = expected.get(ImmutableList.of(i % 5, i % 7));
+      if (sumAndCount == null) {
+        sumAndCount = new long[2];
+        expected.put(ImmutableList.of(i % 5, i % 7), sumAndCount);
+      }
+      sumAndCount[0] += i;
+      sumAndCount[1]++;
+    }
+    Map<String, Object> envVars = TestEnvVars.get();
+    envVars.put(MyriaSystemConfigKeys.OPERATOR_HASH_TABLE_MAX_TUPLES, String.valueOf(maxInMemoryGroups));
+    envVars.put(MyriaSystemConfigKeys.WORKING_DIRECTORY, tempFolder.getRoot().getAbsolutePath());
+    mga.open(envVars);
+    assertEquals(ImmutableList.of("a", "b", "sum_c", "avg_c"), mga.getSchema().getColumnNames());
+    int numGroups = 0;
+    while (!mga.eos()) {
+      TupleBatch result = mga.nextReady();
+      if (result == null) {
+        continue;
+      }
+      for (int row = 0; row < result.numTuples(); ++row) {
+        long[] sumAndCount = expected.get(ImmutableList.of(result.getInt(0, row), result.getInt(1, row)));
+        assertNotNull(sumAndCount);
+        assertEquals(sumAndCount[0], result.getLong(2, row));
+        assertEquals((double) sumAndCount[0] / sumAndCount[1], result.getDouble(3, row), 0.000001);
+        ++numGroups;
+      }
+    }
+    mga.close();
+    assertEquals(expected.size(), numGroups);
+  }
+
+  @Test
+  public void testMultiGroupSumAndAvgSameColumn() throws DbException {
+    /* Both aggregators keep the sum of c as a partial result. */
+    final Schema schema = Schema.ofFields(Type.INT_TYPE, "a", Type.INT_TYPE, "b", Type.LONG_TYPE, "c");
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < 1000; i++) {
+      tbb.putInt(0, i % 5);
+      tbb.putInt(1, i % 7);
+      tbb.putLong(2, i);
+    }
+    final int[] groupFields = new int[] { 0, 1 };
+    final AggregatorFactory[] factories =
+        new AggregatorFactory[] { new SingleColumnAggregatorFactory(2, AggregationOp.SUM),
+            new SingleColumnAggregatorFactory(2, AggregationOp.AVG) };
+
+    checkSumAndAvg(new MultiGroupByAggregate(new TupleSource(tbb), groupFields, factories), 1000);
+    checkSumAndAvg(new MultiGroupByAggregate(new TupleSource(tbb), groupFields, factories), 3);
+
+    final MultiGroupByAggregate partial =
+        new MultiGroupByAggregate(new TupleSource(tbb), groupFields, AggregationMode.PARTIAL, null, factories);
+    assertEquals(ImmutableList.of("a", "b", "agg0_sum_c", "agg1_count_c", "agg1_sum_c"), partial.getSchema()
+        .getColumnNames());
+    checkSumAndAvg(new MultiGroupByAggregate(partial, groupFields, AggregationMode.FINAL, schema, factories), 3);
+  }
+
   @Test(expected = ArithmeticException.class)
   public void testLongAggOverflow() throws Exception {
     LongColumnBuilder builder = new LongColumnBuilder().appendLong(Long.MAX_VALUE - 1).appendLong(3);
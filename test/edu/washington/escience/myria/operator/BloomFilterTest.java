@@ -0,0 +1,126 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.TestUtils;
+
+public class BloomFilterTest {
+
+  private static final int NUM_BITS = 1 << 16;
+  private static final int NUM_HASHES = 3;
+
+  private List<TupleBatch> drain(final Operator op) throws DbException {
+    List<TupleBatch> result = new ArrayList<TupleBatch>();
+    op.open(null);
+    while (!op.eos()) {
+      TupleBatch tb = op.nextReady();
+      if (tb != null) {
+        result.add(tb);
+      }
+    }
+    op.close();
+    return result;
+  }
+
+  @Test
+  public void testProbe() throws DbException {
+    /* The build side has the even keys below 2000. */
+    TupleBatchBuffer build = new TupleBatchBuffer(Schema.ofFields(Type.LONG_TYPE, "key"));
+    Set<Long> buildKeys = new HashSet<Long>();
+    for (long key = 0; key < 2000; key += 2) {
+      build.putLong(0, key);
+      buildKeys.add(key);
+    }
+    List<TupleBatch> filter =
+        drain(new BloomFilterBuilder(new TupleSource(build), new int[] { 0 }, NUM_BITS, NUM_HASHES));
+
+    /* The probe side has keys below 20000, in column 0. */
+    TupleBatchBuffer probe = TestUtils.generateRandomTuples(50000, 20000, false);
+    int numMatches = 0;
+    for (TupleBatch tb : probe.getAll()) {
+      for (int i = 0; i < tb.numTuples(); i++) {
+        if (buildKeys.contains(tb.getLong(0, i))) {
+          numMatches++;
+        }
+      }
+    }
+
+    int numKept = 0;
+    int numKeptMatches = 0;
+    for (TupleBatch tb : drain(new BloomFilterProbe(new TupleSource(probe), new TupleSource(filter,
+        BloomFilterBuilder.SCHEMA), new int[] { 0 }, NUM_BITS, NUM_HASHES))) {
+      for (int i = 0; i < tb.numTuples(); i++) {
+        numKept++;
+        if (buildKeys.contains(tb.getLong(0, i))) {
+          numKeptMatches++;
+        }
+      }
+    }
+
+    /* Every tuple with a join partner is kept, and few others are. */
+    assertEquals(numMatches, numKeptMatches);
+    assertTrue(numKept - numKeptMatches < (50000 - numMatches) / 10);
+  }
+
+  @Test
+  public void testEmptyBuildSide() throws DbException {
+    TupleBatchBuffer build = new TupleBatchBuffer(Schema.ofFields(Type.LONG_TYPE, "key"));
+    List<TupleBatch> filter =
+        drain(new BloomFilterBuilder(new TupleSource(build), new int[] { 0 }, NUM_BITS, NUM_HASHES));
+    assertEquals(0, filter.size());
+
+    TupleBatchBuffer probe = TestUtils.generateRandomTuples(5000, 2000, false);
+    assertEquals(0, drain(
+        new BloomFilterProbe(new TupleSource(probe), new TupleSource(filter, BloomFilterBuilder.SCHEMA),
+            new int[] { 0 }, NUM_BITS, NUM_HASHES)).size());
+  }
+
+  private void assertProbeFails(final List<TupleBatch> filter, final int numBits, final int numHashes) {
+    TupleBatchBuffer probe = TestUtils.generateRandomTuples(100, 100, false);
+    try {
+      drain(new BloomFilterProbe(new TupleSource(probe), new TupleSource(filter, BloomFilterBuilder.SCHEMA),
+          new int[] { 0 }, numBits, numHashes));
+      fail("Expecting the probe to reject the filter");
+    } catch (DbException e) {
+      /* Expected. */
+    }
+  }
+
+  @Test
+  public void testMismatchedFilter() throws DbException {
+    TupleBatchBuffer build = new TupleBatchBuffer(Schema.ofFields(Type.LONG_TYPE, "key"));
+    for (long key = 0; key < 100; ++key) {
+      build.putLong(0, key);
+    }
+    List<TupleBatch> filter =
+        drain(new BloomFilterBuilder(new TupleSource(build), new int[] { 0 }, NUM_BITS, NUM_HASHES));
+    assertTrue(filter.size() > 0);
+
+    assertProbeFails(filter, NUM_BITS * 2, NUM_HASHES);
+    assertProbeFails(filter, NUM_BITS, NUM_HASHES + 1);
+  }
+
+  @Test
+  public void testWordIndexOutOfRange() throws DbException {
+    TupleBatchBuffer filter = new TupleBatchBuffer(BloomFilterBuilder.SCHEMA);
+    filter.putInt(0, NUM_BITS / Long.SIZE);
+    filter.putLong(1, 1L);
+    filter.putInt(2, NUM_BITS);
+    filter.putInt(3, NUM_HASHES);
+    assertProbeFails(filter.getAll(), NUM_BITS, NUM_HASHES);
+  }
+}
@@ -0,0 +1,71 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.TestEnvVars;
+import edu.washington.escience.myria.util.TestUtils;
+
+public class ExternalOrderByTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private void checkSorted(final Map<String, Object> envVars) throws DbException {
+    TupleBatchBuffer randomTuples = TestUtils.generateRandomTuples(52300, 5000, false);
+
+    TupleSource child = new TupleSource(randomTuples);
+
+    ExternalOrderBy order = new ExternalOrderBy(child, new int[] { 0, 1 }, new boolean[] { true, true });
+    order.open(envVars);
+    TupleBatch tb;
+    final ArrayList<Entry<Long, String>> entries = new ArrayList<Entry<Long, String>>();
+    while (!order.eos()) {
+      tb = order.nextReady();
+      if (tb != null) {
+        for (int i = 0; i < tb.numTuples(); i++) {
+          entries.add(new SimpleEntry<Long, String>(tb.getLong(0, i), tb.getString(1, i)));
+        }
+      }
+    }
+    order.close();
+
+    assertEquals(52300, entries.size());
+
+    Comparator<Entry<Long, String>> comparator = new TestUtils.EntryComparator();
+    Entry<Long, String> previous = null;
+    for (Entry<Long, String> entry : entries) {
+      if (previous != null) {
+        assertTrue(comparator.compare(previous, entry) <= 0);
+      }
+      previous = entry;
+    }
+  }
+
+  @Test
+  public void testInMemory() throws DbException {
+    checkSorted(TestEnvVars.get());
+  }
+
+  @Test
+  public void testSpilledRuns() throws DbException {
+    Map<String, Object> envVars = TestEnvVars.get();
+    envVars.put(MyriaSystemConfigKeys.OPERATOR_SORT_MAX_TUPLES, "5000");
+    envVars.put(MyriaSystemConfigKeys.WORKING_DIRECTORY, tempFolder.getRoot().getAbsolutePath());
+    checkSorted(envVars);
+  }
+}
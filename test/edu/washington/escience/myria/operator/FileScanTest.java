@@ -1,12 +1,17 @@
 package edu.washington.escience.myria.operator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+import org.apache.commons.lang3.SerializationUtils;
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableList;
@@ -15,6 +20,7 @@ import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.io.ByteArraySource;
+import edu.washington.escience.myria.io.FileSource;
 import edu.washington.escience.myria.storage.TupleBatch;
 
 public class FileScanTest {
@@ -228,4 +234,127 @@ public class FileScanTest {
             Type.INT_TYPE, Type.INT_TYPE));
     assertEquals(100, getRowCount(filename, schema, '|'));
   }
+
+  /**
+   * @param fileScan the FileScan object to be tested.
+   * @return the rows of the file, each as the values of its columns joined by spaces.
+   * @throws DbException if the file does not match the given Schema.
+   */
+  private static List<String> getRows(final FileScan fileScan) throws DbException {
+    fileScan.open(null);
+    List<String> rows = new ArrayList<>();
+    while (!fileScan.eos()) {
+      TupleBatch tb = fileScan.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        StringBuilder sb = new StringBuilder();
+        for (int column = 0; column < tb.numColumns(); ++column) {
+          sb.append(tb.getObject(column, row)).append(' ');
+        }
+        rows.add(sb.toString());
+      }
+    }
+    fileScan.close();
+    return rows;
+  }
+
+  @Test
+  public void testParallelRandomCSV() throws Exception {
+    final FileSource source = new FileSource(Paths.get("testdata", "filescan", "random.csv").toString());
+    final Schema schema = new Schema(ImmutableList.of(Type.INT_TYPE, Type.INT_TYPE, Type.FLOAT_TYPE, Type.STRING_TYPE));
+    List<String> serial = getRows(new FileScan(source, schema, ' ', null, null, null));
+    List<String> ordered = getRows(new FileScan(source, schema, ' ', null, null, null, 4, true));
+    List<String> unordered = getRows(new FileScan(source, schema, ' ', null, null, null, 4, false));
+    assertEquals(10000, serial.size());
+    assertEquals(serial, ordered);
+    Collections.sort(serial);
+    Collections.sort(unordered);
+    assertEquals(serial, unordered);
+  }
+
+  @Test
+  public void testParallelEarlyClose() throws Exception {
+    final FileSource source = new FileSource(Paths.get("testdata", "filescan", "random.csv").toString());
+    final Schema schema = new Schema(ImmutableList.of(Type.INT_TYPE, Type.INT_TYPE, Type.FLOAT_TYPE, Type.STRING_TYPE));
+    final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+    final Thread.UncaughtExceptionHandler oldHandler = Thread.getDefaultUncaughtExceptionHandler();
+    Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+      @Override
+      public void uncaughtException(final Thread t, final Throwable e) {
+        errors.add(e);
+      }
+    });
+    try {
+      for (boolean ordered : new boolean[] { true, false }) {
+        /* Close the scans while their ranges are still being parsed. */
+        for (int i = 0; i < 10; ++i) {
+          FileScan fileScan = new FileScan(source, schema, ' ', null, null, null, 4, ordered);
+          fileScan.open(null);
+          fileScan.close();
+        }
+        FileScan fileScan = new FileScan(source, schema, ' ', null, null, null, 4, ordered);
+        fileScan.open(null);
+        while (fileScan.nextReady() == null) {
+          assertTrue(!fileScan.eos());
+        }
+        fileScan.close();
+      }
+      /* Let the parsers that were running finish. */
+      Thread.sleep(1000);
+    } finally {
+      Thread.setDefaultUncaughtExceptionHandler(oldHandler);
+    }
+    assertEquals(Collections.emptyList(), errors);
+  }
+
+  /**
+   * @return the rows read by all the splits of the input, which must be the rows of the whole input.
+   */
+  private static List<String> getRowsOfSplits(final FileScan fileScan, final int numSplits) throws DbException {
+    List<String> rows = new ArrayList<>();
+    for (int i = 0; i < numSplits; ++i) {
+      FileScan split = SerializationUtils.clone(fileScan);
+      split.setSplit(i, numSplits);
+      rows.addAll(getRows(split));
+    }
+    return rows;
+  }
+
+  @Test
+  public void testSplits() throws Exception {
+    final FileSource source = new FileSource(Paths.get("testdata", "filescan", "random.csv").toString());
+    final Schema schema = new Schema(ImmutableList.of(Type.INT_TYPE, Type.INT_TYPE, Type.FLOAT_TYPE, Type.STRING_TYPE));
+    final FileScan fileScan = new FileScan(source, schema, ' ', null, null, null);
+    assertTrue(fileScan.canSplit());
+    List<String> expected = getRows(fileScan);
+    Collections.sort(expected);
+    for (int numSplits : new int[] { 1, 2, 3, 7, 16 }) {
+      List<String> rows = getRowsOfSplits(fileScan, numSplits);
+      Collections.sort(rows);
+      assertEquals(expected, rows);
+    }
+  }
+
+  @Test
+  public void testSplitsAtEveryByte() throws Exception {
+    /* Lines of different lengths, so that the splits end at every position of a line. */
+    StringBuilder csv = new StringBuilder();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 30; ++i) {
+      csv.append(i * i * 37).append(',').append(i).append('\n');
+      expected.add(i * i * 37 + " " + i + " ");
+    }
+    final byte[] bytes = csv.toString().getBytes();
+    final Schema schema = Schema.ofFields(Type.LONG_TYPE, "a", Type.LONG_TYPE, "b");
+    final FileScan fileScan = new FileScan(new ByteArraySource(bytes), schema);
+    for (int numSplits = 1; numSplits <= bytes.length + 1; ++numSplits) {
+      List<String> rows = getRowsOfSplits(fileScan, numSplits);
+      Collections.sort(rows);
+      List<String> sorted = new ArrayList<>(expected);
+      Collections.sort(sorted);
+      assertEquals("split into " + numSplits, sorted, rows);
+    }
+  }
 }
@@ -0,0 +1,68 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.TestEnvVars;
+
+public class KeepMinValueTest {
+  private static final Schema SCHEMA = new Schema(ImmutableList.of(Type.LONG_TYPE, Type.LONG_TYPE), ImmutableList.of(
+      "id", "value"));
+
+  private static TupleBatch makeBatch(final long... idsAndValues) {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < idsAndValues.length; i += 2) {
+      tbb.putLong(0, idsAndValues[i]);
+      tbb.putLong(1, idsAndValues[i + 1]);
+    }
+    return tbb.popAny();
+  }
+
+  private static Map<Long, Long> toMap(final List<TupleBatch> tbs) {
+    Map<Long, Long> ret = Maps.newHashMap();
+    for (TupleBatch tb : tbs) {
+      for (int i = 0; i < tb.numTuples(); i++) {
+        assertEquals(null, ret.put(tb.getLong(0, i), tb.getLong(1, i)));
+      }
+    }
+    return ret;
+  }
+
+  @Test
+  public void testUpdateIteration() throws DbException {
+    KeepMinValue state = new KeepMinValue(new int[] { 0 }, 1);
+    StreamingStateWrapper keepMin =
+        new StreamingStateWrapper(new TupleSource(ImmutableList.of(makeBatch(0, 5, 1, 5))), state);
+    keepMin.open(TestEnvVars.get());
+    while (!keepMin.eos()) {
+      keepMin.nextReady();
+    }
+
+    /* Key 0 does not improve, key 1 improves twice, keys 2 and 3 are new. */
+    List<TupleBatch> delta =
+        state.updateIteration(ImmutableList.of(makeBatch(0, 7, 1, 3, 2, 4), makeBatch(1, 2, 2, 6, 3, 1, 3, 0)));
+    Map<Long, Long> expectedDelta = Maps.newHashMap();
+    expectedDelta.put(1L, 2L);
+    expectedDelta.put(2L, 4L);
+    expectedDelta.put(3L, 0L);
+    assertEquals(expectedDelta, toMap(delta));
+
+    Map<Long, Long> expectedState = Maps.newHashMap(expectedDelta);
+    expectedState.put(0L, 5L);
+    assertEquals(expectedState, toMap(state.exportState()));
+    assertEquals(4, state.getTable().numTuples());
+    keepMin.close();
+  }
+}
@@ -1,11 +1,13 @@
 package edu.washington.escience.myria.operator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
 import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.util.TestEnvVars;
 import edu.washington.escience.myria.util.TestUtils;
@@ -30,4 +32,18 @@ public class LimitTest {
     limiter.close();
     assertEquals(limit, count);
   }
+
+  @Test
+  public void testStopsChild() throws DbException {
+    TupleRangeSource source = new TupleRangeSource(5 * TupleBatch.BATCH_SIZE, Type.LONG_TYPE);
+    Limit limiter = new Limit(3L, source);
+    limiter.open(TestEnvVars.get());
+    TupleBatch tb = limiter.nextReady();
+    assertEquals(3, tb.numTuples());
+    /* The source is stopped as soon as the limit is satisfied, instead of being drained. */
+    assertTrue(source.eos());
+    assertNull(limiter.nextReady());
+    assertTrue(limiter.eos());
+    limiter.close();
+  }
 }
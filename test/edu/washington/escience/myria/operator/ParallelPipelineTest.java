@@ -0,0 +1,77 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.operator.failures.InjectedFailureException;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.TestEnvVars;
+import edu.washington.escience.myria.util.TestUtils;
+
+public class ParallelPipelineTest {
+  @Test
+  public void testAllMorselsProcessed() throws DbException {
+    final int total = 5 * TupleBatch.BATCH_SIZE + 7;
+    TupleSource source = new TupleSource(TestUtils.range(total));
+    Operator pipeline = new Limit(Long.MAX_VALUE, new MorselSource(source.getSchema()));
+    ParallelPipeline parallel = new ParallelPipeline(source, pipeline, 4);
+    parallel.open(TestEnvVars.get());
+    long count = 0;
+    long sum = 0;
+    while (!parallel.eos()) {
+      TupleBatch tb = parallel.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      count += tb.numTuples();
+      for (int i = 0; i < tb.numTuples(); ++i) {
+        sum += tb.getInt(0, i);
+      }
+    }
+    parallel.close();
+    assertEquals(total, count);
+    assertEquals((long) total * (total - 1) / 2, sum);
+  }
+
+  /** Fails on the morsel that holds 0, and passes the others through. */
+  private static final class FailOnZero extends UnaryOperator {
+    /** Required for Java serialization. */
+    private static final long serialVersionUID = 1L;
+
+    FailOnZero(final Operator child) {
+      super(child);
+    }
+
+    @Override
+    protected TupleBatch fetchNextReady() throws DbException {
+      final TupleBatch tb = getChild().nextReady();
+      if (tb != null && tb.getInt(0, 0) == 0) {
+        throw new InjectedFailureException("Failure injected by " + getOpName());
+      }
+      return tb;
+    }
+
+    @Override
+    protected Schema generateSchema() {
+      return getChild().getSchema();
+    }
+  }
+
+  @Test(expected = DbException.class)
+  public void testCopyFails() throws DbException {
+    /* The other copies finish successfully, but the results are incomplete. */
+    TupleSource source = new TupleSource(TestUtils.range(5 * TupleBatch.BATCH_SIZE));
+    ParallelPipeline parallel = new ParallelPipeline(source, new FailOnZero(new MorselSource(source.getSchema())), 4);
+    parallel.open(TestEnvVars.get());
+    try {
+      while (!parallel.eos()) {
+        parallel.nextReady();
+      }
+    } finally {
+      parallel.close();
+    }
+  }
+}
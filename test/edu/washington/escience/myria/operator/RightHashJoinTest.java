@@ -2,9 +2,14 @@ package edu.washington.escience.myria.operator;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.Map;
+
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.util.JoinTestUtils;
@@ -12,6 +17,9 @@ import edu.washington.escience.myria.util.TestEnvVars;
 
 public class RightHashJoinTest {
 
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
   @Test
   public void testRightHashJoin() throws DbException {
     TupleSource left = new TupleSource(JoinTestUtils.leftInput);
@@ -31,6 +39,27 @@ public class RightHashJoinTest {
     assertEquals(5L, count);
   }
 
+  @Test
+  public void testRightHashJoinSpilled() throws DbException {
+    TupleSource left = new TupleSource(JoinTestUtils.leftInput);
+    TupleSource right = new TupleSource(JoinTestUtils.rightInput);
+    Operator join = new RightHashJoin(left, right, new int[] { 0, 1, 2 }, new int[] { 1, 2, 0 });
+    Map<String, Object> envVars = TestEnvVars.get();
+    envVars.put(MyriaSystemConfigKeys.OPERATOR_HASH_TABLE_MAX_TUPLES, "1");
+    envVars.put(MyriaSystemConfigKeys.WORKING_DIRECTORY, tempFolder.getRoot().getAbsolutePath());
+    join.open(envVars);
+    long count = 0;
+    while (!join.eos()) {
+      TupleBatch tb = join.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      count += tb.numTuples();
+    }
+    join.close();
+    assertEquals(5L, count);
+  }
+
   @Test(expected = IllegalStateException.class)
   public void testIncompatibleJoinKeys() throws DbException {
     TupleSource left = new TupleSource(JoinTestUtils.leftInput);
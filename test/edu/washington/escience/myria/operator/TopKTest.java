@@ -0,0 +1,69 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.TestUtils;
+
+public class TopKTest {
+
+  private void checkTopK(final int numTuples, final int k) throws DbException {
+    TupleBatchBuffer randomTuples = TestUtils.generateRandomTuples(numTuples, 5000, false);
+
+    final List<Entry<Long, String>> expected = new ArrayList<Entry<Long, String>>();
+    for (TupleBatch tb : randomTuples.getAll()) {
+      for (int i = 0; i < tb.numTuples(); i++) {
+        expected.add(new SimpleEntry<Long, String>(tb.getLong(0, i), tb.getString(1, i)));
+      }
+    }
+    Collections.sort(expected, new TestUtils.EntryComparator());
+
+    TopK topK = new TopK(new TupleSource(randomTuples), new int[] { 0, 1 }, new boolean[] { true, true }, k);
+    topK.open(null);
+    TupleBatch tb;
+    final List<Entry<Long, String>> entries = new ArrayList<Entry<Long, String>>();
+    while (!topK.eos()) {
+      tb = topK.nextReady();
+      if (tb != null) {
+        for (int i = 0; i < tb.numTuples(); i++) {
+          entries.add(new SimpleEntry<Long, String>(tb.getLong(0, i), tb.getString(1, i)));
+        }
+      }
+    }
+    topK.close();
+
+    assertEquals(expected.subList(0, Math.min(k, numTuples)), entries);
+  }
+
+  @Test
+  public void testTopK() throws DbException {
+    checkTopK(52300, 100);
+  }
+
+  @Test
+  public void testFewerTuplesThanK() throws DbException {
+    checkTopK(50, 100);
+  }
+
+  @Test
+  public void testHugeK() throws DbException {
+    /* The heap grows with the input, so a huge K does not allocate K rows up front. */
+    checkTopK(1000, Integer.MAX_VALUE);
+    checkTopK(30000, 20000);
+  }
+
+  @Test
+  public void testZero() throws DbException {
+    checkTopK(500, 0);
+  }
+}
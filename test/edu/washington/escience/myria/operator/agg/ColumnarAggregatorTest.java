@@ -0,0 +1,157 @@
+package edu.washington.escience.myria.operator.agg;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+/**
+ * Checks that the columnar paths of the aggregators, {@link Aggregator#add} over a {@link TupleBatch} and
+ * {@link GroupedStates#addRows}, give the same results as adding the rows one at a time.
+ */
+public class ColumnarAggregatorTest {
+
+  private static final Schema SCHEMA = Schema.ofFields("i", Type.INT_TYPE, "l", Type.LONG_TYPE, "f", Type.FLOAT_TYPE,
+      "d", Type.DOUBLE_TYPE);
+  private static final int NUM_TUPLES = 5000;
+  private static final int NUM_GROUPS = 37;
+  private static final AggregationOp[] ALL_OPS = new AggregationOp[] { AggregationOp.COUNT, AggregationOp.SUM,
+      AggregationOp.MIN, AggregationOp.MAX, AggregationOp.AVG, AggregationOp.STDEV };
+
+  /**
+   * A batch of random values. The ints are large enough that their sums overflow an int, but small enough that the sums
+   * of their squares fit in a long.
+   */
+  private static TupleBatch randomBatch(final Random random) {
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int row = 0; row < NUM_TUPLES; ++row) {
+      tbb.putInt(0, random.nextInt(1 << 25) - (1 << 24));
+      tbb.putLong(1, random.nextInt(2000000) - 1000000L);
+      tbb.putFloat(2, random.nextFloat() * 1000 - 500);
+      tbb.putDouble(3, random.nextGaussian() * 1e6);
+    }
+    return tbb.popAny();
+  }
+
+  /** A batch, and another batch with a selection vector that keeps some of its rows. */
+  private static List<TupleBatch> batches() {
+    final Random random = new Random(7);
+    final TupleBatch tb = randomBatch(random);
+    final BitSet keep = new BitSet(tb.numTuples());
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      keep.set(row, random.nextInt(3) != 0);
+    }
+    final List<TupleBatch> batches = new ArrayList<TupleBatch>();
+    batches.add(tb);
+    batches.add(randomBatch(random).filter(keep));
+    return batches;
+  }
+
+  /** The aggregators of all ops over each column of {@link #SCHEMA}. */
+  private static List<Aggregator> aggregators() {
+    final List<Aggregator> aggregators = new ArrayList<Aggregator>();
+    aggregators.add(new IntegerAggregator("i", ALL_OPS, 0));
+    aggregators.add(new LongAggregator("l", ALL_OPS, 1));
+    aggregators.add(new FloatAggregator("f", ALL_OPS, 2));
+    aggregators.add(new DoubleAggregator("d", ALL_OPS, 3));
+    aggregators.add(new CountAllAggregator());
+    return aggregators;
+  }
+
+  /** @return all values of the tuples in the buffer, in order. */
+  private static List<Object> values(final TupleBatchBuffer tbb) {
+    final List<Object> values = new ArrayList<Object>();
+    for (TupleBatch tb : tbb.getAll()) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        for (int column = 0; column < tb.numColumns(); ++column) {
+          values.add(tb.getObject(column, row));
+        }
+      }
+    }
+    return values;
+  }
+
+  /** Doubles are compared up to rounding. */
+  private static void assertSameResults(final String message, final List<Object> expected, final List<Object> actual) {
+    assertEquals(message, expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); ++i) {
+      if (expected.get(i) instanceof Double) {
+        final double value = (Double) expected.get(i);
+        assertEquals(message, value, (Double) actual.get(i), Math.abs(value) * 1e-12);
+      } else {
+        assertEquals(message, expected.get(i), actual.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void testAdd() throws DbException {
+    final List<TupleBatch> batches = batches();
+    for (Aggregator aggregator : aggregators()) {
+      final Object columnar = aggregator.getInitialState();
+      final Object rowAtATime = aggregator.getInitialState();
+      for (TupleBatch tb : batches) {
+        aggregator.add(tb, columnar);
+        for (int row = 0; row < tb.numTuples(); ++row) {
+          aggregator.addRow(tb, row, rowAtATime);
+        }
+      }
+      final TupleBatchBuffer expected = new TupleBatchBuffer(aggregator.getResultSchema());
+      aggregator.getResult(expected, 0, rowAtATime);
+      final TupleBatchBuffer actual = new TupleBatchBuffer(aggregator.getResultSchema());
+      aggregator.getResult(actual, 0, columnar);
+      assertSameResults(aggregator.getResultSchema().toString(), values(expected), values(actual));
+    }
+  }
+
+  @Test
+  public void testAddRows() throws DbException {
+    final List<TupleBatch> batches = batches();
+    final Random random = new Random(11);
+    final List<int[]> groups = new ArrayList<int[]>();
+    for (TupleBatch tb : batches) {
+      final int[] batchGroups = new int[tb.numTuples()];
+      for (int row = 0; row < batchGroups.length; ++row) {
+        /* Groups are skewed, and are first seen in no particular order. */
+        batchGroups[row] = Math.min(random.nextInt(NUM_GROUPS), random.nextInt(NUM_GROUPS));
+      }
+      groups.add(batchGroups);
+    }
+
+    for (Aggregator aggregator : aggregators()) {
+      final GroupedStates columnar = aggregator.newGroupedStates();
+      final GroupedStates rowAtATime = aggregator.newGroupedStates();
+      for (int i = 0; i < batches.size(); ++i) {
+        final TupleBatch tb = batches.get(i);
+        columnar.addRows(tb, groups.get(i));
+        for (int row = 0; row < tb.numTuples(); ++row) {
+          rowAtATime.addRow(tb, row, groups.get(i)[row]);
+        }
+      }
+      final TupleBatchBuffer expected = new TupleBatchBuffer(aggregator.getResultSchema());
+      final TupleBatchBuffer actual = new TupleBatchBuffer(aggregator.getResultSchema());
+      final TupleBatchBuffer expectedPartial = new TupleBatchBuffer(rowAtATime.getPartialSchema());
+      final TupleBatchBuffer actualPartial = new TupleBatchBuffer(columnar.getPartialSchema());
+      for (int group = 0; group < NUM_GROUPS; ++group) {
+        rowAtATime.getResult(expected, 0, group);
+        columnar.getResult(actual, 0, group);
+        rowAtATime.getPartialResult(expectedPartial, 0, group);
+        columnar.getPartialResult(actualPartial, 0, group);
+      }
+      final String message = aggregator.getResultSchema().toString();
+      assertSameResults(message, values(expected), values(actual));
+      assertSameResults(message, values(expectedPartial), values(actualPartial));
+    }
+  }
+}
@@ -51,6 +51,7 @@ import edu.washington.escience.myria.expression.WorkerIdExpression;
 import edu.washington.escience.myria.expression.evaluate.ConstantEvaluator;
 import edu.washington.escience.myria.expression.evaluate.ExpressionOperatorParameter;
 import edu.washington.escience.myria.expression.evaluate.GenericEvaluator;
+import edu.washington.escience.myria.expression.evaluate.VectorizedEvaluator;
 import edu.washington.escience.myria.operator.Apply;
 import edu.washington.escience.myria.operator.TupleSource;
 import edu.washington.escience.myria.storage.TupleBatch;
@@ -233,6 +234,8 @@ public class ApplyTest {
 
       GenericEvaluator eval = new GenericEvaluator(expr, parameters);
       assertTrue(eval.needsCompiling());
+      GenericEvaluator vectorized = new VectorizedEvaluator(expr, parameters);
+      assertTrue(vectorized.getJavaExpressionWithAppend().contains("result[row] = (col2[row]%col1[row]);"));
       Expressions.add(expr);
     }
 
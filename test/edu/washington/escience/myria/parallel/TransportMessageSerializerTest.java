@@ -0,0 +1,93 @@
+package edu.washington.escience.myria.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import edu.washington.escience.myria.parallel.TransportMessageSerializer.Compression;
+import edu.washington.escience.myria.proto.TransportProto.TransportMessage;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.IPCUtils;
+import edu.washington.escience.myria.util.TestUtils;
+
+public class TransportMessageSerializerTest {
+
+  /** The first byte of a deflated message. */
+  private static final byte FORMAT_DEFLATED_PROTOBUF = 1;
+  /** The first byte of an uncompressed protobuf message. */
+  private static final byte FORMAT_PROTOBUF = 0;
+
+  /** Serialize the batch, copy it as if it was sent over the network, and deserialize it. */
+  private static TupleBatch roundTrip(final TransportMessageSerializer serializer, final TupleBatch tb,
+      final byte expectedFormat) throws Exception {
+    ChannelBuffer received = ChannelBuffers.copiedBuffer(serializer.serialize(tb));
+    assertEquals(expectedFormat, received.getByte(0));
+    Object message = serializer.deSerialize(received, null, tb.getSchema());
+    assertTrue(message instanceof TransportMessage);
+    return IPCUtils.tmToTupleBatch(((TransportMessage) message).getDataMessage(), tb.getSchema());
+  }
+
+  private static void assertSameTuples(final TupleBatch expected, final TupleBatch actual) {
+    assertEquals(expected.getSchema().getColumnTypes(), actual.getSchema().getColumnTypes());
+    assertEquals(expected.numTuples(), actual.numTuples());
+    for (int column = 0; column < expected.numColumns(); ++column) {
+      for (int row = 0; row < expected.numTuples(); ++row) {
+        assertEquals(expected.getObject(column, row), actual.getObject(column, row));
+      }
+    }
+  }
+
+  @Test
+  public void testDeflateRoundTrip() throws Exception {
+    TransportMessageSerializer serializer = new TransportMessageSerializer(Compression.DEFLATE);
+    /* Repeated small values compress well. */
+    TupleBatch tb = TestUtils.generateRandomTuples(TupleBatch.BATCH_SIZE, 100, false).popAny();
+    /* Reuse the pooled codecs several times, and again once they are released. */
+    for (int i = 0; i < 3; ++i) {
+      assertSameTuples(tb, roundTrip(serializer, tb, FORMAT_DEFLATED_PROTOBUF));
+    }
+    TransportMessageSerializer.releaseIdleCodecs();
+    assertSameTuples(tb, roundTrip(serializer, tb, FORMAT_DEFLATED_PROTOBUF));
+  }
+
+  @Test
+  public void testSmallBatchNotCompressed() throws Exception {
+    TransportMessageSerializer serializer = new TransportMessageSerializer(Compression.DEFLATE);
+    TupleBatch tb = TestUtils.generateRandomTuples(10, 100, false).popAny();
+    assertSameTuples(tb, roundTrip(serializer, tb, FORMAT_PROTOBUF));
+  }
+
+  @Test
+  public void testConcurrentDeflate() throws Exception {
+    final TransportMessageSerializer serializer = new TransportMessageSerializer(Compression.DEFLATE);
+    final TupleBatch tb = TestUtils.generateRandomTuples(TupleBatch.BATCH_SIZE, 100, false).popAny();
+    /* More threads than idle codecs are kept. */
+    final Thread[] threads = new Thread[2 * Runtime.getRuntime().availableProcessors() + 1];
+    final Throwable[] errors = new Throwable[threads.length];
+    for (int t = 0; t < threads.length; ++t) {
+      final int index = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 10; ++i) {
+              assertSameTuples(tb, roundTrip(serializer, tb, FORMAT_DEFLATED_PROTOBUF));
+            }
+          } catch (Throwable e) {
+            errors[index] = e;
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (int t = 0; t < threads.length; ++t) {
+      threads[t].join();
+      if (errors[t] != null) {
+        throw new AssertionError(errors[t]);
+      }
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package edu.washington.escience.myria.parallel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class TupleBatchWireFormatTest {
+
+  /** A column of each type. */
+  private static final Schema SCHEMA = new Schema(ImmutableList.of(Type.INT_TYPE, Type.LONG_TYPE, Type.FLOAT_TYPE,
+      Type.DOUBLE_TYPE, Type.BOOLEAN_TYPE, Type.STRING_TYPE, Type.DATETIME_TYPE), ImmutableList.of("i", "l", "f", "d",
+      "b", "s", "t"));
+
+  private static TupleBatch generateTupleBatch(final int numTuples) {
+    Random rand = new Random(numTuples);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < numTuples; ++i) {
+      tbb.putInt(0, rand.nextInt());
+      tbb.putLong(1, rand.nextLong());
+      tbb.putFloat(2, rand.nextFloat());
+      tbb.putDouble(3, rand.nextDouble());
+      tbb.putBoolean(4, rand.nextBoolean());
+      /* Include empty and non-ASCII strings. */
+      tbb.putString(5, i % 7 == 0 ? "" : "s\u00e9" + rand.nextInt(100));
+      tbb.putDateTime(6, new DateTime(rand.nextInt() * 1000L));
+    }
+    return tbb.popAny();
+  }
+
+  /** Encode the batch, copy it as if it was sent over the network, and decode it. */
+  private static TupleBatch roundTrip(final TupleBatch tb, final Schema schema) {
+    ChannelBuffer received = ChannelBuffers.copiedBuffer(TupleBatchWireFormat.encode(tb));
+    TupleBatch decoded = TupleBatchWireFormat.decode(received, schema);
+    assertEquals(0, received.readableBytes());
+    return decoded;
+  }
+
+  private static void assertSameTuples(final TupleBatch expected, final TupleBatch actual) {
+    assertEquals(expected.getSchema().getColumnTypes(), actual.getSchema().getColumnTypes());
+    assertEquals(expected.numTuples(), actual.numTuples());
+    for (int column = 0; column < expected.numColumns(); ++column) {
+      for (int row = 0; row < expected.numTuples(); ++row) {
+        assertEquals(expected.getObject(column, row), actual.getObject(column, row));
+      }
+    }
+  }
+
+  @Test
+  public void testAllTypes() {
+    TupleBatch tb = generateTupleBatch(TupleBatch.BATCH_SIZE);
+    TupleBatch decoded = roundTrip(tb, SCHEMA);
+    assertEquals(SCHEMA, decoded.getSchema());
+    assertSameTuples(tb, decoded);
+    /* Without a schema, the columns are named by their position. */
+    assertSameTuples(tb, roundTrip(tb, null));
+  }
+
+  @Test
+  public void testEmptyBatch() {
+    TupleBatch tb = generateTupleBatch(10).filter(new BitSet());
+    assertEquals(0, tb.numTuples());
+    assertSameTuples(tb, roundTrip(tb, SCHEMA));
+  }
+
+  @Test
+  public void testFilteredAndPrefix() {
+    TupleBatch tb = generateTupleBatch(1000);
+    BitSet rows = new BitSet();
+    for (int i = 0; i < tb.numTuples(); i += 3) {
+      rows.set(i);
+    }
+    TupleBatch filtered = tb.filter(rows);
+    assertSameTuples(filtered, roundTrip(filtered, SCHEMA));
+    TupleBatch prefix = tb.prefix(100);
+    assertSameTuples(prefix, roundTrip(prefix, SCHEMA));
+    TupleBatch filteredPrefix = filtered.prefix(50);
+    assertSameTuples(filteredPrefix, roundTrip(filteredPrefix, SCHEMA));
+  }
+
+  @Test
+  public void testRowHashesNotSent() {
+    TupleBatch tb = generateTupleBatch(1000);
+    int[] hashColumns = new int[] { 1, 5 };
+    int[] hashes = tb.getRowHashes(hashColumns);
+    long sizeWithoutHashes = TupleBatchWireFormat.encode(generateTupleBatch(1000)).readableBytes();
+    assertEquals(sizeWithoutHashes, TupleBatchWireFormat.encode(tb).readableBytes());
+
+    /* The receiver recomputes the same hashes, also for the rows of a filtered batch. */
+    TupleBatch decoded = roundTrip(tb, SCHEMA);
+    assertNull(decoded.getRowHashColumns());
+    assertArrayEquals(hashes, decoded.getRowHashes(hashColumns));
+    BitSet rows = new BitSet();
+    rows.set(10, 500);
+    TupleBatch filtered = tb.filter(rows);
+    assertArrayEquals(filtered.getRowHashes(hashColumns), roundTrip(filtered, SCHEMA).getRowHashes(hashColumns));
+  }
+
+  @Test
+  public void testSchemaMismatch() {
+    TupleBatch tb = generateTupleBatch(10);
+    try {
+      roundTrip(tb, Schema.ofFields(Type.INT_TYPE, "i", Type.LONG_TYPE, "l"));
+      fail("Expecting a batch with too many columns to be rejected");
+    } catch (IllegalArgumentException e) {
+      /* Expected. */
+    }
+    try {
+      roundTrip(tb, new Schema(ImmutableList.of(Type.INT_TYPE, Type.LONG_TYPE, Type.FLOAT_TYPE, Type.DOUBLE_TYPE,
+          Type.BOOLEAN_TYPE, Type.LONG_TYPE, Type.DATETIME_TYPE)));
+      fail("Expecting a column of the wrong type to be rejected");
+    } catch (IllegalArgumentException e) {
+      /* Expected. */
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package edu.washington.escience.myria.parallel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Joiner;
+
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.accessmethod.SQLiteAccessMethod;
+import edu.washington.escience.myria.accessmethod.SQLiteInfo;
+import edu.washington.escience.myria.api.MyriaJsonMapperProvider;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class WorkerDataServerTest {
+
+  private static final Schema SCHEMA = Schema.ofFields("id", Type.LONG_TYPE, "name", Type.STRING_TYPE);
+  private static final RelationKey RELATION = RelationKey.of("test", "workerdata", "stored");
+  private static final int NUM_TUPLES = 2500;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private WorkerDataServer server;
+  private int port;
+
+  @Before
+  public void setUp() throws Exception {
+    final SQLiteInfo sqliteInfo = SQLiteInfo.of(new File(tempFolder.getRoot(), "worker.db").getAbsolutePath());
+    final SQLiteAccessMethod accessMethod = new SQLiteAccessMethod(sqliteInfo, false);
+    try {
+      accessMethod.createTableIfNotExists(RELATION, SCHEMA);
+      final TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+      for (long i = 0; i < NUM_TUPLES; ++i) {
+        tbb.putLong(0, i);
+        tbb.putString(1, "name" + i);
+      }
+      while (tbb.numTuples() > 0) {
+        accessMethod.tupleBatchInsert(RELATION, tbb.popAny());
+      }
+    } finally {
+      accessMethod.close();
+    }
+
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    server = new WorkerDataServer(port, sqliteInfo);
+    server.start();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop();
+  }
+
+  /** @return a connection for the relation with the given schema parameter and format. */
+  private HttpURLConnection request(final String schema, final String format) throws IOException {
+    final String query =
+        Joiner.on('&').join("user=" + RELATION.getUserName(), "program=" + RELATION.getProgramName(),
+            "relation=" + RELATION.getRelationName(), "schema=" + URLEncoder.encode(schema, "UTF-8"),
+            "format=" + format);
+    return (HttpURLConnection) new URL("http://localhost:" + port + WorkerDataServer.DATA_PATH + "?" + query)
+        .openConnection();
+  }
+
+  /** @return the body of a successful response. */
+  private static String body(final HttpURLConnection conn) throws IOException {
+    assertEquals(HttpURLConnection.HTTP_OK, conn.getResponseCode());
+    try (InputStream in = conn.getInputStream()) {
+      return IOUtils.toString(in, "UTF-8");
+    } finally {
+      conn.disconnect();
+    }
+  }
+
+  private static String schemaJson() throws IOException {
+    return MyriaJsonMapperProvider.getMapper().writeValueAsString(SCHEMA);
+  }
+
+  @Test
+  public void testCsv() throws Exception {
+    final String[] lines = body(request(schemaJson(), "csv")).split("\r\n");
+    assertEquals(NUM_TUPLES + 1, lines.length);
+    assertEquals("id,name", lines[0]);
+    assertEquals("0,name0", lines[1]);
+    assertEquals((NUM_TUPLES - 1) + ",name" + (NUM_TUPLES - 1), lines[NUM_TUPLES]);
+  }
+
+  @Test
+  public void testJson() throws Exception {
+    final List<?> tuples = MyriaJsonMapperProvider.getMapper().readValue(body(request(schemaJson(), "json")),
+        List.class);
+    assertEquals(NUM_TUPLES, tuples.size());
+    final Map<?, ?> first = (Map<?, ?>) tuples.get(0);
+    assertEquals(0, ((Number) first.get("id")).longValue());
+    assertEquals("name0", first.get("name"));
+  }
+
+  @Test
+  public void testBadFormat() throws Exception {
+    final HttpURLConnection conn = request(schemaJson(), "xml");
+    assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, conn.getResponseCode());
+    conn.disconnect();
+  }
+
+  @Test
+  public void testBadSchema() throws Exception {
+    final HttpURLConnection conn = request("{\"columnTypes\": [", "csv");
+    assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, conn.getResponseCode());
+    conn.disconnect();
+  }
+}
@@ -0,0 +1,99 @@
+package edu.washington.escience.myria.profiling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ProfilingRingBufferTest {
+
+  private static final int CAPACITY = 8;
+
+  /** Writes one record whose first long is the given value, and returns false if it was dropped. */
+  private static boolean write(final ProfilingRingBuffer buffer, final long value) {
+    final int offset = buffer.claim();
+    if (offset < 0) {
+      return false;
+    }
+    buffer.slots()[offset] = value;
+    buffer.publish();
+    return true;
+  }
+
+  /** Reads all the records and checks that their first longs are first, first + 1, ..., and returns the next one. */
+  private static long drain(final ProfilingRingBuffer buffer, final long first) {
+    long expected = first;
+    for (int offset = buffer.peek(); offset >= 0; offset = buffer.peek()) {
+      assertEquals(expected, buffer.slots()[offset]);
+      buffer.release();
+      ++expected;
+    }
+    return expected;
+  }
+
+  @Test
+  public void testDrainInOrder() {
+    final ProfilingRingBuffer buffer = new ProfilingRingBuffer(CAPACITY, Thread.currentThread());
+    assertEquals(-1, buffer.peek());
+    for (long i = 0; i < CAPACITY / 2; ++i) {
+      assertTrue(write(buffer, i));
+    }
+    assertEquals(CAPACITY / 2, drain(buffer, 0));
+    assertEquals(-1, buffer.peek());
+    assertEquals(0, buffer.dropped());
+  }
+
+  @Test
+  public void testFullBufferDrops() {
+    final ProfilingRingBuffer buffer = new ProfilingRingBuffer(CAPACITY, Thread.currentThread());
+    for (long i = 0; i < CAPACITY; ++i) {
+      assertTrue(write(buffer, i));
+    }
+    assertFalse(write(buffer, CAPACITY));
+    assertFalse(write(buffer, CAPACITY));
+    assertEquals(2, buffer.dropped());
+    assertEquals(CAPACITY, drain(buffer, 0));
+
+    /* Once drained, there is room again. */
+    assertTrue(write(buffer, CAPACITY));
+    assertEquals(CAPACITY + 1, drain(buffer, CAPACITY));
+    assertEquals(2, buffer.dropped());
+  }
+
+  @Test
+  public void testWraparound() {
+    final ProfilingRingBuffer buffer = new ProfilingRingBuffer(CAPACITY, Thread.currentThread());
+    /* Write and drain batches whose size is coprime with the capacity, so that the records wrap around at every
+     * position of the buffer. */
+    final int batch = CAPACITY - 1;
+    long next = 0;
+    long read = 0;
+    for (int round = 0; round < 5 * CAPACITY; ++round) {
+      for (int i = 0; i < batch; ++i) {
+        assertTrue(write(buffer, next++));
+      }
+      read = drain(buffer, read);
+      assertEquals(next, read);
+    }
+    assertEquals(0, buffer.dropped());
+  }
+
+  @Test
+  public void testOwnerDead() throws InterruptedException {
+    final ProfilingRingBuffer[] buffer = new ProfilingRingBuffer[1];
+    final Thread owner = new Thread() {
+      @Override
+      public void run() {
+        buffer[0] = new ProfilingRingBuffer(CAPACITY, this);
+        write(buffer[0], 0);
+      }
+    };
+    assertFalse(new ProfilingRingBuffer(CAPACITY, Thread.currentThread()).isOwnerDead());
+    owner.start();
+    owner.join();
+    assertTrue(buffer[0].isOwnerDead());
+    /* The records written before the thread ended can still be read. */
+    assertEquals(1, drain(buffer[0], 0));
+  }
+}
@@ -0,0 +1,132 @@
+package edu.washington.escience.myria.storage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+
+public class JoinHashTableTest {
+
+  /** A batch of one tuple (key, payload), with a key of the type of the first column of the schema. */
+  private static TupleBatch tuple(final Schema schema, final long key, final long payload) {
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    switch (schema.getColumnType(0)) {
+      case INT_TYPE:
+        tbb.putInt(0, (int) key);
+        break;
+      case LONG_TYPE:
+        tbb.putLong(0, key);
+        break;
+      case STRING_TYPE:
+        tbb.putString(0, "key" + key);
+        break;
+      default:
+        throw new IllegalArgumentException(schema.getColumnType(0).toString());
+    }
+    tbb.putLong(1, payload);
+    return tbb.popAny();
+  }
+
+  /** @return the payloads of the stored tuples whose key equals the probing key, in the order they were added. */
+  private static List<Long> matches(final JoinHashTable table, final Schema schema, final long key, final int hash) {
+    final TupleBatch probe = tuple(schema, key, 0);
+    final int[] compareColumns = new int[] { 0 };
+    final List<Long> payloads = new ArrayList<Long>();
+    for (int index = table.firstMatch(probe, compareColumns, 0, hash); index != JoinHashTable.NONE; index =
+        table.nextMatch(probe, compareColumns, 0, index)) {
+      payloads.add(table.getData().getLong(1, index));
+    }
+    return payloads;
+  }
+
+  /**
+   * Adds the given number of keys, each twice, with the hash key / hashDivisor, and checks that every key finds its two
+   * tuples and nothing else.
+   */
+  private static void checkTable(final Type keyType, final int numKeys, final int hashDivisor) {
+    final Schema schema = Schema.ofFields("key", keyType, "payload", Type.LONG_TYPE);
+    final JoinHashTable table = new JoinHashTable(schema, new int[] { 0 });
+    for (int copy = 0; copy < 2; ++copy) {
+      for (int key = 0; key < numKeys; ++key) {
+        table.add(tuple(schema, key, copy * numKeys + key), 0, key / hashDivisor);
+      }
+    }
+    assertEquals(2 * numKeys, table.numTuples());
+    for (int key = 0; key < numKeys; ++key) {
+      final List<Long> expected = new ArrayList<Long>();
+      expected.add((long) key);
+      expected.add((long) numKeys + key);
+      assertEquals(expected, matches(table, schema, key, key / hashDivisor));
+    }
+    /* Keys that were not added find nothing, whether or not their hash is in the table. */
+    assertEquals(0, matches(table, schema, numKeys, (numKeys - 1) / hashDivisor).size());
+    assertEquals(0, matches(table, schema, -1, -1).size());
+  }
+
+  @Test
+  public void testGrowth() {
+    /* More hashes than the initial slots, and more tuples than the initial tuple capacity. */
+    checkTable(Type.INT_TYPE, 3 * TupleBatch.BATCH_SIZE, 1);
+    checkTable(Type.LONG_TYPE, 3 * TupleBatch.BATCH_SIZE, 1);
+    checkTable(Type.STRING_TYPE, 3 * TupleBatch.BATCH_SIZE, 1);
+  }
+
+  @Test
+  public void testHashCollisions() {
+    /* Several keys share each hash, so they share a chain. */
+    checkTable(Type.INT_TYPE, 5000, 7);
+    checkTable(Type.LONG_TYPE, 5000, 7);
+    checkTable(Type.STRING_TYPE, 5000, 7);
+    /* All keys share one hash. */
+    checkTable(Type.INT_TYPE, 500, Integer.MAX_VALUE);
+    checkTable(Type.STRING_TYPE, 500, Integer.MAX_VALUE);
+  }
+
+  @Test
+  public void testSlotCollisions() {
+    /*
+     * Different hashes that start probing at the same slot: runs of 64 keys differ only in the bits that the slot mask
+     * drops, before and after the slots are rehashed.
+     */
+    final Schema schema = Schema.ofFields("key", Type.LONG_TYPE, "payload", Type.LONG_TYPE);
+    final JoinHashTable table = new JoinHashTable(schema, new int[] { 0 });
+    final int numKeys = 2000;
+    for (int key = 0; key < numKeys; ++key) {
+      table.add(tuple(schema, key, key), 0, key << 10);
+      if (key % 100 == 0) {
+        for (int probe = 0; probe <= key; probe += 10) {
+          assertEquals(1, matches(table, schema, probe, probe << 10).size());
+        }
+      }
+    }
+    for (int key = 0; key < numKeys; ++key) {
+      final List<Long> payloads = matches(table, schema, key, key << 10);
+      assertEquals(1, payloads.size());
+      assertEquals(key, payloads.get(0).longValue());
+    }
+    assertEquals(0, matches(table, schema, numKeys, numKeys << 10).size());
+  }
+
+  @Test
+  public void testProjectedAdd() {
+    /* The stored tuple is (payload, key) of the input tuples, keyed on its second column. */
+    final Schema input = Schema.ofFields("key", Type.INT_TYPE, "payload", Type.LONG_TYPE);
+    final Schema stored = Schema.ofFields("payload", Type.LONG_TYPE, "key", Type.INT_TYPE);
+    final JoinHashTable table = new JoinHashTable(stored, new int[] { 1 });
+    for (int key = 0; key < 100; ++key) {
+      table.add(tuple(input, key, 10 * key), new int[] { 1, 0 }, 0, key % 3);
+    }
+    for (int key = 0; key < 100; ++key) {
+      final TupleBatch probe = tuple(input, key, 0);
+      final int index = table.firstMatch(probe, new int[] { 0 }, 0, key % 3);
+      assertEquals(10 * key, table.getData().getLong(0, index));
+      assertEquals(key, table.getData().getInt(1, index));
+      assertEquals(JoinHashTable.NONE, table.nextMatch(probe, new int[] { 0 }, 0, index));
+    }
+  }
+}
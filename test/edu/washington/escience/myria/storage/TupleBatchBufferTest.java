@@ -0,0 +1,84 @@
+package edu.washington.escience.myria.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.util.TestUtils;
+
+public class TupleBatchBufferTest {
+
+  private static final Schema SCHEMA = Schema.ofFields("val", Type.INT_TYPE);
+
+  /** Pops the batches of the buffer and checks their sizes, and that they hold 0, 1, 2, ... in order. */
+  private static void checkPopped(final TupleBatchBuffer tbb, final int... sizes) {
+    int value = 0;
+    for (int size : sizes) {
+      final TupleBatch tb = tbb.popAny();
+      assertEquals(size, tb.numTuples());
+      for (int row = 0; row < size; ++row) {
+        assertEquals(value++, tb.getInt(0, row));
+      }
+    }
+    assertNull(tbb.popAny());
+    assertEquals(0, tbb.numTuples());
+  }
+
+  @Test
+  public void testMaxBatchTuplesOnPut() {
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA, 3);
+    for (int i = 0; i < 7; ++i) {
+      tbb.putInt(0, i);
+    }
+    assertEquals(7, tbb.numTuples());
+    checkPopped(tbb, 3, 3, 1);
+  }
+
+  @Test
+  public void testMaxBatchTuplesOnAppend() {
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA, 4);
+    tbb.appendTB(TestUtils.range(10).popAny());
+    assertEquals(10, tbb.numTuples());
+    checkPopped(tbb, 4, 4, 2);
+  }
+
+  @Test
+  public void testAppendExactMultiple() {
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA, 5);
+    tbb.appendTB(TestUtils.range(10).popAny());
+    checkPopped(tbb, 5, 5);
+  }
+
+  @Test
+  public void testAppendAfterPut() {
+    /* The tuples that were put are finished first, so that the order is kept. */
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA, 4);
+    tbb.putInt(0, 0);
+    tbb.putInt(0, 1);
+    final TupleBatchBuffer source = new TupleBatchBuffer(SCHEMA);
+    for (int i = 2; i < 8; ++i) {
+      source.putInt(0, i);
+    }
+    tbb.appendTB(source.popAny());
+    checkPopped(tbb, 2, 4, 2);
+  }
+
+  @Test
+  public void testDefaultMaxBatchTuples() {
+    final TupleBatchBuffer tbb = TestUtils.range(TupleBatch.BATCH_SIZE + 1);
+    checkPopped(tbb, TupleBatch.BATCH_SIZE, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testZeroMaxBatchTuples() {
+    new TupleBatchBuffer(SCHEMA, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTooLargeMaxBatchTuples() {
+    new TupleBatchBuffer(SCHEMA, TupleBatch.BATCH_SIZE + 1);
+  }
+}
@@ -0,0 +1,119 @@
+package edu.washington.escience.myria.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+
+public class TupleBatchTest {
+
+  private static final Schema SCHEMA = Schema.ofFields("i", Type.INT_TYPE, "s", Type.STRING_TYPE);
+
+  /** A batch whose row i is (i, "s" + i). */
+  private static TupleBatch batch(final int numTuples) {
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < numTuples; ++i) {
+      tbb.putInt(0, i);
+      tbb.putString(1, "s" + i);
+    }
+    return tbb.popAny();
+  }
+
+  /** Checks that the batches hold the rows of {@link #batch(int)} in order, in batches of the given sizes. */
+  private static void checkSplit(final List<TupleBatch> batches, final int... sizes) {
+    assertEquals(sizes.length, batches.size());
+    int row = 0;
+    for (int i = 0; i < sizes.length; ++i) {
+      final TupleBatch tb = batches.get(i);
+      assertEquals(SCHEMA, tb.getSchema());
+      assertEquals(sizes[i], tb.numTuples());
+      for (int j = 0; j < tb.numTuples(); ++j) {
+        assertEquals(row, tb.getInt(0, j));
+        assertEquals("s" + row, tb.getString(1, j));
+        ++row;
+      }
+    }
+  }
+
+  @Test
+  public void testEstimatedTupleBytes() {
+    assertEquals(1, TupleBatch.estimatedTupleBytes(Schema.ofFields("b", Type.BOOLEAN_TYPE)));
+    assertEquals(1 + 4 + 4 + 8 + 8 + 8, TupleBatch.estimatedTupleBytes(Schema.ofFields("b", Type.BOOLEAN_TYPE, "i",
+        Type.INT_TYPE, "f", Type.FLOAT_TYPE, "l", Type.LONG_TYPE, "d", Type.DOUBLE_TYPE, "t", Type.DATETIME_TYPE)));
+    /* A length and 32 bytes per string. */
+    assertEquals(4 + 36 + 36, TupleBatch.estimatedTupleBytes(Schema.ofFields("i", Type.INT_TYPE, "s1",
+        Type.STRING_TYPE, "s2", Type.STRING_TYPE)));
+    assertEquals(1, TupleBatch.estimatedTupleBytes(Schema.EMPTY_SCHEMA));
+  }
+
+  /** A schema of the given number of string columns. */
+  private static Schema strings(final int numColumns) {
+    return new Schema(Collections.nCopies(numColumns, Type.STRING_TYPE));
+  }
+
+  @Test
+  public void testBatchSize() {
+    final long maxBytes = 1024 * 1024;
+    /* Narrow tuples are capped by the max batch size. */
+    assertEquals(TupleBatch.BATCH_SIZE, TupleBatch.batchSize(Schema.ofFields("i", Type.INT_TYPE), maxBytes));
+    assertEquals(TupleBatch.BATCH_SIZE, TupleBatch.batchSize(strings(2), maxBytes));
+    /* Wide string tuples fill the byte budget. */
+    assertEquals(maxBytes / (36 * 10), TupleBatch.batchSize(strings(10), maxBytes));
+    assertEquals(maxBytes / (36 * 100), TupleBatch.batchSize(strings(100), maxBytes));
+    /* Very wide tuples, or a tiny budget, still get the min batch size. */
+    assertEquals(TupleBatch.MIN_BATCH_SIZE, TupleBatch.batchSize(strings(1000), maxBytes));
+    assertEquals(TupleBatch.MIN_BATCH_SIZE, TupleBatch.batchSize(Schema.ofFields("i", Type.INT_TYPE), 0));
+    /* A huge budget does not overflow. */
+    assertEquals(TupleBatch.BATCH_SIZE, TupleBatch.batchSize(strings(1), Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testSplitSmallBatch() {
+    final TupleBatch tb = batch(10);
+    assertSame(tb, tb.split(10).get(0));
+    assertEquals(1, tb.split(10).size());
+    assertSame(tb, tb.split(100).get(0));
+  }
+
+  @Test
+  public void testSplitExactMultiple() {
+    checkSplit(batch(12).split(4), 4, 4, 4);
+    checkSplit(batch(12).split(1), 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1);
+    checkSplit(batch(TupleBatch.BATCH_SIZE).split(TupleBatch.BATCH_SIZE / 2), TupleBatch.BATCH_SIZE / 2,
+        TupleBatch.BATCH_SIZE / 2);
+  }
+
+  @Test
+  public void testSplitWithRemainder() {
+    checkSplit(batch(10).split(4), 4, 4, 2);
+    checkSplit(batch(10).split(9), 9, 1);
+    checkSplit(batch(TupleBatch.BATCH_SIZE).split(3000), 3000, 3000, 3000, 1000);
+  }
+
+  @Test
+  public void testSplitKeepsRowHashes() {
+    final TupleBatch tb = batch(5);
+    final int[] hashColumns = new int[] { 0 };
+    final int[] hashes = tb.getRowHashes(hashColumns);
+    final List<TupleBatch> batches = tb.split(2);
+    int row = 0;
+    for (TupleBatch part : batches) {
+      final int[] partHashes = part.getRowHashes(hashColumns);
+      for (int hash : partHashes) {
+        assertEquals(hashes[row++], hash);
+      }
+    }
+    assertEquals(5, row);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSplitNonPositive() {
+    batch(1).split(0);
+  }
+}